@@ -0,0 +1,233 @@
+package kabadev.rendimiento;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import kabadev.biblioteca.BibliotecaMedios;
+import kabadev.cache.CacheCanales;
+import kabadev.cache.CacheRecursosEstaticos;
+import kabadev.cache.CacheTrozos;
+import kabadev.catalogo.Catalogo;
+import kabadev.catalogo.ConsultaCatalogo;
+import kabadev.catalogo.ServicioCatalogo;
+import kabadev.controladores.ControladorArchivosEstaticos;
+import kabadev.controladores.ControladorRaiz;
+import kabadev.controladores.ControladorStream;
+import kabadev.controladores.ControladorVideo;
+import kabadev.mp4.CacheMp4;
+import kabadev.servidor.RutaHttp;
+import kabadev.servidor.TablaRutas;
+import kabadev.trafico.PlanificadorTrafico;
+
+/**
+ * Controladores completos atendiendo peticiones en memoria
+ *
+ * Cada operación crea un IntercambioFalso y llama a controlar como lo haría el
+ * servidor, sin sockets ni hilos de por medio. El catálogo (de tamanoCatalogo
+ * películas) y el vídeo se escriben en una carpeta temporal; el vídeo es una
+ * copia de static/src/Dogster.mp4, así que todo funciona sin red
+ *
+ * - raiz / estatico*: ControladorRaiz y ControladorArchivosEstaticos con la
+ *   caché de recursos (identidad, gzip, 304 y el MP4 mapeado con Range)
+ * - video*: ControladorVideo con respuestas ya serializadas y
+ *   serializarCatalogo para el coste de Jackson sin la caché de consultas
+ * - stream*: ControladorStream con o sin la caché de trozos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControladoresBenchmark {
+
+    @Param({"100", "10000"})
+    int tamanoCatalogo;
+
+    @Param({"false", "true"})
+    boolean trozos;
+
+    private Path carpeta;
+    private byte[] catalogoJson;
+    private ServicioCatalogo catalogo;
+    private CacheCanales canales;
+    private CacheTrozos cacheTrozos;
+
+    private ControladorRaiz raiz;
+    private ControladorArchivosEstaticos estaticos;
+    private ControladorVideo video;
+    private ControladorStream stream;
+    private RutaHttp rutaStream;
+    private String etagEstilos;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        carpeta = Files.createTempDirectory("dogster-jmh");
+
+        Path archivoVideo = carpeta.resolve("Dogster.mp4");
+        try (InputStream original = getClass().getClassLoader().getResourceAsStream("static/src/Dogster.mp4")) {
+            if (original == null) {
+                throw new IOException("No se encontró static/src/Dogster.mp4 en el classpath");
+            }
+            Files.copy(original, archivoVideo, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // Títulos con palabras repetidas para que las búsquedas por texto tengan coincidencias
+        String[] palabras = {"perro", "gato", "espacio", "galaxia", "aventura", "regreso", "noche", "ciudad"};
+        List<Map<String, Object>> peliculas = new ArrayList<>(tamanoCatalogo);
+        for (int id = 1; id <= tamanoCatalogo; id++) {
+            Map<String, Object> pelicula = new LinkedHashMap<>();
+            pelicula.put("id", id);
+            pelicula.put("title", palabras[id % palabras.length] + " " + palabras[(id / 8) % palabras.length]
+                    + " " + id);
+            pelicula.put("year", 1950 + id % 75);
+            pelicula.put("duration", 80 + id % 60);
+            pelicula.put("poster", "https://example.com/posters/" + id + ".jpg");
+            pelicula.put("videoUrl", archivoVideo.toString());
+            peliculas.add(pelicula);
+        }
+        catalogoJson = new ObjectMapper().writeValueAsBytes(peliculas);
+        Path archivoCatalogo = Files.write(carpeta.resolve("catalogo.json"), catalogoJson);
+
+        catalogo = ServicioCatalogo.cargarDesdeArchivo(archivoCatalogo);
+        canales = new CacheCanales(16, 60);
+        cacheTrozos = trozos ? CacheTrozos.desdeConfiguracion(canales) : null;
+
+        CacheRecursosEstaticos recursos = CacheRecursosEstaticos.cargar();
+        raiz = new ControladorRaiz(recursos);
+        estaticos = new ControladorArchivosEstaticos(recursos);
+        video = new ControladorVideo(catalogo);
+        stream = new ControladorStream(catalogo, BibliotecaMedios.desdeConfiguracion(), canales,
+                CacheMp4.desdeConfiguracion(), cacheTrozos, new PlanificadorTrafico(0, 0, 0, 1, 64 * 1024), null);
+        rutaStream = new TablaRutas().registrar("/stream/{id}", stream);
+
+        IntercambioFalso primero = IntercambioFalso.get("/static/style.css");
+        estaticos.controlar(primero);
+        etagEstilos = primero.getResponseHeaders().getFirst("ETag");
+    }
+
+    @TearDown(Level.Trial)
+    public void limpiar() throws IOException {
+        if (cacheTrozos != null) {
+            cacheTrozos.close();
+        }
+        canales.close();
+        catalogo.close();
+        try (Stream<Path> contenido = Files.list(carpeta)) {
+            for (Path archivo : contenido.toList()) {
+                Files.deleteIfExists(archivo);
+            }
+        }
+        Files.deleteIfExists(carpeta);
+    }
+
+    // ========== RECURSOS ESTÁTICOS ==========
+
+    @Benchmark
+    public long raiz() throws IOException {
+        return atender(raiz::controlar, IntercambioFalso.get("/"));
+    }
+
+    @Benchmark
+    public long estatico() throws IOException {
+        return atender(estaticos::controlar, IntercambioFalso.get("/static/style.css"));
+    }
+
+    @Benchmark
+    public long estaticoGzip() throws IOException {
+        return atender(estaticos::controlar, IntercambioFalso.get("/static/style.css")
+                .cabecera("Accept-Encoding", "gzip, deflate, br"));
+    }
+
+    @Benchmark
+    public long estaticoNoModificado() throws IOException {
+        return atender(estaticos::controlar, IntercambioFalso.get("/static/style.css")
+                .cabecera("If-None-Match", etagEstilos));
+    }
+
+    @Benchmark
+    public long estaticoMapeadoRango() throws IOException {
+        return atender(estaticos::controlar, IntercambioFalso.get("/static/src/Dogster.mp4")
+                .cabecera("Range", "bytes=0-262143"));
+    }
+
+    // ========== CATÁLOGO ==========
+
+    @Benchmark
+    public long videoCompleto() throws IOException {
+        return atender(video::controlar, IntercambioFalso.get("/video"));
+    }
+
+    @Benchmark
+    public long videoPagina() throws IOException {
+        return atender(video::controlar, IntercambioFalso.get("/video?page=1&size=24"));
+    }
+
+    @Benchmark
+    public long videoBusqueda() throws IOException {
+        return atender(video::controlar, IntercambioFalso.get("/video?q=gal%20noch"));
+    }
+
+    @Benchmark
+    public int serializarCatalogo() throws IOException {
+        // Catálogo recién cargado: responder tiene que pasar por Jackson
+        Catalogo nuevo = Catalogo.desdeJson(new ByteArrayInputStream(catalogoJson));
+        return nuevo.responder(ConsultaCatalogo.COMPLETA).json().length;
+    }
+
+    // ========== STREAMING ==========
+
+    @Benchmark
+    public long streamCompleto() throws IOException {
+        return atender(intercambio -> stream.controlar(intercambio, rutaStream), IntercambioFalso.get("/stream/1"));
+    }
+
+    @Benchmark
+    public long streamRango() throws IOException {
+        return atender(intercambio -> stream.controlar(intercambio, rutaStream), IntercambioFalso.get("/stream/1").cabecera("Range", "bytes=1048576-1310719"));
+    }
+
+    @Benchmark
+    public long streamSalto() throws IOException {
+        return atender(intercambio -> stream.controlar(intercambio, rutaStream), IntercambioFalso.get("/stream/1?t=5"));
+    }
+
+    private interface Controlador {
+        void controlar(IntercambioFalso intercambio) throws IOException;
+    }
+
+    private static long atender(Controlador controlador, IntercambioFalso intercambio) throws IOException {
+        controlador.controlar(intercambio);
+        if (intercambio.getResponseCode() >= 400) {
+            throw new IllegalStateException("Respuesta " + intercambio.getResponseCode() + " para "
+                    + intercambio.getRequestURI());
+        }
+        return intercambio.bytesEnviados();
+    }
+}
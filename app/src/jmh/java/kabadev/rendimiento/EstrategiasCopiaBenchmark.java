@@ -0,0 +1,139 @@
+package kabadev.rendimiento;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kabadev.servidor.TransferenciaArchivo;
+
+/**
+ * Estrategias para copiar un vídeo al cuerpo de la respuesta
+ *
+ * - bucleHeap: InputStream + byte[] como hacía enviarMP4 originalmente (8 KB)
+ * - bufferDirecto: FileChannel.read sobre un ByteBuffer directo reutilizado
+ * - mapeado: el archivo mapeado en memoria y escrito por trozos
+ * - transferTo: TransferenciaArchivo, el camino actual de ContenidoRangos
+ *   (no depende de tamanoBuffer: el JDK elige su propio búfer). Hacia un
+ *   OutputStream no hay sendfile, igual que con el motor NATIVO; el motor NIO
+ *   entrega la región al socket y ese caso solo se mide con la prueba de carga
+ *
+ * Todas escriben en un SumideroNulo, que copia los datos como lo haría el
+ * socket. El archivo vive en la caché de páginas tras el primer calentamiento,
+ * así que se mide el coste de CPU y copias, no el del disco. Cada operación
+ * envía el archivo completo: el resultado se puede leer como MB/s con
+ * tamanoArchivo / tiempo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EstrategiasCopiaBenchmark {
+
+    @Param({"8192", "65536", "1048576"})
+    int tamanoBuffer;
+
+    @Param({"33554432"})
+    long tamanoArchivo;
+
+    private Path carpeta;
+    private Path video;
+    private FileChannel canal;
+    private MappedByteBuffer mapa;
+    private ByteBuffer directo;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        carpeta = Files.createTempDirectory("dogster-jmh");
+        video = carpeta.resolve("video.mp4");
+
+        byte[] bloque = new byte[1024 * 1024];
+        new Random(42).nextBytes(bloque);
+        try (FileChannel escritura = FileChannel.open(video, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            for (long escritos = 0; escritos < tamanoArchivo; escritos += bloque.length) {
+                escritura.write(ByteBuffer.wrap(bloque, 0, (int) Math.min(bloque.length, tamanoArchivo - escritos)));
+            }
+        }
+
+        canal = FileChannel.open(video, StandardOpenOption.READ);
+        mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanoArchivo);
+        directo = ByteBuffer.allocateDirect(tamanoBuffer);
+    }
+
+    @TearDown(Level.Trial)
+    public void limpiar() throws IOException {
+        canal.close();
+        Files.deleteIfExists(video);
+        Files.deleteIfExists(carpeta);
+    }
+
+    @Benchmark
+    public long bucleHeap() throws IOException {
+        SumideroNulo salida = new SumideroNulo();
+        try (InputStream entrada = Files.newInputStream(video)) {
+            byte[] buffer = new byte[tamanoBuffer];
+            int leidos;
+            while ((leidos = entrada.read(buffer)) != -1) {
+                salida.write(buffer, 0, leidos);
+            }
+        }
+        return salida.bytes();
+    }
+
+    @Benchmark
+    public long bufferDirecto() throws IOException {
+        SumideroNulo salida = new SumideroNulo();
+        long posicion = 0;
+        while (posicion < tamanoArchivo) {
+            directo.clear();
+            int leidos = canal.read(directo, posicion);
+            if (leidos < 0) {
+                break;
+            }
+            directo.flip();
+            salida.write(directo);
+            posicion += leidos;
+        }
+        return salida.bytes();
+    }
+
+    @Benchmark
+    public long mapeado() {
+        SumideroNulo salida = new SumideroNulo();
+        for (long posicion = 0; posicion < tamanoArchivo; posicion += tamanoBuffer) {
+            int longitud = (int) Math.min(tamanoBuffer, tamanoArchivo - posicion);
+            salida.write(mapa.slice((int) posicion, longitud));
+        }
+        return salida.bytes();
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        SumideroNulo salida = new SumideroNulo();
+        TransferenciaArchivo.transferir(canal, 0, tamanoArchivo, salida);
+        return salida.bytes();
+    }
+}
@@ -0,0 +1,154 @@
+package kabadev.rendimiento;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+/**
+ * HttpExchange en memoria para medir controladores sin sockets
+ *
+ * Sigue las reglas de sendResponseHeaders del servidor NATIVO lo justo para
+ * que los controladores se comporten igual (código, cabeceras y cuerpo), y
+ * descarta el cuerpo en un SumideroNulo que solo cuenta bytes
+ */
+final class IntercambioFalso extends HttpExchange {
+
+    private static final InetSocketAddress LOCAL = new InetSocketAddress(InetAddress.getLoopbackAddress(), 8080);
+    private static final InetSocketAddress REMOTA = new InetSocketAddress(InetAddress.getLoopbackAddress(), 50000);
+
+    private final String metodo;
+    private final URI uri;
+    private final Headers cabecerasPeticion = new Headers();
+    private final Headers cabecerasRespuesta = new Headers();
+    private final Map<String, Object> atributos = new HashMap<>();
+    private final SumideroNulo cuerpo = new SumideroNulo();
+
+    private InputStream entrada = new ByteArrayInputStream(new byte[0]);
+    private OutputStream salida = cuerpo;
+    private int codigo = -1;
+
+    IntercambioFalso(String metodo, String uri) {
+        this.metodo = metodo;
+        this.uri = URI.create(uri);
+    }
+
+    static IntercambioFalso get(String uri) {
+        return new IntercambioFalso("GET", uri);
+    }
+
+    IntercambioFalso cabecera(String nombre, String valor) {
+        cabecerasPeticion.add(nombre, valor);
+        return this;
+    }
+
+    /**
+     * @return Bytes de cuerpo escritos por el controlador
+     */
+    long bytesEnviados() {
+        return cuerpo.bytes();
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return cabecerasPeticion;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return cabecerasRespuesta;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return metodo;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return entrada;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return salida;
+    }
+
+    @Override
+    public void sendResponseHeaders(int codigo, long longitud) {
+        this.codigo = codigo;
+        if (longitud > 0) {
+            cabecerasRespuesta.set("Content-Length", Long.toString(longitud));
+        } else if (longitud == 0) {
+            cabecerasRespuesta.set("Transfer-Encoding", "chunked");
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return REMOTA;
+    }
+
+    @Override
+    public int getResponseCode() {
+        return codigo;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return LOCAL;
+    }
+
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    @Override
+    public Object getAttribute(String nombre) {
+        return atributos.get(nombre);
+    }
+
+    @Override
+    public void setAttribute(String nombre, Object valor) {
+        atributos.put(nombre, valor);
+    }
+
+    @Override
+    public void setStreams(InputStream entrada, OutputStream salida) {
+        if (entrada != null) {
+            this.entrada = entrada;
+        }
+        if (salida != null) {
+            this.salida = salida;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package kabadev.rendimiento;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Destino que imita el envío a un socket y descarta los datos
+ *
+ * Es a la vez OutputStream (cuerpo de HttpExchange) y WritableByteChannel
+ * (destino de transferTo y de los buffers mapeados), así cada estrategia de
+ * copia escribe por su camino natural. Todo lo que llega se copia a un búfer
+ * directo de 64 KB, como haría la escritura en el búfer de envío del socket:
+ * sin esa copia los buffers mapeados no llegarían a leer las páginas y
+ * parecerían gratis
+ */
+final class SumideroNulo extends OutputStream implements WritableByteChannel {
+
+    private final ByteBuffer envio = ByteBuffer.allocateDirect(64 * 1024);
+    private long bytes;
+
+    long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public void write(int b) {
+        envio.clear();
+        envio.put((byte) b);
+        bytes++;
+    }
+
+    @Override
+    public void write(byte[] datos, int desde, int longitud) {
+        int enviados = 0;
+        while (enviados < longitud) {
+            int bloque = Math.min(longitud - enviados, envio.capacity());
+            envio.clear();
+            envio.put(datos, desde + enviados, bloque);
+            enviados += bloque;
+        }
+        bytes += longitud;
+    }
+
+    @Override
+    public int write(ByteBuffer origen) {
+        int restantes = origen.remaining();
+        while (origen.hasRemaining()) {
+            int bloque = Math.min(origen.remaining(), envio.capacity());
+            envio.clear();
+            envio.put(envio.position(), origen, origen.position(), bloque);
+            origen.position(origen.position() + bloque);
+        }
+        bytes += restantes;
+        return restantes;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+}
@@ -2,14 +2,39 @@ package kabadev;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;          // Dirección de socket de Internet (IP + Puerto)
-import java.util.concurrent.Executors;         // Utilidad para crear pools de hilos
-
-import com.sun.net.httpserver.HttpServer;   // Servidor HTTP básico de Java
+import java.util.Map;                       // Métodos aceptados por ruta
+import java.util.concurrent.ExecutorService;  // Tareas de arranque en paralelo
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import kabadev.accesos.RegistroAccesos;                       // Registro de accesos asíncrono (JSON por línea)
+import kabadev.biblioteca.BibliotecaMedios;                   // Índice de los vídeos en disco
+import kabadev.cache.CacheCanales;                           // Archivos de vídeo abiertos y reutilizados
+import kabadev.cache.CacheRecursosEstaticos;                 // Recursos de static/ precargados en memoria
+import kabadev.cache.CacheTrozos;                            // Trozos de vídeo compartidos fuera del heap
+import kabadev.carteles.ServicioCarteles;                    // Carteles reducidos en memoria y en disco
+import kabadev.catalogo.ServicioCatalogo;                    // Catálogo de películas indexado en memoria
+import kabadev.compresion.CompresionHttp;                    // gzip/deflate al vuelo para JSON y texto
+import kabadev.configuracion.Configuracion;                  // Configuración de arranque (-Ddogster.*)
 import kabadev.controladores.ControladorArchivosEstaticos;   // Controlador para archivos estáticos
+import kabadev.controladores.ControladorBusqueda;           // Controlador para /search y /suggest
+import kabadev.controladores.ControladorMetricas;           // Controlador para /metrics (Prometheus)
+import kabadev.controladores.ControladorPoster;             // Controlador para carteles reducidos
+import kabadev.controladores.ControladorProgreso;           // Controlador para /progress
 import kabadev.controladores.ControladorRaiz;               // Controlador para página principal  
 import kabadev.controladores.ControladorStream;             // Controlador para streaming MP4
 import kabadev.controladores.ControladorVideo;              // Controlador para API JSON
+import kabadev.metricas.MetricasHttp;                       // Contadores e histogramas de la capa HTTP
+import kabadev.mp4.CacheMp4;                                // Análisis MP4 y vista faststart
+import kabadev.progreso.ServicioProgreso;                   // Posiciones de reproducción con escritura diferida
+import kabadev.servidor.CicloVida;                          // Drenaje y apagado ordenado
+import kabadev.servidor.ControlAdmision;                    // Cupos por clase de petición y 503 bajo sobrecarga
+import kabadev.servidor.EstrategiaEjecutor;                 // Estrategia de hilos configurable
+import kabadev.servidor.IServidorHttp;                      // Interfaz común de los motores HTTP
+import kabadev.servidor.Middlewares;                        // CORS y métodos permitidos para todas las rutas
+import kabadev.servidor.ServidorHttp;                       // Motor sobre el HttpServer nativo
+import kabadev.servidor.nio.ServidorNio;                    // Motor no bloqueante con Selector
+import kabadev.trafico.PlanificadorTrafico;                 // Límites de ancho de banda de los streams
 
 /**
  * Clase principal de la aplicación Dogster
@@ -23,39 +48,238 @@ public class App {
      * @throws IOException Si hay error al crear o iniciar el servidor
      */
     public static void main(String[] args) throws IOException {
+        iniciar();
+    }
+
+    /**
+     * Crea los componentes, registra los controladores y abre el puerto
+     * También lo usa la prueba de carga para arrancar el servidor en el mismo proceso
+     *
+     * @return Servidor ya iniciado (obtenerDireccion da el puerto real)
+     * @throws IOException Si hay error al crear o iniciar el servidor
+     */
+    public static IServidorHttp iniciar() throws IOException {
+        
+        // ========== ELECCIÓN DEL MOTOR HTTP ================================================================================================
+        // -Ddogster.motor=nativo (por defecto): HttpServer de Java, un hilo bloqueado por petición
+        // -Ddogster.motor=nio: motor propio con Selector, keep-alive, pipelining y sendfile para /stream
+        // Ambos escuchan en 0.0.0.0 con un Backlog de 0 (el sistema operativo controla las conexiones entrantes)
+        // El puerto es 8080 salvo -Ddogster.puerto (0 = cualquier puerto libre)
+        InetSocketAddress direccion = new InetSocketAddress("0.0.0.0", Configuracion.entero("puerto", 8080));
+        String motor = Configuracion.texto("motor", "nativo");
         
-        // Inicializamos un Servidor de tipo HttpServer inicializamos un Inetsocket en el puerto 8080
-        // Inet = Internet; Socket = Punto de conexión; Address = Dirección
-        // con un Backlog de 0 (el sistema operativo Controla las conexiones entrantes)
-        HttpServer servidor = HttpServer.create(new InetSocketAddress("0.0.0.0", 8080), 0);
+        // La estrategia de hilos se elige con -Ddogster.ejecutor=virtual|fijo|cache (por defecto virtual)
+        // Con hilos virtuales cada stream bloqueado escribiendo en el socket no ocupa un hilo del sistema,
+        // así que el espectador número 11 ya no espera a que termine otra película
+        EstrategiaEjecutor estrategia = EstrategiaEjecutor.desdeConfiguracion();
+        IServidorHttp servidor = "nio".equalsIgnoreCase(motor)
+                ? ServidorNio.crear(direccion, 0)
+                : ServidorHttp.crear(direccion, 0);
+
+        // ========== ARRANQUE EN PARALELO =====================================================================================================
+        // Estáticos, catálogo e índice de la biblioteca no dependen entre sí: se cargan a la vez y el puerto
+        // se abre cuando los tres están listos (el arranque dura lo que el más lento, no la suma)
+        CacheRecursosEstaticos cacheEstaticos;
+        ServicioCatalogo catalogo;
+        BibliotecaMedios biblioteca;
+        ServicioProgreso progreso;
+        try (ExecutorService arranque = Executors.newVirtualThreadPerTaskExecutor()) {
+            // ========== CACHÉ DE RECURSOS ESTÁTICOS ========================================================================================
+            // index.html, main.js y style.css se leen y comprimen una sola vez antes de abrir el puerto
+            // Los archivos grandes (src/Dogster.mp4) se mapean en memoria y se sirven con Range
+            Future<CacheRecursosEstaticos> estaticosCargados = arranque.submit(CacheRecursosEstaticos::cargar);
+
+            // ========== CATÁLOGO DE PELÍCULAS ==============================================================================================
+            // asterix.json se analiza una vez en registros indexados por id, año y palabras del título
+            // Con -Ddogster.catalogo=/ruta/catalogo.json se usa un archivo externo que se recarga en caliente al editarlo
+            Future<ServicioCatalogo> catalogoCargado = arranque.submit(ServicioCatalogo::desdeConfiguracion);
+
+            // ========== BIBLIOTECA DE VÍDEOS ===============================================================================================
+            // -Ddogster.biblioteca=/media/peliculas:/media/series indica las carpetas con los MP4
+            // Se arranca con el índice guardado en disco y el escaneo incremental corre en segundo plano
+            Future<BibliotecaMedios> bibliotecaCargada = arranque.submit(BibliotecaMedios::desdeConfiguracion);
+
+            // ========== PROGRESO DE REPRODUCCIÓN ==========================================================================================
+            // Posición de cada navegador en cada película; el registro dogster-progreso.log se reproduce al arrancar
+            Future<ServicioProgreso> progresoCargado = arranque.submit(ServicioProgreso::desdeConfiguracion);
+
+            cacheEstaticos = CicloVida.esperar(estaticosCargados);
+            catalogo = CicloVida.esperar(catalogoCargado);
+            biblioteca = CicloVida.esperar(bibliotecaCargada);
+            progreso = CicloVida.esperar(progresoCargado);
+        }
+
+        // Los reproductores piden decenas de rangos por minuto: el archivo se abre una vez y se comparte
+        CacheCanales canales = CacheCanales.desdeConfiguracion();
+
+        // Los espectadores de la misma película comparten los trozos leídos (1 MB, lectura anticipada)
+        // Pensado para discos mecánicos o NAS con el motor nativo; el motor NIO usa sendfile y no pasa por ella
+        // Se desactiva con -Ddogster.trozos.activo=false
+        CacheTrozos trozos = Configuracion.booleano("trozos.activo", true) ? CacheTrozos.desdeConfiguracion(canales) : null;
+
+        // Los MP4 con el moov al final se sirven con el moov delante (se desactiva con -Ddogster.mp4.faststart=false)
+        CacheMp4 mp4 = Configuracion.booleano("mp4.faststart", true) ? CacheMp4.desdeConfiguracion() : null;
+
+        // Reparto del ancho de banda entre espectadores (bytes/s): -Ddogster.trafico.global, .ip y .stream
+        // Sin ningún límite configurado los streams salen a la velocidad del socket
+        PlanificadorTrafico trafico = PlanificadorTrafico.desdeConfiguracion();
+
+        // Carteles de 320 px obtenidos una vez (carpeta -Ddogster.carteles.origen o red) y guardados en disco
+        ServicioCarteles carteles = ServicioCarteles.desdeConfiguracion();
+
+        // ========== CICLO DE VIDA ==========================================================================================================
+        // Ctrl+C o SIGTERM: se drenan las respuestas en curso (-Ddogster.apagado.plazo segundos) y después
+        // se cierran los recursos en orden inverso: trozos antes que los canales que leen, vigilancia del catálogo...
+        CicloVida ciclo = CicloVida.desdeConfiguracion(servidor);
+
+        // Una línea JSON por petición en dogster-accesos.log: la escribe un hilo aparte por lotes, nunca el de la petición
+        // Se registra primero para cerrarse el último y recoger las peticiones del drenaje
+        RegistroAccesos accesos = RegistroAccesos.desdeConfiguracion();
+        ciclo.registrar("registro de accesos", accesos);
+        ciclo.registrar("catálogo", catalogo);
+        ciclo.registrar("biblioteca", biblioteca);
+        ciclo.registrar("canales abiertos", canales);
+        ciclo.registrar("caché de trozos", trozos);
+        ciclo.registrar("progreso", progreso);
+
+        // Compresión al vuelo de JSON y texto (-Ddogster.compresion=false para quitarla); vídeo e imágenes salen tal cual
+        CompresionHttp compresion = CompresionHttp.desdeConfiguracion();
+
+        // ========== MÉTRICAS ==============================================================================================================
+        // Cada ruta queda medida (latencia, códigos, bytes) y el estado se lee en /metrics con Prometheus
+        MetricasHttp metricas = new MetricasHttp();
+        servidor.usarMetricas(metricas);
+        metricas.registrarJvm();
+        metricas.registrarIndicador("dogster_catalogo_peliculas", "Películas en el catálogo", "gauge",
+                () -> catalogo.actual().peliculas().size());
+        metricas.registrarIndicador("dogster_biblioteca_videos", "Vídeos en el índice de la biblioteca", "gauge",
+                () -> biblioteca.actual().tamano());
+        metricas.registrarIndicador("dogster_canales_abiertos", "Archivos de vídeo abiertos en la caché", "gauge",
+                canales::abiertos);
+        if (trozos != null) {
+            metricas.registrarIndicador("dogster_trozos_aciertos_total", "Trozos servidos desde memoria", "counter",
+                    trozos::aciertos);
+            metricas.registrarIndicador("dogster_trozos_fallos_total", "Trozos leídos del disco al pedirlos", "counter",
+                    trozos::fallos);
+            metricas.registrarIndicador("dogster_trozos_anticipados_total", "Trozos encargados a la lectura anticipada",
+                    "counter", trozos::anticipados);
+            metricas.registrarIndicador("dogster_trozos_memoria_bytes", "Memoria directa reservada para trozos", "gauge",
+                    trozos::memoria);
+            metricas.registrarIndicador("dogster_trozos_sin_memoria_total",
+                    "Trozos enviados del archivo por tener todos los buffers en uso", "counter", trozos::sinMemoria);
+        }
+        metricas.registrarIndicador("dogster_carteles_memoria_total", "Carteles servidos desde memoria", "counter",
+                carteles::aciertosMemoria);
+        metricas.registrarIndicador("dogster_carteles_disco_total", "Carteles leídos de la caché en disco", "counter",
+                carteles::aciertosDisco);
+        metricas.registrarIndicador("dogster_carteles_generados_total", "Carteles obtenidos del origen y reducidos",
+                "counter", carteles::generados);
+        metricas.registrarIndicador("dogster_carteles_fallos_total", "Carteles que no se pudieron obtener", "counter",
+                carteles::fallos);
+        metricas.registrarIndicador("dogster_progreso_entradas", "Posiciones de reproducción guardadas", "gauge",
+                progreso::entradas);
+        metricas.registrarIndicador("dogster_progreso_pendientes", "Posiciones aún no escritas en disco", "gauge",
+                progreso::pendientes);
+        metricas.registrarIndicador("dogster_progreso_volcados_total", "Escrituras con fsync del registro de progreso",
+                "counter", progreso::volcados);
+        if (compresion.activa()) {
+            // Las respuestas comprimidas van chunked y no suman en dogster_bytes_enviados: se cuentan aquí
+            metricas.registrarIndicador("dogster_compresion_respuestas_total", "Respuestas comprimidas con gzip o deflate",
+                    "counter", compresion::respuestas);
+            metricas.registrarIndicador("dogster_compresion_entrada_bytes_total", "Bytes de las respuestas antes de comprimir",
+                    "counter", compresion::bytesOriginales);
+            metricas.registrarIndicador("dogster_compresion_salida_bytes_total", "Bytes de las respuestas comprimidas",
+                    "counter", compresion::bytesComprimidos);
+        }
+        if (trafico.activo()) {
+            metricas.registrarIndicador("dogster_trafico_streams_limitados", "Streams sujetos a límites de ancho de banda",
+                    "gauge", trafico::activos);
+        }
+
+        if (accesos != null) {
+            metricas.registrarIndicador("dogster_accesos_escritos_total", "Líneas escritas en el registro de accesos",
+                    "counter", accesos::escritas);
+            metricas.registrarIndicador("dogster_accesos_descartados_total",
+                    "Líneas perdidas por tener lleno el anillo del registro de accesos", "counter", accesos::descartadas);
+        }
+
+        metricas.registrarIndicador("dogster_peticiones_en_curso", "Peticiones que están atendiendo los controladores",
+                "gauge", ciclo::enCurso);
+
+        // Interactivas (página, estáticos, /video...) y masivas (streams) con cupos separados: con los streams
+        // al máximo la interfaz sigue respondiendo y los streams de más reciben 503 + Retry-After
+        ControlAdmision admision = ControlAdmision.desdeConfiguracion(estrategia);
+        if (admision != null) {
+            for (ControlAdmision.Clase clase : ControlAdmision.Clase.values()) {
+                String nombre = clase.name().toLowerCase();
+                ControlAdmision.Cupo cupo = admision.cupo(clase);
+                metricas.registrarIndicador("dogster_admision_" + nombre + "_en_curso",
+                        "Peticiones " + nombre + " en curso", "gauge", cupo::enCurso);
+                metricas.registrarIndicador("dogster_admision_" + nombre + "_esperando",
+                        "Peticiones " + nombre + " esperando turno", "gauge", cupo::esperando);
+                metricas.registrarIndicador("dogster_admision_" + nombre + "_rechazadas_total",
+                        "Peticiones " + nombre + " rechazadas con 503", "counter", cupo::rechazadas);
+            }
+        }
+
+        // ========== MIDDLEWARES ===============================================================================================================
+        // Comunes a todas las rutas, en orden de fuera hacia dentro: métricas, registro de accesos, ciclo de vida
+        // (drenaje al apagar), admisión, compresión, CORS (responde el preflight) y métodos
+        if (accesos != null) {
+            servidor.usar(accesos);
+        }
+        servidor.usar(ciclo);
+        if (admision != null) {
+            servidor.usar(admision);
+        }
+        servidor.usar(compresion);
+        servidor.usar(Middlewares.cors("GET, PUT, POST, OPTIONS"));
+        servidor.usar(Middlewares.metodos(Map.of("/progress/{id}", new String[] {"GET", "PUT", "POST"}), "GET"));
 
         // ========== CONFIGURACIÓN DE ENDPOINTS (RUTAS) =====================================================================================
-        // El servidor crea los contextos "Endpoints" para Controlar las peticiones HTTP
-        // Cada createContext asocia una URL con un controlador específico
-  
-        servidor.createContext("/", new ControladorRaiz());
-        servidor.createContext("/static/", new ControladorArchivosEstaticos());
-        servidor.createContext("/video", new ControladorVideo());
-        servidor.createContext("/stream", new ControladorStream());          
-
-
-        // ========== CONFIGURACIÓN DE HILOS =================================================================================================
-        // Configura el servidor para usar un pool de hilos en caché según necesidad
-        // newCachedThreadPool() crea hilos dinámicamente cuando hay demanda
-        // y los elimina cuando no se usan (después de 60 segundos)
-        servidor.setExecutor(Executors.newFixedThreadPool(10)); // <---- Aquí se configura el executor de hilos
-        
+        // Cada ruta asocia un patrón de URL con un controlador: gana el literal, luego {parámetro} y por último el comodín *
+        ControladorStream stream = new ControladorStream(catalogo, biblioteca, canales, mp4, trozos, trafico, metricas);
+
+        servidor.crearContexto("/*", new ControladorRaiz(cacheEstaticos));
+        servidor.crearContexto("/static/*", new ControladorArchivosEstaticos(cacheEstaticos));
+        servidor.crearContexto("/video", new ControladorVideo(catalogo));
+        // Búsqueda aproximada sobre el índice de trigramas del catálogo (sin tildes, mayúsculas ni erratas)
+        ControladorBusqueda busqueda = new ControladorBusqueda(catalogo);
+        servidor.crearContexto("/search", busqueda);
+        servidor.crearContexto("/suggest", busqueda::sugerir);
+        servidor.crearRuta("/stream/{id}", stream);
+        servidor.crearRuta("/stream/{id}/keyframes", stream::fotogramas);
+        if (mp4 != null) {
+            // HLS fMP4 sin recodificar a partir del moov analizado (segmentos de -Ddogster.mp4.hls.segundos)
+            servidor.crearRuta("/hls/{id}/index.m3u8", stream::listaHls);
+            servidor.crearRuta("/hls/{id}/{segmento}", stream::recursoHls);
+        }
+        servidor.crearRuta("/poster/{id}", new ControladorPoster(catalogo, carteles));
+        ControladorProgreso posiciones = new ControladorProgreso(progreso);
+        servidor.crearRuta("/progress", posiciones);
+        servidor.crearRuta("/progress/{id}", posiciones::pelicula);
+        servidor.crearContexto("/metrics", new ControladorMetricas(metricas));
+
         // ========== INICIO DEL SERVIDOR ====================================================================================================
-        // Inicia el servidor HTTP en el puerto 8080
         // A partir de este momento el servidor acepta conexiones entrantes
-        servidor.start();
+        servidor.iniciar();
+        ciclo.instalarGancho();
+        biblioteca.programarReescaneo();
         
         // Mensaje informativo en consola indicando que el servidor está funcionando =========================================================
-        System.out.println("Servidor Dogster iniciado en http://192.168.1.135:8080/");
-        System.out.println("Sirviendo archivos estáticos desde /static/");
-        System.out.println("API de videos disponible en /video");
-        System.out.println("Streaming de videos en /stream");
-        System.out.println("Usando pool de hilos dinámico para máximo rendimiento");
+        System.out.println("Servidor Dogster iniciado en http://192.168.1.135:" + servidor.obtenerDireccion().getPort() + "/");
+        System.out.println("Sirviendo archivos estáticos desde /static/ (" + cacheEstaticos.tamano() + " en caché, "
+                + cacheEstaticos.mapeados() + " mapeados)");
+        System.out.println("API de videos disponible en /video?page=&size=&year=&q= (" + catalogo.actual().peliculas().size() + " películas)");
+        System.out.println("Streaming de videos en /stream/{id}" + (mp4 != null ? " y HLS en /hls/{id}/index.m3u8" : ""));
+        System.out.println("Carteles reducidos en /poster/{id}");
+        System.out.println("Progreso de reproducción en /progress (" + progreso.entradas() + " posiciones guardadas)");
+        System.out.println("Métricas en formato Prometheus en /metrics");
+        if (biblioteca.configurada()) {
+            System.out.println("Biblioteca: " + biblioteca.actual().tamano() + " vídeos en el índice guardado (reescaneando en segundo plano)");
+        }
+        System.out.println("Motor HTTP: " + motor + " | Estrategia de hilos: " + estrategia);
         System.out.println("Presiona Ctrl+C para detener el servidor");
+        return servidor;
     }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package kabadev.accesos;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Cola acotada sin cerrojos de muchos productores y un solo consumidor
+ *
+ * Cada hueco lleva un número de secuencia (esquema de D. Vyukov): el productor
+ * reserva una posición con un CAS sobre la cola, rellena el hueco y publica la
+ * secuencia; el consumidor lee el hueco cuando su secuencia indica que está
+ * lleno y lo devuelve con la secuencia de la siguiente vuelta. Los huecos se
+ * crean al principio y se reutilizan, así que publicar no reserva memoria
+ */
+final class AnilloAccesos {
+
+    /** Rellena el hueco reservado (en el hilo del productor) */
+    @FunctionalInterface
+    interface Relleno<T> {
+        void rellenar(EntradaAcceso entrada, T datos, long valor);
+    }
+
+    private final EntradaAcceso[] huecos;
+    private final AtomicLongArray secuencias;
+    private final int mascara;
+    private final AtomicLong cola = new AtomicLong();
+    /** Solo la escribe el consumidor; volatile para leer pendientes() desde otros hilos */
+    private volatile long cabeza;
+
+    /**
+     * @param capacidad Huecos del anillo (se redondea a potencia de dos)
+     */
+    AnilloAccesos(int capacidad) {
+        if (capacidad < 2) {
+            throw new IllegalArgumentException("La capacidad del anillo debe ser al menos 2: " + capacidad);
+        }
+        int tamano = Integer.highestOneBit(capacidad - 1) << 1;
+        huecos = new EntradaAcceso[tamano];
+        secuencias = new AtomicLongArray(tamano);
+        for (int i = 0; i < tamano; i++) {
+            huecos[i] = new EntradaAcceso();
+            secuencias.set(i, i);
+        }
+        mascara = tamano - 1;
+    }
+
+    int capacidad() {
+        return huecos.length;
+    }
+
+    /**
+     * Reserva un hueco, lo rellena y lo publica
+     * Con un relleno sin capturas (una referencia a método) no se crea ningún objeto
+     *
+     * @return false si el anillo está lleno
+     */
+    <T> boolean publicar(Relleno<T> relleno, T datos, long valor) {
+        long posicion = cola.get();
+        while (true) {
+            int indice = (int) posicion & mascara;
+            long diferencia = secuencias.get(indice) - posicion;
+            if (diferencia == 0) {
+                if (cola.compareAndSet(posicion, posicion + 1)) {
+                    relleno.rellenar(huecos[indice], datos, valor);
+                    secuencias.set(indice, posicion + 1);
+                    return true;
+                }
+                posicion = cola.get();
+            } else if (diferencia < 0) {
+                // El consumidor aún no liberó este hueco de la vuelta anterior
+                return false;
+            } else {
+                posicion = cola.get();
+            }
+        }
+    }
+
+    /**
+     * Entrega al consumidor las entradas publicadas, en orden (solo un hilo)
+     *
+     * @param maximo Entradas que se consumen como mucho
+     * @return Entradas consumidas
+     */
+    int consumir(Consumer<EntradaAcceso> consumidor, int maximo) {
+        long posicion = cabeza;
+        int consumidas = 0;
+        while (consumidas < maximo) {
+            int indice = (int) posicion & mascara;
+            if (secuencias.get(indice) != posicion + 1) {
+                break;
+            }
+            EntradaAcceso entrada = huecos[indice];
+            consumidor.accept(entrada);
+            entrada.limpiar();
+            secuencias.set(indice, posicion + huecos.length);
+            posicion++;
+            consumidas++;
+        }
+        cabeza = posicion;
+        return consumidas;
+    }
+
+    /**
+     * @return Entradas publicadas aún no consumidas (aproximado)
+     */
+    int pendientes() {
+        return (int) Math.max(0, cola.get() - cabeza);
+    }
+}
@@ -0,0 +1,86 @@
+package kabadev.accesos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Archivo que solo crece por el final y rota al llegar a un tamaño
+ *
+ * accesos.log → accesos.log.1 → accesos.log.2 ... hasta el número de copias;
+ * la más antigua se borra. Solo lo usa el hilo escritor
+ */
+final class ArchivoRotativo implements AutoCloseable {
+
+    private final Path archivo;
+    private final long maximoBytes;
+    private final int copias;
+    private FileChannel canal;
+    private long tamano;
+
+    /**
+     * @param archivo Archivo activo
+     * @param maximoBytes Tamaño a partir del cual se rota
+     * @param copias Archivos rotados que se conservan (0 = se trunca al rotar)
+     */
+    ArchivoRotativo(Path archivo, long maximoBytes, int copias) throws IOException {
+        if (maximoBytes < 1 || copias < 0) {
+            throw new IllegalArgumentException("Tamaño y copias del registro de accesos no válidos");
+        }
+        this.archivo = archivo.toAbsolutePath();
+        this.maximoBytes = maximoBytes;
+        this.copias = copias;
+        abrir();
+    }
+
+    /**
+     * Escribe el buffer completo (de position a limit), rotando antes si no cabe
+     */
+    void escribir(ByteBuffer datos) throws IOException {
+        if (tamano > 0 && tamano + datos.remaining() > maximoBytes) {
+            rotar();
+        }
+        while (datos.hasRemaining()) {
+            tamano += canal.write(datos);
+        }
+    }
+
+    private void rotar() throws IOException {
+        canal.close();
+        if (copias == 0) {
+            Files.delete(archivo);
+        } else {
+            Files.deleteIfExists(copia(copias));
+            for (int i = copias - 1; i >= 1; i--) {
+                if (Files.exists(copia(i))) {
+                    Files.move(copia(i), copia(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(archivo, copia(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        abrir();
+    }
+
+    private Path copia(int numero) {
+        return archivo.resolveSibling(archivo.getFileName() + "." + numero);
+    }
+
+    private void abrir() throws IOException {
+        Path carpeta = archivo.getParent();
+        if (carpeta != null) {
+            Files.createDirectories(carpeta);
+        }
+        canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        tamano = canal.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+}
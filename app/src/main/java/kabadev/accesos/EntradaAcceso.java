@@ -0,0 +1,71 @@
+package kabadev.accesos;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Hueco del anillo con los datos de una petición atendida
+ *
+ * Los huecos se crean una vez y se reutilizan: en el hilo de la petición solo
+ * se copian referencias y números, sin crear objetos. El texto se compone en
+ * el hilo escritor
+ */
+final class EntradaAcceso {
+
+    long fechaMs;
+    InetAddress cliente;
+    String metodo;
+    URI uri;
+    int codigo;
+    /** Content-Length de la respuesta, o -1 si no se conoce (chunked, comprimida) */
+    long bytes;
+    /** Cabecera Range de la petición, o null */
+    String rango;
+    long duracionNanos;
+
+    /**
+     * Copia los datos de la petición ya respondida
+     *
+     * @param duracionNanos Tiempo desde que empezó la cadena de middlewares
+     */
+    void rellenar(HttpExchange intercambio, long duracionNanos) {
+        fechaMs = System.currentTimeMillis();
+        InetSocketAddress remota = intercambio.getRemoteAddress();
+        cliente = remota == null ? null : remota.getAddress();
+        metodo = intercambio.getRequestMethod();
+        uri = intercambio.getRequestURI();
+        // -1 = el controlador falló antes de responder: el servidor contestará 500
+        codigo = intercambio.getResponseCode() < 0 ? 500 : intercambio.getResponseCode();
+        bytes = longitud(intercambio.getResponseHeaders().getFirst("Content-Length"));
+        rango = intercambio.getRequestHeaders().getFirst("Range");
+        this.duracionNanos = duracionNanos;
+    }
+
+    private static long longitud(String cabecera) {
+        if (cabecera == null) {
+            return -1;
+        }
+        long valor = 0;
+        for (int i = 0; i < cabecera.length(); i++) {
+            char c = cabecera.charAt(i);
+            if (c < '0' || c > '9' || valor > Long.MAX_VALUE / 10) {
+                return -1;
+            }
+            valor = valor * 10 + (c - '0');
+        }
+        return cabecera.isEmpty() ? -1 : valor;
+    }
+
+    /**
+     * Suelta las referencias para no retener peticiones ya escritas
+     */
+    void limpiar() {
+        cliente = null;
+        metodo = null;
+        uri = null;
+        rango = null;
+    }
+}
@@ -0,0 +1,357 @@
+package kabadev.accesos;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import kabadev.configuracion.Configuracion;
+import kabadev.servidor.IControladorHttp;
+import kabadev.servidor.Middleware;
+
+/**
+ * Registro de accesos asíncrono: una línea JSON por petición
+ *
+ * {"ts":"2026-10-16T22:14:05.123Z","client":"192.168.1.20","method":"GET",
+ *  "path":"/stream/7","status":206,"bytes":1048576,"range":"bytes=0-","ms":12.345}
+ *
+ * Como middleware, al terminar cada petición copia unos pocos campos a un
+ * hueco de un anillo sin cerrojos (AnilloAccesos) y sigue: el hilo de la
+ * petición no formatea texto, no crea objetos y no toca el disco. Un único hilo
+ * escritor vacía el anillo, compone las líneas en un ByteBuffer directo que se
+ * reutiliza y las escribe por lotes en un archivo que rota por tamaño
+ *
+ * Si el anillo se llena (disco lento) la política dogster.accesos.lleno decide:
+ * - descartar (por defecto): la línea se pierde y se cuenta en descartadas()
+ * - bloquear: la petición espera a que haya hueco (nunca se pierde una línea)
+ *
+ * "bytes" es el Content-Length de la respuesta (null en las chunked o comprimidas)
+ * y "ms" el tiempo desde que la petición entró en la cadena de middlewares
+ * hasta que el controlador terminó de enviar la respuesta
+ */
+public final class RegistroAccesos implements Middleware, AutoCloseable {
+
+    private static final String ARCHIVO_POR_DEFECTO = "dogster-accesos.log";
+    private static final int CAPACIDAD_POR_DEFECTO = 8192;
+    private static final long MAXIMO_POR_DEFECTO = 64L * 1024 * 1024;
+    private static final int COPIAS_POR_DEFECTO = 5;
+
+    /** Buffer de composición; el lote se escribe al llenarse o al vaciarse el anillo */
+    private static final int TAMANO_BUFFER = 256 * 1024;
+    /** Caracteres de ruta, query o Range que se registran como mucho */
+    private static final int MAXIMO_TEXTO = 2048;
+    /** Peor caso de una línea: textos con todos los caracteres escapados (6 bytes) y el resto de campos */
+    private static final int MAXIMA_LINEA = 3 * MAXIMO_TEXTO * 6 + 256;
+
+    private static final long ESPERA_ESCRITOR = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long ESPERA_PRODUCTOR = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final DateTimeFormatter SEGUNDOS = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss",
+            Locale.ROOT);
+    private static final byte[] HEXADECIMAL = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /** Relleno sin capturas: publicar no crea objetos */
+    private static final AnilloAccesos.Relleno<HttpExchange> RELLENO = EntradaAcceso::rellenar;
+
+    /** Qué hacer cuando el anillo está lleno */
+    public enum Politica {
+        DESCARTAR, BLOQUEAR
+    }
+
+    private final AnilloAccesos anillo;
+    private final ArchivoRotativo archivo;
+    private final Politica politica;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANO_BUFFER);
+    private final Consumer<EntradaAcceso> compositor = this::componer;
+    private final Thread escritor;
+    private final LongAdder escritas = new LongAdder();
+    private final LongAdder descartadas = new LongAdder();
+    private volatile boolean activo = true;
+
+    // Fecha del último segundo formateado (solo el hilo escritor)
+    private long segundoCacheado = Long.MIN_VALUE;
+    private final byte[] fechaCacheada = new byte[19];
+
+    /**
+     * @param archivo Archivo del registro (se rota a archivo.1, archivo.2...)
+     * @param capacidad Peticiones que caben en el anillo
+     * @param maximoBytes Tamaño al que se rota el archivo
+     * @param copias Archivos rotados que se conservan
+     * @param politica Qué hacer con el anillo lleno
+     * @throws IOException Si no se puede abrir el archivo
+     */
+    public RegistroAccesos(Path archivo, int capacidad, long maximoBytes, int copias, Politica politica)
+            throws IOException {
+        this.anillo = new AnilloAccesos(capacidad);
+        this.archivo = new ArchivoRotativo(archivo, maximoBytes, copias);
+        this.politica = politica;
+        this.escritor = new Thread(this::escribirEnBucle, "dogster-accesos");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Crea el registro con dogster.accesos.archivo, .capacidad, .maximo (bytes),
+     * .copias y .lleno (descartar | bloquear)
+     *
+     * @return El registro, o null con dogster.accesos.activo=false
+     */
+    public static RegistroAccesos desdeConfiguracion() throws IOException {
+        if (!Configuracion.booleano("accesos.activo", true)) {
+            return null;
+        }
+        String lleno = Configuracion.texto("accesos.lleno", "descartar");
+        Politica politica;
+        try {
+            politica = Politica.valueOf(lleno.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("dogster.accesos.lleno debe ser descartar o bloquear: " + lleno);
+        }
+        return new RegistroAccesos(Paths.get(Configuracion.texto("accesos.archivo", ARCHIVO_POR_DEFECTO)),
+                Configuracion.entero("accesos.capacidad", CAPACIDAD_POR_DEFECTO),
+                Configuracion.largo("accesos.maximo", MAXIMO_POR_DEFECTO),
+                Configuracion.entero("accesos.copias", COPIAS_POR_DEFECTO),
+                politica);
+    }
+
+    // ========== HILO DE LA PETICIÓN ==========
+
+    @Override
+    public IControladorHttp envolver(String patron, IControladorHttp siguiente) {
+        return intercambio -> {
+            long inicio = System.nanoTime();
+            try {
+                siguiente.controlar(intercambio);
+            } finally {
+                registrar(intercambio, System.nanoTime() - inicio);
+            }
+        };
+    }
+
+    /**
+     * Encola la petición ya respondida
+     *
+     * @return false si se descartó por tener el anillo lleno (o el registro cerrado)
+     */
+    boolean registrar(HttpExchange intercambio, long duracionNanos) {
+        while (!anillo.publicar(RELLENO, intercambio, duracionNanos)) {
+            if (politica == Politica.DESCARTAR || !activo) {
+                descartadas.increment();
+                return false;
+            }
+            LockSupport.unpark(escritor);
+            LockSupport.parkNanos(ESPERA_PRODUCTOR);
+        }
+        return true;
+    }
+
+    // ========== HILO ESCRITOR ==========
+
+    private void escribirEnBucle() {
+        while (true) {
+            boolean seguir = activo;
+            int consumidas = anillo.consumir(compositor, 1024);
+            if (consumidas > 0) {
+                escritas.add(consumidas);
+                continue;
+            }
+            // Anillo vacío: el lote acumulado sale en una sola escritura
+            volcar();
+            if (!seguir) {
+                break;
+            }
+            LockSupport.parkNanos(ESPERA_ESCRITOR);
+        }
+    }
+
+    private void volcar() {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            archivo.escribir(buffer);
+        } catch (IOException e) {
+            // Un registro de accesos que falla no debe tirar el servidor: el lote se pierde
+            System.out.println("Error al escribir el registro de accesos: " + e.getMessage());
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Añade la línea de una entrada al buffer (vuelca antes si no cabe)
+     */
+    private void componer(EntradaAcceso entrada) {
+        if (buffer.remaining() < MAXIMA_LINEA) {
+            volcar();
+        }
+        poner("{\"ts\":\"");
+        ponerFecha(entrada.fechaMs);
+        poner("\",\"client\":");
+        InetAddress cliente = entrada.cliente;
+        if (cliente == null) {
+            poner("null");
+        } else {
+            buffer.put((byte) '"');
+            poner(cliente.getHostAddress());
+            buffer.put((byte) '"');
+        }
+        poner(",\"method\":");
+        ponerTexto(entrada.metodo);
+        poner(",\"path\":\"");
+        URI uri = entrada.uri;
+        if (uri != null) {
+            ponerEscapado(uri.getRawPath());
+            if (uri.getRawQuery() != null) {
+                buffer.put((byte) '?');
+                ponerEscapado(uri.getRawQuery());
+            }
+        }
+        poner("\",\"status\":");
+        ponerNumero(entrada.codigo);
+        poner(",\"bytes\":");
+        if (entrada.bytes < 0) {
+            poner("null");
+        } else {
+            ponerNumero(entrada.bytes);
+        }
+        poner(",\"range\":");
+        ponerTexto(entrada.rango);
+        poner(",\"ms\":");
+        long micros = entrada.duracionNanos / 1000;
+        ponerNumero(micros / 1000);
+        buffer.put((byte) '.');
+        long resto = micros % 1000;
+        if (resto < 100) {
+            buffer.put((byte) '0');
+        }
+        if (resto < 10) {
+            buffer.put((byte) '0');
+        }
+        ponerNumero(resto);
+        poner("}\n");
+    }
+
+    /**
+     * "2026-10-16T22:14:05.123Z"; la parte de los segundos se formatea una vez por segundo
+     */
+    private void ponerFecha(long fechaMs) {
+        long segundo = Math.floorDiv(fechaMs, 1000);
+        if (segundo != segundoCacheado) {
+            String texto = SEGUNDOS.format(LocalDateTime.ofEpochSecond(segundo, 0, ZoneOffset.UTC));
+            byte[] bytes = texto.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(bytes, 0, fechaCacheada, 0, Math.min(bytes.length, fechaCacheada.length));
+            segundoCacheado = segundo;
+        }
+        buffer.put(fechaCacheada);
+        buffer.put((byte) '.');
+        long milis = Math.floorMod(fechaMs, 1000);
+        buffer.put((byte) ('0' + milis / 100)).put((byte) ('0' + milis / 10 % 10)).put((byte) ('0' + milis % 10));
+        buffer.put((byte) 'Z');
+    }
+
+    /**
+     * Texto ASCII fijo (claves y literales del formato)
+     */
+    private void poner(String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            buffer.put((byte) texto.charAt(i));
+        }
+    }
+
+    /**
+     * Cadena JSON entre comillas, o null
+     */
+    private void ponerTexto(String texto) {
+        if (texto == null) {
+            poner("null");
+            return;
+        }
+        buffer.put((byte) '"');
+        ponerEscapado(texto);
+        buffer.put((byte) '"');
+    }
+
+    /**
+     * Contenido de una cadena JSON: comillas, barras y controles escapados;
+     * lo que no es ASCII sale como ? (la ruta y la query llegan sin decodificar)
+     */
+    private void ponerEscapado(String texto) {
+        int longitud = Math.min(texto.length(), MAXIMO_TEXTO);
+        for (int i = 0; i < longitud; i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.put((byte) '\\').put((byte) c);
+            } else if (c < 0x20) {
+                buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                        .put(HEXADECIMAL[c >> 4]).put(HEXADECIMAL[c & 0xF]);
+            } else if (c < 0x7F) {
+                buffer.put((byte) c);
+            } else {
+                buffer.put((byte) '?');
+            }
+        }
+    }
+
+    private void ponerNumero(long numero) {
+        if (numero < 0) {
+            buffer.put((byte) '-');
+            numero = -numero;
+        }
+        if (numero >= 10) {
+            ponerNumero(numero / 10);
+        }
+        buffer.put((byte) ('0' + numero % 10));
+    }
+
+    // ========== CIERRE Y MÉTRICAS ==========
+
+    /**
+     * Escribe lo que quede en el anillo y cierra el archivo
+     */
+    @Override
+    public void close() throws IOException {
+        activo = false;
+        LockSupport.unpark(escritor);
+        try {
+            escritor.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        archivo.close();
+    }
+
+    /**
+     * @return Líneas escritas desde el arranque
+     */
+    public long escritas() {
+        return escritas.sum();
+    }
+
+    /**
+     * @return Líneas perdidas por tener el anillo lleno
+     */
+    public long descartadas() {
+        return descartadas.sum();
+    }
+
+    /**
+     * @return Peticiones en el anillo a la espera del escritor
+     */
+    public int pendientes() {
+        return anillo.pendientes();
+    }
+}
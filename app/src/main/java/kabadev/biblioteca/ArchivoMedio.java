@@ -0,0 +1,21 @@
+package kabadev.biblioteca;
+
+import java.nio.file.Path;
+
+/**
+ * Archivo de vídeo encontrado al escanear la biblioteca
+ *
+ * @param ruta Ruta absoluta y normalizada del archivo
+ * @param tamano Tamaño en bytes
+ * @param modificacion Fecha de última modificación en milisegundos
+ * @param huella Huella del contenido (muestras del principio, centro y final)
+ */
+public record ArchivoMedio(Path ruta, long tamano, long modificacion, long huella) {
+
+    /**
+     * @return Huella en hexadecimal, útil como ETag estable entre reinicios
+     */
+    public String huellaHex() {
+        return Long.toHexString(huella);
+    }
+}
@@ -0,0 +1,171 @@
+package kabadev.biblioteca;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import kabadev.catalogo.Pelicula;
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Biblioteca de vídeos en disco
+ *
+ * Al arrancar lee el índice guardado (milisegundos) y lo publica; el escaneo
+ * incremental contra las carpetas reales se hace después en segundo plano y
+ * se repite cada cierto tiempo. Como con el catálogo, cada índice nuevo se
+ * publica completo con un set sobre la AtomicReference
+ *
+ * Configuración:
+ * - dogster.biblioteca: carpetas raíz separadas por el separador de rutas del
+ *   sistema (":" en Linux, ";" en Windows)
+ * - dogster.biblioteca.indice: archivo del índice (por defecto dogster-biblioteca.idx)
+ * - dogster.biblioteca.reescaneo: segundos entre escaneos (por defecto 300, 0 = nunca)
+ */
+public final class BibliotecaMedios implements AutoCloseable {
+
+    private static final String INDICE_POR_DEFECTO = "dogster-biblioteca.idx";
+    private static final int REESCANEO_POR_DEFECTO = 300;
+
+    private final List<Path> raices;
+    private final Path archivoIndice;
+    private final AtomicReference<IndiceBiblioteca> actual;
+    private final ForkJoinPool pool;
+    private volatile ScheduledExecutorService programador;
+
+    BibliotecaMedios(List<Path> raices, Path archivoIndice, IndiceBiblioteca inicial) {
+        this.raices = List.copyOf(raices);
+        this.archivoIndice = archivoIndice;
+        this.actual = new AtomicReference<>(inicial);
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea la biblioteca según la configuración y carga el índice guardado
+     * Sin dogster.biblioteca la biblioteca queda vacía y no se escanea nada
+     *
+     * @return Biblioteca con el último índice guardado (o vacía)
+     */
+    public static BibliotecaMedios desdeConfiguracion() {
+        List<Path> raices = new ArrayList<>();
+        String configuradas = Configuracion.texto("biblioteca", null);
+        if (configuradas != null) {
+            for (String raiz : configuradas.split(File.pathSeparator)) {
+                if (!raiz.isBlank()) {
+                    raices.add(Paths.get(raiz.trim()).toAbsolutePath().normalize());
+                }
+            }
+        }
+        Path archivoIndice = Paths.get(Configuracion.texto("biblioteca.indice", INDICE_POR_DEFECTO));
+
+        IndiceBiblioteca inicial = IndiceBiblioteca.VACIO;
+        if (!raices.isEmpty()) {
+            try {
+                inicial = IndiceBiblioteca.leer(archivoIndice);
+            } catch (NoSuchFileException e) {
+                // Primer arranque: el escaneo completo creará el índice
+            } catch (IOException e) {
+                System.err.println("Índice de biblioteca no válido, se volverá a escanear: " + e.getMessage());
+            }
+        }
+        return new BibliotecaMedios(raices, archivoIndice, inicial);
+    }
+
+    /**
+     * @return Índice publicado actualmente
+     */
+    public IndiceBiblioteca actual() {
+        return actual.get();
+    }
+
+    /**
+     * @return true si hay carpetas raíz configuradas
+     */
+    public boolean configurada() {
+        return !raices.isEmpty();
+    }
+
+    /**
+     * @return El vídeo de la película según el índice, o null si no está
+     */
+    public ArchivoMedio resolver(Pelicula pelicula) {
+        return actual().resolver(pelicula.videoUrl());
+    }
+
+    // ========== ESCANEO ==========
+
+    /**
+     * Escanea las carpetas reutilizando lo que no cambió, publica el índice
+     * nuevo y lo guarda en disco
+     *
+     * @return Estadísticas del escaneo
+     */
+    public synchronized EscanerBiblioteca.Resultado reescanear() {
+        long inicio = System.nanoTime();
+        EscanerBiblioteca.Resultado resultado = EscanerBiblioteca.escanear(raices, actual.get(), pool);
+        actual.set(resultado.indice());
+
+        try {
+            resultado.indice().escribir(archivoIndice);
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar el índice de la biblioteca: " + e.getMessage());
+        }
+
+        System.out.println("Biblioteca escaneada en " + (System.nanoTime() - inicio) / 1_000_000 + " ms: "
+                + resultado.indice().tamano() + " vídeos, " + resultado.carpetasListadas() + " carpetas listadas, "
+                + resultado.carpetasReutilizadas() + " sin cambios, " + resultado.huellasCalculadas()
+                + " huellas calculadas");
+        return resultado;
+    }
+
+    /**
+     * Lanza un escaneo inmediato en segundo plano y lo repite según
+     * dogster.biblioteca.reescaneo
+     */
+    public synchronized void programarReescaneo() {
+        if (raices.isEmpty() || programador != null) {
+            return;
+        }
+
+        int segundos = Configuracion.entero("biblioteca.reescaneo", REESCANEO_POR_DEFECTO);
+        programador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "dogster-biblioteca");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+
+        Runnable escaneo = () -> {
+            try {
+                reescanear();
+            } catch (RuntimeException e) {
+                System.err.println("Error al escanear la biblioteca: " + e.getMessage());
+            }
+        };
+        if (segundos > 0) {
+            programador.scheduleWithFixedDelay(escaneo, 0, segundos, TimeUnit.SECONDS);
+        } else {
+            programador.execute(escaneo);
+        }
+    }
+
+    /**
+     * Detiene los escaneos programados (el índice publicado sigue disponible)
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService programado = programador;
+        programador = null;
+        if (programado != null) {
+            programado.shutdownNow();
+        }
+        pool.shutdownNow();
+    }
+}
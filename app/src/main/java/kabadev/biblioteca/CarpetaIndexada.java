@@ -0,0 +1,22 @@
+package kabadev.biblioteca;
+
+import java.util.List;
+
+/**
+ * Contenido de una carpeta en el momento del escaneo
+ *
+ * La fecha de modificación de la carpeta cambia cuando se añade, borra o
+ * renombra algo dentro de ella; si sigue igual en el siguiente escaneo se
+ * reutilizan sus archivos y su lista de subcarpetas sin volver a listarla
+ *
+ * @param modificacion Fecha de modificación de la carpeta en milisegundos
+ * @param subcarpetas Nombres de las subcarpetas directas
+ * @param archivos Vídeos que contiene directamente (no los de subcarpetas)
+ */
+record CarpetaIndexada(long modificacion, List<String> subcarpetas, List<ArchivoMedio> archivos) {
+
+    CarpetaIndexada {
+        subcarpetas = List.copyOf(subcarpetas);
+        archivos = List.copyOf(archivos);
+    }
+}
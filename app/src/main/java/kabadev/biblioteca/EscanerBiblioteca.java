@@ -0,0 +1,280 @@
+package kabadev.biblioteca;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Escáner en paralelo de las carpetas de la biblioteca
+ *
+ * Cada carpeta es una tarea fork/join que lanza una subtarea por subcarpeta,
+ * así los discos con muchas carpetas se recorren con todos los núcleos.
+ *
+ * Escaneo incremental: si una carpeta tiene la misma fecha de modificación que
+ * en el índice anterior no se vuelve a listar; se reutilizan sus vídeos y su
+ * lista de subcarpetas y solo se baja a estas para comprobar sus fechas. En una
+ * carpeta que cambió solo se recalcula la huella de los vídeos cuyo tamaño o
+ * fecha no coinciden con los del índice anterior.
+ *
+ * Nota: sobrescribir un vídeo sin renombrarlo no cambia la fecha de su carpeta;
+ * para recogerlo hay que escanear sin índice anterior
+ */
+public final class EscanerBiblioteca {
+
+    /** Bytes leídos en cada una de las tres muestras de la huella */
+    static final int MUESTRA = 64 * 1024;
+
+    private EscanerBiblioteca() {
+    }
+
+    /**
+     * Resultado de un escaneo
+     *
+     * @param indice Índice nuevo
+     * @param carpetasListadas Carpetas que se volvieron a listar
+     * @param carpetasReutilizadas Carpetas sin cambios tomadas del índice anterior
+     * @param huellasCalculadas Vídeos cuyo contenido se leyó para calcular la huella
+     */
+    public record Resultado(IndiceBiblioteca indice, int carpetasListadas, int carpetasReutilizadas,
+            int huellasCalculadas) {
+    }
+
+    /**
+     * Escanea las raíces de la biblioteca
+     *
+     * @param raices Carpetas raíz configuradas (las que no existen se ignoran)
+     * @param anterior Índice del escaneo previo (IndiceBiblioteca.VACIO para escanear todo)
+     * @param pool Pool fork/join donde se ejecutan las tareas
+     * @return Índice nuevo y estadísticas del escaneo
+     */
+    public static Resultado escanear(List<Path> raices, IndiceBiblioteca anterior, ForkJoinPool pool) {
+        Escaneo escaneo = new Escaneo(anterior);
+
+        List<TareaCarpeta> tareas = new ArrayList<>();
+        for (Path raiz : raices) {
+            Path absoluta = raiz.toAbsolutePath().normalize();
+            try {
+                BasicFileAttributes atributos = Files.readAttributes(absoluta, BasicFileAttributes.class);
+                if (atributos.isDirectory()) {
+                    tareas.add(new TareaCarpeta(absoluta, atributos.lastModifiedTime().toMillis(), escaneo));
+                } else {
+                    System.err.println("La raíz de la biblioteca no es una carpeta: " + absoluta);
+                }
+            } catch (IOException e) {
+                System.err.println("No se puede leer la raíz de la biblioteca " + absoluta + ": " + e.getMessage());
+            }
+        }
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tareas);
+            }
+        });
+
+        return new Resultado(new IndiceBiblioteca(escaneo.carpetas), escaneo.listadas.get(),
+                escaneo.reutilizadas.get(), escaneo.huellas.get());
+    }
+
+    /**
+     * @return true si el nombre tiene extensión .mp4 (sin distinguir mayúsculas)
+     */
+    static boolean esVideo(Path archivo) {
+        return archivo.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".mp4");
+    }
+
+    /**
+     * Huella del contenido: SHA-256 del tamaño y de tres muestras (principio,
+     * centro y final) truncado a 64 bits. Detecta sustituciones del archivo sin
+     * leer gigas de vídeo
+     *
+     * @throws IOException Si no se puede leer el archivo
+     */
+    static long calcularHuella(Path archivo, long tamano) throws IOException {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(MUESTRA);
+        buffer.putLong(tamano).flip();
+        sha.update(buffer);
+
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            if (tamano <= 3L * MUESTRA) {
+                muestra(canal, 0, tamano, buffer, sha);
+            } else {
+                muestra(canal, 0, MUESTRA, buffer, sha);
+                muestra(canal, tamano / 2 - MUESTRA / 2, MUESTRA, buffer, sha);
+                muestra(canal, tamano - MUESTRA, MUESTRA, buffer, sha);
+            }
+        }
+
+        return ByteBuffer.wrap(sha.digest()).getLong();
+    }
+
+    /**
+     * Añade al hash los bytes [posicion, posicion + longitud) del archivo
+     */
+    private static void muestra(FileChannel canal, long posicion, long longitud, ByteBuffer buffer,
+            MessageDigest sha) throws IOException {
+        long leidos = 0;
+        while (leidos < longitud) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), longitud - leidos));
+            int n = canal.read(buffer, posicion + leidos);
+            if (n < 0) {
+                break;
+            }
+            buffer.flip();
+            sha.update(buffer);
+            leidos += n;
+        }
+    }
+
+    // ========== TAREAS FORK/JOIN ==========
+
+    /**
+     * Estado compartido por todas las tareas de un escaneo
+     */
+    private static final class Escaneo {
+        final IndiceBiblioteca anterior;
+        final Map<Path, CarpetaIndexada> carpetas = new ConcurrentHashMap<>();
+        final AtomicInteger listadas = new AtomicInteger();
+        final AtomicInteger reutilizadas = new AtomicInteger();
+        final AtomicInteger huellas = new AtomicInteger();
+
+        Escaneo(IndiceBiblioteca anterior) {
+            this.anterior = anterior;
+        }
+    }
+
+    /**
+     * Procesa una carpeta y lanza en paralelo sus subcarpetas
+     */
+    private static final class TareaCarpeta extends RecursiveAction {
+
+        // Las tareas nunca se serializan: solo viven dentro del ForkJoinPool del escaneo
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path carpeta;
+        private final transient long modificacion;
+        private final transient Escaneo escaneo;
+
+        TareaCarpeta(Path carpeta, long modificacion, Escaneo escaneo) {
+            this.carpeta = carpeta;
+            this.modificacion = modificacion;
+            this.escaneo = escaneo;
+        }
+
+        @Override
+        protected void compute() {
+            CarpetaIndexada previa = escaneo.anterior.carpetas().get(carpeta);
+            CarpetaIndexada actual;
+
+            if (previa != null && previa.modificacion() == modificacion) {
+                escaneo.reutilizadas.incrementAndGet();
+                actual = previa;
+            } else {
+                escaneo.listadas.incrementAndGet();
+                try {
+                    actual = listar();
+                } catch (NoSuchFileException e) {
+                    return;
+                } catch (IOException e) {
+                    // Carpeta ilegible (permisos, disco desconectado): se conserva lo que había
+                    System.err.println("No se puede listar " + carpeta + ": " + e.getMessage());
+                    if (previa == null) {
+                        return;
+                    }
+                    actual = previa;
+                }
+            }
+            escaneo.carpetas.put(carpeta, actual);
+
+            List<TareaCarpeta> subtareas = new ArrayList<>(actual.subcarpetas().size());
+            for (String nombre : actual.subcarpetas()) {
+                Path subcarpeta = carpeta.resolve(nombre);
+                try {
+                    BasicFileAttributes atributos = Files.readAttributes(subcarpeta, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (atributos.isDirectory()) {
+                        subtareas.add(new TareaCarpeta(subcarpeta, atributos.lastModifiedTime().toMillis(),
+                                escaneo));
+                    }
+                } catch (IOException e) {
+                    // Subcarpeta borrada desde el último escaneo
+                }
+            }
+            invokeAll(subtareas);
+        }
+
+        /**
+         * Lista la carpeta: anota las subcarpetas y registra los vídeos
+         * Los enlaces simbólicos a carpetas no se siguen para no entrar en ciclos
+         */
+        private CarpetaIndexada listar() throws IOException {
+            List<String> subcarpetas = new ArrayList<>();
+            List<ArchivoMedio> archivos = new ArrayList<>();
+
+            try (DirectoryStream<Path> contenido = Files.newDirectoryStream(carpeta)) {
+                for (Path entrada : contenido) {
+                    BasicFileAttributes atributos;
+                    try {
+                        atributos = Files.readAttributes(entrada, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+                        if (atributos.isDirectory()) {
+                            subcarpetas.add(entrada.getFileName().toString());
+                            continue;
+                        }
+                        if (!esVideo(entrada)) {
+                            continue;
+                        }
+                        if (atributos.isSymbolicLink()) {
+                            atributos = Files.readAttributes(entrada, BasicFileAttributes.class);
+                        }
+                        if (atributos.isRegularFile()) {
+                            archivos.add(registrar(entrada, atributos));
+                        }
+                    } catch (IOException e) {
+                        System.err.println("No se puede leer " + entrada + ": " + e.getMessage());
+                    }
+                }
+            }
+            return new CarpetaIndexada(modificacion, subcarpetas, archivos);
+        }
+
+        /**
+         * Reutiliza la huella del índice anterior si el tamaño y la fecha coinciden
+         */
+        private ArchivoMedio registrar(Path archivo, BasicFileAttributes atributos) throws IOException {
+            long tamano = atributos.size();
+            long fecha = atributos.lastModifiedTime().toMillis();
+
+            ArchivoMedio previo = escaneo.anterior.buscarRuta(archivo);
+            if (previo != null && previo.tamano() == tamano && previo.modificacion() == fecha) {
+                return previo;
+            }
+            escaneo.huellas.incrementAndGet();
+            return new ArchivoMedio(archivo, tamano, fecha, calcularHuella(archivo, tamano));
+        }
+    }
+}
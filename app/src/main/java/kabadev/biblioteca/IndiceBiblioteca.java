@@ -0,0 +1,224 @@
+package kabadev.biblioteca;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Índice inmutable de los vídeos de la biblioteca
+ *
+ * Guarda lo encontrado por carpeta (para reescanear solo lo que cambió) y
+ * dos accesos directos: por ruta absoluta y por nombre de archivo. El nombre
+ * permite localizar las películas del catálogo aunque su videoUrl apunte a
+ * otra máquina (D:\Videos\... escrito a mano)
+ *
+ * Formato en disco (DataOutputStream, big-endian):
+ * MAGIA, VERSION, nº carpetas y por cada carpeta: ruta, fecha, nombres de sus
+ * subcarpetas, nº archivos y por cada archivo: nombre, tamaño, fecha y huella
+ */
+public final class IndiceBiblioteca {
+
+    /** "DGIX" */
+    private static final int MAGIA = 0x44474958;
+    private static final int VERSION = 1;
+
+    /** Índice sin carpetas (primer arranque o sin biblioteca configurada) */
+    public static final IndiceBiblioteca VACIO = new IndiceBiblioteca(Map.of());
+
+    private final Map<Path, CarpetaIndexada> carpetas;
+    private final Map<Path, ArchivoMedio> porRuta;
+    private final Map<String, List<ArchivoMedio>> porNombre;
+
+    IndiceBiblioteca(Map<Path, CarpetaIndexada> carpetas) {
+        this.carpetas = Map.copyOf(carpetas);
+
+        Map<Path, ArchivoMedio> rutas = new HashMap<>();
+        Map<String, List<ArchivoMedio>> nombres = new HashMap<>();
+        for (CarpetaIndexada carpeta : this.carpetas.values()) {
+            for (ArchivoMedio archivo : carpeta.archivos()) {
+                rutas.put(archivo.ruta(), archivo);
+                nombres.computeIfAbsent(clave(archivo.ruta().getFileName().toString()), k -> new ArrayList<>())
+                        .add(archivo);
+            }
+        }
+        this.porRuta = Map.copyOf(rutas);
+        nombres.replaceAll((nombre, lista) -> List.copyOf(lista));
+        this.porNombre = Map.copyOf(nombres);
+    }
+
+    // ========== CONSULTAS ==========
+
+    /**
+     * @return Número de vídeos indexados
+     */
+    public int tamano() {
+        return porRuta.size();
+    }
+
+    /**
+     * @return Todos los vídeos indexados (sin orden definido)
+     */
+    public Collection<ArchivoMedio> archivos() {
+        return porRuta.values();
+    }
+
+    /**
+     * @return El vídeo con esa ruta, o null si no está en el índice
+     */
+    public ArchivoMedio buscarRuta(Path ruta) {
+        return porRuta.get(ruta.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Localiza el vídeo de una entrada del catálogo
+     *
+     * Primero prueba la ruta exacta; si no está (ruta de otra máquina o de
+     * Windows) busca por nombre de archivo sin distinguir mayúsculas. Si hay
+     * varios con el mismo nombre se prefiere el que está en una carpeta con
+     * el mismo nombre que la de videoUrl
+     *
+     * @param videoUrl Ruta tal y como aparece en el catálogo
+     * @return Vídeo indexado, o null si no se encuentra
+     */
+    public ArchivoMedio resolver(String videoUrl) {
+        if (videoUrl == null || videoUrl.isBlank()) {
+            return null;
+        }
+
+        try {
+            Path ruta = Paths.get(videoUrl);
+            if (ruta.isAbsolute()) {
+                ArchivoMedio exacto = porRuta.get(ruta.normalize());
+                if (exacto != null) {
+                    return exacto;
+                }
+            }
+        } catch (InvalidPathException e) {
+            // Ruta de otro sistema operativo: se resuelve por nombre
+        }
+
+        String[] partes = videoUrl.split("[/\\\\]+");
+        List<ArchivoMedio> candidatos = porNombre.get(clave(partes[partes.length - 1]));
+        if (candidatos == null) {
+            return null;
+        }
+        if (candidatos.size() > 1 && partes.length > 1) {
+            String carpeta = clave(partes[partes.length - 2]);
+            for (ArchivoMedio candidato : candidatos) {
+                Path padre = candidato.ruta().getParent();
+                if (padre != null && padre.getFileName() != null
+                        && clave(padre.getFileName().toString()).equals(carpeta)) {
+                    return candidato;
+                }
+            }
+        }
+        return candidatos.get(0);
+    }
+
+    /**
+     * Carpetas indexadas con su fecha y sus vídeos (para el escaneo incremental)
+     */
+    Map<Path, CarpetaIndexada> carpetas() {
+        return carpetas;
+    }
+
+    private static String clave(String nombre) {
+        return nombre.toLowerCase(Locale.ROOT);
+    }
+
+    // ========== PERSISTENCIA ==========
+
+    /**
+     * Lee un índice guardado con {@link #escribir(Path)}
+     *
+     * @param archivo Archivo del índice
+     * @return Índice leído
+     * @throws IOException Si el archivo no existe, está truncado o es de otra versión
+     */
+    public static IndiceBiblioteca leer(Path archivo) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(archivo), 64 * 1024))) {
+
+            if (entrada.readInt() != MAGIA || entrada.readInt() != VERSION) {
+                throw new IOException("Formato de índice no reconocido: " + archivo);
+            }
+
+            int numeroCarpetas = entrada.readInt();
+            Map<Path, CarpetaIndexada> carpetas = new HashMap<>(numeroCarpetas * 2);
+            for (int i = 0; i < numeroCarpetas; i++) {
+                Path carpeta = Paths.get(entrada.readUTF());
+                long modificacion = entrada.readLong();
+
+                int numeroSubcarpetas = entrada.readInt();
+                List<String> subcarpetas = new ArrayList<>(numeroSubcarpetas);
+                for (int j = 0; j < numeroSubcarpetas; j++) {
+                    subcarpetas.add(entrada.readUTF());
+                }
+
+                int numeroArchivos = entrada.readInt();
+                List<ArchivoMedio> archivos = new ArrayList<>(numeroArchivos);
+                for (int j = 0; j < numeroArchivos; j++) {
+                    archivos.add(new ArchivoMedio(carpeta.resolve(entrada.readUTF()),
+                            entrada.readLong(), entrada.readLong(), entrada.readLong()));
+                }
+                carpetas.put(carpeta, new CarpetaIndexada(modificacion, subcarpetas, archivos));
+            }
+            return new IndiceBiblioteca(carpetas);
+        }
+    }
+
+    /**
+     * Guarda el índice en disco
+     * Se escribe en un temporal y se renombra, así un corte a mitad no deja un índice roto
+     *
+     * @param archivo Archivo destino
+     * @throws IOException Si falla la escritura
+     */
+    public void escribir(Path archivo) throws IOException {
+        Path absoluto = archivo.toAbsolutePath();
+        Path temporal = absoluto.resolveSibling(absoluto.getFileName() + ".tmp");
+
+        try (DataOutputStream salida = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporal), 64 * 1024))) {
+
+            salida.writeInt(MAGIA);
+            salida.writeInt(VERSION);
+            salida.writeInt(carpetas.size());
+            for (Map.Entry<Path, CarpetaIndexada> entrada : carpetas.entrySet()) {
+                salida.writeUTF(entrada.getKey().toString());
+                salida.writeLong(entrada.getValue().modificacion());
+                salida.writeInt(entrada.getValue().subcarpetas().size());
+                for (String subcarpeta : entrada.getValue().subcarpetas()) {
+                    salida.writeUTF(subcarpeta);
+                }
+                salida.writeInt(entrada.getValue().archivos().size());
+                for (ArchivoMedio medio : entrada.getValue().archivos()) {
+                    salida.writeUTF(medio.ruta().getFileName().toString());
+                    salida.writeLong(medio.tamano());
+                    salida.writeLong(medio.modificacion());
+                    salida.writeLong(medio.huella());
+                }
+            }
+        }
+
+        try {
+            Files.move(temporal, absoluto, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, absoluto, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
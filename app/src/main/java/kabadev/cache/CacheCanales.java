@@ -0,0 +1,208 @@
+package kabadev.cache;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Caché acotada de archivos de vídeo abiertos
+ *
+ * Un reproductor hace decenas de peticiones de rango por minuto sobre el mismo
+ * archivo; con la caché solo la primera paga open + stat y las demás reutilizan
+ * el FileChannel y los metadatos ya calculados.
+ *
+ * - Cada uso se cuenta (adquirir / close) y un canal en uso nunca se cierra
+ * - Los canales sin uso durante dogster.canales.inactividad segundos (60) se cierran
+ * - Si hay más de dogster.canales.maximo (64) se cierran primero los inactivos
+ *   más antiguos; los que están en uso pueden superar el límite temporalmente
+ * - Cada pocos segundos se comprueba en disco el tamaño y la fecha: si el
+ *   archivo cambió se retira el canal viejo y se abre el nuevo
+ */
+public final class CacheCanales implements AutoCloseable {
+
+    private static final int MAXIMO_POR_DEFECTO = 64;
+    private static final int INACTIVIDAD_POR_DEFECTO = 60;
+
+    /** Intervalo mínimo entre comprobaciones en disco del mismo archivo */
+    private static final long COMPROBACION_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Map<Path, CanalAbierto> canales = new ConcurrentHashMap<>();
+    private final int maximo;
+    private final long inactividadNanos;
+    private final ScheduledExecutorService limpiador;
+
+    /**
+     * @param maximo Número de archivos abiertos a partir del cual se cierran los inactivos
+     * @param inactividadSegundos Segundos sin uso tras los que se cierra un archivo
+     */
+    public CacheCanales(int maximo, int inactividadSegundos) {
+        if (maximo < 1 || inactividadSegundos < 1) {
+            throw new IllegalArgumentException("Máximo e inactividad de la caché de canales deben ser positivos");
+        }
+        this.maximo = maximo;
+        this.inactividadNanos = TimeUnit.SECONDS.toNanos(inactividadSegundos);
+
+        this.limpiador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "dogster-canales");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        long periodo = Math.max(1, inactividadSegundos / 2);
+        limpiador.scheduleWithFixedDelay(this::cerrarInactivos, periodo, periodo, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Crea la caché con dogster.canales.maximo y dogster.canales.inactividad
+     */
+    public static CacheCanales desdeConfiguracion() {
+        return new CacheCanales(Configuracion.entero("canales.maximo", MAXIMO_POR_DEFECTO),
+                Configuracion.entero("canales.inactividad", INACTIVIDAD_POR_DEFECTO));
+    }
+
+    /**
+     * Obtiene el archivo abierto, abriéndolo si no está en la caché
+     * Hay que devolverlo con close() (try-with-resources) al terminar la respuesta
+     *
+     * @param ruta Archivo a servir
+     * @return Canal compartido con sus metadatos
+     * @throws NoSuchFileException Si el archivo no existe o no es un archivo regular
+     * @throws IOException Si no se puede abrir
+     */
+    public CanalAbierto adquirir(Path ruta) throws IOException {
+        Path clave = ruta.toAbsolutePath().normalize();
+
+        while (true) {
+            long ahora = System.nanoTime();
+            CanalAbierto entrada = canales.get(clave);
+
+            if (entrada == null) {
+                CanalAbierto nuevo = abrir(clave, ahora);
+                nuevo.reservar(ahora);
+                if (canales.putIfAbsent(clave, nuevo) == null) {
+                    ajustarTamano();
+                    return nuevo;
+                }
+                // Otra petición lo abrió a la vez: se descarta el nuestro y se usa el suyo
+                nuevo.retirar();
+                nuevo.liberar(ahora);
+                continue;
+            }
+
+            if (!entrada.reservar(ahora)) {
+                // Retirado o cerrado (p. ej. por una interrupción durante transferTo)
+                canales.remove(clave, entrada);
+                entrada.retirar();
+                continue;
+            }
+
+            if (entrada.tocaComprobar(ahora, COMPROBACION_NANOS) && haCambiado(entrada)) {
+                canales.remove(clave, entrada);
+                entrada.retirar();
+                entrada.liberar(ahora);
+                continue;
+            }
+            return entrada;
+        }
+    }
+
+    /**
+     * @return Número de archivos abiertos en la caché
+     */
+    public int abiertos() {
+        return canales.size();
+    }
+
+    /**
+     * Cierra los archivos que nadie usa desde hace más del tiempo de inactividad
+     */
+    void cerrarInactivos() {
+        long limite = System.nanoTime() - inactividadNanos;
+        canales.forEach((clave, entrada) -> {
+            if (entrada.inactivoDesde(limite) && canales.remove(clave, entrada)) {
+                entrada.retirar();
+            }
+        });
+    }
+
+    /**
+     * Retira todos los canales; los que estén en uso se cierran al liberarse
+     */
+    @Override
+    public void close() {
+        limpiador.shutdownNow();
+        canales.forEach((clave, entrada) -> {
+            if (canales.remove(clave, entrada)) {
+                entrada.retirar();
+            }
+        });
+    }
+
+    // ========== APERTURA Y EXPULSIÓN ==========
+
+    private static CanalAbierto abrir(Path ruta, long ahora) throws IOException {
+        BasicFileAttributes atributos = Files.readAttributes(ruta, BasicFileAttributes.class);
+        if (!atributos.isRegularFile()) {
+            throw new NoSuchFileException(ruta.toString(), null, "no es un archivo");
+        }
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ);
+        try {
+            // El tamaño se toma del canal abierto para que coincida con lo que se va a leer
+            return new CanalAbierto(ruta, canal, canal.size(), atributos.lastModifiedTime().toMillis(), ahora);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    private static boolean haCambiado(CanalAbierto entrada) {
+        try {
+            BasicFileAttributes atributos = Files.readAttributes(entrada.ruta(), BasicFileAttributes.class);
+            return atributos.size() != entrada.tamano()
+                    || atributos.lastModifiedTime().toMillis() != entrada.ultimaModificacion();
+        } catch (IOException e) {
+            // Borrado o inaccesible: al reabrir se informará del error
+            return true;
+        }
+    }
+
+    /**
+     * Si se supera el máximo cierra los inactivos que llevan más tiempo sin usarse
+     */
+    private void ajustarTamano() {
+        int sobrantes = canales.size() - maximo;
+        if (sobrantes <= 0) {
+            return;
+        }
+
+        long ahora = System.nanoTime();
+        List<Map.Entry<Path, CanalAbierto>> inactivos = new ArrayList<>();
+        for (Map.Entry<Path, CanalAbierto> entrada : canales.entrySet()) {
+            if (entrada.getValue().inactivoDesde(ahora)) {
+                inactivos.add(entrada);
+            }
+        }
+        inactivos.sort(Comparator.comparingLong(entrada -> entrada.getValue().ultimoUso()));
+
+        for (int i = 0; i < inactivos.size() && sobrantes > 0; i++) {
+            Map.Entry<Path, CanalAbierto> entrada = inactivos.get(i);
+            if (canales.remove(entrada.getKey(), entrada.getValue())) {
+                entrada.getValue().retirar();
+                sobrantes--;
+            }
+        }
+    }
+}
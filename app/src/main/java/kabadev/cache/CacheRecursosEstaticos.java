@@ -0,0 +1,375 @@
+package kabadev.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import kabadev.compresion.CompresionHttp;
+import kabadev.configuracion.Configuracion;
+import kabadev.servidor.RangosHttp;
+import kabadev.servidor.RespuestaRangos;
+import kabadev.servidor.Respuestas;
+import kabadev.servidor.TiposMime;
+
+/**
+ * Caché inmutable de los archivos de static/ cargada al arrancar
+ *
+ * Cada recurso se lee una sola vez del classpath y se guarda con:
+ * - Los bytes originales
+ * - Una variante gzip y otra deflate precomprimidas con la máxima compresión
+ *   (el JDK no trae Brotli; deflate es la alternativa nativa)
+ * - Un ETag basado en el hash del contenido
+ *
+ * Al servir se elige la variante según Accept-Encoding y se responde 304
+ * cuando If-None-Match coincide, sin tocar el classloader ni copiar bytes.
+ * Los archivos mayores que dogster.estaticos.maximo (1 MB por defecto) no
+ * se cargan en el heap: se extraen una vez a dogster.estaticos.carpeta (si
+ * vienen de un jar), se mapean en memoria y se sirven con soporte de Range
+ * (MedioMapeado)
+ */
+public final class CacheRecursosEstaticos {
+
+    /** Carpeta del classpath con los recursos web */
+    private static final String CARPETA = "static";
+
+    /** Tamaño máximo de un recurso para guardarlo en memoria */
+    private static final long MAXIMO_POR_DEFECTO = 1024 * 1024;
+
+    /** Ahorro mínimo para que una variante comprimida merezca la pena */
+    private static final double AHORRO_MINIMO = 0.9;
+
+    /** Máximo de valores distintos de Accept-Encoding que se recuerdan */
+    private static final int MAXIMO_PREFERENCIAS = 64;
+
+    private static final int IDENTIDAD = 0;
+    private static final int GZIP = 1;
+    private static final int DEFLATE = 2;
+
+    private final Map<String, RecursoEstatico> recursos;
+    private final Map<String, MedioMapeado> medios;
+    private final Map<String, Integer> preferencias = new ConcurrentHashMap<>();
+
+    private CacheRecursosEstaticos(Map<String, RecursoEstatico> recursos, Map<String, MedioMapeado> medios) {
+        this.recursos = Collections.unmodifiableMap(recursos);
+        this.medios = Collections.unmodifiableMap(medios);
+    }
+
+    /**
+     * Carga todos los recursos de static/ desde el classpath (carpeta o jar)
+     *
+     * @return Caché lista para servir
+     * @throws IOException Si no se puede recorrer la carpeta de recursos
+     */
+    public static CacheRecursosEstaticos cargar() throws IOException {
+        long maximo = Configuracion.largo("estaticos.maximo", MAXIMO_POR_DEFECTO);
+        Path extraidos = Configuracion.ruta("estaticos.carpeta");
+        if (extraidos == null) {
+            extraidos = Paths.get(System.getProperty("java.io.tmpdir"), "dogster-estaticos");
+        }
+        Map<String, RecursoEstatico> recursos = new HashMap<>();
+        Map<String, MedioMapeado> medios = new HashMap<>();
+
+        URL url = CacheRecursosEstaticos.class.getClassLoader().getResource(CARPETA);
+        if (url == null) {
+            System.out.println("Advertencia: no se encontró la carpeta " + CARPETA + "/ en el classpath");
+            return new CacheRecursosEstaticos(recursos, medios);
+        }
+
+        URI uri;
+        try {
+            uri = url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("URI de recursos inválida: " + url, e);
+        }
+
+        if ("jar".equals(uri.getScheme())) {
+            FileSystem sistema;
+            boolean propio = false;
+            try {
+                sistema = FileSystems.newFileSystem(uri, Map.of());
+                propio = true;
+            } catch (FileSystemAlreadyExistsException e) {
+                sistema = FileSystems.getFileSystem(uri);
+            }
+            try {
+                recorrer(sistema.getPath("/" + CARPETA), maximo, extraidos, recursos, medios);
+            } finally {
+                if (propio) {
+                    sistema.close();
+                }
+            }
+        } else {
+            recorrer(Paths.get(uri), maximo, extraidos, recursos, medios);
+        }
+
+        return new CacheRecursosEstaticos(recursos, medios);
+    }
+
+    private static void recorrer(Path raiz, long maximo, Path extraidos, Map<String, RecursoEstatico> recursos,
+            Map<String, MedioMapeado> medios) throws IOException {
+        try (Stream<Path> archivos = Files.walk(raiz)) {
+            for (Path archivo : (Iterable<Path>) archivos.filter(Files::isRegularFile)::iterator) {
+                String ruta = raiz.relativize(archivo).toString().replace('\\', '/');
+                if (Files.size(archivo) <= maximo) {
+                    recursos.put(ruta, crearRecurso(ruta, Files.readAllBytes(archivo)));
+                    continue;
+                }
+                try {
+                    medios.put(ruta, mapear(ruta, archivo, extraidos));
+                } catch (IOException e) {
+                    // Sin mapeo el controlador lo sirve leyendo del classpath por bloques
+                    System.out.println("Advertencia: no se pudo mapear static/" + ruta + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepara un recurso grande para servirlo mapeado
+     *
+     * Desde una carpeta se mapea el propio archivo. Desde un jar se copia antes
+     * a la carpeta de extraídos con un nombre que incluye tamaño y fecha: si ya
+     * está de un arranque anterior no se vuelve a copiar
+     */
+    private static MedioMapeado mapear(String ruta, Path archivo, Path extraidos) throws IOException {
+        long tamano = Files.size(archivo);
+        long modificacion = Files.getLastModifiedTime(archivo).toMillis();
+        String tipoMime = TiposMime.obtener(ruta);
+
+        if (archivo.getFileSystem() == FileSystems.getDefault()) {
+            return MedioMapeado.abrir(ruta, tipoMime, archivo, modificacion);
+        }
+
+        String nombre = ruta.replace('/', '_') + "-" + Long.toHexString(tamano) + "-" + Long.toHexString(modificacion);
+        Path destino = extraidos.resolve(nombre);
+        if (!Files.isRegularFile(destino) || Files.size(destino) != tamano) {
+            Files.createDirectories(extraidos);
+            Path temporal = Files.createTempFile(extraidos, nombre, ".tmp");
+            try {
+                Files.copy(archivo, temporal, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporal);
+            }
+        }
+        return MedioMapeado.abrir(ruta, tipoMime, destino, modificacion);
+    }
+
+    /**
+     * Construye un recurso con sus variantes comprimidas
+     */
+    static RecursoEstatico crearRecurso(String ruta, byte[] contenido) throws IOException {
+        String tipoMime = TiposMime.obtener(ruta);
+        byte[] gzip = null;
+        byte[] deflate = null;
+
+        if (TiposMime.esComprimible(tipoMime)) {
+            gzip = comprimir(contenido, true);
+            deflate = comprimir(contenido, false);
+            if (gzip.length > contenido.length * AHORRO_MINIMO) {
+                gzip = null;
+            }
+            if (deflate.length > contenido.length * AHORRO_MINIMO) {
+                deflate = null;
+            }
+        }
+
+        return new RecursoEstatico(ruta, tipoMime, huella(contenido), contenido, gzip, deflate);
+    }
+
+    /**
+     * @param ruta Ruta relativa dentro de static/ (ej: "index.html", "src/logo.png")
+     * @return El recurso, o null si no está en la caché
+     */
+    public RecursoEstatico obtener(String ruta) {
+        return recursos.get(ruta);
+    }
+
+    /**
+     * @return Número de recursos precargados
+     */
+    public int tamano() {
+        return recursos.size();
+    }
+
+    /**
+     * @return Número de recursos grandes servidos desde archivos mapeados
+     */
+    public int mapeados() {
+        return medios.size();
+    }
+
+    /**
+     * Sirve un recurso de la caché
+     *
+     * @param intercambio Petición y respuesta HTTP
+     * @param ruta Ruta relativa dentro de static/
+     * @return false si el recurso no está en la caché (no se ha enviado nada)
+     * @throws IOException Si falla el envío
+     */
+    public boolean enviar(HttpExchange intercambio, String ruta) throws IOException {
+        RecursoEstatico recurso = recursos.get(ruta);
+        if (recurso == null) {
+            MedioMapeado medio = medios.get(ruta);
+            if (medio == null) {
+                return false;
+            }
+            enviarMapeado(intercambio, medio);
+            return true;
+        }
+
+        Headers peticion = intercambio.getRequestHeaders();
+        Headers respuesta = intercambio.getResponseHeaders();
+
+        // Sin hash en el nombre del archivo el navegador debe revalidar siempre (304 es barato)
+        respuesta.set("Cache-Control", "no-cache");
+        respuesta.set("Vary", "Accept-Encoding");
+
+        int variante = elegirVariante(peticion.getFirst("Accept-Encoding"), recurso);
+        byte[] cuerpo;
+        String etag;
+        switch (variante) {
+            case GZIP:
+                cuerpo = recurso.gzip();
+                etag = recurso.etagGzip();
+                respuesta.set("Content-Encoding", "gzip");
+                break;
+            case DEFLATE:
+                cuerpo = recurso.deflate();
+                etag = recurso.etagDeflate();
+                respuesta.set("Content-Encoding", "deflate");
+                break;
+            default:
+                cuerpo = recurso.original();
+                etag = recurso.etagOriginal();
+                break;
+        }
+        respuesta.set("ETag", etag);
+
+        // ========== REVALIDACIÓN: el navegador ya tiene esta versión ==========
+        if (recurso.coincideEtag(peticion.getFirst("If-None-Match"))) {
+            respuesta.remove("Content-Encoding");
+            intercambio.sendResponseHeaders(304, -1);
+            intercambio.close();
+            return true;
+        }
+
+        respuesta.set("Content-Type", recurso.tipoMime());
+        if (Respuestas.soloCabeceras(intercambio, 200, cuerpo.length)) {
+            return true;
+        }
+        intercambio.sendResponseHeaders(200, cuerpo.length == 0 ? -1 : cuerpo.length);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            salida.write(cuerpo);
+        }
+        return true;
+    }
+
+    /**
+     * Sirve un recurso grande desde su mapeo: sin variantes comprimidas (son
+     * vídeos e imágenes) pero con Range / If-Range para que el vídeo de portada
+     * pueda buscarse y reanudarse
+     */
+    private static void enviarMapeado(HttpExchange intercambio, MedioMapeado medio) throws IOException {
+        Headers respuesta = intercambio.getResponseHeaders();
+        respuesta.set("Cache-Control", "no-cache");
+
+        if (RangosHttp.coincideEtag(intercambio.getRequestHeaders().getFirst("If-None-Match"), medio.etag())) {
+            respuesta.set("ETag", medio.etag());
+            intercambio.sendResponseHeaders(304, -1);
+            intercambio.close();
+            return;
+        }
+
+        RespuestaRangos.enviar(intercambio, medio.contenido(), medio.tipoMime(), medio.etag(),
+                medio.ultimaModificacion());
+    }
+
+    /**
+     * Elige la variante según Accept-Encoding
+     * El resultado por valor de cabecera se memoriza: los navegadores envían
+     * siempre el mismo texto, así que el análisis se hace una vez
+     */
+    private int elegirVariante(String aceptadas, RecursoEstatico recurso) {
+        if (aceptadas == null || (recurso.gzip() == null && recurso.deflate() == null)) {
+            return IDENTIDAD;
+        }
+
+        Integer preferencia = preferencias.get(aceptadas);
+        if (preferencia == null) {
+            preferencia = CompresionHttp.preferencia(aceptadas);
+            if (preferencias.size() < MAXIMO_PREFERENCIAS) {
+                preferencias.put(aceptadas, preferencia);
+            }
+        }
+
+        // La preferencia guarda las calidades de gzip y deflate en milésimas
+        int calidadGzip = preferencia >>> 16;
+        int calidadDeflate = preferencia & 0xFFFF;
+
+        boolean gzipValido = recurso.gzip() != null && calidadGzip > 0;
+        boolean deflateValido = recurso.deflate() != null && calidadDeflate > 0;
+
+        // A igual calidad se prefiere gzip: "deflate" tiene implementaciones ambiguas en algunos clientes
+        if (gzipValido && (!deflateValido || calidadGzip >= calidadDeflate)) {
+            return GZIP;
+        }
+        return deflateValido ? DEFLATE : IDENTIDAD;
+    }
+
+    private static byte[] comprimir(byte[] contenido, boolean formatoGzip) throws IOException {
+        ByteArrayOutputStream destino = new ByteArrayOutputStream(contenido.length / 2 + 64);
+        if (formatoGzip) {
+            try (OutputStream salida = new GZIPOutputStream(destino) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }) {
+                salida.write(contenido);
+            }
+        } else {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (OutputStream salida = new DeflaterOutputStream(destino, deflater)) {
+                salida.write(contenido);
+            } finally {
+                deflater.end();
+            }
+        }
+        return destino.toByteArray();
+    }
+
+    private static String huella(byte[] contenido) {
+        try {
+            byte[] resumen = MessageDigest.getInstance("SHA-256").digest(contenido);
+            // 128 bits son más que suficientes para distinguir versiones de un archivo
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(resumen, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible en esta JVM", e);
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package kabadev.cache;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import kabadev.configuracion.Configuracion;
+import kabadev.servidor.ContenidoRangos;
+import kabadev.servidor.SumideroRegiones;
+import kabadev.servidor.TransferenciaArchivo;
+
+/**
+ * Caché compartida de trozos de vídeo fuera del heap
+ *
+ * Cuando varios espectadores ven la misma película cada uno leía los mismos
+ * bytes del disco por su cuenta; con discos mecánicos o un NAS las lecturas
+ * concurrentes se convierten en saltos del cabezal. Aquí cada archivo se
+ * divide en trozos fijos (dogster.trozos.tamano, 1 MB) que se leen una vez en
+ * un ByteBuffer directo y se sirven a todos los que los pidan:
+ *
+ * - Clave: (ruta, tamaño, fecha, índice del trozo); un archivo sustituido no
+ *   reutiliza trozos viejos
+ * - Lectura anticipada: al entrar en el trozo i se encargan los
+ *   dogster.trozos.anticipacion (4) siguientes a un grupo pequeño de hilos
+ *   de E/S (dogster.trozos.hilos, 2), así el disco lee en secuencia grandes
+ *   bloques en lugar de muchos saltos de 8 KB
+ * - Expulsión LRU segmentada: los trozos nuevos entran a prueba y pasan a
+ *   protegidos al segundo acierto; una película vista una sola vez no
+ *   desplaza a las populares
+ * - Memoria acotada por dogster.trozos.memoria (64 MB); los buffers
+ *   expulsados se reciclan en lugar de liberarse
+ *
+ * Un trozo en uso (se está enviando) no se recicla aunque se expulse: su
+ * buffer vuelve al grupo cuando termina el último envío. La memoria es un
+ * límite estricto: si todos los trozos están en uso (muchos espectadores
+ * lentos) el trozo pedido se envía directamente del archivo, sin caché
+ *
+ * Con el motor NIO (el cuerpo es un SumideroRegiones) la caché no interviene:
+ * el archivo sale por sendfile y la caché de páginas del sistema ya comparte
+ * las lecturas entre espectadores
+ */
+public final class CacheTrozos implements AutoCloseable {
+
+    private static final int TAMANO_POR_DEFECTO = 1024 * 1024;
+    private static final long MEMORIA_POR_DEFECTO = 64L * 1024 * 1024;
+    private static final int ANTICIPACION_POR_DEFECTO = 4;
+    private static final int HILOS_POR_DEFECTO = 2;
+
+    /** Parte de la caché reservada a trozos vistos una sola vez */
+    private static final double PARTE_PRUEBA = 0.2;
+
+    private record Clave(Path ruta, long tamano, long modificacion, long indice) {
+    }
+
+    /** Trozo cargado: datos [0, limit) del buffer directo */
+    private static final class Trozo {
+        final Clave clave;
+        final ByteBuffer datos;
+        int usos;
+        boolean retirado;
+
+        Trozo(Clave clave, ByteBuffer datos) {
+            this.clave = clave;
+            this.datos = datos;
+        }
+    }
+
+    private final CacheCanales canales;
+    private final int tamanoTrozo;
+    private final int maximoTrozos;
+    private final int maximoPrueba;
+    private final int anticipacion;
+    private final ExecutorService lectores;
+
+    // ========== ESTADO PROTEGIDO POR this ==========
+    private final LinkedHashMap<Clave, Trozo> prueba = new LinkedHashMap<>();
+    private final LinkedHashMap<Clave, Trozo> protegidos = new LinkedHashMap<>();
+    private final Map<Clave, CompletableFuture<Void>> cargando = new HashMap<>();
+    private final ArrayDeque<ByteBuffer> libres = new ArrayDeque<>();
+    private int buffers;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder anticipados = new LongAdder();
+    private final LongAdder sinMemoria = new LongAdder();
+
+    /**
+     * @param canales Caché de archivos abiertos (la usa la lectura anticipada)
+     * @param tamanoTrozo Bytes de cada trozo
+     * @param memoria Bytes totales de trozos en memoria
+     * @param anticipacion Trozos que se leen por delante del que se está sirviendo
+     * @param hilos Hilos de lectura anticipada
+     */
+    public CacheTrozos(CacheCanales canales, int tamanoTrozo, long memoria, int anticipacion, int hilos) {
+        if (tamanoTrozo < 4096 || memoria < tamanoTrozo || anticipacion < 0 || hilos < 1) {
+            throw new IllegalArgumentException("Parámetros de la caché de trozos no válidos");
+        }
+        this.canales = canales;
+        this.tamanoTrozo = tamanoTrozo;
+        this.maximoTrozos = (int) Math.min(Integer.MAX_VALUE, memoria / tamanoTrozo);
+        this.maximoPrueba = Math.max(1, (int) (maximoTrozos * PARTE_PRUEBA));
+        this.anticipacion = anticipacion;
+
+        AtomicInteger numero = new AtomicInteger();
+        this.lectores = Executors.newFixedThreadPool(hilos, tarea -> {
+            Thread hilo = new Thread(tarea, "dogster-trozos-" + numero.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    /**
+     * Crea la caché con dogster.trozos.tamano, .memoria, .anticipacion y .hilos
+     */
+    public static CacheTrozos desdeConfiguracion(CacheCanales canales) {
+        return new CacheTrozos(canales,
+                Configuracion.entero("trozos.tamano", TAMANO_POR_DEFECTO),
+                Configuracion.largo("trozos.memoria", MEMORIA_POR_DEFECTO),
+                Configuracion.entero("trozos.anticipacion", ANTICIPACION_POR_DEFECTO),
+                Configuracion.entero("trozos.hilos", HILOS_POR_DEFECTO));
+    }
+
+    /**
+     * Contenido del archivo servido a través de la caché
+     *
+     * @param video Archivo abierto (debe seguir abierto mientras se envía)
+     */
+    public ContenidoRangos contenido(CanalAbierto video) {
+        return new ContenidoRangos() {
+            // Último trozo para el que se encargó lectura anticipada en esta respuesta
+            private long anticipadoDesde = -1;
+
+            @Override
+            public long tamano() {
+                return video.tamano();
+            }
+
+            @Override
+            public void transferir(long posicion, long longitud, OutputStream salida) throws IOException {
+                if (salida instanceof SumideroRegiones) {
+                    TransferenciaArchivo.transferir(video.canal(), posicion, longitud, salida);
+                    return;
+                }
+                long fin = posicion + longitud;
+                WritableByteChannel destino = null;
+
+                while (posicion < fin) {
+                    long indice = posicion / tamanoTrozo;
+                    if (indice != anticipadoDesde) {
+                        anticipadoDesde = indice;
+                        anticipar(video, indice);
+                    }
+
+                    Trozo trozo = obtener(video.canal(), clave(video, indice));
+                    if (trozo == null) {
+                        // Todos los buffers están en uso: este trozo sale del archivo
+                        long hasta = Math.min(fin, (indice + 1) * tamanoTrozo);
+                        TransferenciaArchivo.transferir(video.canal(), posicion, hasta - posicion, salida);
+                        posicion = hasta;
+                        continue;
+                    }
+                    try {
+                        int desde = (int) (posicion - indice * tamanoTrozo);
+                        int hasta = (int) Math.min(trozo.datos.limit(), fin - indice * tamanoTrozo);
+                        if (desde >= hasta) {
+                            throw new EOFException("El archivo terminó antes de lo esperado en la posición "
+                                    + posicion);
+                        }
+                        ByteBuffer vista = trozo.datos.duplicate().limit(hasta).position(desde);
+                        if (destino == null) {
+                            destino = Channels.newChannel(salida);
+                        }
+                        while (vista.hasRemaining()) {
+                            destino.write(vista);
+                        }
+                        posicion += hasta - desde;
+                    } finally {
+                        liberar(trozo);
+                    }
+                }
+            }
+        };
+    }
+
+    // ========== CONSULTA Y CARGA ==========
+
+    /**
+     * Devuelve el trozo reservado (usos + 1), leyéndolo si no está
+     * Si otro hilo ya lo está leyendo se espera a esa lectura
+     *
+     * @return El trozo, o null si no está y no queda ningún buffer libre
+     */
+    private Trozo obtener(FileChannel canal, Clave clave) throws IOException {
+        while (true) {
+            CompletableFuture<Void> enCurso;
+            CompletableFuture<Void> propio = null;
+            synchronized (this) {
+                Trozo trozo = buscar(clave);
+                if (trozo != null) {
+                    trozo.usos++;
+                    aciertos.increment();
+                    return trozo;
+                }
+                enCurso = cargando.get(clave);
+                if (enCurso == null) {
+                    propio = new CompletableFuture<>();
+                    cargando.put(clave, propio);
+                    fallos.increment();
+                }
+            }
+
+            if (propio == null) {
+                // Otra petición o la lectura anticipada ya lo está leyendo
+                enCurso.exceptionally(error -> null).join();
+                continue;
+            }
+            return cargar(canal, clave, propio, true);
+        }
+    }
+
+    /**
+     * Lee el trozo del disco e inserta en la caché; la entrada de "cargando"
+     * ya la ha creado quien llama
+     *
+     * Al terminar solo se quita de "cargando" el futuro propio: si otra petición
+     * ya registró el suyo para el mismo trozo, ese sigue siendo de ella
+     *
+     * @param propio Futuro que quien llama registró en "cargando"
+     * @param reservar true para devolverlo con usos + 1
+     * @return El trozo, o null si no quedaba ningún buffer libre
+     */
+    private Trozo cargar(FileChannel canal, Clave clave, CompletableFuture<Void> propio, boolean reservar)
+            throws IOException {
+        ByteBuffer datos = null;
+        try {
+            datos = tomarBuffer();
+            if (datos == null) {
+                sinMemoria.increment();
+                synchronized (this) {
+                    cargando.remove(clave, propio);
+                }
+                propio.complete(null);
+                return null;
+            }
+            long inicio = clave.indice() * tamanoTrozo;
+            int longitud = (int) Math.min(tamanoTrozo, clave.tamano() - inicio);
+            datos.clear().limit(Math.max(0, longitud));
+            while (datos.hasRemaining()) {
+                if (canal.read(datos, inicio + datos.position()) < 0) {
+                    throw new EOFException("El archivo terminó antes de lo esperado en la posición "
+                            + (inicio + datos.position()));
+                }
+            }
+            datos.flip();
+
+            Trozo trozo = new Trozo(clave, datos);
+            synchronized (this) {
+                trozo.usos = reservar ? 1 : 0;
+                prueba.put(clave, trozo);
+                ajustarTamano();
+                cargando.remove(clave, propio);
+            }
+            propio.complete(null);
+            return trozo;
+
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                if (datos != null) {
+                    devolverBuffer(datos);
+                }
+                cargando.remove(clave, propio);
+            }
+            propio.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Encarga a los lectores los trozos siguientes que no estén ya en memoria
+     */
+    private void anticipar(CanalAbierto video, long indice) {
+        long ultimo = (video.tamano() - 1) / tamanoTrozo;
+        for (long siguiente = indice + 1; siguiente <= Math.min(ultimo, indice + anticipacion); siguiente++) {
+            Clave clave = clave(video, siguiente);
+            CompletableFuture<Void> propio = new CompletableFuture<>();
+            synchronized (this) {
+                if (prueba.containsKey(clave) || protegidos.containsKey(clave) || cargando.containsKey(clave)) {
+                    continue;
+                }
+                cargando.put(clave, propio);
+            }
+            try {
+                lectores.execute(() -> leerAnticipado(clave, propio));
+                anticipados.increment();
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    cargando.remove(clave, propio);
+                }
+                propio.complete(null);
+            }
+        }
+    }
+
+    /**
+     * El archivo se vuelve a pedir a CacheCanales: la respuesta que encargó la
+     * lectura puede haber terminado y devuelto su canal
+     */
+    private void leerAnticipado(Clave clave, CompletableFuture<Void> propio) {
+        boolean leyendo = false;
+        try (CanalAbierto video = canales.adquirir(clave.ruta())) {
+            if (video.tamano() != clave.tamano() || video.ultimaModificacion() != clave.modificacion()) {
+                throw new IOException("El archivo cambió: " + clave.ruta());
+            }
+            leyendo = true;
+            cargar(video.canal(), clave, propio, false);
+        } catch (IOException | RuntimeException e) {
+            // Solo era una lectura por adelantado: la petición que lo necesite lo leerá ella misma
+            // Si el fallo fue dentro de cargar, cargar ya retiró y completó el futuro
+            if (!leyendo) {
+                synchronized (this) {
+                    cargando.remove(clave, propio);
+                }
+                propio.complete(null);
+            }
+        }
+    }
+
+    private static Clave clave(CanalAbierto video, long indice) {
+        return new Clave(video.ruta(), video.tamano(), video.ultimaModificacion(), indice);
+    }
+
+    // ========== LRU SEGMENTADA (con this bloqueado) ==========
+
+    /**
+     * Busca un trozo y lo promociona: de prueba pasa a protegidos y en
+     * protegidos vuelve al final (más reciente)
+     */
+    private Trozo buscar(Clave clave) {
+        Trozo trozo = protegidos.remove(clave);
+        if (trozo == null) {
+            trozo = prueba.remove(clave);
+        }
+        if (trozo == null) {
+            return null;
+        }
+        protegidos.put(clave, trozo);
+
+        // Los protegidos que sobran vuelven a prueba como los más recientes de esa zona
+        Iterator<Trozo> antiguos = protegidos.values().iterator();
+        while (protegidos.size() > maximoTrozos - maximoPrueba && antiguos.hasNext()) {
+            Trozo antiguo = antiguos.next();
+            antiguos.remove();
+            prueba.put(antiguo.clave, antiguo);
+        }
+        return trozo;
+    }
+
+    private void ajustarTamano() {
+        while (prueba.size() + protegidos.size() > maximoTrozos) {
+            LinkedHashMap<Clave, Trozo> zona = prueba.isEmpty() ? protegidos : prueba;
+            Iterator<Trozo> antiguos = zona.values().iterator();
+            Trozo victima = antiguos.next();
+            antiguos.remove();
+            retirar(victima);
+        }
+    }
+
+    private void retirar(Trozo trozo) {
+        trozo.retirado = true;
+        if (trozo.usos == 0) {
+            devolverBuffer(trozo.datos);
+        }
+    }
+
+    private synchronized void liberar(Trozo trozo) {
+        if (--trozo.usos == 0 && trozo.retirado) {
+            devolverBuffer(trozo.datos);
+        }
+    }
+
+    // ========== GRUPO DE BUFFERS DIRECTOS ==========
+
+    /**
+     * Buffer libre, uno nuevo si aún no se llegó al máximo o el de la víctima
+     * más antigua que no se esté enviando
+     *
+     * @return El buffer, o null si todos los trozos están en uso
+     */
+    private synchronized ByteBuffer tomarBuffer() {
+        ByteBuffer libre = libres.poll();
+        if (libre != null) {
+            return libre;
+        }
+        if (buffers < maximoTrozos) {
+            buffers++;
+            return ByteBuffer.allocateDirect(tamanoTrozo);
+        }
+        for (LinkedHashMap<Clave, Trozo> zona : List.of(prueba, protegidos)) {
+            Iterator<Trozo> antiguos = zona.values().iterator();
+            while (antiguos.hasNext()) {
+                Trozo victima = antiguos.next();
+                if (victima.usos == 0) {
+                    antiguos.remove();
+                    victima.retirado = true;
+                    return victima.datos;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void devolverBuffer(ByteBuffer datos) {
+        libres.push(datos);
+    }
+
+    // ========== ESTADÍSTICAS ==========
+
+    public long aciertos() {
+        return aciertos.sum();
+    }
+
+    public long fallos() {
+        return fallos.sum();
+    }
+
+    public long anticipados() {
+        return anticipados.sum();
+    }
+
+    /**
+     * @return Trozos enviados directamente del archivo por no quedar buffers libres
+     */
+    public long sinMemoria() {
+        return sinMemoria.sum();
+    }
+
+    /**
+     * @return Trozos en memoria ahora mismo
+     */
+    public synchronized int trozos() {
+        return prueba.size() + protegidos.size();
+    }
+
+    /**
+     * @return Bytes de memoria directa reservados por la caché
+     */
+    public synchronized long memoria() {
+        return (long) buffers * tamanoTrozo;
+    }
+
+    @Override
+    public void close() {
+        lectores.shutdownNow();
+    }
+}
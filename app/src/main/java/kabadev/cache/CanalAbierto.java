@@ -0,0 +1,142 @@
+package kabadev.cache;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import kabadev.servidor.RangosHttp;
+
+/**
+ * Archivo abierto y compartido por todas las peticiones que lo están sirviendo
+ *
+ * Guarda el FileChannel junto con los metadatos ya calculados (tamaño, ETag,
+ * fecha) para no repetir stat + open en cada petición de rango. Las lecturas
+ * del canal son siempre posicionales (transferTo(posicion, ...)), así que
+ * varias peticiones pueden usarlo a la vez.
+ *
+ * Se obtiene con CacheCanales.adquirir y se devuelve con close(); el canal solo
+ * se cierra de verdad cuando la caché lo ha retirado y nadie lo está usando
+ */
+public final class CanalAbierto implements AutoCloseable {
+
+    private final Path ruta;
+    private final FileChannel canal;
+    private final long tamano;
+    private final long ultimaModificacion;
+    private final String etag;
+
+    // Estado protegido por el monitor de la instancia
+    private int usos;
+    private boolean retirado;
+    private long ultimoUso;
+    private long comprobado;
+
+    CanalAbierto(Path ruta, FileChannel canal, long tamano, long ultimaModificacion, long ahora) {
+        this.ruta = ruta;
+        this.canal = canal;
+        this.tamano = tamano;
+        this.ultimaModificacion = ultimaModificacion;
+        this.etag = RangosHttp.calcularEtag(tamano, ultimaModificacion);
+        this.ultimoUso = ahora;
+        this.comprobado = ahora;
+    }
+
+    public Path ruta() {
+        return ruta;
+    }
+
+    public FileChannel canal() {
+        return canal;
+    }
+
+    public long tamano() {
+        return tamano;
+    }
+
+    /**
+     * @return Fecha de modificación en milisegundos
+     */
+    public long ultimaModificacion() {
+        return ultimaModificacion;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    /**
+     * Devuelve el canal a la caché (no lo cierra si sigue en ella)
+     */
+    @Override
+    public void close() {
+        liberar(System.nanoTime());
+    }
+
+    // ========== CONTEO DE REFERENCIAS (uso desde CacheCanales) ==========
+
+    /**
+     * Suma un uso si el canal sigue vigente
+     *
+     * @return false si ya fue retirado o el canal se cerró (hay que abrir otro)
+     */
+    synchronized boolean reservar(long ahora) {
+        if (retirado || !canal.isOpen()) {
+            return false;
+        }
+        usos++;
+        ultimoUso = ahora;
+        return true;
+    }
+
+    synchronized void liberar(long ahora) {
+        usos--;
+        ultimoUso = ahora;
+        if (retirado && usos == 0) {
+            cerrarCanal();
+        }
+    }
+
+    /**
+     * Marca el canal como retirado; se cierra ya si nadie lo usa o al liberarse el último uso
+     */
+    synchronized void retirar() {
+        if (retirado) {
+            return;
+        }
+        retirado = true;
+        if (usos == 0) {
+            cerrarCanal();
+        }
+    }
+
+    /**
+     * @return true si nadie lo usa desde antes de limite
+     */
+    synchronized boolean inactivoDesde(long limite) {
+        return usos == 0 && ultimoUso - limite < 0;
+    }
+
+    synchronized long ultimoUso() {
+        return ultimoUso;
+    }
+
+    /**
+     * @return true si han pasado más de intervalo nanosegundos desde la última comprobación
+     *         en disco (y la anota como hecha)
+     */
+    synchronized boolean tocaComprobar(long ahora, long intervalo) {
+        if (ahora - comprobado < intervalo) {
+            return false;
+        }
+        comprobado = ahora;
+        return true;
+    }
+
+    private void cerrarCanal() {
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // Nada que hacer: el descriptor se libera igualmente
+        }
+    }
+}
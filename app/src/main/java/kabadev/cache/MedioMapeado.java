@@ -0,0 +1,118 @@
+package kabadev.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import kabadev.servidor.ContenidoRangos;
+import kabadev.servidor.RangosHttp;
+import kabadev.servidor.SumideroRegiones;
+import kabadev.servidor.TransferenciaArchivo;
+
+/**
+ * Recurso estático grande (p. ej. src/Dogster.mp4) servido desde un archivo
+ * mapeado en memoria de solo lectura
+ *
+ * El mapeo se hace una vez al arrancar y lo comparten todas las peticiones:
+ * las páginas viven en la caché del sistema operativo, no en el heap, así que
+ * servir el vídeo de portada no genera basura por cada visita. Con el motor
+ * NIO la región se envía con sendfile desde el mismo canal
+ */
+public final class MedioMapeado {
+
+    private final String ruta;
+    private final String tipoMime;
+    private final FileChannel canal;
+    private final MappedByteBuffer mapa;
+    private final long tamano;
+    private final long ultimaModificacion;
+    private final String etag;
+
+    private MedioMapeado(String ruta, String tipoMime, FileChannel canal, MappedByteBuffer mapa, long tamano,
+            long ultimaModificacion) {
+        this.ruta = ruta;
+        this.tipoMime = tipoMime;
+        this.canal = canal;
+        this.mapa = mapa;
+        this.tamano = tamano;
+        this.ultimaModificacion = ultimaModificacion;
+        this.etag = RangosHttp.calcularEtag(tamano, ultimaModificacion);
+    }
+
+    /**
+     * Abre y mapea un archivo local
+     *
+     * @param ruta Ruta relativa dentro de static/
+     * @param tipoMime Content-Type del recurso
+     * @param archivo Archivo en disco (ya extraído si venía de un jar)
+     * @param ultimaModificacion Fecha del recurso original en milisegundos
+     * @throws IOException Si no se puede abrir o mapear
+     */
+    static MedioMapeado abrir(String ruta, String tipoMime, Path archivo, long ultimaModificacion)
+            throws IOException {
+        FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ);
+        try {
+            long tamano = canal.size();
+            // Un MappedByteBuffer se indexa con int: lo que no quepa se sirve solo con transferTo
+            MappedByteBuffer mapa = tamano <= Integer.MAX_VALUE
+                    ? canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano) : null;
+            return new MedioMapeado(ruta, tipoMime, canal, mapa, tamano, ultimaModificacion);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    public String ruta() {
+        return ruta;
+    }
+
+    public String tipoMime() {
+        return tipoMime;
+    }
+
+    public long tamano() {
+        return tamano;
+    }
+
+    public long ultimaModificacion() {
+        return ultimaModificacion;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    /**
+     * Contenido servible por rangos: región del canal si el cuerpo acepta
+     * sendfile, porciones del mapeo en caso contrario
+     */
+    public ContenidoRangos contenido() {
+        return new ContenidoRangos() {
+            @Override
+            public long tamano() {
+                return tamano;
+            }
+
+            @Override
+            public void transferir(long posicion, long longitud, OutputStream salida) throws IOException {
+                if (mapa == null || salida instanceof SumideroRegiones) {
+                    TransferenciaArchivo.transferir(canal, posicion, longitud, salida);
+                    return;
+                }
+                // slice() crea una vista propia: el mapeo compartido no cambia de posición
+                WritableByteChannel destino = Channels.newChannel(salida);
+                ByteBuffer porcion = mapa.slice((int) posicion, (int) longitud);
+                while (porcion.hasRemaining()) {
+                    destino.write(porcion);
+                }
+            }
+        };
+    }
+}
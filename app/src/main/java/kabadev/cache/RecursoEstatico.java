@@ -0,0 +1,100 @@
+package kabadev.cache;
+
+/**
+ * Recurso estático precargado en memoria con sus variantes comprimidas
+ *
+ * Es inmutable: se construye una vez al arrancar y se comparte entre todos
+ * los hilos. Los valores de cabecera (ETag por variante) se calculan aquí
+ * para no construir cadenas en cada petición
+ */
+public final class RecursoEstatico {
+
+    private final String ruta;
+    private final String tipoMime;
+    private final String hash;
+    private final byte[] original;
+    private final byte[] gzip;
+    private final byte[] deflate;
+    private final String etagOriginal;
+    private final String etagGzip;
+    private final String etagDeflate;
+
+    /**
+     * @param ruta Ruta relativa dentro de static/ (ej: "main.js")
+     * @param tipoMime Content-Type del recurso
+     * @param hash Huella del contenido (base del ETag)
+     * @param original Bytes sin comprimir
+     * @param gzip Variante gzip, o null si no compensa
+     * @param deflate Variante deflate, o null si no compensa
+     */
+    RecursoEstatico(String ruta, String tipoMime, String hash, byte[] original, byte[] gzip, byte[] deflate) {
+        this.ruta = ruta;
+        this.tipoMime = tipoMime;
+        this.hash = hash;
+        this.original = original;
+        this.gzip = gzip;
+        this.deflate = deflate;
+        this.etagOriginal = "\"" + hash + "\"";
+        this.etagGzip = "\"" + hash + "-gzip\"";
+        this.etagDeflate = "\"" + hash + "-deflate\"";
+    }
+
+    public String ruta() {
+        return ruta;
+    }
+
+    public String tipoMime() {
+        return tipoMime;
+    }
+
+    public byte[] original() {
+        return original;
+    }
+
+    public byte[] gzip() {
+        return gzip;
+    }
+
+    public byte[] deflate() {
+        return deflate;
+    }
+
+    public String etagOriginal() {
+        return etagOriginal;
+    }
+
+    public String etagGzip() {
+        return etagGzip;
+    }
+
+    public String etagDeflate() {
+        return etagDeflate;
+    }
+
+    /**
+     * Comprueba si alguno de los ETag de If-None-Match corresponde a este contenido
+     * Cualquier variante vale: todas comparten la misma huella del contenido
+     *
+     * @param ifNoneMatch Valor de la cabecera If-None-Match (puede ser null)
+     * @return true si el cliente ya tiene esta versión y basta con un 304
+     */
+    public boolean coincideEtag(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String etiqueta : ifNoneMatch.split(",")) {
+            String valor = etiqueta.trim();
+            if (valor.equals("*")) {
+                return true;
+            }
+            if (valor.startsWith("W/")) {
+                valor = valor.substring(2);
+            }
+            if (valor.length() >= hash.length() + 2 && valor.startsWith("\"" + hash)
+                    && (valor.length() == hash.length() + 2 || valor.charAt(hash.length() + 1) == '-')) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
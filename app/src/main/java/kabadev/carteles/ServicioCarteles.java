@@ -0,0 +1,476 @@
+package kabadev.carteles;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import kabadev.catalogo.Pelicula;
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Carteles del catálogo reducidos y guardados en local
+ *
+ * Los poster de asterix.json apuntan a servidores ajenos (amazon,
+ * lavanguardia, dvdstorespain) con imágenes de hasta 1280 px; main.js las
+ * pinta a 320. Aquí cada cartel se obtiene una sola vez, se reduce con
+ * javax.imageio al ancho de la página y se guarda como JPEG:
+ * - Memoria: LRU acotada por bytes (dogster.carteles.memoria, 16 MB)
+ * - Disco: dogster.carteles.cache (java.io.tmpdir/dogster-carteles); sobrevive
+ *   a los reinicios
+ * - Origen: primero dogster.carteles.origen (carpeta local con {id}.jpg o el
+ *   nombre de archivo de la URL), después la red si dogster.carteles.red
+ *   (true) lo permite
+ *
+ * La clave incluye el id, el ancho y un resumen de la URL del cartel: si el
+ * catálogo cambia el poster, el cartel guardado deja de usarse. Varias
+ * peticiones del mismo cartel a la vez comparten una única descarga, y un
+ * cartel que falló no se vuelve a intentar durante un minuto
+ */
+public final class ServicioCarteles {
+
+    private static final int ANCHO_POR_DEFECTO = 320;
+    private static final long MEMORIA_POR_DEFECTO = 16L * 1024 * 1024;
+    private static final int ESPERA_POR_DEFECTO = 10;
+
+    /** Tamaño máximo de una imagen original (local o descargada) */
+    private static final int ORIGINAL_MAXIMO = 16 * 1024 * 1024;
+
+    /** Calidad JPEG de los carteles reducidos */
+    private static final float CALIDAD = 0.85f;
+
+    /** Tiempo durante el que no se reintenta un cartel que falló */
+    private static final long REINTENTO_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final String[] EXTENSIONES = {".jpg", ".jpeg", ".png", ".gif", ".bmp"};
+
+    /**
+     * Cartel listo para enviar
+     *
+     * @param imagen JPEG reducido
+     * @param etag ETag entre comillas (depende de la clave, no hace falta leer la imagen)
+     */
+    public record Cartel(byte[] imagen, String etag) {
+    }
+
+    private final Path carpetaCache;
+    private final Path carpetaOrigen;
+    private final HttpClient cliente;
+    private final Duration espera;
+    private final int ancho;
+    private final long memoriaMaxima;
+
+    private final LinkedHashMap<String, Cartel> memoria = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytesMemoria;
+
+    private final Map<String, CompletableFuture<Cartel>> enCurso = new ConcurrentHashMap<>();
+    private final Map<String, Long> fallidos = new ConcurrentHashMap<>();
+
+    private final LongAdder aciertosMemoria = new LongAdder();
+    private final LongAdder aciertosDisco = new LongAdder();
+    private final LongAdder generados = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    /**
+     * @param carpetaCache Carpeta donde se guardan los carteles reducidos
+     * @param carpetaOrigen Carpeta con los carteles originales (null = solo red)
+     * @param red false = no se descarga nada, solo se usa la carpeta de origen
+     * @param ancho Ancho en píxeles de los carteles reducidos
+     * @param memoriaMaxima Bytes de carteles que se guardan en memoria
+     * @param esperaSegundos Tiempo máximo de cada descarga
+     */
+    public ServicioCarteles(Path carpetaCache, Path carpetaOrigen, boolean red, int ancho, long memoriaMaxima,
+            int esperaSegundos) {
+        if (ancho < 16) {
+            throw new IllegalArgumentException("Ancho de cartel demasiado pequeño: " + ancho);
+        }
+        if (esperaSegundos < 1) {
+            throw new IllegalArgumentException("La espera de descarga debe ser positiva: " + esperaSegundos);
+        }
+        this.carpetaCache = carpetaCache;
+        this.carpetaOrigen = carpetaOrigen;
+        this.ancho = ancho;
+        this.memoriaMaxima = Math.max(0, memoriaMaxima);
+        this.espera = Duration.ofSeconds(esperaSegundos);
+        this.cliente = !red ? null : HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(espera)
+                .build();
+    }
+
+    /**
+     * Crea el servicio con dogster.carteles.cache, .origen, .red, .ancho,
+     * .memoria y .espera (segundos)
+     */
+    public static ServicioCarteles desdeConfiguracion() {
+        Path cache = Configuracion.ruta("carteles.cache");
+        if (cache == null) {
+            cache = Paths.get(System.getProperty("java.io.tmpdir"), "dogster-carteles");
+        }
+        return new ServicioCarteles(cache, Configuracion.ruta("carteles.origen"),
+                Configuracion.booleano("carteles.red", true),
+                Configuracion.entero("carteles.ancho", ANCHO_POR_DEFECTO),
+                Configuracion.largo("carteles.memoria", MEMORIA_POR_DEFECTO),
+                Configuracion.entero("carteles.espera", ESPERA_POR_DEFECTO));
+    }
+
+    /**
+     * ETag del cartel de una película; sirve para responder 304 sin cargarlo
+     */
+    public String etag(Pelicula pelicula) {
+        return "\"" + clave(pelicula) + "\"";
+    }
+
+    /**
+     * Devuelve el cartel reducido: de memoria, del disco o generándolo
+     *
+     * @param pelicula Película con su URL de poster
+     * @return Cartel listo para enviar
+     * @throws NoSuchFileException Si la película no tiene poster o no se encuentra en ningún origen
+     * @throws IOException Si falla la descarga o la imagen no se puede leer
+     */
+    public Cartel obtener(Pelicula pelicula) throws IOException {
+        String clave = clave(pelicula);
+
+        Cartel cartel = deMemoria(clave);
+        if (cartel != null) {
+            aciertosMemoria.increment();
+            return cartel;
+        }
+
+        Long fallo = fallidos.get(clave);
+        if (fallo != null) {
+            if (System.nanoTime() - fallo < REINTENTO_NANOS) {
+                throw new IOException("Cartel no disponible (falló hace poco): " + pelicula.id());
+            }
+            fallidos.remove(clave, fallo);
+        }
+
+        // La primera petición genera el cartel; las que llegan mientras tanto esperan su resultado
+        CompletableFuture<Cartel> nuevo = new CompletableFuture<>();
+        CompletableFuture<Cartel> existente = enCurso.putIfAbsent(clave, nuevo);
+        if (existente != null) {
+            return esperar(existente);
+        }
+
+        try {
+            cartel = cargar(pelicula, clave);
+            guardarEnMemoria(clave, cartel);
+            nuevo.complete(cartel);
+            return cartel;
+        } catch (IOException | RuntimeException e) {
+            fallos.increment();
+            fallidos.put(clave, System.nanoTime());
+            nuevo.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, nuevo);
+        }
+    }
+
+    // ========== CONTADORES ==========
+
+    /**
+     * @return Carteles servidos desde memoria
+     */
+    public long aciertosMemoria() {
+        return aciertosMemoria.sum();
+    }
+
+    /**
+     * @return Carteles leídos de la caché en disco
+     */
+    public long aciertosDisco() {
+        return aciertosDisco.sum();
+    }
+
+    /**
+     * @return Carteles obtenidos del origen y reducidos
+     */
+    public long generados() {
+        return generados.sum();
+    }
+
+    /**
+     * @return Carteles que no se pudieron obtener
+     */
+    public long fallos() {
+        return fallos.sum();
+    }
+
+    /**
+     * @return Bytes de carteles en memoria
+     */
+    public synchronized long memoria() {
+        return bytesMemoria;
+    }
+
+    // ========== CARGA ==========
+
+    private Cartel cargar(Pelicula pelicula, String clave) throws IOException {
+        String etag = "\"" + clave + "\"";
+        Path archivo = carpetaCache.resolve(clave + ".jpg");
+        try {
+            byte[] guardado = Files.readAllBytes(archivo);
+            aciertosDisco.increment();
+            return new Cartel(guardado, etag);
+        } catch (NoSuchFileException e) {
+            // Primera vez: se genera a partir del original
+        }
+
+        byte[] reducido = reducir(original(pelicula), ancho);
+        guardarEnDisco(archivo, reducido);
+        generados.increment();
+        return new Cartel(reducido, etag);
+    }
+
+    /**
+     * Bytes de la imagen original: carpeta de origen y, si no está, la red
+     */
+    private byte[] original(Pelicula pelicula) throws IOException {
+        String poster = pelicula.poster();
+        if (poster == null || poster.isBlank()) {
+            throw new NoSuchFileException("Película sin poster: " + pelicula.id());
+        }
+
+        if (carpetaOrigen != null) {
+            Path local = buscarLocal(pelicula.id(), poster);
+            if (local != null) {
+                if (Files.size(local) > ORIGINAL_MAXIMO) {
+                    throw new IOException("Cartel demasiado grande: " + local);
+                }
+                return Files.readAllBytes(local);
+            }
+        }
+
+        URI uri = uriRemota(poster);
+        if (cliente == null || uri == null) {
+            throw new NoSuchFileException("Cartel no disponible sin red: " + pelicula.id());
+        }
+        return descargar(uri);
+    }
+
+    private Path buscarLocal(int id, String poster) {
+        for (String extension : EXTENSIONES) {
+            Path candidato = carpetaOrigen.resolve(id + extension);
+            if (Files.isRegularFile(candidato)) {
+                return candidato;
+            }
+        }
+        // El nombre de archivo de la URL, sin query: ".../asterix-el-galo-dvd-.jpg"
+        String ruta = poster;
+        int fin = ruta.indexOf('?');
+        if (fin >= 0) {
+            ruta = ruta.substring(0, fin);
+        }
+        String nombre = ruta.substring(ruta.lastIndexOf('/') + 1);
+        if (nombre.isEmpty() || nombre.startsWith(".") || nombre.contains("\\")) {
+            return null;
+        }
+        Path candidato = carpetaOrigen.resolve(nombre);
+        return Files.isRegularFile(candidato) ? candidato : null;
+    }
+
+    private static URI uriRemota(String poster) {
+        String minusculas = poster.toLowerCase(Locale.ROOT);
+        if (!minusculas.startsWith("http://") && !minusculas.startsWith("https://")) {
+            return null;
+        }
+        try {
+            return URI.create(poster);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] descargar(URI uri) throws IOException {
+        HttpRequest peticion = HttpRequest.newBuilder(uri)
+                .timeout(espera)
+                .header("Accept", "image/jpeg, image/png, image/*;q=0.8")
+                .GET()
+                .build();
+        HttpResponse<InputStream> respuesta;
+        try {
+            respuesta = cliente.send(peticion, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Descarga interrumpida: " + uri);
+        }
+
+        try (InputStream cuerpo = respuesta.body()) {
+            if (respuesta.statusCode() != 200) {
+                throw new IOException("Descarga del cartel con código " + respuesta.statusCode() + ": " + uri);
+            }
+            byte[] datos = cuerpo.readNBytes(ORIGINAL_MAXIMO + 1);
+            if (datos.length > ORIGINAL_MAXIMO) {
+                throw new IOException("Cartel demasiado grande: " + uri);
+            }
+            return datos;
+        }
+    }
+
+    /**
+     * Reduce la imagen al ancho indicado (sin ampliar las pequeñas) y la
+     * codifica como JPEG
+     *
+     * Reducir de 1280 a 320 de una vez con interpolación bilineal pierde
+     * detalle y deja dientes de sierra; se reduce a la mitad mientras se pueda
+     * y el último paso ajusta al ancho exacto
+     *
+     * @throws IOException Si el formato no es legible por ImageIO
+     */
+    static byte[] reducir(byte[] original, int ancho) throws IOException {
+        BufferedImage imagen = ImageIO.read(new ByteArrayInputStream(original));
+        if (imagen == null) {
+            throw new IOException("Formato de imagen no soportado");
+        }
+
+        int anchoFinal = Math.min(ancho, imagen.getWidth());
+        int altoFinal = Math.max(1, (int) Math.round((double) imagen.getHeight() * anchoFinal / imagen.getWidth()));
+
+        // Cada paso dibuja en RGB: JPEG no admite transparencia y así se aplana sobre blanco
+        BufferedImage actual = imagen;
+        int anchoPaso = imagen.getWidth();
+        int altoPaso = imagen.getHeight();
+        do {
+            if (anchoPaso / 2 >= anchoFinal) {
+                anchoPaso /= 2;
+                altoPaso = Math.max(altoFinal, altoPaso / 2);
+            } else {
+                anchoPaso = anchoFinal;
+                altoPaso = altoFinal;
+            }
+            BufferedImage paso = new BufferedImage(anchoPaso, altoPaso, BufferedImage.TYPE_INT_RGB);
+            Graphics2D grafico = paso.createGraphics();
+            try {
+                grafico.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                grafico.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                grafico.drawImage(actual, 0, 0, anchoPaso, altoPaso, Color.WHITE, null);
+            } finally {
+                grafico.dispose();
+            }
+            actual = paso;
+        } while (anchoPaso != anchoFinal);
+
+        return codificarJpeg(actual);
+    }
+
+    private static byte[] codificarJpeg(BufferedImage imagen) throws IOException {
+        ImageWriter escritor = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream destino = new ByteArrayOutputStream(32 * 1024);
+        try (ImageOutputStream salida = ImageIO.createImageOutputStream(destino)) {
+            ImageWriteParam parametros = escritor.getDefaultWriteParam();
+            parametros.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parametros.setCompressionQuality(CALIDAD);
+            escritor.setOutput(salida);
+            escritor.write(null, new IIOImage(imagen, null, null), parametros);
+        } finally {
+            escritor.dispose();
+        }
+        return destino.toByteArray();
+    }
+
+    // ========== MEMORIA Y DISCO ==========
+
+    private synchronized Cartel deMemoria(String clave) {
+        return memoria.get(clave);
+    }
+
+    private synchronized void guardarEnMemoria(String clave, Cartel cartel) {
+        if (cartel.imagen().length > memoriaMaxima) {
+            return;
+        }
+        Cartel previo = memoria.put(clave, cartel);
+        bytesMemoria += cartel.imagen().length - (previo == null ? 0 : previo.imagen().length);
+
+        Iterator<Cartel> antiguos = memoria.values().iterator();
+        while (bytesMemoria > memoriaMaxima && antiguos.hasNext()) {
+            bytesMemoria -= antiguos.next().imagen().length;
+            antiguos.remove();
+        }
+    }
+
+    /**
+     * Escribe en un temporal y lo renombra: otra petición (u otro proceso)
+     * nunca lee un cartel a medio escribir
+     */
+    private void guardarEnDisco(Path archivo, byte[] imagen) {
+        try {
+            Files.createDirectories(carpetaCache);
+            Path temporal = Files.createTempFile(carpetaCache, "cartel", ".tmp");
+            try {
+                Files.write(temporal, imagen);
+                Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporal);
+            }
+        } catch (IOException e) {
+            // Sin disco el cartel se sirve igualmente desde memoria
+            System.out.println("Advertencia: no se pudo guardar el cartel " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    private String clave(Pelicula pelicula) {
+        String poster = pelicula.poster() == null ? "" : pelicula.poster();
+        return pelicula.id() + "-" + ancho + "-" + resumen(poster);
+    }
+
+    private static String resumen(String texto) {
+        try {
+            byte[] resumen = MessageDigest.getInstance("SHA-256").digest(texto.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(Arrays.copyOf(resumen, 8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible en esta JVM", e);
+        }
+    }
+
+    private static Cartel esperar(CompletableFuture<Cartel> futuro) throws IOException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Espera del cartel interrumpida");
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("No se pudo obtener el cartel", causa);
+        }
+    }
+}
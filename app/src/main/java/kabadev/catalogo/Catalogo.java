@@ -0,0 +1,290 @@
+package kabadev.catalogo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Instantánea inmutable del catálogo de películas con sus índices
+ *
+ * Se construye una vez a partir de asterix.json y mantiene:
+ * - Índice por id (acceso directo para /stream y /poster)
+ * - Índice por año (posiciones de las películas de cada año)
+ * - Índice por palabra del título, ordenado para buscar por prefijo
+ * - Índice de trigramas de título y año para la búsqueda aproximada
+ * - Caché de respuestas JSON ya serializadas por forma de consulta
+ *
+ * Las posiciones guardadas en los índices son las de la lista original, así
+ * que los resultados conservan el orden del archivo
+ */
+public final class Catalogo {
+
+    /**
+     * ObjectMapper compartido: es seguro entre hilos una vez configurado
+     * Rechaza contenido tras el array para no aceptar un archivo a medio guardar
+     */
+    static final ObjectMapper JSON = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(DeserializationFeature.FAIL_ON_TRAILING_TOKENS, true);
+
+    /** Máximo de respuestas serializadas que se guardan */
+    private static final int MAXIMO_RESPUESTAS = 512;
+
+    private static final int[] VACIO = new int[0];
+
+    private final List<Pelicula> peliculas;
+    private final Map<Integer, Pelicula> porId;
+    private final NavigableMap<Integer, int[]> porAnio;
+    private final NavigableMap<String, int[]> porPalabra;
+    private final IndiceTrigramas trigramas;
+    private final Map<ConsultaCatalogo, RespuestaCatalogo> respuestas = new ConcurrentHashMap<>();
+
+    /**
+     * Respuesta de una consulta ya serializada a JSON
+     *
+     * @param json Bytes del array JSON de la página pedida
+     * @param total Número total de coincidencias (sin paginar)
+     */
+    public record RespuestaCatalogo(byte[] json, int total) {
+    }
+
+    /**
+     * Sugerencia de autocompletado: lo justo para pintar la lista
+     */
+    record Sugerencia(@JsonProperty("id") int id, @JsonProperty("title") String titulo,
+            @JsonProperty("year") int anio) {
+    }
+
+    private Catalogo(List<Pelicula> peliculas) {
+        this.peliculas = List.copyOf(peliculas);
+
+        Map<Integer, Pelicula> ids = new HashMap<>();
+        Map<Integer, List<Integer>> anios = new HashMap<>();
+        Map<String, List<Integer>> palabras = new HashMap<>();
+        List<String> textos = new ArrayList<>(this.peliculas.size());
+
+        for (int posicion = 0; posicion < this.peliculas.size(); posicion++) {
+            Pelicula pelicula = this.peliculas.get(posicion);
+
+            // Con ids repetidos el índice se queda con la primera; la película sigue listada y buscable
+            if (ids.putIfAbsent(pelicula.id(), pelicula) != null) {
+                System.err.println("Aviso: id de película duplicado en el catálogo: " + pelicula.id()
+                        + " (" + pelicula.titulo() + ")");
+            }
+
+            anios.computeIfAbsent(pelicula.anio(), clave -> new ArrayList<>()).add(posicion);
+
+            if (pelicula.titulo() != null) {
+                for (String palabra : palabras(ConsultaCatalogo.normalizar(pelicula.titulo()))) {
+                    List<Integer> lista = palabras.computeIfAbsent(palabra, clave -> new ArrayList<>());
+                    // Una palabra repetida en el mismo título solo cuenta una vez
+                    if (lista.isEmpty() || lista.get(lista.size() - 1) != posicion) {
+                        lista.add(posicion);
+                    }
+                }
+            }
+
+            String titulo = pelicula.titulo() == null ? "" : ConsultaCatalogo.normalizar(pelicula.titulo());
+            textos.add(titulo + " " + pelicula.anio());
+        }
+
+        this.porId = Map.copyOf(ids);
+        this.porAnio = Collections.unmodifiableNavigableMap(aArrays(anios));
+        this.porPalabra = Collections.unmodifiableNavigableMap(aArrays(palabras));
+        this.trigramas = new IndiceTrigramas(textos);
+    }
+
+    /**
+     * Analiza un JSON con el formato de asterix.json
+     *
+     * @param entrada Flujo con el array JSON (no se cierra)
+     * @return Catálogo indexado
+     * @throws IOException Si el JSON es inválido
+     */
+    public static Catalogo desdeJson(InputStream entrada) throws IOException {
+        List<Pelicula> peliculas = JSON.readValue(entrada, new TypeReference<List<Pelicula>>() { });
+        return new Catalogo(peliculas == null ? List.of() : peliculas);
+    }
+
+    /**
+     * @return Todas las películas en el orden del archivo
+     */
+    public List<Pelicula> peliculas() {
+        return peliculas;
+    }
+
+    /**
+     * @return La película con ese id, o null si no existe
+     */
+    public Pelicula buscarPorId(int id) {
+        return porId.get(id);
+    }
+
+    /**
+     * Devuelve la respuesta JSON de una consulta, serializándola solo la primera vez
+     *
+     * @param consulta Parámetros normalizados de la consulta
+     * @return Bytes JSON y total de coincidencias
+     * @throws IOException Si falla la serialización
+     */
+    public RespuestaCatalogo responder(ConsultaCatalogo consulta) throws IOException {
+        RespuestaCatalogo respuesta = respuestas.get(consulta);
+        if (respuesta != null) {
+            return respuesta;
+        }
+
+        int[] coincidencias = buscar(consulta);
+        int desde = consulta.sinPaginar() ? 0 : (int) Math.min((long) consulta.pagina() * consulta.tamano(),
+                coincidencias.length);
+        int hasta = consulta.sinPaginar() ? coincidencias.length : Math.min(desde + consulta.tamano(),
+                coincidencias.length);
+
+        List<Pelicula> pagina = new ArrayList<>(hasta - desde);
+        for (int i = desde; i < hasta; i++) {
+            pagina.add(peliculas.get(coincidencias[i]));
+        }
+
+        respuesta = new RespuestaCatalogo(JSON.writeValueAsBytes(pagina), coincidencias.length);
+
+        // Caché acotada: si se llena (consultas de texto muy variadas) se empieza de nuevo
+        if (respuestas.size() >= MAXIMO_RESPUESTAS) {
+            respuestas.clear();
+        }
+        respuestas.put(consulta, respuesta);
+        return respuesta;
+    }
+
+    /**
+     * Búsqueda aproximada por título y año (/search)
+     * No distingue tildes ni mayúsculas y tolera erratas; no se cachea porque el
+     * texto libre casi nunca se repite y el índice responde en microsegundos
+     *
+     * @param texto Texto tal y como lo escribió el usuario
+     * @param maximo Películas a devolver como mucho
+     * @return Las películas de más a menos parecida y el total de coincidencias
+     * @throws IOException Si falla la serialización
+     */
+    public RespuestaCatalogo responderBusqueda(String texto, int maximo) throws IOException {
+        IndiceTrigramas.Aciertos aciertos = trigramas.buscar(ConsultaCatalogo.normalizar(texto), false, maximo);
+        List<Pelicula> lista = new ArrayList<>(aciertos.posiciones().length);
+        for (int posicion : aciertos.posiciones()) {
+            lista.add(peliculas.get(posicion));
+        }
+        return new RespuestaCatalogo(JSON.writeValueAsBytes(lista), aciertos.total());
+    }
+
+    /**
+     * Autocompletado (/suggest): como responderBusqueda pero con la última
+     * palabra a medio escribir y solo id, título y año de cada película
+     *
+     * @param texto Texto tal y como lo escribió el usuario
+     * @param maximo Sugerencias a devolver como mucho
+     * @return Las sugerencias de más a menos parecida y el total de coincidencias
+     * @throws IOException Si falla la serialización
+     */
+    public RespuestaCatalogo responderSugerencias(String texto, int maximo) throws IOException {
+        IndiceTrigramas.Aciertos aciertos = trigramas.buscar(ConsultaCatalogo.normalizar(texto), true, maximo);
+        List<Sugerencia> lista = new ArrayList<>(aciertos.posiciones().length);
+        for (int posicion : aciertos.posiciones()) {
+            Pelicula pelicula = peliculas.get(posicion);
+            lista.add(new Sugerencia(pelicula.id(), pelicula.titulo(), pelicula.anio()));
+        }
+        return new RespuestaCatalogo(JSON.writeValueAsBytes(lista), aciertos.total());
+    }
+
+    /**
+     * Posiciones (ordenadas) de las películas que cumplen los filtros
+     */
+    int[] buscar(ConsultaCatalogo consulta) {
+        int[] resultado = null;
+
+        if (consulta.anio() != null) {
+            resultado = porAnio.getOrDefault(consulta.anio(), VACIO);
+        }
+
+        if (consulta.texto() != null) {
+            // Cada palabra de la consulta debe ser prefijo de alguna palabra del título
+            for (String palabra : palabras(consulta.texto())) {
+                int[] conPrefijo = unir(porPalabra.subMap(palabra, true, palabra + Character.MAX_VALUE, true)
+                        .values());
+                resultado = resultado == null ? conPrefijo : intersecar(resultado, conPrefijo);
+            }
+        }
+
+        if (resultado == null) {
+            resultado = new int[peliculas.size()];
+            for (int i = 0; i < resultado.length; i++) {
+                resultado[i] = i;
+            }
+        }
+        return resultado;
+    }
+
+    // ========== UTILIDADES DE ÍNDICES ==========
+
+    private static List<String> palabras(String texto) {
+        List<String> resultado = new ArrayList<>();
+        for (String palabra : texto.split("[^\\p{L}\\p{N}]+")) {
+            if (!palabra.isEmpty()) {
+                resultado.add(palabra);
+            }
+        }
+        return resultado;
+    }
+
+    private static <K extends Comparable<K>> NavigableMap<K, int[]> aArrays(Map<K, List<Integer>> origen) {
+        NavigableMap<K, int[]> destino = new TreeMap<>();
+        origen.forEach((clave, lista) -> destino.put(clave, lista.stream().mapToInt(Integer::intValue).toArray()));
+        return destino;
+    }
+
+    /**
+     * Une listas de posiciones en una sola ordenada y sin duplicados
+     * Un BitSet evita mezclar las listas de dos en dos con prefijos muy comunes
+     */
+    private static int[] unir(Iterable<int[]> listas) {
+        BitSet posiciones = new BitSet();
+        for (int[] lista : listas) {
+            for (int posicion : lista) {
+                posiciones.set(posicion);
+            }
+        }
+        return posiciones.stream().toArray();
+    }
+
+    /**
+     * Intersección de dos listas de posiciones ordenadas
+     */
+    private static int[] intersecar(int[] a, int[] b) {
+        int[] resultado = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                resultado[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(resultado, k);
+    }
+}
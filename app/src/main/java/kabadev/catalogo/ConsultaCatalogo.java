@@ -0,0 +1,57 @@
+package kabadev.catalogo;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Forma de una consulta al catálogo (/video?page=&size=&year=&q=)
+ *
+ * Es la clave de la caché de respuestas serializadas: dos peticiones con los
+ * mismos parámetros normalizados comparten los mismos bytes JSON
+ *
+ * @param pagina Página empezando en 0
+ * @param tamano Películas por página (0 = todas las que coincidan, sin paginar)
+ * @param anio Año exacto a filtrar, o null
+ * @param texto Prefijo de título normalizado, o null
+ */
+public record ConsultaCatalogo(int pagina, int tamano, Integer anio, String texto) {
+
+    /** Tamaño de página si se pide paginar sin indicar size */
+    public static final int TAMANO_POR_DEFECTO = 24;
+
+    /** Tamaño de página máximo que se acepta */
+    public static final int TAMANO_MAXIMO = 100;
+
+    /** Consulta sin parámetros: todo el catálogo, como antes de paginar */
+    public static final ConsultaCatalogo COMPLETA = new ConsultaCatalogo(0, 0, null, null);
+
+    /** Marcas diacríticas que deja sueltas la descomposición NFD (tildes, diéresis...) */
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+
+    public ConsultaCatalogo {
+        if (pagina < 0) {
+            throw new IllegalArgumentException("La página no puede ser negativa: " + pagina);
+        }
+        if (tamano < 0 || tamano > TAMANO_MAXIMO) {
+            throw new IllegalArgumentException("Tamaño de página fuera de rango (1-" + TAMANO_MAXIMO + "): " + tamano);
+        }
+        texto = texto == null || texto.isBlank() ? null : normalizar(texto);
+    }
+
+    /**
+     * @return true si la consulta devuelve todas las coincidencias sin paginar
+     */
+    public boolean sinPaginar() {
+        return tamano == 0;
+    }
+
+    /**
+     * Normalización usada tanto al indexar títulos como al consultar
+     * Sin tildes ni mayúsculas: "ASTERIX" y "astérix" son la misma palabra
+     */
+    static String normalizar(String texto) {
+        String sinTildes = DIACRITICOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return sinTildes.trim().toLowerCase(Locale.ROOT);
+    }
+}
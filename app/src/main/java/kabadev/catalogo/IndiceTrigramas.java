@@ -0,0 +1,296 @@
+package kabadev.catalogo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Índice invertido de trigramas para la búsqueda aproximada (/search y /suggest)
+ *
+ * Cada película se indexa por los trigramas de su título normalizado (sin tildes
+ * ni mayúsculas) y de su año. Cada palabra se rodea de espacios: " as" solo sale
+ * al principio de una palabra y "ix " al final, así que los comienzos y finales
+ * de palabra pesan más que una coincidencia suelta en medio
+ *
+ * Las listas de posiciones se guardan en arrays primitivos, sin colecciones:
+ * - claves: trigramas ordenados, tres char de 16 bits empaquetados en un long
+ * - inicios: dónde empieza en posiciones la lista de cada clave
+ * - posiciones: todas las listas seguidas, cada una en orden creciente
+ * Una consulta es una búsqueda binaria por trigrama y un recorrido de arrays
+ *
+ * Puntuación: trigramas de la consulta que tiene la película. Una errata solo
+ * estropea los trigramas que la tocan, así que "asterx" o "cleopatar" siguen
+ * encontrando su película. A igualdad gana la que tiene menos trigramas de
+ * sobra (el título más parecido) y después el orden del archivo
+ *
+ * Inmutable: se construye junto con su Catalogo y se publica con él. Los
+ * contadores de cada consulta salen de un pequeño pool de borradores: con hilos
+ * virtuales (uno por petición) un ThreadLocal volvería a reservarlos cada vez
+ */
+final class IndiceTrigramas {
+
+    /** Fracción mínima de los trigramas de la consulta que debe tener una película */
+    private static final double COBERTURA_MINIMA = 0.5;
+
+    /** Bits de la clave de orden reservados a la posición (16 millones de películas) */
+    private static final int BITS_POSICION = 24;
+    private static final long MASCARA_POSICION = (1L << BITS_POSICION) - 1;
+    private static final long MASCARA_SOBRANTES = (1L << 24) - 1;
+
+    /** Borradores que se conservan para las consultas siguientes */
+    private static final int BORRADORES = 16;
+
+    private static final int[] VACIO = new int[0];
+
+    private final long[] claves;
+    private final int[] inicios;
+    private final int[] posiciones;
+    private final int[] trigramasPorPelicula;
+    private final AtomicReferenceArray<Borrador> borradores = new AtomicReferenceArray<>(BORRADORES);
+
+    /**
+     * Contadores de una consulta, uno por película
+     * comunes vuelve a quedar a cero (solo en las tocadas) antes de devolverlo
+     */
+    private static final class Borrador {
+        final int[] comunes;
+        final int[] tocadas;
+
+        Borrador(int peliculas) {
+            comunes = new int[peliculas];
+            tocadas = new int[peliculas];
+        }
+    }
+
+    /**
+     * Resultado de una búsqueda
+     *
+     * @param posiciones Posiciones en el catálogo de las mejores coincidencias, de más a menos parecida
+     * @param total Películas que superan la cobertura mínima (sin recortar al máximo)
+     */
+    record Aciertos(int[] posiciones, int total) {
+    }
+
+    /**
+     * @param textos Texto normalizado de cada película, en el orden del catálogo
+     */
+    IndiceTrigramas(List<String> textos) {
+        int peliculas = textos.size();
+        if (peliculas > MASCARA_POSICION) {
+            throw new IllegalArgumentException("Demasiadas películas para el índice de trigramas: " + peliculas);
+        }
+
+        long[][] porPelicula = new long[peliculas][];
+        int total = 0;
+        for (int i = 0; i < peliculas; i++) {
+            porPelicula[i] = trigramas(textos.get(i), false);
+            total += porPelicula[i].length;
+        }
+
+        // Claves: todos los trigramas distintos, ordenados
+        long[] todas = new long[total];
+        int k = 0;
+        trigramasPorPelicula = new int[peliculas];
+        for (int i = 0; i < peliculas; i++) {
+            System.arraycopy(porPelicula[i], 0, todas, k, porPelicula[i].length);
+            k += porPelicula[i].length;
+            trigramasPorPelicula[i] = porPelicula[i].length;
+        }
+        claves = distintas(todas, total);
+
+        // Tamaño de cada lista y, sumando, dónde empieza cada una
+        inicios = new int[claves.length + 1];
+        for (long[] propios : porPelicula) {
+            for (long trigrama : propios) {
+                inicios[Arrays.binarySearch(claves, trigrama) + 1]++;
+            }
+        }
+        for (int i = 1; i < inicios.length; i++) {
+            inicios[i] += inicios[i - 1];
+        }
+
+        // Se recorren las películas en orden, así cada lista queda ordenada
+        posiciones = new int[total];
+        int[] siguiente = Arrays.copyOf(inicios, claves.length);
+        for (int i = 0; i < peliculas; i++) {
+            for (long trigrama : porPelicula[i]) {
+                posiciones[siguiente[Arrays.binarySearch(claves, trigrama)]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Busca las películas más parecidas a un texto ya normalizado
+     *
+     * @param texto Consulta normalizada con ConsultaCatalogo.normalizar
+     * @param prefijo true si la última palabra está a medio escribir (autocompletado):
+     *                no se le añade el espacio final, "aste" encuentra "asterix"
+     * @param maximo Posiciones a devolver como mucho
+     * @return Posiciones ordenadas por parecido y total de coincidencias
+     */
+    Aciertos buscar(String texto, boolean prefijo, int maximo) {
+        long[] consulta = trigramas(texto, prefijo);
+        if (consulta.length == 0 || maximo < 1) {
+            return new Aciertos(VACIO, 0);
+        }
+
+        // Solo vuelve al pool si puntuar terminó y dejó comunes a cero
+        Borrador borrador = tomarBorrador();
+        Aciertos aciertos = puntuar(consulta, maximo, borrador);
+        devolverBorrador(borrador);
+        return aciertos;
+    }
+
+    private Aciertos puntuar(long[] consulta, int maximo, Borrador borrador) {
+        // Trigramas en común con cada película; tocadas evita recorrer todo el catálogo después
+        int[] comunes = borrador.comunes;
+        int[] tocadas = borrador.tocadas;
+        int numTocadas = 0;
+        for (long trigrama : consulta) {
+            int clave = Arrays.binarySearch(claves, trigrama);
+            if (clave < 0) {
+                continue;
+            }
+            for (int p = inicios[clave]; p < inicios[clave + 1]; p++) {
+                int posicion = posiciones[p];
+                if (comunes[posicion]++ == 0) {
+                    tocadas[numTocadas++] = posicion;
+                }
+            }
+        }
+
+        // Clave de orden en un long: trigramas que faltan, trigramas de sobra y posición
+        // Solo se guardan las maximo menores en un montículo, sin ordenar todas las coincidencias
+        int minimo = (int) Math.ceil(consulta.length * COBERTURA_MINIMA);
+        long[] monticulo = new long[Math.min(maximo, numTocadas)];
+        int enMonticulo = 0;
+        int total = 0;
+        for (int i = 0; i < numTocadas; i++) {
+            int posicion = tocadas[i];
+            int enComun = comunes[posicion];
+            comunes[posicion] = 0;
+            if (enComun < minimo) {
+                continue;
+            }
+            total++;
+            long faltan = consulta.length - enComun;
+            long sobran = Math.min(trigramasPorPelicula[posicion] - enComun, MASCARA_SOBRANTES);
+            long orden = faltan << 48 | sobran << BITS_POSICION | posicion;
+            if (enMonticulo < monticulo.length) {
+                subir(monticulo, enMonticulo++, orden);
+            } else if (orden < monticulo[0]) {
+                bajar(monticulo, enMonticulo, orden);
+            }
+        }
+        Arrays.sort(monticulo, 0, enMonticulo);
+
+        int[] mejores = new int[enMonticulo];
+        for (int i = 0; i < enMonticulo; i++) {
+            mejores[i] = (int) (monticulo[i] & MASCARA_POSICION);
+        }
+        return new Aciertos(mejores, total);
+    }
+
+    // ========== BORRADORES ==========
+
+    private Borrador tomarBorrador() {
+        for (int i = 0; i < BORRADORES; i++) {
+            Borrador borrador = borradores.getAndSet(i, null);
+            if (borrador != null) {
+                return borrador;
+            }
+        }
+        return new Borrador(trigramasPorPelicula.length);
+    }
+
+    /**
+     * Si todos los huecos están ocupados el borrador se descarta
+     */
+    private void devolverBorrador(Borrador borrador) {
+        for (int i = 0; i < BORRADORES; i++) {
+            if (borradores.compareAndSet(i, null, borrador)) {
+                return;
+            }
+        }
+    }
+
+    // ========== MONTÍCULO DE MÁXIMOS SOBRE long[] ==========
+
+    /**
+     * Añade un valor en la posición i y lo sube hasta su sitio
+     */
+    private static void subir(long[] monticulo, int i, long valor) {
+        while (i > 0) {
+            int padre = (i - 1) >>> 1;
+            if (monticulo[padre] >= valor) {
+                break;
+            }
+            monticulo[i] = monticulo[padre];
+            i = padre;
+        }
+        monticulo[i] = valor;
+    }
+
+    /**
+     * Sustituye la raíz (el mayor) por un valor y lo baja hasta su sitio
+     */
+    private static void bajar(long[] monticulo, int tamano, long valor) {
+        int i = 0;
+        while (true) {
+            int hijo = 2 * i + 1;
+            if (hijo >= tamano) {
+                break;
+            }
+            if (hijo + 1 < tamano && monticulo[hijo + 1] > monticulo[hijo]) {
+                hijo++;
+            }
+            if (monticulo[hijo] <= valor) {
+                break;
+            }
+            monticulo[i] = monticulo[hijo];
+            i = hijo;
+        }
+        monticulo[i] = valor;
+    }
+
+    /**
+     * Trigramas distintos y ordenados de un texto normalizado
+     * Con prefijo la última palabra no lleva espacio final; si se queda en menos
+     * de tres caracteres (" a") no aporta ninguno
+     */
+    static long[] trigramas(String texto, boolean prefijo) {
+        String[] palabras = texto.split("[^\\p{L}\\p{N}]+");
+        long[] resultado = new long[texto.length() + 2 * palabras.length];
+        int n = 0;
+        StringBuilder rodeada = new StringBuilder();
+        for (int w = 0; w < palabras.length; w++) {
+            if (palabras[w].isEmpty()) {
+                continue;
+            }
+            rodeada.setLength(0);
+            rodeada.append(' ').append(palabras[w]);
+            if (!prefijo || w < palabras.length - 1) {
+                rodeada.append(' ');
+            }
+            for (int i = 0; i + 3 <= rodeada.length(); i++) {
+                resultado[n++] = (long) rodeada.charAt(i) << 32 | (long) rodeada.charAt(i + 1) << 16
+                        | rodeada.charAt(i + 2);
+            }
+        }
+        return distintas(resultado, n);
+    }
+
+    /**
+     * Ordena los n primeros valores y quita los repetidos
+     */
+    private static long[] distintas(long[] valores, int n) {
+        Arrays.sort(valores, 0, n);
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (k == 0 || valores[i] != valores[k - 1]) {
+                valores[k++] = valores[i];
+            }
+        }
+        return Arrays.copyOf(valores, k);
+    }
+}
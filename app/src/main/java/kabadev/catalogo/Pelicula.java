@@ -0,0 +1,24 @@
+package kabadev.catalogo;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Película del catálogo tal y como aparece en asterix.json
+ *
+ * Los nombres JSON se mantienen en inglés para no romper el frontend
+ *
+ * @param id Identificador único de la película
+ * @param titulo Título para mostrar
+ * @param anio Año de estreno
+ * @param duracion Duración en minutos
+ * @param poster URL del cartel
+ * @param videoUrl Ruta del archivo MP4 en el servidor
+ */
+public record Pelicula(
+        @JsonProperty("id") int id,
+        @JsonProperty("title") String titulo,
+        @JsonProperty("year") int anio,
+        @JsonProperty("duration") int duracion,
+        @JsonProperty("poster") String poster,
+        @JsonProperty("videoUrl") String videoUrl) {
+}
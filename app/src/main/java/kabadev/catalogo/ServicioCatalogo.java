@@ -0,0 +1,212 @@
+package kabadev.catalogo;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Punto de acceso al catálogo de películas
+ *
+ * Dos modos de carga:
+ * - Classpath (por defecto): asterix.json incluido en el jar, se lee una vez
+ * - Archivo externo (-Ddogster.catalogo=/ruta/catalogo.json): se vigila con un
+ *   WatchService y cada cambio reconstruye el catálogo en segundo plano
+ *
+ * El catálogo nuevo se construye completo (JSON, índices) antes de publicarse
+ * con un único set sobre la AtomicReference, así que una petición en curso
+ * sigue trabajando con la instantánea que leyó y nunca ve un estado a medias.
+ * Si el archivo nuevo no es válido se conserva el catálogo anterior
+ */
+public final class ServicioCatalogo implements AutoCloseable {
+
+    /** Catálogo incluido en el jar */
+    static final String RECURSO = "asterix.json";
+
+    /** Espera sin eventos nuevos antes de recargar (los editores escriben en varias pasadas) */
+    private static final long ESPERA_ESTABLE_MS = 300;
+
+    private final AtomicReference<Catalogo> actual;
+    private final Path archivo;
+    private volatile WatchService vigilante;
+
+    private ServicioCatalogo(Catalogo inicial, Path archivo) {
+        this.actual = new AtomicReference<>(inicial);
+        this.archivo = archivo;
+    }
+
+    /**
+     * Crea el servicio según la configuración
+     * Con dogster.catalogo definido carga ese archivo y empieza a vigilarlo
+     *
+     * @return Servicio listo para consultar
+     * @throws IOException Si el catálogo inicial no se puede leer
+     */
+    public static ServicioCatalogo desdeConfiguracion() throws IOException {
+        Path ruta = Configuracion.ruta("catalogo");
+        if (ruta == null) {
+            return cargarDesdeClasspath();
+        }
+        ServicioCatalogo servicio = cargarDesdeArchivo(ruta);
+        servicio.vigilar();
+        return servicio;
+    }
+
+    /**
+     * Carga el catálogo incluido en el classpath
+     *
+     * @return Servicio listo para consultar
+     * @throws IOException Si el recurso no existe o el JSON es inválido
+     */
+    public static ServicioCatalogo cargarDesdeClasspath() throws IOException {
+        try (InputStream entrada = ServicioCatalogo.class.getClassLoader().getResourceAsStream(RECURSO)) {
+            if (entrada == null) {
+                throw new IOException("Archivo " + RECURSO + " no encontrado en el classpath");
+            }
+            return new ServicioCatalogo(Catalogo.desdeJson(entrada), null);
+        }
+    }
+
+    /**
+     * Carga el catálogo desde un archivo externo (sin vigilarlo todavía)
+     *
+     * @param archivo Ruta del JSON con el formato de asterix.json
+     * @return Servicio listo para consultar
+     * @throws IOException Si el archivo no existe o el JSON es inválido
+     */
+    public static ServicioCatalogo cargarDesdeArchivo(Path archivo) throws IOException {
+        Path absoluto = archivo.toAbsolutePath().normalize();
+        return new ServicioCatalogo(leer(absoluto), absoluto);
+    }
+
+    /**
+     * @return Instantánea actual del catálogo
+     */
+    public Catalogo actual() {
+        return actual.get();
+    }
+
+    /**
+     * @return Archivo externo del catálogo, o null si viene del classpath
+     */
+    public Path archivo() {
+        return archivo;
+    }
+
+    // ========== RECARGA ==========
+
+    /**
+     * Vuelve a leer el archivo externo y publica el catálogo nuevo
+     *
+     * @return true si se publicó un catálogo nuevo
+     */
+    public synchronized boolean recargar() {
+        if (archivo == null) {
+            return false;
+        }
+
+        try {
+            Catalogo nuevo = leer(archivo);
+            actual.set(nuevo);
+            System.out.println("Catálogo recargado: " + nuevo.peliculas().size() + " películas desde " + archivo);
+            return true;
+
+        } catch (IOException | RuntimeException e) {
+            // Archivo a medio escribir o inválido: se mantiene el catálogo que ya funciona
+            System.err.println("No se pudo recargar el catálogo (se mantiene el anterior): " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Arranca un hilo en segundo plano que recarga el catálogo cuando cambia el archivo
+     * Se vigila la carpeta porque muchos editores guardan con "escribir temporal + renombrar"
+     *
+     * @throws IOException Si no se puede registrar el WatchService
+     */
+    public synchronized void vigilar() throws IOException {
+        if (archivo == null || vigilante != null) {
+            return;
+        }
+
+        WatchService servicio = archivo.getFileSystem().newWatchService();
+        archivo.getParent().register(servicio, ENTRY_CREATE, ENTRY_MODIFY);
+        vigilante = servicio;
+
+        Thread hilo = new Thread(() -> bucleVigilancia(servicio), "dogster-catalogo");
+        hilo.setDaemon(true);
+        hilo.start();
+        System.out.println("Vigilando cambios en el catálogo " + archivo);
+    }
+
+    private void bucleVigilancia(WatchService servicio) {
+        Path nombre = archivo.getFileName();
+        try {
+            while (true) {
+                WatchKey clave = servicio.take();
+                boolean afectado = hayCambio(clave, nombre);
+
+                // Agrupa la ráfaga de eventos de un mismo guardado antes de leer el archivo
+                while (afectado) {
+                    WatchKey siguiente = servicio.poll(ESPERA_ESTABLE_MS, TimeUnit.MILLISECONDS);
+                    if (siguiente == null) {
+                        break;
+                    }
+                    hayCambio(siguiente, nombre);
+                }
+
+                if (afectado) {
+                    recargar();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // close() o apagado de la JVM
+        }
+    }
+
+    /**
+     * Consume los eventos de una clave y la rearma
+     *
+     * @return true si alguno afecta al archivo del catálogo
+     */
+    private static boolean hayCambio(WatchKey clave, Path nombre) {
+        boolean afectado = false;
+        for (WatchEvent<?> evento : clave.pollEvents()) {
+            if (evento.kind() == OVERFLOW || nombre.equals(evento.context())) {
+                afectado = true;
+            }
+        }
+        clave.reset();
+        return afectado;
+    }
+
+    /**
+     * Deja de vigilar el archivo (el catálogo actual sigue disponible)
+     */
+    @Override
+    public void close() throws IOException {
+        WatchService servicio = vigilante;
+        vigilante = null;
+        if (servicio != null) {
+            servicio.close();
+        }
+    }
+
+    private static Catalogo leer(Path archivo) throws IOException {
+        try (InputStream entrada = Files.newInputStream(archivo)) {
+            return Catalogo.desdeJson(entrada);
+        }
+    }
+}
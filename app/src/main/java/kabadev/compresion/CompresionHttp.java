@@ -0,0 +1,232 @@
+package kabadev.compresion;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.Headers;
+
+import kabadev.configuracion.Configuracion;
+import kabadev.servidor.IControladorHttp;
+import kabadev.servidor.Middleware;
+
+/**
+ * Compresión de las respuestas dinámicas (/video, /metrics, errores largos)
+ *
+ * Middleware que negocia Accept-Encoding y, si el cliente acepta gzip o
+ * deflate, entrega al controlador un IntercambioComprimido. La decisión final
+ * se toma al enviar las cabeceras; se comprime solo si:
+ * - El código es 200 y la respuesta tiene cuerpo
+ * - El tipo es texto (text/*, JSON, JavaScript, XML, SVG): vídeo e imágenes
+ *   ya van comprimidos y además mantienen Content-Length, Range y sendfile
+ * - La longitud declarada llega a dogster.compresion.minimo (1 KB por
+ *   defecto) o es desconocida (chunked)
+ * - No lleva ya Content-Encoding (los estáticos precomprimidos de
+ *   CacheRecursosEstaticos salen tal cual)
+ *
+ * El cuerpo se comprime al vuelo y sale chunked, sin acumularlo en memoria,
+ * con Deflaters reutilizados de un pool (PoolCompresores)
+ *
+ * Configuración: dogster.compresion (true), .minimo (bytes), .nivel (1-9,
+ * 6 por defecto) y .pool (compresores libres por formato)
+ */
+public final class CompresionHttp implements Middleware {
+
+    private static final int MINIMO_POR_DEFECTO = 1024;
+    private static final int NIVEL_POR_DEFECTO = 6;
+    private static final int BUFFER = 8 * 1024;
+
+    /** Máximo de valores distintos de Accept-Encoding que se recuerdan */
+    private static final int MAXIMO_PREFERENCIAS = 64;
+
+    private static final int IDENTIDAD = 0;
+    private static final int GZIP = 1;
+    private static final int DEFLATE = 2;
+
+    private final boolean activa;
+    private final long minimo;
+    private final PoolCompresores pool;
+    private final Map<String, Integer> formatos = new ConcurrentHashMap<>();
+    private final LongAdder respuestas = new LongAdder();
+    private final LongAdder bytesOriginales = new LongAdder();
+    private final LongAdder bytesComprimidos = new LongAdder();
+
+    /**
+     * @param activa false = el middleware no envuelve nada
+     * @param minimo Bytes a partir de los que se comprime una respuesta de longitud conocida
+     * @param nivel Nivel de compresión de Deflater (1-9)
+     * @param capacidadPool Compresores libres que se guardan por formato
+     */
+    public CompresionHttp(boolean activa, long minimo, int nivel, int capacidadPool) {
+        if (nivel < 1 || nivel > 9) {
+            throw new IllegalArgumentException("Nivel de compresión fuera de 1-9: " + nivel);
+        }
+        if (capacidadPool < 1) {
+            throw new IllegalArgumentException("El pool de compresores necesita al menos 1 hueco: " + capacidadPool);
+        }
+        this.activa = activa;
+        this.minimo = Math.max(0, minimo);
+        this.pool = new PoolCompresores(nivel, capacidadPool, BUFFER);
+    }
+
+    /**
+     * Crea la compresión con -Ddogster.compresion, .minimo, .nivel y .pool
+     */
+    public static CompresionHttp desdeConfiguracion() {
+        return new CompresionHttp(Configuracion.booleano("compresion", true),
+                Configuracion.largo("compresion.minimo", MINIMO_POR_DEFECTO),
+                Configuracion.entero("compresion.nivel", NIVEL_POR_DEFECTO),
+                Configuracion.entero("compresion.pool", 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    // ========== MIDDLEWARE ==========
+
+    @Override
+    public IControladorHttp envolver(String patron, IControladorHttp siguiente) {
+        if (!activa) {
+            return siguiente;
+        }
+        return intercambio -> {
+            int formato = "HEAD".equals(intercambio.getRequestMethod()) ? IDENTIDAD
+                    : elegirFormato(intercambio.getRequestHeaders().getFirst("Accept-Encoding"));
+            // Sin gzip ni deflate aceptados no se crea el envoltorio
+            if (formato == IDENTIDAD) {
+                siguiente.controlar(intercambio);
+            } else {
+                siguiente.controlar(new IntercambioComprimido(intercambio, this, formato == GZIP));
+            }
+        };
+    }
+
+    /**
+     * Decide, al enviar las cabeceras, si la respuesta se comprime
+     */
+    boolean comprimible(int codigo, long longitud, Headers cabeceras) {
+        if (codigo != 200 || longitud < 0 || (longitud > 0 && longitud < minimo)) {
+            return false;
+        }
+        if (cabeceras.containsKey("Content-Encoding")) {
+            return false;
+        }
+        return tipoComprimible(cabeceras.getFirst("Content-Type"));
+    }
+
+    /**
+     * @return true para texto, JSON, JavaScript, XML y SVG
+     */
+    static boolean tipoComprimible(String tipo) {
+        if (tipo == null) {
+            return false;
+        }
+        int fin = tipo.indexOf(';');
+        String base = (fin < 0 ? tipo : tipo.substring(0, fin)).trim().toLowerCase(Locale.ROOT);
+        return base.startsWith("text/")
+                || base.equals("application/json")
+                || base.equals("application/javascript")
+                || base.equals("application/xml")
+                || base.equals("image/svg+xml")
+                || base.endsWith("+json")
+                || base.endsWith("+xml");
+    }
+
+    private int elegirFormato(String aceptadas) {
+        if (aceptadas == null) {
+            return IDENTIDAD;
+        }
+        Integer formato = formatos.get(aceptadas);
+        if (formato == null) {
+            int preferencia = preferencia(aceptadas);
+            int calidadGzip = preferencia >>> 16;
+            int calidadDeflate = preferencia & 0xFFFF;
+            // A igual calidad se prefiere gzip: "deflate" tiene implementaciones ambiguas en algunos clientes
+            formato = calidadGzip > 0 && calidadGzip >= calidadDeflate ? GZIP
+                    : calidadDeflate > 0 ? DEFLATE : IDENTIDAD;
+            if (formatos.size() < MAXIMO_PREFERENCIAS) {
+                formatos.put(aceptadas, formato);
+            }
+        }
+        return formato;
+    }
+
+    /**
+     * Analiza Accept-Encoding ("gzip, deflate;q=0.5, *;q=0") y devuelve la
+     * calidad de gzip y deflate en milésimas, empaquetadas en un entero
+     * (gzip en los 16 bits altos, deflate en los bajos)
+     */
+    public static int preferencia(String aceptadas) {
+        int gzip = -1;
+        int deflate = -1;
+        int comodin = -1;
+
+        for (String parte : aceptadas.split(",")) {
+            String[] trozos = parte.trim().split(";");
+            String codificacion = trozos[0].trim().toLowerCase(Locale.ROOT);
+            int calidad = 1000;
+            for (int i = 1; i < trozos.length; i++) {
+                String parametro = trozos[i].trim();
+                if (parametro.startsWith("q=")) {
+                    try {
+                        calidad = (int) Math.round(Double.parseDouble(parametro.substring(2)) * 1000);
+                    } catch (NumberFormatException e) {
+                        calidad = 0;
+                    }
+                }
+            }
+            calidad = Math.max(0, Math.min(1000, calidad));
+
+            if (codificacion.equals("gzip") || codificacion.equals("x-gzip")) {
+                gzip = calidad;
+            } else if (codificacion.equals("deflate")) {
+                deflate = calidad;
+            } else if (codificacion.equals("*")) {
+                comodin = calidad;
+            }
+        }
+
+        if (gzip < 0) {
+            gzip = Math.max(comodin, 0);
+        }
+        if (deflate < 0) {
+            deflate = Math.max(comodin, 0);
+        }
+        return (gzip << 16) | deflate;
+    }
+
+    // ========== CONTADORES ==========
+
+    PoolCompresores pool() {
+        return pool;
+    }
+
+    void contar(long originales, long comprimidos) {
+        respuestas.increment();
+        bytesOriginales.add(originales);
+        bytesComprimidos.add(comprimidos);
+    }
+
+    public boolean activa() {
+        return activa;
+    }
+
+    /**
+     * @return Respuestas comprimidas terminadas
+     */
+    public long respuestas() {
+        return respuestas.sum();
+    }
+
+    /**
+     * @return Bytes que escribieron los controladores en respuestas comprimidas
+     */
+    public long bytesOriginales() {
+        return bytesOriginales.sum();
+    }
+
+    /**
+     * @return Bytes que salieron a la red después de comprimir
+     */
+    public long bytesComprimidos() {
+        return bytesComprimidos.sum();
+    }
+}
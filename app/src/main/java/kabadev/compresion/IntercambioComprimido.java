@@ -0,0 +1,155 @@
+package kabadev.compresion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+/**
+ * HttpExchange que decide en sendResponseHeaders si comprime la respuesta
+ *
+ * El controlador no sabe nada de la compresión: pone su Content-Type, llama a
+ * sendResponseHeaders con la longitud real y escribe el cuerpo. Si la
+ * respuesta merece comprimirse se cambia a chunked con Content-Encoding y
+ * getResponseBody devuelve una SalidaComprimida sobre el cuerpo real; si no,
+ * todo pasa tal cual al intercambio original (Content-Length, sendfile...)
+ */
+final class IntercambioComprimido extends HttpExchange {
+
+    private final HttpExchange original;
+    private final CompresionHttp compresion;
+    private final boolean formatoGzip;
+    private OutputStream salida;
+    private boolean cuerpoPedido;
+
+    IntercambioComprimido(HttpExchange original, CompresionHttp compresion, boolean formatoGzip) {
+        this.original = original;
+        this.compresion = compresion;
+        this.formatoGzip = formatoGzip;
+    }
+
+    @Override
+    public void sendResponseHeaders(int codigo, long longitud) throws IOException {
+        Headers cabeceras = original.getResponseHeaders();
+        // Si el cuerpo ya se pidió sin comprimir no se puede cambiar de idea
+        if (cuerpoPedido || !compresion.comprimible(codigo, longitud, cabeceras)) {
+            original.sendResponseHeaders(codigo, longitud);
+            return;
+        }
+
+        String codificacion = formatoGzip ? "gzip" : "deflate";
+        cabeceras.set("Content-Encoding", codificacion);
+        cabeceras.add("Vary", "Accept-Encoding");
+        cabeceras.remove("Content-Length");
+        String etag = cabeceras.getFirst("ETag");
+        if (etag != null) {
+            // Otra representación, otro ETag (como las variantes de CacheRecursosEstaticos)
+            cabeceras.set("ETag", etag.endsWith("\"")
+                    ? etag.substring(0, etag.length() - 1) + "-" + codificacion + "\""
+                    : etag + "-" + codificacion);
+        }
+
+        // Longitud 0 = chunked: el tamaño comprimido no se conoce hasta el final
+        original.sendResponseHeaders(codigo, 0);
+        salida = new SalidaComprimida(original.getResponseBody(), compresion.pool(), formatoGzip, compresion);
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        if (salida != null) {
+            return salida;
+        }
+        cuerpoPedido = true;
+        return original.getResponseBody();
+    }
+
+    @Override
+    public void close() {
+        if (salida != null) {
+            try {
+                salida.close();
+            } catch (IOException e) {
+                // El cliente cerró la conexión: el intercambio original se cierra igualmente
+            }
+        }
+        original.close();
+    }
+
+    // ========== DELEGACIÓN EN EL INTERCAMBIO ORIGINAL ==========
+
+    @Override
+    public Headers getRequestHeaders() {
+        return original.getRequestHeaders();
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return original.getResponseHeaders();
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return original.getRequestURI();
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return original.getRequestMethod();
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return original.getHttpContext();
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return original.getRequestBody();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return original.getRemoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return original.getResponseCode();
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return original.getLocalAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return original.getProtocol();
+    }
+
+    @Override
+    public Object getAttribute(String nombre) {
+        return original.getAttribute(nombre);
+    }
+
+    @Override
+    public void setAttribute(String nombre, Object valor) {
+        original.setAttribute(nombre, valor);
+    }
+
+    @Override
+    public void setStreams(InputStream entrada, OutputStream salida) {
+        original.setStreams(entrada, salida);
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return original.getPrincipal();
+    }
+}
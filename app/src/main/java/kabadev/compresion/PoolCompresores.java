@@ -0,0 +1,78 @@
+package kabadev.compresion;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresores reutilizables: un Deflater (con su memoria nativa) y el buffer
+ * de salida que lo acompaña
+ *
+ * Crear un Deflater por respuesta reserva y libera cada vez unos 256 KB fuera
+ * del heap y deja la liberación al GC si alguien olvida llamar a end(). Aquí se
+ * piden y se devuelven: un compresor devuelto se reinicia y espera al
+ * siguiente. Si el pool está lleno el sobrante se libera en el momento
+ *
+ * Hay un pool por formato: gzip usa deflate sin envoltorio (nowrap) con su
+ * propia cabecera y CRC32; deflate usa el formato zlib del propio Deflater
+ */
+final class PoolCompresores {
+
+    /** Deflater + buffer + CRC de una respuesta en curso */
+    static final class Compresor {
+        final Deflater deflater;
+        final byte[] buffer;
+        final CRC32 crc = new CRC32();
+        final boolean gzip;
+
+        Compresor(int nivel, boolean gzip, int tamanoBuffer) {
+            this.deflater = new Deflater(nivel, gzip);
+            this.buffer = new byte[tamanoBuffer];
+            this.gzip = gzip;
+        }
+    }
+
+    private final int nivel;
+    private final int tamanoBuffer;
+    private final ArrayBlockingQueue<Compresor> gzip;
+    private final ArrayBlockingQueue<Compresor> deflate;
+
+    /**
+     * @param nivel Nivel de compresión (1-9)
+     * @param capacidad Compresores libres que se guardan por formato
+     * @param tamanoBuffer Bytes del buffer de salida de cada compresor
+     */
+    PoolCompresores(int nivel, int capacidad, int tamanoBuffer) {
+        this.nivel = nivel;
+        this.tamanoBuffer = tamanoBuffer;
+        this.gzip = new ArrayBlockingQueue<>(capacidad);
+        this.deflate = new ArrayBlockingQueue<>(capacidad);
+    }
+
+    /**
+     * @param formatoGzip true para gzip, false para deflate (zlib)
+     * @return Compresor listo para usar (del pool o nuevo)
+     */
+    Compresor obtener(boolean formatoGzip) {
+        Compresor compresor = (formatoGzip ? gzip : deflate).poll();
+        return compresor != null ? compresor : new Compresor(nivel, formatoGzip, tamanoBuffer);
+    }
+
+    /**
+     * Reinicia el compresor y lo deja en el pool (o lo libera si no cabe)
+     */
+    void devolver(Compresor compresor) {
+        compresor.deflater.reset();
+        compresor.crc.reset();
+        if (!(compresor.gzip ? gzip : deflate).offer(compresor)) {
+            compresor.deflater.end();
+        }
+    }
+
+    /**
+     * @return Compresores libres en este momento (los dos formatos)
+     */
+    int libres() {
+        return gzip.size() + deflate.size();
+    }
+}
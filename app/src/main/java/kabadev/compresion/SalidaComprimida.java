@@ -0,0 +1,130 @@
+package kabadev.compresion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Cuerpo de respuesta comprimido al vuelo (gzip o deflate)
+ *
+ * Cada write se comprime con el Deflater del compresor prestado y lo que
+ * sale se escribe en el cuerpo real (chunked): no se acumula la respuesta
+ * entera en memoria. close() termina el formato (trailer gzip con CRC32 y
+ * longitud), cierra el cuerpo real y devuelve el compresor al pool
+ */
+final class SalidaComprimida extends OutputStream {
+
+    private static final byte[] CABECERA_GZIP = {
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final OutputStream destino;
+    private final PoolCompresores pool;
+    private final CompresionHttp contadores;
+    private PoolCompresores.Compresor compresor;
+    private boolean cabeceraEnviada;
+    private long escritos;
+
+    SalidaComprimida(OutputStream destino, PoolCompresores pool, boolean formatoGzip, CompresionHttp contadores) {
+        this.destino = destino;
+        this.pool = pool;
+        this.contadores = contadores;
+        this.compresor = pool.obtener(formatoGzip);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] datos, int desde, int longitud) throws IOException {
+        if (compresor == null) {
+            throw new IOException("La salida comprimida ya está cerrada");
+        }
+        if (longitud == 0) {
+            return;
+        }
+        escribirCabecera();
+        if (compresor.gzip) {
+            compresor.crc.update(datos, desde, longitud);
+        }
+        Deflater deflater = compresor.deflater;
+        deflater.setInput(datos, desde, longitud);
+        while (!deflater.needsInput()) {
+            vaciar(Deflater.NO_FLUSH);
+        }
+    }
+
+    /**
+     * Envía lo comprimido hasta ahora (SYNC_FLUSH): el cliente puede
+     * descomprimirlo sin esperar al final de la respuesta
+     */
+    @Override
+    public void flush() throws IOException {
+        if (compresor == null) {
+            return;
+        }
+        escribirCabecera();
+        int producidos;
+        do {
+            producidos = vaciar(Deflater.SYNC_FLUSH);
+        } while (producidos == compresor.buffer.length);
+        destino.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compresor == null) {
+            return;
+        }
+        PoolCompresores.Compresor usado = compresor;
+        try {
+            escribirCabecera();
+            usado.deflater.finish();
+            while (!usado.deflater.finished()) {
+                vaciar(Deflater.NO_FLUSH);
+            }
+            if (usado.gzip) {
+                byte[] cierre = new byte[8];
+                escribirEntero(cierre, 0, usado.crc.getValue());
+                escribirEntero(cierre, 4, usado.deflater.getBytesRead());
+                destino.write(cierre);
+                escritos += cierre.length;
+            }
+            contadores.contar(usado.deflater.getBytesRead(), escritos);
+            destino.close();
+        } finally {
+            compresor = null;
+            pool.devolver(usado);
+        }
+    }
+
+    private void escribirCabecera() throws IOException {
+        if (!cabeceraEnviada) {
+            cabeceraEnviada = true;
+            if (compresor.gzip) {
+                destino.write(CABECERA_GZIP);
+                escritos += CABECERA_GZIP.length;
+            }
+        }
+    }
+
+    private int vaciar(int modo) throws IOException {
+        byte[] buffer = compresor.buffer;
+        int producidos = compresor.deflater.deflate(buffer, 0, buffer.length, modo);
+        if (producidos > 0) {
+            destino.write(buffer, 0, producidos);
+            escritos += producidos;
+        }
+        return producidos;
+    }
+
+    /** Entero de 32 bits en little-endian (formato del trailer gzip) */
+    private static void escribirEntero(byte[] destino, int posicion, long valor) {
+        destino[posicion] = (byte) valor;
+        destino[posicion + 1] = (byte) (valor >>> 8);
+        destino[posicion + 2] = (byte) (valor >>> 16);
+        destino[posicion + 3] = (byte) (valor >>> 24);
+    }
+}
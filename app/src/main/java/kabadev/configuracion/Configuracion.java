@@ -0,0 +1,92 @@
+package kabadev.configuracion;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Configuración de arranque de Dogster
+ *
+ * Cada clave se busca primero como propiedad del sistema (-Ddogster.hilos=20)
+ * y después como variable de entorno (DOGSTER_HILOS=20). Si no existe en
+ * ninguno de los dos sitios se usa el valor por defecto indicado
+ */
+public final class Configuracion {
+
+    private static final String PREFIJO = "dogster.";
+
+    private Configuracion() {
+    }
+
+    /**
+     * Lee un valor de texto
+     *
+     * @param clave Clave sin prefijo (ej: "ejecutor")
+     * @param porDefecto Valor si la clave no está definida
+     * @return Valor configurado o el valor por defecto
+     */
+    public static String texto(String clave, String porDefecto) {
+        String valor = System.getProperty(PREFIJO + clave);
+        if (valor == null) {
+            String variable = (PREFIJO + clave).toUpperCase(Locale.ROOT).replace('.', '_');
+            valor = System.getenv(variable);
+        }
+        return valor == null || valor.isBlank() ? porDefecto : valor.trim();
+    }
+
+    /**
+     * Lee un valor entero
+     *
+     * @throws IllegalArgumentException Si el valor no es un número
+     */
+    public static int entero(String clave, int porDefecto) {
+        String valor = texto(clave, null);
+        if (valor == null) {
+            return porDefecto;
+        }
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor no numérico para " + PREFIJO + clave + ": " + valor, e);
+        }
+    }
+
+    /**
+     * Lee un valor entero largo
+     *
+     * @throws IllegalArgumentException Si el valor no es un número
+     */
+    public static long largo(String clave, long porDefecto) {
+        String valor = texto(clave, null);
+        if (valor == null) {
+            return porDefecto;
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor no numérico para " + PREFIJO + clave + ": " + valor, e);
+        }
+    }
+
+    /**
+     * Lee un valor booleano ("true", "si", "1" se consideran verdaderos)
+     */
+    public static boolean booleano(String clave, boolean porDefecto) {
+        String valor = texto(clave, null);
+        if (valor == null) {
+            return porDefecto;
+        }
+        String normalizado = valor.toLowerCase(Locale.ROOT);
+        return normalizado.equals("true") || normalizado.equals("si") || normalizado.equals("1");
+    }
+
+    /**
+     * Lee una ruta del sistema de archivos
+     *
+     * @return Ruta configurada o null si la clave no está definida
+     */
+    public static Path ruta(String clave) {
+        String valor = texto(clave, null);
+        return valor == null ? null : Paths.get(valor);
+    }
+}
@@ -6,17 +6,33 @@ import java.io.InputStream;          // Flujo de entrada de datos
 import java.io.OutputStream;         // Flujo de salida de datos
 
 import com.sun.net.httpserver.HttpExchange; // Objeto que contiene petición y respuesta HTTP
-import com.sun.net.httpserver.HttpHandler;  // Interfaz para manejar peticiones HTTP
+
+import kabadev.cache.CacheRecursosEstaticos; // Recursos de static/ precargados en memoria
+import kabadev.servidor.IControladorHttp;    // Interfaz de los controladores del servidor
+import kabadev.servidor.Respuestas;          // Envío de respuestas completas
+import kabadev.servidor.TiposMime;           // Tabla de tipos MIME compartida
 
 /**
  * Controlador de Archivos Estáticos
  * Maneja las solicitudes de archivos estáticos (CSS, JS, imágenes, etc.)
- * implementando la interfaz HttpHandler de Java HTTP Server
+ * implementando la interfaz IControladorHttp del servidor
  * 
  * Este controlador sirve archivos desde la carpeta /static/ sin procesamiento
- * Los archivos se envían tal como están almacenados en el servidor
+ * Los archivos se envían tal como están almacenados en el servidor,
+ * desde la caché en memoria cuando caben en ella y desde un archivo
+ * mapeado (con soporte de Range) cuando son grandes
  */
-public class ControladorArchivosEstaticos implements HttpHandler {
+public class ControladorArchivosEstaticos implements IControladorHttp {
+
+    // Caché de recursos cargada al arrancar: evita leer del classloader en cada petición
+    private final CacheRecursosEstaticos cache;
+
+    /**
+     * @param cache Recursos de static/ precargados en memoria
+     */
+    public ControladorArchivosEstaticos(CacheRecursosEstaticos cache) {
+        this.cache = cache;
+    }
 
     /**
      * Maneja las peticiones HTTP para archivos estáticos
@@ -24,7 +40,7 @@ public class ControladorArchivosEstaticos implements HttpHandler {
      * @throws IOException Si hay error al leer archivos o enviar respuesta
      */
     @Override
-    public void handle(HttpExchange intercambio) throws IOException {
+    public void controlar(HttpExchange intercambio) throws IOException {
         
         // ========== PROCESAMIENTO DE LA URL SOLICITADA ==========
         // Obtiene la URI completa solicitada por el cliente (ej: /static/style.css)
@@ -33,60 +49,33 @@ public class ControladorArchivosEstaticos implements HttpHandler {
         // Extrae el nombre del archivo quitando el prefijo "/static/" de la URL
         String recurso = uri.replaceFirst("/static/", "");
         
+        // ========== CACHÉ EN MEMORIA (variantes comprimidas + ETag) ==========
+        if (cache.enviar(intercambio, recurso)) {
+            return;
+        }
+        
         // ========== BÚSQUEDA DEL ARCHIVO EN RECURSOS ==========
-        // Busca el archivo en la carpeta static/ dentro de los recursos del proyecto
-        InputStream archivo = getClass().getClassLoader().getResourceAsStream("static/" + recurso);
+        // Solo inexistentes o grandes que no se pudieron mapear; se rechazan rutas con ".."
+        InputStream archivo = recurso.contains("..") ? null
+                : getClass().getClassLoader().getResourceAsStream("static/" + recurso);
         
         // ========== MANEJO DE ARCHIVO NO ENCONTRADO ==========
         if (archivo == null) {
-            String mensajeError = "Archivo estático no encontrado: " + recurso;
-            intercambio.sendResponseHeaders(404, mensajeError.getBytes().length);
-            try (OutputStream salida = intercambio.getResponseBody()) {
-                salida.write(mensajeError.getBytes());
-            }
+            Respuestas.texto(intercambio, 404, "Archivo estático no encontrado: " + recurso);
             return;
         }
         
-        // ========== PROCESAMIENTO DEL ARCHIVO ENCONTRADO ==========
-        byte[] contenido = archivo.readAllBytes();
-        String tipoMime = obtenerTipoMime(recurso);
-        
-        // ========== ENVÍO DE LA RESPUESTA ==========
+        // ========== ENVÍO POR BLOQUES (sin cargar el archivo entero en el heap) ==========
+        String tipoMime = TiposMime.obtener(recurso);
         intercambio.getResponseHeaders().add("Content-Type", tipoMime);
-        intercambio.sendResponseHeaders(200, contenido.length);
-        
-        try (OutputStream salida = intercambio.getResponseBody()) {
-            salida.write(contenido);
+        if (Respuestas.soloCabeceras(intercambio, 200, -1)) {
+            archivo.close();
+            return;
         }
-    }
-    
-    /**
-     * Determina el tipo MIME basándose en la extensión del archivo
-     * El tipo MIME le dice al navegador cómo interpretar el contenido
-     * 
-     * @param nombreArchivo Nombre del archivo con extensión
-     * @return String con el tipo MIME correspondiente
-     */
-    private String obtenerTipoMime(String nombreArchivo) {
-        String archivo = nombreArchivo.toLowerCase();
+        intercambio.sendResponseHeaders(200, 0);
         
-        // ========== TIPOS MIME PARA ARCHIVOS WEB ==========
-        if (archivo.endsWith(".css"))  return "text/css";
-        if (archivo.endsWith(".js"))   return "application/javascript";
-        if (archivo.endsWith(".html")) return "text/html; charset=UTF-8";
-        
-        // ========== TIPOS MIME PARA IMÁGENES ==========
-        if (archivo.endsWith(".png"))  return "image/png";
-        if (archivo.endsWith(".jpg") || archivo.endsWith(".jpeg")) return "image/jpeg";
-        if (archivo.endsWith(".gif"))  return "image/gif";
-        if (archivo.endsWith(".ico"))  return "image/x-icon";
-        if (archivo.endsWith(".svg"))  return "image/svg+xml";
-        
-        // ========== TIPOS MIME PARA MULTIMEDIA ==========
-        if (archivo.endsWith(".mp4"))  return "video/mp4";
-        if (archivo.endsWith(".mp3"))  return "audio/mpeg";
-        
-        // Tipo MIME genérico para archivos no reconocidos
-        return "application/octet-stream";
+        try (InputStream entrada = archivo; OutputStream salida = intercambio.getResponseBody()) {
+            entrada.transferTo(salida);
+        }
     }
 }
\ No newline at end of file
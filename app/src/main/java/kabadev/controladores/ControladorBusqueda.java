@@ -0,0 +1,100 @@
+package kabadev.controladores;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import kabadev.catalogo.Catalogo.RespuestaCatalogo;
+import kabadev.catalogo.ServicioCatalogo;
+import kabadev.servidor.IControladorHttp;
+import kabadev.servidor.ParametrosConsulta;
+import kabadev.servidor.Respuestas;
+
+/**
+ * Controlador de la búsqueda aproximada en el catálogo
+ *
+ * - GET /search?q=texto&limit=20: películas completas (como /video) de más a
+ *   menos parecida
+ * - GET /suggest?q=aste&limit=8: autocompletado mientras se escribe, solo
+ *   id, title y year; la última palabra cuenta como prefijo
+ *
+ * No distinguen tildes ni mayúsculas y toleran erratas ("asterx cleopatar").
+ * El total de coincidencias viaja en X-Total-Count, como en /video
+ */
+public class ControladorBusqueda implements IControladorHttp {
+
+    /** Caracteres de la consulta que se tienen en cuenta */
+    private static final int LONGITUD_MAXIMA = 100;
+
+    private static final int RESULTADOS_POR_DEFECTO = 20;
+    private static final int SUGERENCIAS_POR_DEFECTO = 8;
+    private static final int LIMITE_MAXIMO = 100;
+
+    private final ServicioCatalogo catalogo;
+
+    /**
+     * @param catalogo Servicio con el catálogo ya cargado
+     */
+    public ControladorBusqueda(ServicioCatalogo catalogo) {
+        this.catalogo = catalogo;
+    }
+
+    /**
+     * /search: películas más parecidas al texto
+     */
+    @Override
+    public void controlar(HttpExchange intercambio) throws IOException {
+        responder(intercambio, false, RESULTADOS_POR_DEFECTO);
+    }
+
+    /**
+     * /suggest: sugerencias para el texto a medio escribir
+     */
+    public void sugerir(HttpExchange intercambio) throws IOException {
+        responder(intercambio, true, SUGERENCIAS_POR_DEFECTO);
+    }
+
+    private void responder(HttpExchange intercambio, boolean sugerencias, int limitePorDefecto) throws IOException {
+        Map<String, String> parametros = ParametrosConsulta.analizar(intercambio.getRequestURI().getRawQuery());
+        String texto = parametros.get("q");
+        if (texto == null || texto.isBlank()) {
+            ControladorVideo.enviarError(intercambio, 400, "Falta el parámetro q");
+            return;
+        }
+        int limite = leerLimite(parametros.get("limit"), limitePorDefecto);
+        if (limite < 0) {
+            ControladorVideo.enviarError(intercambio, 400, "limit debe estar entre 1 y " + LIMITE_MAXIMO);
+            return;
+        }
+        if (texto.length() > LONGITUD_MAXIMA) {
+            texto = texto.substring(0, LONGITUD_MAXIMA);
+        }
+
+        try {
+            RespuestaCatalogo respuesta = sugerencias
+                    ? catalogo.actual().responderSugerencias(texto, limite)
+                    : catalogo.actual().responderBusqueda(texto, limite);
+            intercambio.getResponseHeaders().set("X-Total-Count", String.valueOf(respuesta.total()));
+            Respuestas.json(intercambio, 200, respuesta.json());
+
+        } catch (Exception e) {
+            ControladorVideo.enviarError(intercambio, 500, "Error al buscar en el catálogo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return El límite pedido, el de por defecto si no viene, o -1 si no es válido
+     */
+    private static int leerLimite(String limite, int porDefecto) {
+        if (limite == null) {
+            return porDefecto;
+        }
+        try {
+            int valor = Integer.parseInt(limite.trim());
+            return valor < 1 || valor > LIMITE_MAXIMO ? -1 : valor;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package kabadev.controladores;
+
+// Importaciones necesarias para exponer las métricas
+import java.io.IOException;          // Excepción para errores de entrada/salida
+import java.nio.charset.StandardCharsets; // Codificación UTF-8 del texto
+
+import com.sun.net.httpserver.HttpExchange; // Objeto que contiene petición HTTP y permite enviar respuesta
+
+import kabadev.metricas.MetricasHttp;       // Contadores e histogramas de la capa HTTP
+import kabadev.servidor.IControladorHttp;   // Interfaz de los controladores del servidor
+import kabadev.servidor.Respuestas;         // Envío de respuestas completas
+
+/**
+ * Controlador de Métricas
+ * Expone en /metrics el estado del servidor en formato de texto de Prometheus:
+ * peticiones, latencias, tiempo hasta el primer byte de vídeo, streams activos,
+ * bytes enviados, pool de hilos y cachés
+ */
+public class ControladorMetricas implements IControladorHttp {
+
+    private static final String TIPO_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricasHttp metricas;
+
+    /**
+     * @param metricas Métricas que se exportan
+     */
+    public ControladorMetricas(MetricasHttp metricas) {
+        this.metricas = metricas;
+    }
+
+    @Override
+    public void controlar(HttpExchange intercambio) throws IOException {
+        // El texto se compone en cada lectura: los valores siempre son los actuales
+        intercambio.getResponseHeaders().set("Cache-Control", "no-store");
+        Respuestas.enviar(intercambio, 200, TIPO_PROMETHEUS, metricas.exportar().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,116 @@
+package kabadev.controladores;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Locale;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import kabadev.carteles.ServicioCarteles;
+import kabadev.catalogo.Pelicula;
+import kabadev.catalogo.ServicioCatalogo;
+import kabadev.servidor.IControladorRuta;
+import kabadev.servidor.RangosHttp;
+import kabadev.servidor.Respuestas;
+import kabadev.servidor.RutaHttp;
+
+/**
+ * Controlador de carteles: /poster/{id}
+ *
+ * Sirve el cartel de la película reducido al ancho de la página (320 px) desde
+ * ServicioCarteles, en lugar de que cada navegador descargue la imagen
+ * original de un servidor ajeno. El ETag depende de la URL del poster y del
+ * ancho, así que la revalidación (304) no necesita cargar la imagen
+ *
+ * Si el cartel no se puede obtener (sin red, formato no soportado) se
+ * redirige a la URL original: el navegador lo intenta por su cuenta
+ */
+public class ControladorPoster implements IControladorRuta {
+
+    /** Una semana: la URL no cambia con el cartel, pero el ETag sí */
+    private static final String CACHE_CONTROL = "public, max-age=604800";
+
+    private final ServicioCatalogo catalogo;
+    private final ServicioCarteles carteles;
+
+    /**
+     * @param catalogo Catálogo donde se buscan los ids
+     * @param carteles Carteles reducidos en memoria y en disco
+     */
+    public ControladorPoster(ServicioCatalogo catalogo, ServicioCarteles carteles) {
+        this.catalogo = catalogo;
+        this.carteles = carteles;
+    }
+
+    @Override
+    public void controlar(HttpExchange intercambio, RutaHttp ruta) throws IOException {
+        Pelicula pelicula = buscarPelicula(ruta.parametro(intercambio, "id"));
+        if (pelicula == null) {
+            Respuestas.texto(intercambio, 404, "Película no encontrada");
+            return;
+        }
+
+        Headers respuesta = intercambio.getResponseHeaders();
+        String etag = carteles.etag(pelicula);
+
+        // ========== REVALIDACIÓN: el navegador ya tiene este cartel ==========
+        if (RangosHttp.coincideEtag(intercambio.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            respuesta.set("ETag", etag);
+            respuesta.set("Cache-Control", CACHE_CONTROL);
+            Respuestas.sinCuerpo(intercambio, 304);
+            return;
+        }
+
+        ServicioCarteles.Cartel cartel;
+        try {
+            cartel = carteles.obtener(pelicula);
+        } catch (NoSuchFileException e) {
+            redirigirOriginal(intercambio, pelicula);
+            return;
+        } catch (IOException e) {
+            System.out.println("Advertencia: cartel " + pelicula.id() + " no disponible: " + e.getMessage());
+            redirigirOriginal(intercambio, pelicula);
+            return;
+        }
+
+        respuesta.set("Content-Type", "image/jpeg");
+        respuesta.set("ETag", cartel.etag());
+        respuesta.set("Cache-Control", CACHE_CONTROL);
+        if (Respuestas.soloCabeceras(intercambio, 200, cartel.imagen().length)) {
+            return;
+        }
+        intercambio.sendResponseHeaders(200, cartel.imagen().length);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            salida.write(cartel.imagen());
+        }
+    }
+
+    /**
+     * 302 a la URL original del poster (solo http/https); sin ella, 404
+     */
+    private static void redirigirOriginal(HttpExchange intercambio, Pelicula pelicula) throws IOException {
+        String poster = pelicula.poster();
+        String minusculas = poster == null ? "" : poster.toLowerCase(Locale.ROOT);
+        if (!minusculas.startsWith("http://") && !minusculas.startsWith("https://")) {
+            Respuestas.texto(intercambio, 404, "Cartel no disponible: " + pelicula.id());
+            return;
+        }
+        // Sin caché: cuando el cartel esté disponible el navegador debe volver a pedirlo aquí
+        intercambio.getResponseHeaders().set("Cache-Control", "no-store");
+        intercambio.getResponseHeaders().set("Location", poster);
+        Respuestas.sinCuerpo(intercambio, 302);
+    }
+
+    private Pelicula buscarPelicula(String id) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            return catalogo.actual().buscarPorId(Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
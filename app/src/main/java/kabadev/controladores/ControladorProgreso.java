@@ -0,0 +1,144 @@
+package kabadev.controladores;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import kabadev.progreso.ServicioProgreso;
+import kabadev.progreso.ServicioProgreso.Progreso;
+import kabadev.servidor.IControladorRuta;
+import kabadev.servidor.ParametrosConsulta;
+import kabadev.servidor.Respuestas;
+import kabadev.servidor.RutaHttp;
+
+/**
+ * Controlador del progreso de reproducción
+ *
+ * Cada navegador se identifica con ?cliente= (un id aleatorio que main.js
+ * guarda en localStorage); no hay cuentas de usuario
+ * - GET /progress: posiciones del cliente, la más reciente primero
+ * - GET /progress/{id}: posición en una película (404 si no hay)
+ * - PUT o POST /progress/{id}?t=segundos&d=duracion: guarda la posición (204)
+ *
+ * Las posiciones viajan en segundos con decimales, como ?t= en /stream/{id}.
+ * Se usan parámetros en lugar de cuerpo para que navigator.sendBeacon pueda
+ * guardar la posición al cerrar la pestaña
+ */
+public class ControladorProgreso implements IControladorRuta {
+
+    private final ServicioProgreso progreso;
+
+    /**
+     * @param progreso Posiciones guardadas
+     */
+    public ControladorProgreso(ServicioProgreso progreso) {
+        this.progreso = progreso;
+    }
+
+    /**
+     * /progress: posiciones del cliente
+     */
+    @Override
+    public void controlar(HttpExchange intercambio, RutaHttp ruta) throws IOException {
+        String cliente = leerCliente(ParametrosConsulta.analizar(intercambio.getRequestURI().getRawQuery()));
+        if (cliente == null) {
+            Respuestas.texto(intercambio, 400, "Parámetro cliente no válido");
+            return;
+        }
+
+        List<Progreso> lista = progreso.listar(cliente);
+        StringBuilder json = new StringBuilder(16 + lista.size() * 64).append('[');
+        for (int i = 0; i < lista.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            escribir(json, lista.get(i));
+        }
+        enviarJson(intercambio, json.append(']'));
+    }
+
+    /**
+     * /progress/{id}: consulta (GET) o guarda (PUT / POST) la posición en una película
+     */
+    public void pelicula(HttpExchange intercambio, RutaHttp ruta) throws IOException {
+        Map<String, String> parametros = ParametrosConsulta.analizar(intercambio.getRequestURI().getRawQuery());
+        String cliente = leerCliente(parametros);
+        int pelicula = leerId(ruta.parametro(intercambio, "id"));
+        if (cliente == null || pelicula < 0) {
+            Respuestas.texto(intercambio, 400, cliente == null ? "Parámetro cliente no válido" : "Id no válido");
+            return;
+        }
+
+        if ("GET".equals(intercambio.getRequestMethod())) {
+            Progreso guardado = progreso.consultar(cliente, pelicula);
+            if (guardado == null) {
+                Respuestas.texto(intercambio, 404, "Sin progreso para la película " + pelicula);
+                return;
+            }
+            enviarJson(intercambio, escribir(new StringBuilder(64), guardado));
+            return;
+        }
+
+        long posicionMs = ControladorStream.leerInstante(parametros.get("t"));
+        long duracionMs = parametros.containsKey("d") ? ControladorStream.leerInstante(parametros.get("d")) : 0;
+        if (posicionMs < 0 || duracionMs < 0) {
+            Respuestas.texto(intercambio, 400, "Parámetros t y d deben ser segundos no negativos");
+            return;
+        }
+        if (!progreso.guardar(cliente, pelicula, posicionMs, duracionMs)) {
+            Respuestas.texto(intercambio, 503, "No se admiten más posiciones guardadas");
+            return;
+        }
+        Respuestas.sinCuerpo(intercambio, 204);
+    }
+
+    /**
+     * {"id":7,"position":754.120,"duration":5400.000,"updated":1700000000000}
+     */
+    private static StringBuilder escribir(StringBuilder json, Progreso guardado) {
+        json.append("{\"id\":").append(guardado.pelicula()).append(",\"position\":");
+        segundos(json, guardado.posicionMs()).append(",\"duration\":");
+        segundos(json, guardado.duracionMs()).append(",\"updated\":").append(guardado.actualizado()).append('}');
+        return json;
+    }
+
+    private static StringBuilder segundos(StringBuilder json, long ms) {
+        long resto = ms % 1000;
+        return json.append(ms / 1000).append('.').append(resto < 100 ? "0" : "").append(resto < 10 ? "0" : "")
+                .append(resto);
+    }
+
+    private static void enviarJson(HttpExchange intercambio, CharSequence json) throws IOException {
+        // Cambia en cada actualización: que ninguna caché intermedia la guarde
+        intercambio.getResponseHeaders().set("Cache-Control", "no-store");
+        Respuestas.json(intercambio, 200, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return El id de cliente, o null si falta o no es 8-64 letras, dígitos, - o _
+     */
+    static String leerCliente(Map<String, String> parametros) {
+        String cliente = parametros.get("cliente");
+        if (cliente == null || cliente.length() < 8 || cliente.length() > 64) {
+            return null;
+        }
+        for (int i = 0; i < cliente.length(); i++) {
+            char c = cliente.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                return null;
+            }
+        }
+        return cliente;
+    }
+
+    private static int leerId(String id) {
+        try {
+            return id == null ? -1 : Math.max(-1, Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
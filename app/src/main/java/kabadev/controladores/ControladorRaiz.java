@@ -6,7 +6,11 @@ import java.io.InputStream;          // Flujo de entrada para leer archivos
 import java.io.OutputStream;         // Flujo de salida para enviar respuestas
 
 import com.sun.net.httpserver.HttpExchange; // Objeto que contiene petición HTTP y permite enviar respuesta
-import com.sun.net.httpserver.HttpHandler;  // Interfaz que deben implementar los manejadores de peticiones HTTP
+
+import kabadev.cache.CacheRecursosEstaticos; // Recursos de static/ precargados en memoria
+import kabadev.servidor.IControladorHttp;    // Interfaz de los controladores del servidor
+import kabadev.servidor.Respuestas;          // Envío de respuestas completas
+import kabadev.servidor.TiposMime;           // Tabla de tipos MIME compartida
 
 /**
  * Controlador Raíz - Servidor de Archivos Estáticos
@@ -19,6 +23,8 @@ import com.sun.net.httpserver.HttpHandler;  // Interfaz que deben implementar lo
  * - Mapea automáticamente rutas a archivos en la carpeta static/
  * - Detecta y configura tipos MIME apropiados para cada tipo de archivo
  * - Maneja errores 404 cuando los archivos no existen
+ * - Sirve desde la caché en memoria (gzip/deflate + ETag) todo lo que cabe en ella
+ * - Los archivos grandes (src/Dogster.mp4) salen de un mapeo en memoria con soporte de Range
  * 
  * Ejemplos de uso:
  * - GET / → Devuelve static/index.html
@@ -26,7 +32,17 @@ import com.sun.net.httpserver.HttpHandler;  // Interfaz que deben implementar lo
  * - GET /main.js → Devuelve static/main.js
  * - GET /logo.png → Devuelve static/logo.png
  */
-public class ControladorRaiz implements HttpHandler {
+public class ControladorRaiz implements IControladorHttp {
+
+    // Caché de recursos cargada al arrancar: evita leer del classloader en cada petición
+    private final CacheRecursosEstaticos cache;
+
+    /**
+     * @param cache Recursos de static/ precargados en memoria
+     */
+    public ControladorRaiz(CacheRecursosEstaticos cache) {
+        this.cache = cache;
+    }
 
     /**
      * Método principal que maneja todas las peticiones HTTP dirigidas a este controlador
@@ -47,7 +63,7 @@ public class ControladorRaiz implements HttpHandler {
      *                    - Cualquier operación de entrada/salida
      */
     @Override
-    public void handle(HttpExchange intercambio) throws IOException {
+    public void controlar(HttpExchange intercambio) throws IOException {
         
         // ========== EXTRACCIÓN Y MAPEO DE LA RUTA SOLICITADA =====================================
         // Obtiene la ruta completa de la URI (ej: "/", "/style.css", "/images/logo.png")
@@ -58,25 +74,22 @@ public class ControladorRaiz implements HttpHandler {
         // Para cualquier otra ruta, añade el prefijo "static" (ej: "/style.css" → "static/style.css")
         String recurso = path.equals("/") ? "static/index.html" : "static" + path;
         
+        // ========== CACHÉ EN MEMORIA ===========================================================
+        // index.html, main.js, style.css... ya están cargados y precomprimidos desde el arranque
+        if (cache.enviar(intercambio, recurso.substring("static/".length()))) {
+            return;
+        }
+        
         // ========== BÚSQUEDA DEL ARCHIVO EN LOS RECURSOS DEL PROYECTO ============================
-        // Utiliza el ClassLoader para buscar el archivo en src/main/resources/
+        // Solo llegan aquí los inexistentes o algún archivo grande que no se pudo mapear
+        // Las rutas con ".." se rechazan para no salir de la carpeta static/
         // getResourceAsStream() devuelve un InputStream si encuentra el archivo, null si no existe
-        InputStream archivo = getClass().getClassLoader().getResourceAsStream(recurso);
+        InputStream archivo = path.contains("..") ? null : getClass().getClassLoader().getResourceAsStream(recurso);
         
         // ========== MANEJO DE ARCHIVO NO ENCONTRADO (ERROR 404) ===============================
         if (archivo == null) {
-            // Prepara mensaje de error informativo para el cliente
-            String error = "Archivo no encontrado: " + recurso;
-            
-            // Envía headers de respuesta HTTP con:
-            // - Código 404 (Not Found)
-            // - Longitud del mensaje de error en bytes
-            intercambio.sendResponseHeaders(404, error.getBytes().length);
-            
-            // Envía el cuerpo de la respuesta con el mensaje de error
-            try (OutputStream salida = intercambio.getResponseBody()) {
-                salida.write(error.getBytes());
-            }
+            // Código 404 (Not Found) con un mensaje informativo para el cliente
+            Respuestas.texto(intercambio, 404, "Archivo no encontrado: " + recurso);
             // Termina el procesamiento aquí si el archivo no existe
             return;
         }
@@ -84,71 +97,25 @@ public class ControladorRaiz implements HttpHandler {
         // ========== CONFIGURACIÓN DEL TIPO MIME ==============================================
         // Determina el tipo MIME basándose en la extensión del archivo
         // El tipo MIME le dice al navegador cómo interpretar el contenido
-        String tipoMime = obtenerTipoMime(recurso);
+        String tipoMime = TiposMime.obtener(recurso);
         
         // Añade el header Content-Type a la respuesta HTTP
         // Esto es crucial para que el navegador procese correctamente el archivo
         intercambio.getResponseHeaders().add("Content-Type", tipoMime);
         
         // ========== LECTURA Y ENVÍO DEL ARCHIVO ===============================================
-        // Lee todo el contenido del archivo en un array de bytes
-        // readAllBytes() carga el archivo completo en memoria
-        byte[] contenido = archivo.readAllBytes();
-        
-        // Envía headers de respuesta HTTP con:
-        // - Código 200 (OK - éxito)
-        // - Longitud exacta del archivo en bytes
-        intercambio.sendResponseHeaders(200, contenido.length);
-        
-        // Envía el contenido del archivo como cuerpo de la respuesta HTTP
-        try (OutputStream salida = intercambio.getResponseBody()) {
-            salida.write(contenido);
+        // Solo si el archivo grande no se pudo mapear al arrancar: se copia por bloques
+        // (transferTo) en lugar de cargarlo entero en un byte[] en cada petición
+        // Longitud 0 = respuesta chunked, el tamaño no se conoce sin leer el recurso
+        if (Respuestas.soloCabeceras(intercambio, 200, -1)) {
+            archivo.close();
+            return;
         }
-        // El try-with-resources garantiza que el OutputStream se cierre automáticamente
-    }
-    
-    /**
-     * Determina el tipo MIME (Multipurpose Internet Mail Extensions) de un archivo
-     * basándose en su extensión
-     * 
-     * El tipo MIME es fundamental para que el navegador web sepa cómo procesar
-     * cada tipo de archivo. Sin el tipo MIME correcto, el navegador podría:
-     * - No ejecutar archivos JavaScript
-     * - No aplicar estilos CSS
-     * - No mostrar imágenes correctamente
-     * - Descargar archivos en lugar de mostrarlos
-     * 
-     * Tipos MIME soportados:
-     * - HTML: text/html con charset UTF-8 para caracteres especiales
-     * - CSS: text/css para hojas de estilo
-     * - JavaScript: application/javascript para código ejecutable
-     * - Imágenes PNG: image/png para gráficos con transparencia
-     * - Imágenes JPEG: image/jpeg para fotografías comprimidas
-     * - Iconos: image/x-icon para favicons del navegador
-     * 
-     * @param nombreArchivo Nombre del archivo con su extensión (ej: "style.css", "script.js")
-     * @return String con el tipo MIME apropiado para el archivo
-     *         Si la extensión no es reconocida, devuelve "application/octet-stream"
-     *         (tipo genérico para archivos binarios)
-     */
-    private String obtenerTipoMime(String nombreArchivo) {
-        // Convierte el nombre del archivo a minúsculas para comparación case-insensitive
-        // Esto permite que funcione tanto con ".CSS" como con ".css"
-        String extension = nombreArchivo.toLowerCase();
-        
-        // ========== TIPOS MIME PARA DOCUMENTOS WEB ========================================
-        if (extension.endsWith(".html")) return "text/html; charset=UTF-8";
-        if (extension.endsWith(".css"))  return "text/css";
-        if (extension.endsWith(".js"))   return "application/javascript";
+        intercambio.sendResponseHeaders(200, 0);
         
-        // ========== TIPOS MIME PARA IMÁGENES ==============================================
-        if (extension.endsWith(".png"))  return "image/png";
-        if (extension.endsWith(".jpg") || extension.endsWith(".jpeg")) return "image/jpeg";
-        if (extension.endsWith(".ico"))  return "image/x-icon";
-        
-        // ========== TIPO MIME POR DEFECTO ==============================================
-        // Para extensiones no reconocidas, devuelve tipo genérico
-        // Esto hace que el navegador trate el archivo como binario
-        return "application/octet-stream";
+        // El try-with-resources cierra el InputStream del classpath y el cuerpo de la respuesta
+        try (InputStream entrada = archivo; OutputStream salida = intercambio.getResponseBody()) {
+            entrada.transferTo(salida);
+        }
     }
 }
\ No newline at end of file
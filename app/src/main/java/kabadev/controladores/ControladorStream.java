@@ -1,92 +1,454 @@
 package kabadev.controladores;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Files;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
+
+import kabadev.biblioteca.ArchivoMedio;
+import kabadev.biblioteca.BibliotecaMedios;
+import kabadev.cache.CacheCanales;
+import kabadev.cache.CacheTrozos;
+import kabadev.cache.CanalAbierto;
+import kabadev.catalogo.Pelicula;
+import kabadev.catalogo.ServicioCatalogo;
+import kabadev.metricas.MetricasHttp;
+import kabadev.mp4.CacheMp4;
+import kabadev.mp4.DisposicionFaststart;
+import kabadev.mp4.EmpaquetadoHls;
+import kabadev.mp4.FotogramasClave;
+import kabadev.servidor.ContenidoRangos;
+import kabadev.servidor.IControladorRuta;
+import kabadev.servidor.ParametrosConsulta;
+import kabadev.servidor.RangoBytes;
+import kabadev.servidor.RangosHttp;
+import kabadev.servidor.RespuestaRangos;
+import kabadev.servidor.Respuestas;
+import kabadev.servidor.RutaHttp;
+import kabadev.trafico.FlujoLimitado;
+import kabadev.trafico.PlanificadorTrafico;
 
 /**
  * Controlador de Streaming MP4
- * Sirve videos MP4 SOLO bajo petición específica
+ * Sirve videos MP4 SOLO bajo petición específica: /stream/{id}
+ *
+ * El id se busca en el catálogo y el archivo en el índice de la biblioteca;
+ * el cliente nunca indica una ruta del sistema de archivos. Si la biblioteca
+ * no conoce el vídeo se usa la ruta videoUrl del catálogo tal cual.
+ *
+ * Los archivos abiertos se reutilizan entre peticiones (CacheCanales), así que
+ * las peticiones de rango de un reproductor no repiten open + stat. Con la
+ * caché de trozos (CacheTrozos) los bytes se leen una vez, con lectura
+ * anticipada, y se comparten entre los espectadores de la misma película
+ * (con el motor NIO el archivo sale por sendfile sin pasar por ella).
+ *
+ * Si el MP4 tiene el moov al final se sirve una vista "faststart" con el moov
+ * delante del mdat (CacheMp4): el navegador puede empezar a reproducir con la
+ * primera petición en lugar de tener que pedir antes el final del archivo.
+ *
+ * Admite peticiones parciales (Range / If-Range) para que el navegador pueda
+ * buscar dentro del video sin volver a descargar el archivo completo.
+ *
+ * Búsqueda por tiempo a partir de las tablas de muestras del moov:
+ * - /stream/{id}?t=segundos: 206 desde el fotograma clave anterior a ese
+ *   instante hasta el final (cabeceras X-Seek-Time y X-Seek-Offset). Pensado
+ *   para clientes que ya tienen el moov (primeros bytes de la misma vista).
+ *   Si la petición trae Range manda el rango (con su If-Range) y t se ignora
+ * - /stream/{id}/keyframes: índice binario compacto de fotogramas clave
+ *   (tiempo y offset) para barras de búsqueda y miniaturas
+ *
+ * HLS sin recodificar (EmpaquetadoHls), para reproductores que prefieren
+ * segmentos a rangos (Safari, hls.js, Chromecast):
+ * - /hls/{id}/index.m3u8: lista VOD con los segmentos cortados en fotogramas clave
+ * - /hls/{id}/init.mp4 y /hls/{id}/seg-N.m4s: inicialización y fragmentos fMP4;
+ *   las muestras salen del archivo original con transferTo
+ *
+ * Con límites de tráfico configurados (PlanificadorTrafico) el vídeo sale a
+ * bloques al ritmo que permiten los cubos global, de la IP y del stream, para
+ * que una descarga completa no deje sin red a los demás espectadores
+ *
+ * Se registra en varias rutas: controlar para /stream/{id}, fotogramas para
+ * /stream/{id}/keyframes, listaHls y recursoHls para /hls; el método y CORS
+ * los resuelven los middlewares
  */
-public class ControladorStream implements HttpHandler {
+public class ControladorStream implements IControladorRuta {
+
+    /** Respuesta que se envía con el vídeo ya abierto (y el flujo limitado si se pidió) */
+    @FunctionalInterface
+    private interface EnvioVideo {
+        void enviar(CanalAbierto video, FlujoLimitado flujo) throws IOException;
+    }
+
+    private final ServicioCatalogo catalogo;
+    private final BibliotecaMedios biblioteca;
+    private final CacheCanales canales;
+    private final CacheMp4 mp4;
+    private final CacheTrozos trozos;
+    private final PlanificadorTrafico trafico;
+    private final MetricasHttp metricas;
+
+    /**
+     * @param catalogo Catálogo donde se buscan los ids
+     * @param biblioteca Índice de los vídeos en disco
+     * @param canales Caché de archivos abiertos
+     * @param mp4 Caché de análisis MP4 para la vista faststart (null = servir siempre el original)
+     * @param trozos Caché compartida de trozos (null = leer siempre del archivo)
+     * @param trafico Límites de ancho de banda de los streams
+     * @param metricas Tiempo hasta el primer byte y streams activos (null = sin medir)
+     */
+    public ControladorStream(ServicioCatalogo catalogo, BibliotecaMedios biblioteca, CacheCanales canales,
+            CacheMp4 mp4, CacheTrozos trozos, PlanificadorTrafico trafico, MetricasHttp metricas) {
+        this.catalogo = catalogo;
+        this.biblioteca = biblioteca;
+        this.canales = canales;
+        this.mp4 = mp4;
+        this.trozos = trozos;
+        this.trafico = trafico;
+        this.metricas = metricas;
+    }
 
+    /**
+     * /stream/{id}: el vídeo completo, los rangos pedidos o desde ?t=
+     */
     @Override
-    public void handle(HttpExchange intercambio) throws IOException {
-        
-        if (!"GET".equals(intercambio.getRequestMethod())) {
-            intercambio.sendResponseHeaders(405, -1);
+    public void controlar(HttpExchange intercambio, RutaHttp ruta) throws IOException {
+        long inicio = System.nanoTime();
+
+        Map<String, String> parametros = ParametrosConsulta.analizar(intercambio.getRequestURI().getRawQuery());
+        long instanteMs = -1;
+        if (parametros.containsKey("t")) {
+            instanteMs = leerInstante(parametros.get("t"));
+            if (instanteMs < 0) {
+                Respuestas.texto(intercambio, 400, "Parámetro t no válido: " + parametros.get("t"));
+                return;
+            }
+        }
+
+        long instante = instanteMs;
+        atender(intercambio, ruta, true, (video, flujo) -> enviarMP4(intercambio, video, instante, flujo, inicio));
+    }
+
+    /**
+     * /stream/{id}/keyframes: índice de fotogramas clave del vídeo
+     */
+    public void fotogramas(HttpExchange intercambio, RutaHttp ruta) throws IOException {
+        atender(intercambio, ruta, false, (video, flujo) -> enviarFotogramas(intercambio, video));
+    }
+
+    /**
+     * /hls/{id}/index.m3u8: lista de reproducción HLS del vídeo
+     */
+    public void listaHls(HttpExchange intercambio, RutaHttp ruta) throws IOException {
+        atender(intercambio, ruta, false, (video, flujo) -> enviarHls(intercambio, video, "index.m3u8", null));
+    }
+
+    /**
+     * /hls/{id}/{recurso}: init.mp4 o seg-N.m4s
+     */
+    public void recursoHls(HttpExchange intercambio, RutaHttp ruta) throws IOException {
+        String recurso = ruta.parametro(intercambio, "segmento");
+        if (!"init.mp4".equals(recurso) && numeroSegmento(recurso) < 0) {
+            Respuestas.texto(intercambio, 404, "Recurso HLS no encontrado: " + recurso);
             return;
         }
-        
-        String query = intercambio.getRequestURI().getQuery();
-        
-        if (query == null || !query.startsWith("path=")) {
-            String error = "Parámetro 'path' requerido";
-            intercambio.sendResponseHeaders(400, error.getBytes().length);
-            try (OutputStream salida = intercambio.getResponseBody()) {
-                salida.write(error.getBytes());
-            }
+        atender(intercambio, ruta, recurso.startsWith("seg-"),
+                (video, flujo) -> enviarHls(intercambio, video, recurso, flujo));
+    }
+
+    /**
+     * Resuelve el id, abre el vídeo y traduce los errores de E/S a 404 / 500
+     *
+     * @param limitar true si la respuesta lleva vídeo y debe pasar por el planificador de tráfico
+     */
+    private void atender(HttpExchange intercambio, RutaHttp ruta, boolean limitar, EnvioVideo envio)
+            throws IOException {
+
+        // ========== RESOLUCIÓN DEL ID ==========
+        Pelicula pelicula = buscarPelicula(ruta.parametro(intercambio, "id"));
+        if (pelicula == null) {
+            Respuestas.texto(intercambio, 404, "Video no encontrado");
             return;
         }
-        
-        String rutaVideo = query.substring(5);
-        
-        try {
-            rutaVideo = java.net.URLDecoder.decode(rutaVideo, "UTF-8");
-            enviarMP4(intercambio, rutaVideo);
-            
+
+        Path archivoVideo = resolverArchivo(pelicula);
+        if (archivoVideo == null) {
+            Respuestas.texto(intercambio, 404, "Video no disponible: " + pelicula.id());
+            return;
+        }
+
+        try (CanalAbierto video = canales.adquirir(archivoVideo);
+                FlujoLimitado flujo = limitar ? abrirFlujo(intercambio) : null) {
+            envio.enviar(video, flujo);
+
+        } catch (NoSuchFileException e) {
+            Respuestas.texto(intercambio, 404, "Video no disponible: " + pelicula.id());
+
         } catch (Exception e) {
-            String error = "Error al reproducir video: " + e.getMessage();
-            intercambio.sendResponseHeaders(500, error.getBytes().length);
-            try (OutputStream salida = intercambio.getResponseBody()) {
-                salida.write(error.getBytes());
+            // Si las cabeceras ya salieron (p. ej. el navegador cortó la conexión al
+            // buscar otra posición) no se puede enviar un 500: solo cerramos
+            if (intercambio.getResponseCode() != -1) {
+                intercambio.close();
+                return;
             }
+            Respuestas.texto(intercambio, 500, "Error al reproducir video: " + e.getMessage());
         }
     }
-    
+
     /**
-     * Envía archivo MP4 por chunks
+     * Envía el archivo MP4 completo, los rangos solicitados o, con ?t=, desde
+     * el fotograma clave anterior al instante pedido
+     * El contenido viaja con FileChannel.transferTo, sin copiar por el heap
+     *
+     * @param instanteMs Instante pedido con ?t= en milisegundos, o -1 si no hay
+     * @param flujo Límites de tráfico de este stream, o null si no hay
+     * @param inicio Instante (System.nanoTime) en que llegó la petición
      */
-    private void enviarMP4(HttpExchange intercambio, String rutaVideo) throws IOException {
-        
-        Path archivoVideo = Paths.get(rutaVideo);
-        
-        if (!Files.exists(archivoVideo)) {
-            String error = "Video no encontrado: " + rutaVideo;
-            intercambio.sendResponseHeaders(404, error.getBytes().length);
-            try (OutputStream salida = intercambio.getResponseBody()) {
-                salida.write(error.getBytes());
+    private void enviarMP4(HttpExchange intercambio, CanalAbierto video, long instanteMs, FlujoLimitado flujo,
+            long inicio) throws IOException {
+
+        ContenidoRangos contenido = trozos != null ? trozos.contenido(video)
+                : ContenidoRangos.deArchivo(video.canal(), video.tamano());
+        String etag = video.etag();
+        CacheMp4.AnalisisMp4 analisis = null;
+
+        // ========== VISTA FASTSTART (moov delante del mdat) ==========
+        if (mp4 != null) {
+            analisis = mp4.obtener(video.ruta(), video.canal(), video.tamano(), video.ultimaModificacion());
+            if (analisis.faststart() != null) {
+                contenido = analisis.faststart().contenido(contenido);
+                etag = DisposicionFaststart.etag(etag);
+            }
+        }
+
+        if (flujo != null) {
+            contenido = flujo.limitar(contenido);
+        }
+        if (metricas != null) {
+            // Por fuera del limitador: la primera transferencia empieza justo tras las cabeceras
+            contenido = metricas.medirStream(contenido, inicio);
+            metricas.inicioStream();
+        }
+        try {
+            responder(intercambio, video, contenido, etag, analisis, instanteMs);
+        } finally {
+            if (metricas != null) {
+                metricas.finStream();
             }
+        }
+    }
+
+    /**
+     * Envía la respuesta de vídeo: desde un fotograma clave si se pidió ?t= y
+     * hay tablas utilizables, o según Range / If-Range en otro caso
+     */
+    private void responder(HttpExchange intercambio, CanalAbierto video, ContenidoRangos contenido, String etag,
+            CacheMp4.AnalisisMp4 analisis, long instanteMs) throws IOException {
+
+        // ========== BÚSQUEDA POR TIEMPO (?t=) ==========
+        // Sin tablas utilizables se ignora t y se responde como a una petición normal
+        FotogramasClave claves = instanteMs >= 0 && analisis != null
+                ? mp4.fotogramasClave(analisis, video.canal()) : null;
+        if (claves != null) {
+            int indice = claves.anteriorA(instanteMs);
+            enviarVideo(intercambio, contenido, etag, video.ultimaModificacion(), claves.offset(indice),
+                    claves.tiempoMs(indice));
             return;
         }
-        
-        long tamano = Files.size(archivoVideo);
-        
-        // Headers para MP4
-        intercambio.getResponseHeaders().add("Content-Type", "video/mp4");
-        intercambio.getResponseHeaders().add("Accept-Ranges", "bytes");
-        intercambio.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        intercambio.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, OPTIONS");
-        intercambio.getResponseHeaders().add("Access-Control-Allow-Headers", "Range");
-        
-        intercambio.sendResponseHeaders(200, tamano);
-        
-        // Streaming por chunks
-        try (InputStream input = Files.newInputStream(archivoVideo);
-             OutputStream output = intercambio.getResponseBody()) {
-            
-            byte[] buffer = new byte[8192];
-            int bytes;
-            
-            while ((bytes = input.read(buffer)) != -1) {
-                output.write(buffer, 0, bytes);
+        enviarVideo(intercambio, contenido, etag, video.ultimaModificacion(), -1, 0);
+    }
+
+    /**
+     * Envía el vídeo desde el fotograma clave elegido con ?t= o según
+     * Range / If-Range. Un Range de la petición tiene prioridad: el reproductor
+     * que pide un rango (o lo valida con If-Range) recibe ese rango o el 200
+     * completo, nunca los bytes desde el fotograma clave
+     *
+     * @param desde Offset del fotograma clave, o -1 si no hay búsqueda por tiempo
+     * @param tiempoMs Instante del fotograma clave
+     */
+    static void enviarVideo(HttpExchange intercambio, ContenidoRangos contenido, String etag, long ultimaModificacion,
+            long desde, long tiempoMs) throws IOException {
+        boolean conRango = intercambio.getRequestHeaders().getFirst("Range") != null;
+        if (desde >= 0 && desde < contenido.tamano() && !conRango) {
+            intercambio.getResponseHeaders().set("X-Seek-Time", formatearSegundos(tiempoMs));
+            intercambio.getResponseHeaders().set("X-Seek-Offset", Long.toString(desde));
+            RespuestaRangos.enviarRango(intercambio, contenido, "video/mp4", etag, ultimaModificacion,
+                    new RangoBytes(desde, contenido.tamano() - 1));
+            return;
+        }
+        RespuestaRangos.enviar(intercambio, contenido, "video/mp4", etag, ultimaModificacion);
+    }
+
+    /**
+     * Registra el stream en el planificador de tráfico
+     *
+     * @return El flujo, o null si no hay límites configurados
+     */
+    private FlujoLimitado abrirFlujo(HttpExchange intercambio) {
+        if (!trafico.activo()) {
+            return null;
+        }
+        InetSocketAddress remota = intercambio.getRemoteAddress();
+        return trafico.abrir(remota == null ? null : remota.getAddress());
+    }
+
+    /**
+     * Envía el índice binario de fotogramas clave (formato de FotogramasClave.codificar)
+     * Los offsets corresponden a los bytes que sirve /stream/{id} (vista faststart incluida)
+     */
+    private void enviarFotogramas(HttpExchange intercambio, CanalAbierto video) throws IOException {
+        FotogramasClave claves = null;
+        String etag = video.etag();
+        if (mp4 != null) {
+            CacheMp4.AnalisisMp4 analisis = mp4.obtener(video.ruta(), video.canal(), video.tamano(),
+                    video.ultimaModificacion());
+            if (analisis.faststart() != null) {
+                etag = DisposicionFaststart.etag(etag);
+            }
+            claves = mp4.fotogramasClave(analisis, video.canal());
+        }
+        if (claves == null) {
+            Respuestas.texto(intercambio, 404, "Sin índice de fotogramas clave");
+            return;
+        }
+
+        // El índice cambia solo si cambia el vídeo: ETag derivado del de la vista servida
+        etag = etag.endsWith("\"") ? etag.substring(0, etag.length() - 1) + "-kf\"" : etag + "-kf";
+        intercambio.getResponseHeaders().set("ETag", etag);
+        intercambio.getResponseHeaders().set("Cache-Control", "no-cache");
+        if (RangosHttp.coincideEtag(intercambio.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            Respuestas.sinCuerpo(intercambio, 304);
+            return;
+        }
+
+        Respuestas.enviar(intercambio, 200, "application/octet-stream", claves.codificar());
+    }
+
+    /**
+     * Envía la lista, el segmento de inicialización o un segmento HLS
+     * Los ETag derivan del archivo original: cambian solo si cambia el vídeo
+     *
+     * @param recurso index.m3u8, init.mp4 o seg-N.m4s (ya validado)
+     * @param flujo Límites de tráfico de este stream, o null si no hay
+     */
+    private void enviarHls(HttpExchange intercambio, CanalAbierto video, String recurso, FlujoLimitado flujo)
+            throws IOException {
+        EmpaquetadoHls hls = null;
+        if (mp4 != null) {
+            CacheMp4.AnalisisMp4 analisis = mp4.obtener(video.ruta(), video.canal(), video.tamano(),
+                    video.ultimaModificacion());
+            hls = mp4.empaquetadoHls(analisis, video.canal());
+        }
+        if (hls == null) {
+            Respuestas.texto(intercambio, 404, "El vídeo no se puede servir como HLS");
+            return;
+        }
+
+        String etag = EmpaquetadoHls.etag(video.etag(), recurso);
+        if (recurso.equals("index.m3u8") || recurso.equals("init.mp4")) {
+            intercambio.getResponseHeaders().set("ETag", etag);
+            intercambio.getResponseHeaders().set("Cache-Control", "no-cache");
+            if (RangosHttp.coincideEtag(intercambio.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                Respuestas.sinCuerpo(intercambio, 304);
+                return;
+            }
+            if (recurso.equals("init.mp4")) {
+                Respuestas.enviar(intercambio, 200, "video/mp4", hls.inicializacion());
+            } else {
+                Respuestas.enviar(intercambio, 200, "application/vnd.apple.mpegurl",
+                        hls.listaReproduccion().getBytes(StandardCharsets.UTF_8));
+            }
+            return;
+        }
+
+        int numero = numeroSegmento(recurso);
+        if (numero >= hls.segmentos()) {
+            Respuestas.texto(intercambio, 404, "Segmento HLS no encontrado: " + recurso);
+            return;
+        }
+        // Los offsets del empaquetado son los del archivo en disco, no los de la vista faststart
+        ContenidoRangos original = trozos != null ? trozos.contenido(video)
+                : ContenidoRangos.deArchivo(video.canal(), video.tamano());
+        ContenidoRangos segmento = hls.segmento(numero, original);
+        if (flujo != null) {
+            segmento = flujo.limitar(segmento);
+        }
+        RespuestaRangos.enviar(intercambio, segmento, "video/iso.segment", etag, video.ultimaModificacion());
+    }
+
+    /**
+     * @return N de "seg-N.m4s", o -1 si el nombre no tiene esa forma
+     */
+    static int numeroSegmento(String recurso) {
+        if (recurso == null || !recurso.startsWith("seg-") || !recurso.endsWith(".m4s")) {
+            return -1;
+        }
+        String numero = recurso.substring(4, recurso.length() - 4);
+        if (numero.isEmpty() || numero.length() > 9 || !numero.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            return -1;
+        }
+        return Integer.parseInt(numero);
+    }
+
+    /**
+     * Convierte ?t= (segundos, admite decimales) a milisegundos
+     *
+     * @return Milisegundos, o -1 si el valor no es un número finito no negativo
+     */
+    static long leerInstante(String valor) {
+        try {
+            double segundos = Double.parseDouble(valor);
+            if (!Double.isFinite(segundos) || segundos < 0) {
+                return -1;
             }
+            return (long) (segundos * 1000);
+        } catch (NumberFormatException | NullPointerException e) {
+            return -1;
+        }
+    }
+
+    private static String formatearSegundos(long ms) {
+        return ms / 1000 + "." + String.format("%03d", ms % 1000);
+    }
+
+    /**
+     * Busca en el catálogo el {id} de la ruta
+     *
+     * @return La película, o null si el id no es un número o no existe
+     */
+    private Pelicula buscarPelicula(String id) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            return catalogo.actual().buscarPorId(Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ruta del vídeo en disco: primero el índice de la biblioteca y, si no lo
+     * tiene, el videoUrl del catálogo (la ruta la escribe el administrador, no el cliente)
+     */
+    private Path resolverArchivo(Pelicula pelicula) {
+        ArchivoMedio indexado = biblioteca.resolver(pelicula);
+        if (indexado != null) {
+            return indexado.ruta();
+        }
+        if (pelicula.videoUrl() == null || pelicula.videoUrl().isBlank()) {
+            return null;
+        }
+        try {
+            return Paths.get(pelicula.videoUrl());
+        } catch (InvalidPathException e) {
+            return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -2,71 +2,110 @@ package kabadev.controladores;
 
 // Importaciones de las clases nativas de Java para manejo de entrada/salida
 import java.io.IOException;          // Excepción para errores de entrada/salida
-import java.io.InputStream;          // Flujo de entrada de datos
-import java.io.OutputStream;         // Flujo de salida de datos
+import java.nio.charset.StandardCharsets; // Codificación UTF-8 para los mensajes de error
+import java.util.Map;                // Parámetros de la query string
 
 import com.sun.net.httpserver.HttpExchange; // Objeto que contiene petición y respuesta HTTP
-import com.sun.net.httpserver.HttpHandler;  // Interfaz para manejar peticiones HTTP
+
+import kabadev.catalogo.Catalogo.RespuestaCatalogo; // Página ya serializada a JSON
+import kabadev.catalogo.ConsultaCatalogo;           // Parámetros normalizados de la consulta
+import kabadev.catalogo.ServicioCatalogo;           // Catálogo indexado en memoria
+import kabadev.servidor.IControladorHttp;           // Interfaz de los controladores del servidor
+import kabadev.servidor.ParametrosConsulta;         // Lectura de la query string
+import kabadev.servidor.Respuestas;                 // Envío de respuestas completas
 
 /**
  * Controlador de Videos
  * Maneja las solicitudes para obtener la lista de videos disponibles
- * Lee directamente el archivo asterix.json y lo devuelve al cliente
- * 
- * Simple y directo: sirve el contenido JSON preconfigurado
- * El frontend procesará estos datos para mostrar la interfaz visual
+ *
+ * El catálogo se analiza una sola vez al arrancar (ServicioCatalogo) y cada
+ * forma de consulta se serializa a JSON la primera vez que se pide
+ *
+ * Parámetros opcionales de /video:
+ * - page: página empezando en 0
+ * - size: películas por página (por defecto 24, máximo 100)
+ * - year: año exacto
+ * - q: texto a buscar en el título (cada palabra como prefijo)
+ *
+ * Sin page ni size se devuelve el array completo de coincidencias, como antes.
+ * El total de coincidencias viaja en la cabecera X-Total-Count
  */
-public class ControladorVideo implements HttpHandler {
+public class ControladorVideo implements IControladorHttp {
+
+    private final ServicioCatalogo catalogo;
+
+    /**
+     * @param catalogo Servicio con el catálogo ya cargado
+     */
+    public ControladorVideo(ServicioCatalogo catalogo) {
+        this.catalogo = catalogo;
+    }
 
     /**
      * Maneja las peticiones HTTP para obtener la lista de videos
      * @param intercambio Objeto que contiene la petición del cliente y permite enviar respuesta
-     * @throws IOException Si hay error al leer el archivo JSON o enviar respuesta
+     * @throws IOException Si hay error al enviar respuesta
      */
     @Override
-    public void handle(HttpExchange intercambio) throws IOException {
-        
-        // ========== VALIDACIÓN DEL MÉTODO HTTP ==========
-        // Verifica que la petición sea GET (solo permitimos consultas)
-        if (!"GET".equals(intercambio.getRequestMethod())) {
-            intercambio.sendResponseHeaders(405, -1);
+    public void controlar(HttpExchange intercambio) throws IOException {
+
+        // ========== LECTURA DE PARÁMETROS ==========
+        ConsultaCatalogo consulta;
+        try {
+            consulta = crearConsulta(ParametrosConsulta.analizar(intercambio.getRequestURI().getRawQuery()));
+        } catch (IllegalArgumentException e) {
+            enviarError(intercambio, 400, "Parámetros no válidos: " + e.getMessage());
             return;
         }
-        
+
         try {
-            // ========== LECTURA DEL ARCHIVO JSON ==========
-            // Lee el archivo asterix.json desde los recursos del proyecto
-            InputStream archivoJson = getClass().getClassLoader().getResourceAsStream("asterix.json");
-            
-            if (archivoJson == null) {
-                String error = "{\"error\":\"Archivo asterix.json no encontrado\"}";
-                intercambio.sendResponseHeaders(404, error.getBytes().length);
-                try (OutputStream salida = intercambio.getResponseBody()) {
-                    salida.write(error.getBytes());
-                }
-                return;
-            }
-            
-            // ========== LECTURA Y ENVÍO DEL CONTENIDO ==========
-            byte[] contenidoJson = archivoJson.readAllBytes();
-            
-            // Configura la respuesta como JSON
-            intercambio.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
-            intercambio.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-            
-            intercambio.sendResponseHeaders(200, contenidoJson.length);
-            
-            try (OutputStream salida = intercambio.getResponseBody()) {
-                salida.write(contenidoJson);
-            }
-            
+            // ========== ENVÍO DE LA PÁGINA SERIALIZADA ==========
+            RespuestaCatalogo respuesta = catalogo.actual().responder(consulta);
+            intercambio.getResponseHeaders().set("X-Total-Count", String.valueOf(respuesta.total()));
+            Respuestas.json(intercambio, 200, respuesta.json());
+
         } catch (Exception e) {
             // ========== MANEJO DE ERRORES ==========
-            String error = "{\"error\":\"Error al leer lista de videos: " + e.getMessage() + "\"}";
-            intercambio.sendResponseHeaders(500, error.getBytes().length);
-            try (OutputStream salida = intercambio.getResponseBody()) {
-                salida.write(error.getBytes());
-            }
+            enviarError(intercambio, 500, "Error al leer lista de videos: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Convierte los parámetros de la URL en una consulta al catálogo
+     * @throws IllegalArgumentException Si algún número no es válido
+     */
+    static ConsultaCatalogo crearConsulta(Map<String, String> parametros) {
+        String pagina = parametros.get("page");
+        String tamano = parametros.get("size");
+        String anio = parametros.get("year");
+
+        boolean paginar = pagina != null || tamano != null;
+        return new ConsultaCatalogo(
+                pagina == null ? 0 : numero("page", pagina),
+                !paginar ? 0 : tamano == null ? ConsultaCatalogo.TAMANO_POR_DEFECTO : positivo("size", tamano),
+                anio == null ? null : numero("year", anio),
+                parametros.get("q"));
+    }
+
+    private static int numero(String nombre, String valor) {
+        try {
+            return Integer.parseInt(valor.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(nombre + " debe ser un número entero");
+        }
+    }
+
+    private static int positivo(String nombre, String valor) {
+        int numero = numero(nombre, valor);
+        if (numero < 1) {
+            throw new IllegalArgumentException(nombre + " debe ser mayor que 0");
         }
+        return numero;
+    }
+
+    static void enviarError(HttpExchange intercambio, int codigo, String mensaje) throws IOException {
+        byte[] error = ("{\"error\":\"" + mensaje.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        Respuestas.json(intercambio, codigo, error);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package kabadev.metricas;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de duraciones sin cerrojos al estilo HdrHistogram
+ *
+ * Las cubetas son logarítmico-lineales: cada potencia de dos se divide en 8
+ * subcubetas, así que cualquier valor se guarda con un error relativo menor
+ * del 12,5 % desde 1 ns hasta siglos, con 512 contadores fijos. Registrar es
+ * un cálculo de bits y un incremento atómico; no hay reservas de memoria ni
+ * cerrojos en el camino de la petición
+ */
+public final class Histograma {
+
+    private static final int BITS_SUBCUBETA = 3;
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+    private static final int CUBETAS = (64 - BITS_SUBCUBETA + 1) * SUBCUBETAS;
+
+    private final AtomicLongArray cuentas = new AtomicLongArray(CUBETAS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+
+    /**
+     * @param nanos Duración en nanosegundos (los negativos cuentan como 0)
+     */
+    public void registrar(long nanos) {
+        long valor = Math.max(0, nanos);
+        cuentas.incrementAndGet(indice(valor));
+        total.increment();
+        suma.add(valor);
+    }
+
+    public long cantidad() {
+        return total.sum();
+    }
+
+    /**
+     * @return Suma de todas las duraciones en nanosegundos
+     */
+    public long sumaNanos() {
+        return suma.sum();
+    }
+
+    /**
+     * Valores registrados que no superan un límite (aproximado a la cubeta)
+     *
+     * @param limiteNanos Límite superior incluido
+     */
+    public long hasta(long limiteNanos) {
+        long cuenta = 0;
+        for (int i = 0; i < CUBETAS && limiteInferior(i) <= limiteNanos; i++) {
+            cuenta += cuentas.get(i);
+        }
+        return cuenta;
+    }
+
+    /**
+     * Percentil aproximado
+     *
+     * @param percentil Entre 0 y 100
+     * @return Límite superior de la cubeta que contiene el percentil, en nanosegundos
+     */
+    public long percentil(double percentil) {
+        long objetivo = (long) Math.ceil(cantidad() * Math.min(100, Math.max(0, percentil)) / 100.0);
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += cuentas.get(i);
+            if (acumulado >= objetivo && acumulado > 0) {
+                return i + 1 < CUBETAS ? limiteInferior(i + 1) - 1 : Long.MAX_VALUE;
+            }
+        }
+        return 0;
+    }
+
+    // ========== CÁLCULO DE CUBETAS ==========
+
+    /**
+     * Valores 0..7 van a su propia cubeta; a partir de ahí la cubeta la fijan
+     * el bit más alto (potencia de dos) y los 3 bits siguientes (subcubeta)
+     */
+    static int indice(long valor) {
+        if (valor < SUBCUBETAS) {
+            return (int) valor;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(valor);
+        int sub = (int) (valor >>> (exponente - BITS_SUBCUBETA)) & (SUBCUBETAS - 1);
+        return (exponente - BITS_SUBCUBETA + 1) * SUBCUBETAS + sub;
+    }
+
+    /**
+     * Menor valor que cae en la cubeta
+     */
+    static long limiteInferior(int indice) {
+        if (indice < SUBCUBETAS) {
+            return indice;
+        }
+        int exponente = indice / SUBCUBETAS + BITS_SUBCUBETA - 1;
+        long sub = indice % SUBCUBETAS;
+        return (1L << exponente) | (sub << (exponente - BITS_SUBCUBETA));
+    }
+}
@@ -0,0 +1,281 @@
+package kabadev.metricas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import kabadev.servidor.ContenidoRangos;
+import kabadev.servidor.IControladorHttp;
+
+/**
+ * Métricas de la capa HTTP en formato de texto de Prometheus
+ *
+ * Todo lo que se toca en cada petición es LongAdder, AtomicInteger o un
+ * Histograma sin cerrojos; el texto solo se compone cuando alguien lee /metrics.
+ *
+ * - Por contexto: peticiones por código, en curso, bytes enviados y latencia
+ *   (desde que el controlador empieza hasta que termina la respuesta)
+ * - /stream: tiempo hasta el primer byte del vídeo, streams activos y bytes
+ *   de vídeo realmente enviados
+ * - Pool de hilos: cola y hilos ocupados (pool fijo o caché) o tareas en
+ *   curso (hilos virtuales)
+ * - JVM: heap usado, memoria directa e hilos de plataforma
+ * - Indicadores de otros componentes registrados con registrarIndicador
+ */
+public final class MetricasHttp {
+
+    /** Límites de las cubetas exportadas, en segundos */
+    private static final double[] LIMITES_SEGUNDOS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+
+    /** Contadores de un contexto registrado */
+    private static final class MetricasContexto {
+        final Histograma latencia = new Histograma();
+        final AtomicInteger enCurso = new AtomicInteger();
+        final LongAdder bytes = new LongAdder();
+        final Map<Integer, LongAdder> porCodigo = new ConcurrentHashMap<>();
+    }
+
+    private record Indicador(String nombre, String ayuda, String tipo, LongSupplier valor) {
+    }
+
+    private final Map<String, MetricasContexto> contextos = new ConcurrentHashMap<>();
+    private final Histograma primerByteStream = new Histograma();
+    private final AtomicInteger streamsActivos = new AtomicInteger();
+    private final LongAdder bytesStream = new LongAdder();
+    private final List<Indicador> indicadores = new ArrayList<>();
+
+    // ========== INSTRUMENTACIÓN ==========
+
+    /**
+     * Envuelve un controlador para medirlo; usarMetricas lo registra como
+     * middleware, así que encaja con la firma de Middleware.envolver
+     *
+     * @param contexto Patrón de la ruta (etiqueta de las métricas: /stream/{id}, no cada id)
+     * @param controlador Controlador real
+     * @return Controlador que mide y delega
+     */
+    public IControladorHttp instrumentar(String contexto, IControladorHttp controlador) {
+        MetricasContexto metricas = contextos.computeIfAbsent(contexto, ruta -> new MetricasContexto());
+        return intercambio -> {
+            long inicio = System.nanoTime();
+            metricas.enCurso.incrementAndGet();
+            try {
+                controlador.controlar(intercambio);
+            } finally {
+                metricas.enCurso.decrementAndGet();
+                metricas.latencia.registrar(System.nanoTime() - inicio);
+                registrarRespuesta(metricas, intercambio);
+            }
+        };
+    }
+
+    private static void registrarRespuesta(MetricasContexto metricas, HttpExchange intercambio) {
+        // -1 = el controlador falló antes de responder: el servidor contestará 500
+        int codigo = intercambio.getResponseCode();
+        metricas.porCodigo.computeIfAbsent(codigo < 0 ? 500 : codigo, c -> new LongAdder()).increment();
+
+        // Longitud declarada; las respuestas chunked (sin Content-Length) no suman
+        String longitud = intercambio.getResponseHeaders().getFirst("Content-Length");
+        if (longitud != null && codigo != 304 && !"HEAD".equals(intercambio.getRequestMethod())) {
+            try {
+                metricas.bytes.add(Long.parseLong(longitud.trim()));
+            } catch (NumberFormatException e) {
+                // Cabecera mal formada: no se cuenta
+            }
+        }
+    }
+
+    /**
+     * Marca el inicio de un stream de vídeo; hay que llamar a finStream al terminar
+     */
+    public void inicioStream() {
+        streamsActivos.incrementAndGet();
+    }
+
+    public void finStream() {
+        streamsActivos.decrementAndGet();
+    }
+
+    /**
+     * Envuelve el contenido de un stream para medir el tiempo hasta el primer
+     * byte (la primera transferencia sigue a las cabeceras) y los bytes enviados
+     * El cuerpo se pasa tal cual: sendfile y los buffers compartidos siguen funcionando
+     *
+     * @param contenido Contenido del vídeo
+     * @param inicioNanos Instante (System.nanoTime) en que empezó la petición
+     */
+    public ContenidoRangos medirStream(ContenidoRangos contenido, long inicioNanos) {
+        return new ContenidoRangos() {
+            private boolean primero = true;
+
+            @Override
+            public long tamano() {
+                return contenido.tamano();
+            }
+
+            @Override
+            public void transferir(long posicion, long longitud, OutputStream salida) throws IOException {
+                if (primero) {
+                    primero = false;
+                    primerByteStream.registrar(System.nanoTime() - inicioNanos);
+                }
+                contenido.transferir(posicion, longitud, salida);
+                bytesStream.add(longitud);
+            }
+        };
+    }
+
+    /**
+     * Publica el estado del pool de hilos del servidor
+     */
+    public void registrarEjecutor(ExecutorService ejecutor) {
+        if (ejecutor instanceof ThreadPoolExecutor pool) {
+            registrarIndicador("dogster_ejecutor_cola", "Tareas esperando un hilo del pool", "gauge",
+                    () -> pool.getQueue().size());
+            registrarIndicador("dogster_ejecutor_hilos_ocupados", "Hilos del pool atendiendo una petición", "gauge",
+                    pool::getActiveCount);
+            registrarIndicador("dogster_ejecutor_hilos", "Hilos que tiene el pool ahora mismo", "gauge",
+                    pool::getPoolSize);
+        } else {
+            // Un hilo virtual por petición: no hay cola, la ocupación son las peticiones en curso
+            registrarIndicador("dogster_ejecutor_cola", "Tareas esperando un hilo del pool", "gauge", () -> 0);
+            registrarIndicador("dogster_ejecutor_hilos_ocupados", "Hilos del pool atendiendo una petición", "gauge",
+                    () -> contextos.values().stream().mapToLong(metricas -> metricas.enCurso.get()).sum());
+        }
+    }
+
+    /**
+     * Publica el heap usado y los hilos de plataforma de la JVM
+     */
+    public void registrarJvm() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+        registrarIndicador("dogster_jvm_heap_usado_bytes", "Heap ocupado por la JVM", "gauge",
+                () -> memoria.getHeapMemoryUsage().getUsed());
+        registrarIndicador("dogster_jvm_directa_bytes", "Memoria directa reservada por búferes NIO", "gauge",
+                MetricasHttp::memoriaDirecta);
+        registrarIndicador("dogster_jvm_hilos", "Hilos de plataforma vivos (los virtuales no cuentan)", "gauge",
+                hilos::getThreadCount);
+    }
+
+    private static long memoriaDirecta() {
+        long total = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            total += pool.getMemoryUsed();
+        }
+        return total;
+    }
+
+    /**
+     * Añade un valor calculado al leer /metrics (tamaño de cachés, aciertos...)
+     *
+     * @param nombre Nombre Prometheus (dogster_...)
+     * @param ayuda Texto de # HELP
+     * @param tipo "gauge" o "counter"
+     * @param valor Función que da el valor actual
+     */
+    public synchronized void registrarIndicador(String nombre, String ayuda, String tipo, LongSupplier valor) {
+        indicadores.removeIf(indicador -> indicador.nombre().equals(nombre));
+        indicadores.add(new Indicador(nombre, ayuda, tipo, valor));
+    }
+
+    // ========== EXPOSICIÓN ==========
+
+    /**
+     * Compone el texto de Prometheus (versión 0.0.4)
+     */
+    public String exportar() {
+        StringBuilder texto = new StringBuilder(4096);
+        Map<String, MetricasContexto> ordenados = new TreeMap<>(contextos);
+
+        cabecera(texto, "dogster_peticiones_total", "Peticiones atendidas por contexto y código", "counter");
+        ordenados.forEach((contexto, metricas) -> new TreeMap<>(metricas.porCodigo).forEach((codigo, cuenta) ->
+                texto.append("dogster_peticiones_total{contexto=\"").append(escapar(contexto))
+                        .append("\",codigo=\"").append(codigo).append("\"} ").append(cuenta.sum()).append('\n')));
+
+        cabecera(texto, "dogster_peticiones_en_curso", "Peticiones que se están atendiendo", "gauge");
+        ordenados.forEach((contexto, metricas) -> linea(texto, "dogster_peticiones_en_curso", contexto,
+                metricas.enCurso.get()));
+
+        cabecera(texto, "dogster_bytes_enviados_total", "Bytes de cuerpo declarados en las respuestas", "counter");
+        ordenados.forEach((contexto, metricas) -> linea(texto, "dogster_bytes_enviados_total", contexto,
+                metricas.bytes.sum()));
+
+        cabecera(texto, "dogster_peticion_segundos", "Duración de las peticiones por contexto", "histogram");
+        ordenados.forEach((contexto, metricas) -> histograma(texto, "dogster_peticion_segundos",
+                "contexto=\"" + escapar(contexto) + "\"", metricas.latencia));
+
+        cabecera(texto, "dogster_stream_primer_byte_segundos", "Tiempo hasta el primer byte de vídeo", "histogram");
+        histograma(texto, "dogster_stream_primer_byte_segundos", null, primerByteStream);
+
+        cabecera(texto, "dogster_streams_activos", "Vídeos enviándose ahora mismo", "gauge");
+        texto.append("dogster_streams_activos ").append(streamsActivos.get()).append('\n');
+
+        cabecera(texto, "dogster_stream_bytes_total", "Bytes de vídeo enviados", "counter");
+        texto.append("dogster_stream_bytes_total ").append(bytesStream.sum()).append('\n');
+
+        List<Indicador> copia;
+        synchronized (this) {
+            copia = List.copyOf(indicadores);
+        }
+        for (Indicador indicador : copia) {
+            cabecera(texto, indicador.nombre(), indicador.ayuda(), indicador.tipo());
+            texto.append(indicador.nombre()).append(' ').append(indicador.valor().getAsLong()).append('\n');
+        }
+        return texto.toString();
+    }
+
+    private static void cabecera(StringBuilder texto, String nombre, String ayuda, String tipo) {
+        texto.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        texto.append("# TYPE ").append(nombre).append(' ').append(tipo).append('\n');
+    }
+
+    private static void linea(StringBuilder texto, String nombre, String contexto, long valor) {
+        texto.append(nombre).append("{contexto=\"").append(escapar(contexto)).append("\"} ").append(valor)
+                .append('\n');
+    }
+
+    private static void histograma(StringBuilder texto, String nombre, String etiquetas, Histograma histograma) {
+        String prefijo = etiquetas == null ? "" : etiquetas + ",";
+        for (double limite : LIMITES_SEGUNDOS) {
+            long nanos = (long) (limite * TimeUnit.SECONDS.toNanos(1));
+            texto.append(nombre).append("_bucket{").append(prefijo).append("le=\"")
+                    .append(formatear(limite)).append("\"} ").append(histograma.hasta(nanos)).append('\n');
+        }
+        long cantidad = histograma.cantidad();
+        String sufijo = etiquetas == null ? "" : "{" + etiquetas + "}";
+        texto.append(nombre).append("_bucket{").append(prefijo).append("le=\"+Inf\"} ").append(cantidad)
+                .append('\n');
+        texto.append(nombre).append("_sum").append(sufijo).append(' ')
+                .append(formatear(histograma.sumaNanos() / 1e9)).append('\n');
+        texto.append(nombre).append("_count").append(sufijo).append(' ').append(cantidad).append('\n');
+    }
+
+    /** Sin notación científica: 0.0005 y no 5.0E-4 */
+    private static String formatear(double valor) {
+        return BigDecimal.valueOf(valor).toPlainString();
+    }
+
+    private static String escapar(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,127 @@
+package kabadev.mp4;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lectura de la estructura de cajas de un MP4 (ISO/IEC 14496-12)
+ *
+ * Solo recorre las cabeceras de primer nivel con lecturas posicionales de 16
+ * bytes: el mdat (casi todo el archivo) nunca se lee. Las cajas hijas se
+ * analizan sobre el contenido del moov ya cargado en memoria
+ */
+public final class AnalizadorMp4 {
+
+    private AnalizadorMp4() {
+    }
+
+    /**
+     * Lee las cajas de primer nivel del archivo
+     *
+     * @param canal Canal del archivo abierto en lectura
+     * @param tamano Tamaño del archivo
+     * @return Cajas encontradas hasta el final o hasta la primera cabecera inválida
+     * @throws IOException Si falla la lectura
+     */
+    public static EstructuraMp4 analizar(FileChannel canal, long tamano) throws IOException {
+        List<CajaMp4> cajas = new ArrayList<>();
+        ByteBuffer cabecera = ByteBuffer.allocate(16);
+
+        long posicion = 0;
+        while (tamano - posicion >= 8) {
+            cabecera.clear().limit((int) Math.min(16, tamano - posicion));
+            leerCompleto(canal, cabecera, posicion);
+
+            CajaMp4 caja = leerCabecera(cabecera, 0, posicion, tamano - posicion);
+            if (caja == null) {
+                break;
+            }
+            cajas.add(caja);
+            posicion = caja.fin();
+        }
+        return new EstructuraMp4(tamano, cajas);
+    }
+
+    /**
+     * Lee el contenido completo de una caja (cabecera incluida)
+     *
+     * @throws IOException Si la caja no cabe en un array o el archivo se acorta
+     */
+    public static byte[] leer(FileChannel canal, CajaMp4 caja) throws IOException {
+        if (caja.tamano() > Integer.MAX_VALUE - 8) {
+            throw new IOException("Caja " + caja.tipo() + " demasiado grande para cargar en memoria");
+        }
+        byte[] bytes = new byte[(int) caja.tamano()];
+        leerCompleto(canal, ByteBuffer.wrap(bytes), caja.posicion());
+        return bytes;
+    }
+
+    /**
+     * Cajas hijas contenidas en datos[desde, hasta)
+     * Las posiciones devueltas son relativas al inicio de datos
+     */
+    public static List<CajaMp4> hijas(ByteBuffer datos, int desde, int hasta) {
+        List<CajaMp4> cajas = new ArrayList<>();
+        int posicion = desde;
+        while (hasta - posicion >= 8) {
+            CajaMp4 caja = leerCabecera(datos, posicion, posicion, hasta - posicion);
+            if (caja == null) {
+                break;
+            }
+            cajas.add(caja);
+            posicion = (int) caja.fin();
+        }
+        return cajas;
+    }
+
+    /**
+     * Interpreta la cabecera que empieza en datos[indice]
+     *
+     * @param posicion Posición que se asignará a la caja
+     * @param restante Bytes disponibles desde esa posición hasta el final del contenedor
+     * @return La caja, o null si la cabecera es inválida o se sale del contenedor
+     */
+    static CajaMp4 leerCabecera(ByteBuffer datos, int indice, long posicion, long restante) {
+        if (datos.limit() - indice < 8) {
+            return null;
+        }
+        long tamano = Integer.toUnsignedLong(datos.getInt(indice));
+        String tipo = new String(new byte[] {
+            datos.get(indice + 4), datos.get(indice + 5), datos.get(indice + 6), datos.get(indice + 7)
+        }, StandardCharsets.ISO_8859_1);
+
+        int cabecera = 8;
+        if (tamano == 1) {
+            // Tamaño de 64 bits tras el tipo
+            if (datos.limit() - indice < 16) {
+                return null;
+            }
+            tamano = datos.getLong(indice + 8);
+            cabecera = 16;
+        } else if (tamano == 0) {
+            // La caja llega hasta el final del contenedor
+            tamano = restante;
+        }
+
+        if (tamano < cabecera || tamano > restante) {
+            return null;
+        }
+        return new CajaMp4(tipo, posicion, tamano, cabecera);
+    }
+
+    private static void leerCompleto(FileChannel canal, ByteBuffer destino, long posicion) throws IOException {
+        long leidos = 0;
+        while (destino.hasRemaining()) {
+            int n = canal.read(destino, posicion + leidos);
+            if (n < 0) {
+                throw new EOFException("Fin de archivo inesperado en la posición " + (posicion + leidos));
+            }
+            leidos += n;
+        }
+    }
+}
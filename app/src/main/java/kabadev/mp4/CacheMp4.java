@@ -0,0 +1,225 @@
+package kabadev.mp4;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Caché del análisis MP4 de cada archivo
+ *
+ * El análisis (cajas de primer nivel y, si hace falta, el moov reescrito para
+ * la vista faststart) se hace la primera vez que se sirve el archivo y se
+ * reutiliza en todas las peticiones de rango siguientes. La clave incluye el
+ * tamaño y la fecha, así un archivo sustituido se vuelve a analizar.
+ *
+ * Acotada por número de entradas y por bytes de moov en memoria (y de tablas
+ * de muestras del empaquetado HLS); se expulsa la entrada usada hace más tiempo
+ */
+public final class CacheMp4 {
+
+    private static final int ENTRADAS_POR_DEFECTO = 256;
+    private static final long BYTES_POR_DEFECTO = 64L * 1024 * 1024;
+    private static final long MOOV_MAXIMO_POR_DEFECTO = 16L * 1024 * 1024;
+    private static final int SEGUNDOS_HLS_POR_DEFECTO = 6;
+
+    /**
+     * Resultado del análisis de un archivo
+     *
+     * Los fotogramas clave y el empaquetado HLS solo se calculan si alguien los
+     * pide (?t=, /keyframes o /hls)
+     */
+    public static final class AnalisisMp4 {
+
+        private final EstructuraMp4 estructura;
+        private final DisposicionFaststart faststart;
+        private volatile FotogramasClave fotogramas;
+        private volatile boolean fotogramasCalculados;
+        private volatile EmpaquetadoHls hls;
+        private volatile boolean hlsCalculado;
+
+        AnalisisMp4(EstructuraMp4 estructura, DisposicionFaststart faststart) {
+            this.estructura = estructura;
+            this.faststart = faststart;
+        }
+
+        /**
+         * @return Cajas de primer nivel del archivo
+         */
+        public EstructuraMp4 estructura() {
+            return estructura;
+        }
+
+        /**
+         * @return Vista con el moov delante, o null si no hace falta o no es posible
+         */
+        public DisposicionFaststart faststart() {
+            return faststart;
+        }
+
+        long bytes() {
+            return (faststart == null ? 0 : faststart.tamanoMoov()) + (hls == null ? 0 : hls.bytes());
+        }
+    }
+
+    private record Clave(Path ruta, long tamano, long modificacion) {
+    }
+
+    private final int maximoEntradas;
+    private final long maximoBytes;
+    private final long moovMaximo;
+    private final int segundosHls;
+    private final LinkedHashMap<Clave, AnalisisMp4> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param maximoEntradas Archivos analizados que se recuerdan
+     * @param maximoBytes Bytes de moov reescritos que se guardan en total
+     * @param moovMaximo Tamaño máximo de un moov para ofrecer la vista faststart
+     */
+    public CacheMp4(int maximoEntradas, long maximoBytes, long moovMaximo) {
+        this(maximoEntradas, maximoBytes, moovMaximo, SEGUNDOS_HLS_POR_DEFECTO);
+    }
+
+    /**
+     * @param maximoEntradas Archivos analizados que se recuerdan
+     * @param maximoBytes Bytes de moov reescritos y tablas HLS que se guardan en total
+     * @param moovMaximo Tamaño máximo de un moov para ofrecer la vista faststart o HLS
+     * @param segundosHls Duración mínima de los segmentos HLS
+     */
+    public CacheMp4(int maximoEntradas, long maximoBytes, long moovMaximo, int segundosHls) {
+        this.maximoEntradas = maximoEntradas;
+        this.maximoBytes = maximoBytes;
+        this.moovMaximo = moovMaximo;
+        this.segundosHls = segundosHls;
+    }
+
+    /**
+     * Crea la caché con dogster.mp4.entradas, dogster.mp4.bytes, dogster.mp4.moov
+     * y dogster.mp4.hls.segundos
+     */
+    public static CacheMp4 desdeConfiguracion() {
+        return new CacheMp4(Configuracion.entero("mp4.entradas", ENTRADAS_POR_DEFECTO),
+                Configuracion.largo("mp4.bytes", BYTES_POR_DEFECTO),
+                Configuracion.largo("mp4.moov", MOOV_MAXIMO_POR_DEFECTO),
+                Configuracion.entero("mp4.hls.segundos", SEGUNDOS_HLS_POR_DEFECTO));
+    }
+
+    /**
+     * Devuelve el análisis del archivo, analizándolo si no está en la caché
+     *
+     * @param ruta Ruta del archivo (parte de la clave)
+     * @param canal Canal abierto del archivo
+     * @param tamano Tamaño del archivo
+     * @param modificacion Fecha de modificación en milisegundos
+     * @return Análisis del archivo
+     * @throws IOException Si falla la lectura
+     */
+    public AnalisisMp4 obtener(Path ruta, FileChannel canal, long tamano, long modificacion) throws IOException {
+        Clave clave = new Clave(ruta, tamano, modificacion);
+        synchronized (this) {
+            AnalisisMp4 analisis = entradas.get(clave);
+            if (analisis != null) {
+                return analisis;
+            }
+        }
+
+        // Se analiza fuera del cerrojo; si dos peticiones coinciden ambas obtienen el mismo resultado
+        EstructuraMp4 estructura = AnalizadorMp4.analizar(canal, tamano);
+        AnalisisMp4 analisis = new AnalisisMp4(estructura,
+                DisposicionFaststart.crear(canal, estructura, moovMaximo));
+
+        synchronized (this) {
+            AnalisisMp4 previo = entradas.put(clave, analisis);
+            bytes += analisis.bytes() - (previo == null ? 0 : previo.bytes());
+            expulsar(analisis);
+        }
+        return analisis;
+    }
+
+    /**
+     * Expulsa las entradas más antiguas hasta volver a los límites, sin tocar la actual
+     */
+    private void expulsar(AnalisisMp4 actual) {
+        Iterator<Map.Entry<Clave, AnalisisMp4>> antiguas = entradas.entrySet().iterator();
+        while ((entradas.size() > maximoEntradas || bytes > maximoBytes) && antiguas.hasNext()) {
+            AnalisisMp4 antigua = antiguas.next().getValue();
+            if (antigua == actual) {
+                continue;
+            }
+            bytes -= antigua.bytes();
+            antiguas.remove();
+        }
+    }
+
+    /**
+     * Fotogramas clave de la pista de vídeo con offsets de los bytes que se sirven
+     * (los de la vista faststart si la hay). Se calculan la primera vez y se recuerdan
+     *
+     * @param analisis Análisis obtenido con {@link #obtener}
+     * @param canal Canal abierto del archivo
+     * @return Fotogramas clave, o null si el archivo no tiene tablas de vídeo utilizables
+     * @throws IOException Si falla la lectura del moov
+     */
+    public FotogramasClave fotogramasClave(AnalisisMp4 analisis, FileChannel canal) throws IOException {
+        if (analisis.fotogramasCalculados) {
+            return analisis.fotogramas;
+        }
+
+        FotogramasClave fotogramas = null;
+        if (analisis.faststart != null) {
+            fotogramas = FotogramasClave.desdeMoov(analisis.faststart.moov());
+        } else {
+            CajaMp4 moov = analisis.estructura.buscar("moov");
+            if (moov != null && moov.tamano() <= moovMaximo) {
+                fotogramas = FotogramasClave.desdeMoov(AnalizadorMp4.leer(canal, moov));
+            }
+        }
+
+        analisis.fotogramas = fotogramas;
+        analisis.fotogramasCalculados = true;
+        return fotogramas;
+    }
+
+    /**
+     * Empaquetado HLS (fMP4) del archivo. Los segmentos se calculan sobre el moov
+     * original, así que se sirven sobre el contenido del archivo tal cual, nunca
+     * sobre la vista faststart. Se calcula la primera vez y se recuerda
+     *
+     * @param analisis Análisis obtenido con {@link #obtener}
+     * @param canal Canal abierto del archivo
+     * @return Empaquetado, o null si el archivo no tiene pistas que se puedan fragmentar
+     * @throws IOException Si falla la lectura del moov
+     */
+    public EmpaquetadoHls empaquetadoHls(AnalisisMp4 analisis, FileChannel canal) throws IOException {
+        if (analisis.hlsCalculado) {
+            return analisis.hls;
+        }
+
+        EmpaquetadoHls hls = null;
+        CajaMp4 moov = analisis.estructura.buscar("moov");
+        if (moov != null && moov.tamano() <= moovMaximo) {
+            hls = EmpaquetadoHls.crear(AnalizadorMp4.leer(canal, moov), segundosHls);
+        }
+
+        synchronized (this) {
+            if (analisis.hlsCalculado) {
+                return analisis.hls;
+            }
+            // Las tablas expandidas cuentan para el límite de bytes si la entrada sigue en la caché
+            boolean enCache = entradas.containsValue(analisis);
+            long antes = analisis.bytes();
+            analisis.hls = hls;
+            analisis.hlsCalculado = true;
+            if (enCache) {
+                bytes += analisis.bytes() - antes;
+                expulsar(analisis);
+            }
+        }
+        return hls;
+    }
+}
@@ -0,0 +1,26 @@
+package kabadev.mp4;
+
+/**
+ * Caja (box / atom) de un archivo MP4
+ *
+ * @param tipo Código de cuatro letras (ftyp, moov, mdat...)
+ * @param posicion Posición del primer byte de la cabecera
+ * @param tamano Tamaño total incluida la cabecera
+ * @param cabecera Bytes de cabecera: 8, o 16 si usa tamaño de 64 bits
+ */
+public record CajaMp4(String tipo, long posicion, long tamano, int cabecera) {
+
+    /**
+     * @return Posición del primer byte tras la caja
+     */
+    public long fin() {
+        return posicion + tamano;
+    }
+
+    /**
+     * @return Posición del primer byte de contenido (tras la cabecera)
+     */
+    public long inicioDatos() {
+        return posicion + cabecera;
+    }
+}
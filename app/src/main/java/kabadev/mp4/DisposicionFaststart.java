@@ -0,0 +1,231 @@
+package kabadev.mp4;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import kabadev.servidor.ContenidoRangos;
+
+/**
+ * Vista "faststart" de un MP4 con el moov al final
+ *
+ * El archivo virtual es el original con el moov movido justo delante del
+ * primer mdat:
+ *
+ *   original: [ftyp][...][mdat ...........][moov]
+ *   virtual:  [ftyp][...][moov'][mdat ...........]
+ *
+ * moov' es el moov con los offsets de stco/co64 desplazados lo que ocupa el
+ * moov, porque las muestras del mdat quedan ahora detrás de él. Solo moov' vive
+ * en memoria; el resto se envía desde el archivo con transferTo (copia cero).
+ * El tamaño total no cambia, pero los bytes sí: la vista lleva su propio ETag
+ */
+public final class DisposicionFaststart {
+
+    /** Cajas que hay que atravesar para llegar a las tablas de offsets */
+    private static final Set<String> CONTENEDORES = Set.of("moov", "trak", "mdia", "minf", "stbl");
+
+    private final long tamano;
+    private final byte[] moov;
+    private final List<Segmento> segmentos;
+
+    /**
+     * Trozo contiguo del archivo virtual
+     *
+     * @param inicio Posición en el archivo virtual
+     * @param longitud Bytes del trozo
+     * @param posicionArchivo Posición en el archivo original, o -1 si viene de memoria
+     */
+    private record Segmento(long inicio, long longitud, long posicionArchivo) {
+    }
+
+    private DisposicionFaststart(long tamano, byte[] moov, List<Segmento> segmentos) {
+        this.tamano = tamano;
+        this.moov = moov;
+        this.segmentos = List.copyOf(segmentos);
+    }
+
+    /**
+     * Prepara la vista faststart si el archivo la necesita
+     *
+     * @param canal Canal del archivo abierto en lectura
+     * @param estructura Cajas de primer nivel del archivo
+     * @param moovMaximo Tamaño máximo de moov que se acepta cargar en memoria
+     * @return La vista, o null si el moov ya va delante, es demasiado grande o
+     *         algún offset no cabe en 32 bits tras desplazarlo
+     * @throws IOException Si falla la lectura del moov
+     */
+    public static DisposicionFaststart crear(FileChannel canal, EstructuraMp4 estructura, long moovMaximo)
+            throws IOException {
+
+        if (!estructura.moovTrasMdat()) {
+            return null;
+        }
+        CajaMp4 caja = estructura.buscar("moov");
+        CajaMp4 mdat = estructura.buscar("mdat");
+        if (caja.tamano() > moovMaximo) {
+            return null;
+        }
+
+        byte[] moov = AnalizadorMp4.leer(canal, caja);
+        ByteBuffer datos = ByteBuffer.wrap(moov);
+
+        // Un moov con tamaño 0 ("hasta el final") deja de ser el último: se escribe su tamaño real
+        if (caja.cabecera() == 8 && datos.getInt(0) == 0) {
+            datos.putInt(0, (int) caja.tamano());
+        }
+
+        // Todo lo que estaba entre el punto de inserción y el moov se desplaza lo que ocupa el moov
+        if (!desplazarOffsets(datos, caja.cabecera(), moov.length, mdat.posicion(), caja.posicion(),
+                caja.tamano())) {
+            return null;
+        }
+
+        List<Segmento> segmentos = new ArrayList<>();
+        long insercion = mdat.posicion();
+        agregar(segmentos, 0, insercion, 0);
+        agregar(segmentos, insercion, caja.tamano(), -1);
+        agregar(segmentos, insercion + caja.tamano(), caja.posicion() - insercion, insercion);
+        agregar(segmentos, caja.fin(), estructura.tamano() - caja.fin(), caja.fin());
+
+        return new DisposicionFaststart(estructura.tamano(), moov, segmentos);
+    }
+
+    /**
+     * @return Tamaño del archivo virtual (igual al original)
+     */
+    public long tamano() {
+        return tamano;
+    }
+
+    /**
+     * @return Bytes del moov reescrito que la vista guarda en memoria
+     */
+    public int tamanoMoov() {
+        return moov.length;
+    }
+
+    /**
+     * @return Copia del moov reescrito tal y como aparece en la vista
+     */
+    public byte[] moov() {
+        return moov.clone();
+    }
+
+    /**
+     * ETag de la vista a partir del ETag del archivo original
+     * ("abc-123" → "abc-123-fs"), distinto para que las cachés no mezclen ambos
+     */
+    public static String etag(String etagOriginal) {
+        if (etagOriginal.endsWith("\"")) {
+            return etagOriginal.substring(0, etagOriginal.length() - 1) + "-fs\"";
+        }
+        return etagOriginal + "-fs";
+    }
+
+    /**
+     * Contenido servible por rangos usando el canal abierto del archivo original
+     */
+    public ContenidoRangos contenido(FileChannel canal) {
+        return contenido(ContenidoRangos.deArchivo(canal, tamano));
+    }
+
+    /**
+     * Contenido servible por rangos que lee los tramos del archivo original
+     * a través de otro contenido (p. ej. la caché de trozos)
+     *
+     * @param original Contenido del archivo tal y como está en disco
+     */
+    public ContenidoRangos contenido(ContenidoRangos original) {
+        return new ContenidoRangos() {
+            @Override
+            public long tamano() {
+                return tamano;
+            }
+
+            @Override
+            public void transferir(long posicion, long longitud, OutputStream salida) throws IOException {
+                DisposicionFaststart.this.transferir(original, posicion, longitud, salida);
+            }
+        };
+    }
+
+    // ========== ENVÍO POR SEGMENTOS ==========
+
+    private void transferir(ContenidoRangos original, long posicion, long longitud, OutputStream salida)
+            throws IOException {
+        long fin = posicion + longitud;
+        for (Segmento segmento : segmentos) {
+            long desde = Math.max(posicion, segmento.inicio());
+            long hasta = Math.min(fin, segmento.inicio() + segmento.longitud());
+            if (desde >= hasta) {
+                continue;
+            }
+            long desplazamiento = desde - segmento.inicio();
+            if (segmento.posicionArchivo() < 0) {
+                salida.write(moov, (int) desplazamiento, (int) (hasta - desde));
+            } else {
+                original.transferir(segmento.posicionArchivo() + desplazamiento, hasta - desde, salida);
+            }
+        }
+    }
+
+    private static void agregar(List<Segmento> segmentos, long inicio, long longitud, long posicionArchivo) {
+        if (longitud > 0) {
+            segmentos.add(new Segmento(inicio, longitud, posicionArchivo));
+        }
+    }
+
+    // ========== REESCRITURA DE stco / co64 ==========
+
+    /**
+     * Suma desplazamiento a los offsets de datos[desde, hasta) que apuntan a
+     * [inicio, limite), recorriendo los contenedores hasta stco y co64
+     *
+     * @return false si algún offset de stco deja de caber en 32 bits
+     */
+    static boolean desplazarOffsets(ByteBuffer datos, int desde, int hasta, long inicio, long limite,
+            long desplazamiento) {
+
+        for (CajaMp4 caja : AnalizadorMp4.hijas(datos, desde, hasta)) {
+            int contenido = (int) caja.inicioDatos();
+            int fin = (int) caja.fin();
+
+            if (CONTENEDORES.contains(caja.tipo())) {
+                if (!desplazarOffsets(datos, contenido, fin, inicio, limite, desplazamiento)) {
+                    return false;
+                }
+
+            } else if (caja.tipo().equals("stco") && fin - contenido >= 8) {
+                // versión/flags (4) + número de entradas (4) + offsets de 32 bits
+                int entradas = datos.getInt(contenido + 4);
+                for (int i = 0; i < entradas && contenido + 8 + i * 4L + 4 <= fin; i++) {
+                    int indice = contenido + 8 + i * 4;
+                    long offset = Integer.toUnsignedLong(datos.getInt(indice));
+                    if (offset >= inicio && offset < limite) {
+                        offset += desplazamiento;
+                        if (offset > 0xFFFFFFFFL) {
+                            return false;
+                        }
+                        datos.putInt(indice, (int) offset);
+                    }
+                }
+
+            } else if (caja.tipo().equals("co64") && fin - contenido >= 8) {
+                int entradas = datos.getInt(contenido + 4);
+                for (int i = 0; i < entradas && contenido + 8 + i * 8L + 8 <= fin; i++) {
+                    int indice = contenido + 8 + i * 8;
+                    long offset = datos.getLong(indice);
+                    if (offset >= inicio && offset < limite) {
+                        datos.putLong(indice, offset + desplazamiento);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
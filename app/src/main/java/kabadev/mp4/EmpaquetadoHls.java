@@ -0,0 +1,465 @@
+package kabadev.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import kabadev.servidor.ContenidoRangos;
+
+/**
+ * Un MP4 normal visto como HLS con fragmentos fMP4 (CMAF), sin recodificar
+ *
+ *   index.m3u8   lista VOD con la duración de cada segmento
+ *   init.mp4     ftyp + moov con las descripciones de las pistas (stsd) y
+ *                las tablas de muestras vacías + mvex
+ *   seg-N.m4s    moof (tfhd, tfdt, trun por pista) + mdat con las muestras
+ *
+ * Los cortes se hacen en los fotogramas clave del vídeo, cada
+ * dogster.mp4.hls.segundos (6) como mínimo; el audio se reparte por tiempo de
+ * decodificación. Los límites se calculan una vez al crear el empaquetado; el
+ * moof de cada segmento se genera al pedirlo (unos KB) y las muestras salen
+ * del archivo original con transferTo, agrupadas en tramos contiguos
+ *
+ * Solo se empaqueta la primera pista de vídeo y la primera de audio
+ */
+public final class EmpaquetadoHls {
+
+    /** Flags de muestra (ISO/IEC 14496-12 8.8.3.1): depende de otras / no es sync */
+    private static final int MUESTRA_CLAVE = 0x02000000;
+    private static final int MUESTRA_NO_CLAVE = 0x01010000;
+
+    private static final int TFHD_BASE_EN_MOOF = 0x020000;
+    private static final int TFHD_FLAGS_POR_DEFECTO = 0x000020;
+    private static final int TRUN_DESPLAZAMIENTO = 0x000001;
+    private static final int TRUN_DURACION = 0x000100;
+    private static final int TRUN_TAMANO = 0x000200;
+    private static final int TRUN_FLAGS = 0x000400;
+    private static final int TRUN_COMPOSICION = 0x000800;
+
+    /** Tramo del segmento: bytes del moof en memoria o una región del archivo original */
+    private record Tramo(long inicio, long longitud, long posicionArchivo) {
+    }
+
+    private final PistaMp4 principal;
+    private final PistaMp4 secundaria;
+    /** Primera muestra de cada segmento (y el total al final) en cada pista */
+    private final int[] limitesPrincipal;
+    private final int[] limitesSecundaria;
+    private final byte[] inicializacion;
+    private final String lista;
+
+    private EmpaquetadoHls(PistaMp4 principal, PistaMp4 secundaria, int[] limitesPrincipal,
+            int[] limitesSecundaria, byte[] inicializacion, String lista) {
+        this.principal = principal;
+        this.secundaria = secundaria;
+        this.limitesPrincipal = limitesPrincipal;
+        this.limitesSecundaria = limitesSecundaria;
+        this.inicializacion = inicializacion;
+        this.lista = lista;
+    }
+
+    /**
+     * Analiza el moov del archivo original y calcula los segmentos
+     *
+     * @param moov moov completo tal y como está en el archivo (offsets originales)
+     * @param segundos Duración mínima de cada segmento
+     * @return El empaquetado, o null si no hay pistas de vídeo ni de audio utilizables
+     */
+    public static EmpaquetadoHls crear(byte[] moov, int segundos) {
+        ByteBuffer datos = ByteBuffer.wrap(moov);
+        CajaMp4 raiz = AnalizadorMp4.leerCabecera(datos, 0, 0, moov.length);
+        if (raiz == null || !raiz.tipo().equals("moov")) {
+            return null;
+        }
+
+        PistaMp4 video = null;
+        PistaMp4 audio = null;
+        try {
+            for (CajaMp4 trak : AnalizadorMp4.hijas(datos, raiz.cabecera(), (int) raiz.fin())) {
+                if (!trak.tipo().equals("trak")) {
+                    continue;
+                }
+                PistaMp4 pista = PistaMp4.leer(datos, trak);
+                if (pista != null && pista.esVideo() && video == null) {
+                    video = pista;
+                } else if (pista != null && pista.esAudio() && audio == null) {
+                    audio = pista;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Tablas truncadas o incoherentes: el archivo no se empaqueta
+            return null;
+        }
+
+        PistaMp4 principal = video != null ? video : audio;
+        PistaMp4 secundaria = video != null ? audio : null;
+        if (principal == null) {
+            return null;
+        }
+
+        int[] limitesPrincipal = cortar(principal, Math.max(1, segundos));
+        int[] limitesSecundaria = null;
+        if (secundaria != null) {
+            limitesSecundaria = new int[limitesPrincipal.length];
+            for (int i = 1; i < limitesPrincipal.length - 1; i++) {
+                limitesSecundaria[i] = secundaria.primeraDesde(principal.tiempos[limitesPrincipal[i]],
+                        principal.escala);
+            }
+            limitesSecundaria[limitesSecundaria.length - 1] = secundaria.muestras();
+        }
+
+        byte[] inicializacion = inicializacion(datos, raiz, principal, secundaria);
+        return new EmpaquetadoHls(principal, secundaria, limitesPrincipal, limitesSecundaria, inicializacion,
+                lista(principal, limitesPrincipal));
+    }
+
+    // ========== CONSULTAS ==========
+
+    /**
+     * @return Número de segmentos
+     */
+    public int segmentos() {
+        return limitesPrincipal.length - 1;
+    }
+
+    /**
+     * @return Lista de reproducción VOD (EXT-X-VERSION 7, URIs relativas)
+     */
+    public String listaReproduccion() {
+        return lista;
+    }
+
+    /**
+     * @return Copia del segmento de inicialización (init.mp4)
+     */
+    public byte[] inicializacion() {
+        return inicializacion.clone();
+    }
+
+    /**
+     * ETag de un recurso HLS a partir del ETag del archivo original
+     * ("abc-123" + "seg-4" → "abc-123-hls-seg-4")
+     */
+    public static String etag(String etagOriginal, String recurso) {
+        if (etagOriginal.endsWith("\"")) {
+            return etagOriginal.substring(0, etagOriginal.length() - 1) + "-hls-" + recurso + "\"";
+        }
+        return etagOriginal + "-hls-" + recurso;
+    }
+
+    /**
+     * @return Memoria aproximada de las tablas y los límites
+     */
+    long bytes() {
+        return principal.bytes() + (secundaria == null ? 0 : secundaria.bytes())
+                + limitesPrincipal.length * 8L + inicializacion.length + lista.length();
+    }
+
+    /**
+     * Segmento N como contenido servible por rangos
+     *
+     * @param numero Segmento (desde 0)
+     * @param original Contenido del archivo tal y como está en disco (no la vista faststart)
+     * @return moof + mdat, con las muestras leídas a través de original
+     * @throws IndexOutOfBoundsException Si el segmento no existe
+     */
+    public ContenidoRangos segmento(int numero, ContenidoRangos original) {
+        if (numero < 0 || numero >= segmentos()) {
+            throw new IndexOutOfBoundsException("Segmento inexistente: " + numero);
+        }
+        int desdePrincipal = limitesPrincipal[numero];
+        int hastaPrincipal = limitesPrincipal[numero + 1];
+        int desdeSecundaria = secundaria == null ? 0 : limitesSecundaria[numero];
+        int hastaSecundaria = secundaria == null ? 0 : limitesSecundaria[numero + 1];
+
+        long datosPrincipal = bytesMuestras(principal, desdePrincipal, hastaPrincipal);
+        long datosSecundaria = secundaria == null ? 0 : bytesMuestras(secundaria, desdeSecundaria, hastaSecundaria);
+
+        // El tamaño del moof no depende de los offsets: se calcula primero y se escribe una sola vez
+        int tamanoMoof = 8 + 16 + tamanoTraf(principal, desdePrincipal, hastaPrincipal)
+                + (secundaria == null ? 0 : tamanoTraf(secundaria, desdeSecundaria, hastaSecundaria));
+        long tamanoMdat = 8 + datosPrincipal + datosSecundaria;
+
+        ByteBuffer cabecera = ByteBuffer.allocate(tamanoMoof + 8);
+        cabecera.putInt(tamanoMoof).put(tipo("moof"));
+        cabecera.putInt(16).put(tipo("mfhd")).putInt(0).putInt(numero + 1);
+        escribirTraf(cabecera, principal, desdePrincipal, hastaPrincipal, tamanoMoof + 8);
+        if (secundaria != null) {
+            escribirTraf(cabecera, secundaria, desdeSecundaria, hastaSecundaria, tamanoMoof + 8 + datosPrincipal);
+        }
+        cabecera.putInt((int) tamanoMdat).put(tipo("mdat"));
+
+        List<Tramo> tramos = new ArrayList<>();
+        tramos.add(new Tramo(0, cabecera.capacity(), -1));
+        long posicion = agregarMuestras(tramos, principal, desdePrincipal, hastaPrincipal, cabecera.capacity());
+        if (secundaria != null) {
+            agregarMuestras(tramos, secundaria, desdeSecundaria, hastaSecundaria, posicion);
+        }
+
+        byte[] moof = cabecera.array();
+        long tamano = tamanoMoof + tamanoMdat;
+        return new ContenidoRangos() {
+            @Override
+            public long tamano() {
+                return tamano;
+            }
+
+            @Override
+            public void transferir(long posicion, long longitud, OutputStream salida) throws IOException {
+                EmpaquetadoHls.transferir(tramos, moof, original, posicion, longitud, salida);
+            }
+        };
+    }
+
+    // ========== SEGMENTACIÓN ==========
+
+    /**
+     * Corta la pista principal en el primer fotograma clave tras cada objetivo
+     *
+     * @return Primera muestra de cada segmento más el total de muestras al final
+     */
+    private static int[] cortar(PistaMp4 pista, int segundos) {
+        long objetivo = segundos * pista.escala;
+        List<Integer> limites = new ArrayList<>();
+        limites.add(0);
+        long inicio = pista.tiempos[0];
+        for (int i = 1; i < pista.muestras(); i++) {
+            if (pista.esClave(i) && pista.tiempos[i] - inicio >= objetivo) {
+                limites.add(i);
+                inicio = pista.tiempos[i];
+            }
+        }
+        limites.add(pista.muestras());
+
+        int[] resultado = new int[limites.size()];
+        for (int i = 0; i < resultado.length; i++) {
+            resultado[i] = limites.get(i);
+        }
+        return resultado;
+    }
+
+    private static String lista(PistaMp4 pista, int[] limites) {
+        StringBuilder segmentos = new StringBuilder(limites.length * 32);
+        double maximo = 0;
+        for (int i = 0; i + 1 < limites.length; i++) {
+            double duracion = (double) (pista.tiempos[limites[i + 1]] - pista.tiempos[limites[i]]) / pista.escala;
+            maximo = Math.max(maximo, duracion);
+            segmentos.append(String.format(Locale.ROOT, "#EXTINF:%.3f,", duracion)).append('\n')
+                    .append("seg-").append(i).append(".m4s\n");
+        }
+
+        return "#EXTM3U\n"
+                + "#EXT-X-VERSION:7\n"
+                + "#EXT-X-TARGETDURATION:" + (long) Math.ceil(maximo) + "\n"
+                + "#EXT-X-MEDIA-SEQUENCE:0\n"
+                + "#EXT-X-PLAYLIST-TYPE:VOD\n"
+                + "#EXT-X-INDEPENDENT-SEGMENTS\n"
+                + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+                + segmentos
+                + "#EXT-X-ENDLIST\n";
+    }
+
+    // ========== moof ==========
+
+    private static long bytesMuestras(PistaMp4 pista, int desde, int hasta) {
+        long total = 0;
+        for (int i = desde; i < hasta; i++) {
+            total += Integer.toUnsignedLong(pista.tamanos[i]);
+        }
+        return total;
+    }
+
+    private static int flagsTrun(PistaMp4 pista) {
+        int flags = TRUN_DESPLAZAMIENTO | TRUN_DURACION | TRUN_TAMANO;
+        if (pista.claves != null) {
+            flags |= TRUN_FLAGS;
+        }
+        if (pista.composicion != null) {
+            flags |= TRUN_COMPOSICION;
+        }
+        return flags;
+    }
+
+    private static int tamanoTraf(PistaMp4 pista, int desde, int hasta) {
+        if (desde >= hasta) {
+            return 0;
+        }
+        int porMuestra = Integer.bitCount(flagsTrun(pista) & (TRUN_DURACION | TRUN_TAMANO | TRUN_FLAGS
+                | TRUN_COMPOSICION)) * 4;
+        int tfhd = pista.claves == null ? 20 : 16;
+        return 8 + tfhd + 20 + 20 + (hasta - desde) * porMuestra;
+    }
+
+    /**
+     * traf = tfhd (base en el moof) + tfdt (tiempo de decodificación) + trun
+     *
+     * @param desplazamientoDatos Posición de la primera muestra de la pista desde el inicio del moof
+     */
+    private static void escribirTraf(ByteBuffer destino, PistaMp4 pista, int desde, int hasta,
+            long desplazamientoDatos) {
+        int tamano = tamanoTraf(pista, desde, hasta);
+        if (tamano == 0) {
+            return;
+        }
+        destino.putInt(tamano).put(tipo("traf"));
+
+        // Sin stss todas las muestras son sync: flags por defecto en tfhd en lugar de uno por muestra
+        if (pista.claves == null) {
+            destino.putInt(20).put(tipo("tfhd")).putInt(TFHD_BASE_EN_MOOF | TFHD_FLAGS_POR_DEFECTO)
+                    .putInt(pista.id).putInt(MUESTRA_CLAVE);
+        } else {
+            destino.putInt(16).put(tipo("tfhd")).putInt(TFHD_BASE_EN_MOOF).putInt(pista.id);
+        }
+        destino.putInt(20).put(tipo("tfdt")).putInt(0x01000000).putLong(pista.tiempos[desde]);
+
+        int flags = flagsTrun(pista);
+        int porMuestra = (tamano - 8 - (pista.claves == null ? 20 : 16) - 20 - 20) / (hasta - desde);
+        destino.putInt(20 + (hasta - desde) * porMuestra).put(tipo("trun"))
+                // Versión 1: desplazamientos de composición con signo (como ctts versión 1)
+                .putInt(0x01000000 | flags)
+                .putInt(hasta - desde)
+                .putInt((int) desplazamientoDatos);
+        for (int i = desde; i < hasta; i++) {
+            destino.putInt((int) (pista.tiempos[i + 1] - pista.tiempos[i]));
+            destino.putInt(pista.tamanos[i]);
+            if ((flags & TRUN_FLAGS) != 0) {
+                destino.putInt(pista.esClave(i) ? MUESTRA_CLAVE : MUESTRA_NO_CLAVE);
+            }
+            if ((flags & TRUN_COMPOSICION) != 0) {
+                destino.putInt(pista.composicion[i]);
+            }
+        }
+    }
+
+    /**
+     * Añade las muestras como regiones del archivo, uniendo las contiguas
+     *
+     * @return Posición en el segmento tras la última muestra añadida
+     */
+    private static long agregarMuestras(List<Tramo> tramos, PistaMp4 pista, int desde, int hasta, long posicion) {
+        int i = desde;
+        while (i < hasta) {
+            long inicioArchivo = pista.offsets[i];
+            long longitud = Integer.toUnsignedLong(pista.tamanos[i]);
+            i++;
+            while (i < hasta && pista.offsets[i] == inicioArchivo + longitud) {
+                longitud += Integer.toUnsignedLong(pista.tamanos[i]);
+                i++;
+            }
+            if (longitud > 0) {
+                tramos.add(new Tramo(posicion, longitud, inicioArchivo));
+                posicion += longitud;
+            }
+        }
+        return posicion;
+    }
+
+    private static void transferir(List<Tramo> tramos, byte[] moof, ContenidoRangos original, long posicion,
+            long longitud, OutputStream salida) throws IOException {
+        long fin = posicion + longitud;
+        for (Tramo tramo : tramos) {
+            long desde = Math.max(posicion, tramo.inicio());
+            long hasta = Math.min(fin, tramo.inicio() + tramo.longitud());
+            if (desde >= hasta) {
+                continue;
+            }
+            long desplazamiento = desde - tramo.inicio();
+            if (tramo.posicionArchivo() < 0) {
+                salida.write(moof, (int) desplazamiento, (int) (hasta - desde));
+            } else {
+                original.transferir(tramo.posicionArchivo() + desplazamiento, hasta - desde, salida);
+            }
+        }
+    }
+
+    // ========== init.mp4 ==========
+
+    /**
+     * ftyp + moov(mvhd, trak sin muestras..., mvex(trex...))
+     */
+    private static byte[] inicializacion(ByteBuffer datos, CajaMp4 moov, PistaMp4 principal, PistaMp4 secundaria) {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(4096);
+        salida.writeBytes(caja("ftyp", tipo("iso6"), new byte[4], tipo("iso6"), tipo("cmfc"), tipo("mp41")));
+
+        List<byte[]> hijas = new ArrayList<>();
+        CajaMp4 mvhd = FotogramasClave.hija(datos, moov, "mvhd");
+        if (mvhd != null) {
+            hijas.add(copiar(datos, mvhd));
+        }
+        hijas.add(trakSinMuestras(datos, principal.trak));
+        if (secundaria != null) {
+            hijas.add(trakSinMuestras(datos, secundaria.trak));
+        }
+        List<byte[]> trex = new ArrayList<>();
+        trex.add(trex(principal.id));
+        if (secundaria != null) {
+            trex.add(trex(secundaria.id));
+        }
+        hijas.add(caja("mvex", trex.toArray(new byte[0][])));
+
+        salida.writeBytes(caja("moov", hijas.toArray(new byte[0][])));
+        return salida.toByteArray();
+    }
+
+    private static byte[] trex(int pista) {
+        return caja("trex", ByteBuffer.allocate(24).putInt(0).putInt(pista).putInt(1).putInt(0).putInt(0).putInt(0)
+                .array());
+    }
+
+    /**
+     * Copia trak → mdia → minf y sustituye stbl por uno con solo stsd y tablas vacías
+     */
+    private static byte[] trakSinMuestras(ByteBuffer datos, CajaMp4 contenedor) {
+        List<byte[]> hijas = new ArrayList<>();
+        for (CajaMp4 hija : AnalizadorMp4.hijas(datos, (int) contenedor.inicioDatos(), (int) contenedor.fin())) {
+            switch (hija.tipo()) {
+                case "mdia", "minf" -> hijas.add(trakSinMuestras(datos, hija));
+                case "stbl" -> hijas.add(stblVacio(datos, hija));
+                // tref, udta y meta (capítulos, carátulas) no hacen falta para reproducir los fragmentos
+                case "tref", "udta", "meta" -> {
+                }
+                default -> hijas.add(copiar(datos, hija));
+            }
+        }
+        return caja(contenedor.tipo(), hijas.toArray(new byte[0][]));
+    }
+
+    private static byte[] stblVacio(ByteBuffer datos, CajaMp4 stbl) {
+        CajaMp4 stsd = FotogramasClave.hija(datos, stbl, "stsd");
+        byte[] vacia = new byte[8];
+        return caja("stbl",
+                stsd == null ? caja("stsd", vacia) : copiar(datos, stsd),
+                caja("stts", vacia),
+                caja("stsc", vacia),
+                caja("stsz", new byte[12]),
+                caja("stco", vacia));
+    }
+
+    private static byte[] copiar(ByteBuffer datos, CajaMp4 caja) {
+        byte[] bytes = new byte[(int) caja.tamano()];
+        datos.get((int) caja.posicion(), bytes);
+        return bytes;
+    }
+
+    private static byte[] caja(String tipo, byte[]... contenido) {
+        int tamano = 8;
+        for (byte[] parte : contenido) {
+            tamano += parte.length;
+        }
+        ByteBuffer caja = ByteBuffer.allocate(tamano);
+        caja.putInt(tamano).put(tipo(tipo));
+        for (byte[] parte : contenido) {
+            caja.put(parte);
+        }
+        return caja.array();
+    }
+
+    private static byte[] tipo(String tipo) {
+        return tipo.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,38 @@
+package kabadev.mp4;
+
+import java.util.List;
+
+/**
+ * Cajas de primer nivel de un archivo MP4 en el orden en que aparecen
+ *
+ * @param tamano Tamaño del archivo
+ * @param cajas Cajas encontradas (se corta en la primera cabecera inválida)
+ */
+public record EstructuraMp4(long tamano, List<CajaMp4> cajas) {
+
+    public EstructuraMp4 {
+        cajas = List.copyOf(cajas);
+    }
+
+    /**
+     * @return La primera caja de ese tipo, o null si no existe
+     */
+    public CajaMp4 buscar(String tipo) {
+        for (CajaMp4 caja : cajas) {
+            if (caja.tipo().equals(tipo)) {
+                return caja;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true si el moov está detrás del mdat: el navegador tendría que pedir
+     *         el final del archivo antes de poder empezar a reproducir
+     */
+    public boolean moovTrasMdat() {
+        CajaMp4 moov = buscar("moov");
+        CajaMp4 mdat = buscar("mdat");
+        return moov != null && mdat != null && moov.posicion() > mdat.posicion();
+    }
+}
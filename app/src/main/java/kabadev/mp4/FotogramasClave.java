@@ -0,0 +1,304 @@
+package kabadev.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fotogramas clave (sync samples) de la pista de vídeo de un MP4
+ *
+ * Se calcula a partir de las tablas de muestras del moov:
+ * - mdhd: escala de tiempo de la pista
+ * - stts: duración de cada muestra (tiempo de decodificación)
+ * - stss: qué muestras son fotogramas clave (sin stss todas lo son)
+ * - stsc + stsz + stco/co64: en qué byte del archivo empieza cada muestra
+ *
+ * Los offsets son los del moov analizado: si se analiza el moov de la vista
+ * faststart apuntan a los bytes tal y como se sirven. Las listas de edición
+ * (elst) no se aplican: los tiempos son de decodificación desde el inicio
+ */
+public final class FotogramasClave {
+
+    /** "DGKF" + versión: cabecera del formato binario compacto */
+    private static final byte[] MAGIA = "DGKF".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private static final String[] RUTA_MEDIA = {"mdia"};
+    private static final String[] RUTA_TABLAS = {"mdia", "minf", "stbl"};
+
+    private final long[] tiemposMs;
+    private final long[] offsets;
+    private final long duracionMs;
+
+    private FotogramasClave(long[] tiemposMs, long[] offsets, long duracionMs) {
+        this.tiemposMs = tiemposMs;
+        this.offsets = offsets;
+        this.duracionMs = duracionMs;
+    }
+
+    /**
+     * Analiza el moov completo (cabecera incluida)
+     *
+     * @return Fotogramas clave de la primera pista de vídeo, o null si no hay
+     *         pista de vídeo o le faltan tablas
+     */
+    public static FotogramasClave desdeMoov(byte[] moov) {
+        ByteBuffer datos = ByteBuffer.wrap(moov);
+        CajaMp4 raiz = AnalizadorMp4.leerCabecera(datos, 0, 0, moov.length);
+        if (raiz == null || !raiz.tipo().equals("moov")) {
+            return null;
+        }
+
+        for (CajaMp4 trak : AnalizadorMp4.hijas(datos, raiz.cabecera(), (int) raiz.fin())) {
+            if (!trak.tipo().equals("trak")) {
+                continue;
+            }
+            CajaMp4 hdlr = buscar(datos, trak, RUTA_MEDIA, "hdlr");
+            // hdlr: versión/flags (4) + pre_defined (4) + handler_type (4)
+            if (hdlr == null || hdlr.tamano() < hdlr.cabecera() + 12
+                    || !tipo(datos, (int) hdlr.inicioDatos() + 8).equals("vide")) {
+                continue;
+            }
+            try {
+                return desdePista(datos, trak);
+            } catch (IndexOutOfBoundsException e) {
+                // Tablas truncadas o incoherentes: sin índice para este archivo
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // ========== CONSULTAS ==========
+
+    /**
+     * @return Número de fotogramas clave
+     */
+    public int cantidad() {
+        return tiemposMs.length;
+    }
+
+    /**
+     * @return Duración de la pista en milisegundos
+     */
+    public long duracionMs() {
+        return duracionMs;
+    }
+
+    public long tiempoMs(int indice) {
+        return tiemposMs[indice];
+    }
+
+    public long offset(int indice) {
+        return offsets[indice];
+    }
+
+    /**
+     * Fotograma clave anterior o igual a un instante
+     *
+     * @param ms Instante en milisegundos
+     * @return Índice del fotograma clave (0 si el instante es anterior al primero)
+     */
+    public int anteriorA(long ms) {
+        int indice = Arrays.binarySearch(tiemposMs, ms);
+        if (indice >= 0) {
+            // Con tiempos repetidos se toma el primero
+            while (indice > 0 && tiemposMs[indice - 1] == ms) {
+                indice--;
+            }
+            return indice;
+        }
+        return Math.max(0, -indice - 2);
+    }
+
+    /**
+     * Formato binario compacto para clientes (miniaturas, barra de búsqueda):
+     * "DGKF", versión (1 byte), varint nº fotogramas, varint duración ms y por
+     * cada fotograma varint del incremento de tiempo (ms) y del incremento de offset
+     *
+     * Con un fotograma clave cada 2 s una película de 2 h ocupa unos 15 KB
+     */
+    public byte[] codificar() {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(16 + tiemposMs.length * 5);
+        salida.writeBytes(MAGIA);
+        salida.write(VERSION);
+        escribirVarint(salida, tiemposMs.length);
+        escribirVarint(salida, duracionMs);
+
+        long tiempoAnterior = 0;
+        long offsetAnterior = 0;
+        for (int i = 0; i < tiemposMs.length; i++) {
+            escribirVarint(salida, tiemposMs[i] - tiempoAnterior);
+            escribirVarint(salida, offsets[i] - offsetAnterior);
+            tiempoAnterior = tiemposMs[i];
+            offsetAnterior = offsets[i];
+        }
+        return salida.toByteArray();
+    }
+
+    // ========== LECTURA DE TABLAS ==========
+
+    private static FotogramasClave desdePista(ByteBuffer datos, CajaMp4 trak) {
+        CajaMp4 mdhd = buscar(datos, trak, RUTA_MEDIA, "mdhd");
+        CajaMp4 stts = buscar(datos, trak, RUTA_TABLAS, "stts");
+        CajaMp4 stsc = buscar(datos, trak, RUTA_TABLAS, "stsc");
+        CajaMp4 stsz = buscar(datos, trak, RUTA_TABLAS, "stsz");
+        CajaMp4 stss = buscar(datos, trak, RUTA_TABLAS, "stss");
+        CajaMp4 stco = buscar(datos, trak, RUTA_TABLAS, "stco");
+        CajaMp4 co64 = buscar(datos, trak, RUTA_TABLAS, "co64");
+        if (mdhd == null || stts == null || stsc == null || stsz == null || (stco == null && co64 == null)) {
+            return null;
+        }
+
+        // mdhd versión 0: creación (4), modificación (4), escala, duración (4)
+        // mdhd versión 1: creación (8), modificación (8), escala, duración (8)
+        int m = (int) mdhd.inicioDatos();
+        boolean version1 = datos.get(m) == 1;
+        long escala = Integer.toUnsignedLong(datos.getInt(m + (version1 ? 20 : 12)));
+        long duracion = version1 ? datos.getLong(m + 24) : Integer.toUnsignedLong(datos.getInt(m + 16));
+        if (escala == 0) {
+            return null;
+        }
+
+        // Offsets de cada chunk
+        boolean largos = stco == null;
+        int c = (int) (largos ? co64 : stco).inicioDatos();
+        int chunks = datos.getInt(c + 4);
+        int inicioChunks = c + 8;
+
+        // Tamaños de muestra: fijo o uno por muestra
+        int z = (int) stsz.inicioDatos();
+        int tamanoFijo = datos.getInt(z + 4);
+        int muestras = datos.getInt(z + 8);
+        int inicioTamanos = z + 12;
+
+        // Muestras que son fotograma clave (números empezando en 1, ordenados)
+        int claves = stss == null ? muestras : datos.getInt((int) stss.inicioDatos() + 4);
+        int inicioClaves = stss == null ? -1 : (int) stss.inicioDatos() + 8;
+
+        long[] tiempos = new long[claves];
+        long[] offsets = new long[claves];
+        int encontrados = 0;
+
+        // Recorrido único de todas las muestras: stsc reparte muestras por chunk y stts da su tiempo
+        int s = (int) stsc.inicioDatos();
+        int entradasStsc = datos.getInt(s + 4);
+        int t = (int) stts.inicioDatos();
+        int entradasStts = datos.getInt(t + 4);
+        int entradaStts = 0;
+        long restantesStts = entradasStts > 0 ? Integer.toUnsignedLong(datos.getInt(t + 8)) : 0;
+        long tiempo = 0;
+
+        int muestra = 1;
+        for (int e = 0; e < entradasStsc && encontrados < claves; e++) {
+            int primerChunk = datos.getInt(s + 8 + e * 12);
+            int muestrasPorChunk = datos.getInt(s + 8 + e * 12 + 4);
+            int ultimoChunk = e + 1 < entradasStsc ? datos.getInt(s + 8 + (e + 1) * 12) - 1 : chunks;
+
+            for (int chunk = primerChunk; chunk <= ultimoChunk && encontrados < claves; chunk++) {
+                long offset = largos
+                        ? datos.getLong(inicioChunks + (chunk - 1) * 8)
+                        : Integer.toUnsignedLong(datos.getInt(inicioChunks + (chunk - 1) * 4));
+
+                for (int i = 0; i < muestrasPorChunk && muestra <= muestras; i++, muestra++) {
+                    // Avanza stts hasta la entrada que contiene esta muestra
+                    while (restantesStts == 0 && ++entradaStts < entradasStts) {
+                        restantesStts = Integer.toUnsignedLong(datos.getInt(t + 8 + entradaStts * 8));
+                    }
+                    long delta = entradaStts < entradasStts
+                            ? Integer.toUnsignedLong(datos.getInt(t + 8 + entradaStts * 8 + 4)) : 0;
+
+                    boolean esClave = inicioClaves < 0 || (encontrados < claves
+                            && datos.getInt(inicioClaves + encontrados * 4) == muestra);
+                    if (esClave && encontrados < claves) {
+                        tiempos[encontrados] = tiempo * 1000 / escala;
+                        offsets[encontrados] = offset;
+                        encontrados++;
+                    }
+
+                    offset += tamanoFijo != 0 ? tamanoFijo
+                            : Integer.toUnsignedLong(datos.getInt(inicioTamanos + (muestra - 1) * 4));
+                    tiempo += delta;
+                    restantesStts--;
+                }
+            }
+        }
+
+        if (encontrados == 0) {
+            return null;
+        }
+        return new FotogramasClave(Arrays.copyOf(tiempos, encontrados), Arrays.copyOf(offsets, encontrados),
+                duracion * 1000 / escala);
+    }
+
+    /**
+     * Baja por la ruta de contenedores desde trak y busca una caja hija
+     */
+    static CajaMp4 buscar(ByteBuffer datos, CajaMp4 trak, String[] ruta, String tipo) {
+        CajaMp4 actual = trak;
+        for (String contenedor : ruta) {
+            actual = hija(datos, actual, contenedor);
+            if (actual == null) {
+                return null;
+            }
+        }
+        return hija(datos, actual, tipo);
+    }
+
+    static CajaMp4 hija(ByteBuffer datos, CajaMp4 padre, String tipo) {
+        for (CajaMp4 caja : AnalizadorMp4.hijas(datos, (int) padre.inicioDatos(), (int) padre.fin())) {
+            if (caja.tipo().equals(tipo)) {
+                return caja;
+            }
+        }
+        return null;
+    }
+
+    static String tipo(ByteBuffer datos, int indice) {
+        byte[] bytes = new byte[4];
+        datos.get(indice, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void escribirVarint(ByteArrayOutputStream salida, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            salida.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        salida.write((int) valor);
+    }
+
+    /**
+     * Decodifica el formato de {@link #codificar()} (para pruebas y clientes Java)
+     *
+     * @return Pares [tiempoMs, offset] de cada fotograma clave
+     */
+    static List<long[]> decodificar(byte[] bytes) {
+        ByteBuffer datos = ByteBuffer.wrap(bytes, MAGIA.length + 1, bytes.length - MAGIA.length - 1);
+        int cantidad = (int) leerVarint(datos);
+        leerVarint(datos);
+        long[][] pares = new long[cantidad][];
+        long tiempo = 0;
+        long offset = 0;
+        for (int i = 0; i < cantidad; i++) {
+            tiempo += leerVarint(datos);
+            offset += leerVarint(datos);
+            pares[i] = new long[] {tiempo, offset};
+        }
+        return List.of(pares);
+    }
+
+    private static long leerVarint(ByteBuffer datos) {
+        long valor = 0;
+        int desplazamiento = 0;
+        byte b;
+        do {
+            b = datos.get();
+            valor |= (long) (b & 0x7F) << desplazamiento;
+            desplazamiento += 7;
+        } while ((b & 0x80) != 0);
+        return valor;
+    }
+}
@@ -0,0 +1,233 @@
+package kabadev.mp4;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * Tabla de muestras completa de una pista (trak) de un MP4
+ *
+ * A diferencia de FotogramasClave, que solo guarda los fotogramas clave,
+ * aquí se expande cada muestra: posición en el archivo, tamaño, tiempo de
+ * decodificación y desplazamiento de composición (ctts). Es lo que hace falta
+ * para reempaquetar la pista en fragmentos (moof + mdat) sin recodificar
+ *
+ * Unos 20 bytes por muestra: una película de 2 h con vídeo a 24 fps y audio
+ * AAC a 48 kHz ronda los 10 MB
+ */
+final class PistaMp4 {
+
+    /** Con tamaño fijo stsz no lista las muestras: límite para no reservar tablas absurdas */
+    private static final int MAXIMO_MUESTRAS = 16 * 1024 * 1024;
+
+    private static final String[] RUTA_MEDIA = {"mdia"};
+    private static final String[] RUTA_TABLAS = {"mdia", "minf", "stbl"};
+
+    /** Caja trak dentro del moov analizado (posiciones relativas al moov) */
+    final CajaMp4 trak;
+    final int id;
+    final String manejador;
+    final long escala;
+
+    /** Posición de cada muestra en el archivo original */
+    final long[] offsets;
+    final int[] tamanos;
+    /** Tiempo de decodificación de cada muestra; la posición muestras() es el final de la pista */
+    final long[] tiempos;
+    /** Desplazamiento de composición (ctts) de cada muestra, o null si no hay ctts */
+    final int[] composicion;
+    /** Fotogramas clave (stss), o null si todas las muestras lo son */
+    final BitSet claves;
+
+    private PistaMp4(CajaMp4 trak, int id, String manejador, long escala, long[] offsets, int[] tamanos,
+            long[] tiempos, int[] composicion, BitSet claves) {
+        this.trak = trak;
+        this.id = id;
+        this.manejador = manejador;
+        this.escala = escala;
+        this.offsets = offsets;
+        this.tamanos = tamanos;
+        this.tiempos = tiempos;
+        this.composicion = composicion;
+        this.claves = claves;
+    }
+
+    /**
+     * Lee la tabla de muestras de una pista
+     *
+     * @param datos moov completo (cabecera incluida)
+     * @param trak Caja trak dentro de datos
+     * @return La pista, o null si le faltan tablas, no tiene muestras o usa
+     *         varias descripciones de muestra (stsd) que no se pueden fragmentar
+     * @throws IndexOutOfBoundsException Si las tablas están truncadas
+     */
+    static PistaMp4 leer(ByteBuffer datos, CajaMp4 trak) {
+        CajaMp4 tkhd = FotogramasClave.hija(datos, trak, "tkhd");
+        CajaMp4 mdhd = FotogramasClave.buscar(datos, trak, RUTA_MEDIA, "mdhd");
+        CajaMp4 hdlr = FotogramasClave.buscar(datos, trak, RUTA_MEDIA, "hdlr");
+        CajaMp4 stts = FotogramasClave.buscar(datos, trak, RUTA_TABLAS, "stts");
+        CajaMp4 stsc = FotogramasClave.buscar(datos, trak, RUTA_TABLAS, "stsc");
+        CajaMp4 stsz = FotogramasClave.buscar(datos, trak, RUTA_TABLAS, "stsz");
+        CajaMp4 stss = FotogramasClave.buscar(datos, trak, RUTA_TABLAS, "stss");
+        CajaMp4 ctts = FotogramasClave.buscar(datos, trak, RUTA_TABLAS, "ctts");
+        CajaMp4 stco = FotogramasClave.buscar(datos, trak, RUTA_TABLAS, "stco");
+        CajaMp4 co64 = FotogramasClave.buscar(datos, trak, RUTA_TABLAS, "co64");
+        if (tkhd == null || mdhd == null || hdlr == null || stts == null || stsc == null || stsz == null
+                || (stco == null && co64 == null)) {
+            return null;
+        }
+
+        // tkhd versión 0: creación (4), modificación (4), track_ID; versión 1: creación (8), modificación (8)
+        int k = (int) tkhd.inicioDatos();
+        int id = datos.getInt(k + (datos.get(k) == 1 ? 20 : 12));
+        String manejador = FotogramasClave.tipo(datos, (int) hdlr.inicioDatos() + 8);
+
+        int m = (int) mdhd.inicioDatos();
+        long escala = Integer.toUnsignedLong(datos.getInt(m + (datos.get(m) == 1 ? 20 : 12)));
+        if (escala == 0) {
+            return null;
+        }
+
+        int z = (int) stsz.inicioDatos();
+        int tamanoFijo = datos.getInt(z + 4);
+        int muestras = datos.getInt(z + 8);
+        if (muestras <= 0 || muestras > MAXIMO_MUESTRAS) {
+            return null;
+        }
+
+        long[] offsets = new long[muestras];
+        int[] tamanos = new int[muestras];
+        long[] tiempos = new long[muestras + 1];
+
+        // ========== TAMAÑOS Y POSICIONES (stsz + stsc + stco/co64) ==========
+        for (int i = 0; i < muestras; i++) {
+            tamanos[i] = tamanoFijo != 0 ? tamanoFijo : datos.getInt(z + 12 + i * 4);
+        }
+
+        boolean largos = stco == null;
+        int c = (int) (largos ? co64 : stco).inicioDatos();
+        int chunks = datos.getInt(c + 4);
+        int s = (int) stsc.inicioDatos();
+        int entradasStsc = datos.getInt(s + 4);
+
+        int muestra = 0;
+        for (int e = 0; e < entradasStsc && muestra < muestras; e++) {
+            int primerChunk = datos.getInt(s + 8 + e * 12);
+            int muestrasPorChunk = datos.getInt(s + 8 + e * 12 + 4);
+            int descripcion = datos.getInt(s + 8 + e * 12 + 8);
+            if (descripcion != 1) {
+                // Los fragmentos usan una sola descripción (trex): cambios de códec a mitad no se admiten
+                return null;
+            }
+            int ultimoChunk = e + 1 < entradasStsc ? datos.getInt(s + 8 + (e + 1) * 12) - 1 : chunks;
+
+            for (int chunk = primerChunk; chunk <= ultimoChunk && muestra < muestras; chunk++) {
+                long offset = largos
+                        ? datos.getLong(c + 8 + (chunk - 1) * 8)
+                        : Integer.toUnsignedLong(datos.getInt(c + 8 + (chunk - 1) * 4));
+                for (int i = 0; i < muestrasPorChunk && muestra < muestras; i++, muestra++) {
+                    offsets[muestra] = offset;
+                    offset += Integer.toUnsignedLong(tamanos[muestra]);
+                }
+            }
+        }
+        if (muestra < muestras) {
+            return null;
+        }
+
+        // ========== TIEMPOS DE DECODIFICACIÓN (stts) ==========
+        int t = (int) stts.inicioDatos();
+        int entradasStts = datos.getInt(t + 4);
+        muestra = 0;
+        long tiempo = 0;
+        for (int e = 0; e < entradasStts && muestra < muestras; e++) {
+            long cuenta = Integer.toUnsignedLong(datos.getInt(t + 8 + e * 8));
+            long delta = Integer.toUnsignedLong(datos.getInt(t + 8 + e * 8 + 4));
+            for (long i = 0; i < cuenta && muestra < muestras; i++, muestra++) {
+                tiempos[muestra] = tiempo;
+                tiempo += delta;
+            }
+        }
+        // Si stts se queda corto las muestras restantes duran 0
+        for (; muestra < muestras; muestra++) {
+            tiempos[muestra] = tiempo;
+        }
+        tiempos[muestras] = tiempo;
+
+        // ========== COMPOSICIÓN (ctts, versión 1 con signo) ==========
+        int[] composicion = null;
+        if (ctts != null) {
+            composicion = new int[muestras];
+            int o = (int) ctts.inicioDatos();
+            int entradasCtts = datos.getInt(o + 4);
+            muestra = 0;
+            for (int e = 0; e < entradasCtts && muestra < muestras; e++) {
+                long cuenta = Integer.toUnsignedLong(datos.getInt(o + 8 + e * 8));
+                int desplazamiento = datos.getInt(o + 8 + e * 8 + 4);
+                for (long i = 0; i < cuenta && muestra < muestras; i++, muestra++) {
+                    composicion[muestra] = desplazamiento;
+                }
+            }
+        }
+
+        // ========== FOTOGRAMAS CLAVE (stss, números desde 1) ==========
+        BitSet claves = null;
+        if (stss != null) {
+            claves = new BitSet(muestras);
+            int o = (int) stss.inicioDatos();
+            int entradas = datos.getInt(o + 4);
+            for (int e = 0; e < entradas; e++) {
+                int numero = datos.getInt(o + 8 + e * 4);
+                if (numero >= 1 && numero <= muestras) {
+                    claves.set(numero - 1);
+                }
+            }
+        }
+
+        return new PistaMp4(trak, id, manejador, escala, offsets, tamanos, tiempos, composicion, claves);
+    }
+
+    int muestras() {
+        return tamanos.length;
+    }
+
+    boolean esClave(int muestra) {
+        return claves == null || claves.get(muestra);
+    }
+
+    boolean esVideo() {
+        return manejador.equals("vide");
+    }
+
+    boolean esAudio() {
+        return manejador.equals("soun");
+    }
+
+    /**
+     * Primera muestra cuyo tiempo de decodificación llega a un instante
+     * expresado en otra escala (tiempo / escalaInstante segundos)
+     *
+     * @return Índice de la muestra, o muestras() si todas son anteriores
+     */
+    int primeraDesde(long tiempo, long escalaInstante) {
+        int bajo = 0;
+        int alto = muestras();
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            // tiempos[medio] / escala >= tiempo / escalaInstante, sin dividir (2 h a 90 kHz × 1 MHz cabe en long)
+            if (tiempos[medio] * escalaInstante >= tiempo * escala) {
+                alto = medio;
+            } else {
+                bajo = medio + 1;
+            }
+        }
+        return bajo;
+    }
+
+    /**
+     * @return Memoria aproximada de las tablas expandidas
+     */
+    long bytes() {
+        long muestras = muestras();
+        return muestras * 20 + (composicion == null ? 0 : muestras * 4);
+    }
+}
@@ -0,0 +1,463 @@
+package kabadev.progreso;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Posición de reproducción de cada cliente en cada película
+ *
+ * Las posiciones viven en memoria (un mapa concurrente por cliente) y se
+ * guardan con escritura diferida: cada actualización solo sustituye la entrada
+ * pendiente de ese cliente y película, y un hilo vuelca las pendientes al
+ * registro cada dogster.progreso.intervalo ms con una sola escritura y un
+ * fsync. Un reproductor que informa cada pocos segundos cuesta una entrada por
+ * volcado, no una escritura por petición
+ *
+ * El registro solo crece por el final. Al arrancar se reproduce entero (el
+ * último registro de cada par gana) y, si un corte dejó un registro a medias,
+ * se trunca tras el último válido. Cuando tiene bastantes más registros que
+ * entradas vivas se compacta: se reescribe con una por entrada en un temporal
+ * que se renombra encima
+ *
+ * Formato (DataOutputStream, big-endian): MAGIA, VERSION y registros
+ * [longitud][cliente, película, posición ms, duración ms, fecha][CRC32];
+ * una posición negativa borra la entrada (película vista hasta el final)
+ */
+public final class ServicioProgreso implements AutoCloseable {
+
+    /** "DGPR" */
+    private static final int MAGIA = 0x44475052;
+    private static final int VERSION = 1;
+    private static final int CABECERA = 8;
+
+    private static final String ARCHIVO_POR_DEFECTO = "dogster-progreso.log";
+    private static final int INTERVALO_POR_DEFECTO = 2000;
+    private static final int MAXIMO_POR_DEFECTO = 200_000;
+
+    /** A partir de aquí la película se da por vista y se olvida la posición */
+    private static final double FRACCION_VISTA = 0.95;
+
+    /** Registros en el archivo por debajo de los cuales no merece la pena compactar */
+    private static final long MINIMO_COMPACTAR = 10_000;
+
+    /**
+     * Posición guardada
+     *
+     * @param pelicula Id de la película en el catálogo
+     * @param posicionMs Posición de reproducción
+     * @param duracionMs Duración que informó el reproductor (0 si no la sabía)
+     * @param actualizado Fecha de la última actualización (ms desde 1970)
+     */
+    public record Progreso(int pelicula, long posicionMs, long duracionMs, long actualizado) {
+    }
+
+    private record Clave(String cliente, int pelicula) {
+    }
+
+    /** Buffer reutilizable que deja leer su array sin copiarlo */
+    private static final class Bytes extends ByteArrayOutputStream {
+        Bytes(int tamano) {
+            super(tamano);
+        }
+
+        ByteBuffer comoBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private final Path archivo;
+    private final int maximoEntradas;
+    private final Map<String, Map<Integer, Progreso>> clientes = new ConcurrentHashMap<>();
+    /** Última versión aún no escrita de cada par; posición negativa = borrado */
+    private final Map<Clave, Progreso> pendientes = new ConcurrentHashMap<>();
+    private final AtomicInteger entradas = new AtomicInteger();
+    private final AtomicLong volcados = new AtomicLong();
+    private final ScheduledExecutorService escritor;
+
+    // Solo los usa el hilo que vuelca (volcar y compactar son synchronized)
+    private FileChannel registro;
+    private long registrosEnArchivo;
+    private final Bytes buffer = new Bytes(64 * 1024);
+    private final DataOutputStream salida = new DataOutputStream(buffer);
+    private final Bytes carga = new Bytes(128);
+    private final DataOutputStream salidaCarga = new DataOutputStream(carga);
+    private final CRC32 crc = new CRC32();
+    private boolean cerrado;
+
+    /**
+     * Reproduce el registro y empieza a volcar en segundo plano
+     *
+     * @param archivo Registro en disco (se crea si no existe)
+     * @param intervaloMs Milisegundos entre volcados
+     * @param maximoEntradas Pares cliente/película que se recuerdan como mucho
+     * @throws IOException Si el registro no se puede leer ni crear
+     */
+    public ServicioProgreso(Path archivo, long intervaloMs, int maximoEntradas) throws IOException {
+        if (intervaloMs < 1 || maximoEntradas < 1) {
+            throw new IllegalArgumentException("Intervalo y máximo del progreso deben ser positivos");
+        }
+        this.archivo = archivo.toAbsolutePath();
+        this.maximoEntradas = maximoEntradas;
+
+        reproducir();
+        if (registrosEnArchivo > Math.max(MINIMO_COMPACTAR, 2L * entradas.get())) {
+            compactar();
+        }
+
+        this.escritor = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "dogster-progreso");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        escritor.scheduleWithFixedDelay(this::volcarEnSegundoPlano, intervaloMs, intervaloMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Crea el servicio con dogster.progreso.archivo, .intervalo (ms) y .maximo
+     */
+    public static ServicioProgreso desdeConfiguracion() throws IOException {
+        return new ServicioProgreso(Paths.get(Configuracion.texto("progreso.archivo", ARCHIVO_POR_DEFECTO)),
+                Configuracion.entero("progreso.intervalo", INTERVALO_POR_DEFECTO),
+                Configuracion.entero("progreso.maximo", MAXIMO_POR_DEFECTO));
+    }
+
+    // ========== CONSULTAS ==========
+
+    /**
+     * @return La posición guardada, o null si no hay
+     */
+    public Progreso consultar(String cliente, int pelicula) {
+        Map<Integer, Progreso> peliculas = clientes.get(cliente);
+        return peliculas == null ? null : peliculas.get(pelicula);
+    }
+
+    /**
+     * @return Posiciones del cliente, la actualizada más recientemente primero
+     */
+    public List<Progreso> listar(String cliente) {
+        Map<Integer, Progreso> peliculas = clientes.get(cliente);
+        if (peliculas == null) {
+            return List.of();
+        }
+        List<Progreso> lista = new ArrayList<>(peliculas.values());
+        lista.sort(Comparator.comparingLong(Progreso::actualizado).reversed());
+        return lista;
+    }
+
+    // ========== ACTUALIZACIONES ==========
+
+    /**
+     * Guarda la posición en memoria; llega al disco en el siguiente volcado
+     * Cerca del final (95 % de la duración) la posición se olvida
+     *
+     * @param duracionMs Duración de la película, o 0 si no se conoce
+     * @return false si se alcanzó dogster.progreso.maximo y el par es nuevo
+     */
+    public boolean guardar(String cliente, int pelicula, long posicionMs, long duracionMs) {
+        if (posicionMs < 0 || duracionMs < 0) {
+            throw new IllegalArgumentException("Posición y duración no pueden ser negativas");
+        }
+        if (duracionMs > 0 && posicionMs >= duracionMs * FRACCION_VISTA) {
+            olvidar(cliente, pelicula);
+            return true;
+        }
+
+        Progreso progreso = new Progreso(pelicula, posicionMs, duracionMs, System.currentTimeMillis());
+        boolean[] admitida = {true};
+        // compute es atómico por cliente: el mapa de un cliente solo existe si tiene alguna posición
+        clientes.compute(cliente, (c, peliculas) -> {
+            if (peliculas == null || !peliculas.containsKey(pelicula)) {
+                // Los ids de cliente los inventa el navegador y no deben llenar la memoria
+                if (entradas.incrementAndGet() > maximoEntradas) {
+                    entradas.decrementAndGet();
+                    admitida[0] = false;
+                    return peliculas;
+                }
+                if (peliculas == null) {
+                    peliculas = new ConcurrentHashMap<>();
+                }
+            }
+            peliculas.put(pelicula, progreso);
+            return peliculas;
+        });
+        if (!admitida[0]) {
+            return false;
+        }
+        pendientes.put(new Clave(cliente, pelicula), progreso);
+        return true;
+    }
+
+    /**
+     * Borra la posición (película terminada)
+     */
+    public void olvidar(String cliente, int pelicula) {
+        clientes.computeIfPresent(cliente, (c, peliculas) -> {
+            if (peliculas.remove(pelicula) != null) {
+                entradas.decrementAndGet();
+                pendientes.put(new Clave(cliente, pelicula), new Progreso(pelicula, -1, 0, System.currentTimeMillis()));
+            }
+            // Sin posiciones el cliente deja de ocupar memoria
+            return peliculas.isEmpty() ? null : peliculas;
+        });
+    }
+
+    // ========== VOLCADO ==========
+
+    private void volcarEnSegundoPlano() {
+        try {
+            volcar();
+            if (registrosEnArchivo > Math.max(MINIMO_COMPACTAR, 4L * entradas.get())) {
+                compactar();
+            }
+        } catch (IOException e) {
+            // Las pendientes siguen en memoria: se reintenta en el siguiente volcado
+            System.out.println("Error al guardar el progreso en " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Escribe las pendientes en el registro con una sola escritura y un fsync
+     */
+    synchronized void volcar() throws IOException {
+        if (pendientes.isEmpty() || cerrado) {
+            return;
+        }
+        List<Map.Entry<Clave, Progreso>> escritas = new ArrayList<>();
+        buffer.reset();
+        for (Clave clave : pendientes.keySet()) {
+            Progreso progreso = pendientes.remove(clave);
+            if (progreso != null) {
+                escribirRegistro(clave.cliente(), progreso);
+                escritas.add(Map.entry(clave, progreso));
+            }
+        }
+
+        try {
+            escribirCompleto(registro, buffer.comoBuffer());
+            registro.force(false);
+        } catch (IOException e) {
+            // Una actualización posterior gana a la que no se pudo escribir
+            for (Map.Entry<Clave, Progreso> escrita : escritas) {
+                pendientes.putIfAbsent(escrita.getKey(), escrita.getValue());
+            }
+            throw e;
+        }
+        registrosEnArchivo += escritas.size();
+        volcados.incrementAndGet();
+    }
+
+    /**
+     * Reescribe el registro con una entrada por par vivo
+     * Lo que se actualice mientras tanto sigue pendiente y va detrás en el nuevo
+     */
+    synchronized void compactar() throws IOException {
+        if (cerrado) {
+            return;
+        }
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        long escritos = 0;
+        buffer.reset();
+        salida.writeInt(MAGIA);
+        salida.writeInt(VERSION);
+        try (FileChannel nuevo = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, Map<Integer, Progreso>> cliente : clientes.entrySet()) {
+                for (Progreso progreso : cliente.getValue().values()) {
+                    escribirRegistro(cliente.getKey(), progreso);
+                    escritos++;
+                    if (buffer.size() >= 64 * 1024) {
+                        escribirCompleto(nuevo, buffer.comoBuffer());
+                        buffer.reset();
+                    }
+                }
+            }
+            escribirCompleto(nuevo, buffer.comoBuffer());
+            nuevo.force(false);
+        }
+
+        if (registro != null) {
+            registro.close();
+        }
+        try {
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING);
+        }
+        registro = FileChannel.open(archivo, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        registrosEnArchivo = escritos;
+    }
+
+    /**
+     * Vuelca lo pendiente y cierra el registro; las actualizaciones posteriores no se guardan
+     */
+    @Override
+    public void close() throws IOException {
+        escritor.shutdown();
+        try {
+            escritor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                volcar();
+            } finally {
+                cerrado = true;
+                registro.close();
+            }
+        }
+    }
+
+    private void escribirRegistro(String cliente, Progreso progreso) throws IOException {
+        carga.reset();
+        salidaCarga.writeUTF(cliente);
+        salidaCarga.writeInt(progreso.pelicula());
+        salidaCarga.writeLong(progreso.posicionMs());
+        salidaCarga.writeLong(progreso.duracionMs());
+        salidaCarga.writeLong(progreso.actualizado());
+
+        crc.reset();
+        crc.update(carga.comoBuffer());
+        salida.writeInt(carga.size());
+        carga.writeTo(salida);
+        salida.writeInt((int) crc.getValue());
+    }
+
+    private static void escribirCompleto(FileChannel canal, ByteBuffer datos) throws IOException {
+        while (datos.hasRemaining()) {
+            canal.write(datos);
+        }
+    }
+
+    // ========== ARRANQUE ==========
+
+    /**
+     * Lee el registro entero y deja el canal abierto para añadir detrás del último registro válido
+     */
+    private void reproducir() throws IOException {
+        if (!Files.exists(archivo) || Files.size(archivo) < CABECERA) {
+            // Primer arranque (o un corte antes de escribir la cabecera)
+            try (FileChannel nuevo = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                escribirCompleto(nuevo, ByteBuffer.allocate(CABECERA).putInt(MAGIA).putInt(VERSION).flip());
+                nuevo.force(false);
+            }
+            registro = FileChannel.open(archivo, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            return;
+        }
+
+        long valido = CABECERA;
+        try (DataInputStream entrada = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(archivo), 64 * 1024))) {
+            if (entrada.readInt() != MAGIA || entrada.readInt() != VERSION) {
+                throw new IOException("El registro de progreso " + archivo + " no tiene un formato conocido");
+            }
+            while (true) {
+                int longitud;
+                try {
+                    longitud = entrada.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (longitud < 0 || longitud > 1024) {
+                    break;
+                }
+                byte[] carga = new byte[longitud];
+                entrada.readFully(carga);
+                int esperado = entrada.readInt();
+                crc.reset();
+                crc.update(carga);
+                if ((int) crc.getValue() != esperado) {
+                    break;
+                }
+                aplicar(new DataInputStream(new ByteArrayInputStream(carga)));
+                valido += 4L + longitud + 4;
+                registrosEnArchivo++;
+            }
+        } catch (EOFException e) {
+            // Registro a medias al final: se descarta
+        }
+
+        registro = FileChannel.open(archivo, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (registro.size() > valido) {
+            System.out.println("Progreso: descartados " + (registro.size() - valido) + " bytes incompletos al final de "
+                    + archivo);
+            registro.truncate(valido);
+        }
+    }
+
+    private void aplicar(DataInputStream carga) throws IOException {
+        String cliente = carga.readUTF();
+        Progreso progreso = new Progreso(carga.readInt(), carga.readLong(), carga.readLong(), carga.readLong());
+        if (progreso.posicionMs() < 0) {
+            Map<Integer, Progreso> peliculas = clientes.get(cliente);
+            if (peliculas != null && peliculas.remove(progreso.pelicula()) != null) {
+                entradas.decrementAndGet();
+                if (peliculas.isEmpty()) {
+                    clientes.remove(cliente);
+                }
+            }
+            return;
+        }
+        if (clientes.computeIfAbsent(cliente, c -> new ConcurrentHashMap<>()).put(progreso.pelicula(), progreso) == null) {
+            entradas.incrementAndGet();
+        }
+    }
+
+    // ========== MÉTRICAS ==========
+
+    /**
+     * @return Pares cliente/película guardados
+     */
+    public int entradas() {
+        return entradas.get();
+    }
+
+    /**
+     * @return Clientes con alguna posición guardada
+     */
+    int clientes() {
+        return clientes.size();
+    }
+
+    /**
+     * @return Actualizaciones aún no escritas en disco
+     */
+    public int pendientes() {
+        return pendientes.size();
+    }
+
+    /**
+     * @return Volcados (escritura + fsync) hechos desde el arranque
+     */
+    public long volcados() {
+        return volcados.get();
+    }
+}
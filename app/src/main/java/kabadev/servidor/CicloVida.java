@@ -0,0 +1,223 @@
+package kabadev.servidor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Arranque y apagado ordenado de Dogster
+ *
+ * Como middleware lleva la cuenta de las peticiones en curso (y de cuántas
+ * son streams de vídeo). Al apagar (Ctrl+C, SIGTERM de un despliegue):
+ * 1. Pasa a modo drenaje: las respuestas llevan Connection: close y los
+ *    streams nuevos se rechazan con 503 + Retry-After, el resto se atiende
+ * 2. El motor deja de aceptar conexiones y espera a las respuestas en curso
+ *    hasta el plazo dogster.apagado.plazo (15 segundos)
+ * 3. Pasado el plazo se cortan los streams que queden
+ * 4. Se cierran los recursos registrados (canales abiertos, cachés,
+ *    vigilancia del catálogo...) en orden inverso al de registro
+ *
+ * El apagado se ejecuta una sola vez aunque lo pidan a la vez el gancho de
+ * la JVM y el código
+ */
+public final class CicloVida implements Middleware {
+
+    private static final int PLAZO_POR_DEFECTO = 15;
+
+    /** Segundos que se sugieren al cliente antes de volver a pedir un stream */
+    private static final String REINTENTO = "5";
+
+    private record Recurso(String nombre, AutoCloseable recurso) {
+    }
+
+    private final IServidorHttp servidor;
+    private final int plazoSegundos;
+    private final List<Recurso> recursos = new ArrayList<>();
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final AtomicInteger streams = new AtomicInteger();
+    private final AtomicBoolean apagando = new AtomicBoolean();
+    private volatile boolean drenando;
+
+    /**
+     * @param servidor Motor que se detiene al apagar
+     * @param plazoSegundos Segundos que se espera a las respuestas en curso
+     */
+    public CicloVida(IServidorHttp servidor, int plazoSegundos) {
+        if (plazoSegundos < 0) {
+            throw new IllegalArgumentException("El plazo de apagado no puede ser negativo: " + plazoSegundos);
+        }
+        this.servidor = servidor;
+        this.plazoSegundos = plazoSegundos;
+    }
+
+    /**
+     * Crea el ciclo de vida con dogster.apagado.plazo
+     */
+    public static CicloVida desdeConfiguracion(IServidorHttp servidor) {
+        return new CicloVida(servidor, Configuracion.entero("apagado.plazo", PLAZO_POR_DEFECTO));
+    }
+
+    // ========== ARRANQUE ==========
+
+    /**
+     * Espera una tarea de arranque lanzada en paralelo (catálogo, estáticos,
+     * índice de la biblioteca) y devuelve su resultado
+     *
+     * @throws IOException El error de la tarea, o uno nuevo si no era de E/S
+     */
+    public static <T> T esperar(Future<T> tarea) throws IOException {
+        try {
+            return tarea.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Arranque interrumpido");
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException io) {
+                throw io;
+            }
+            if (causa instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (causa instanceof RuntimeException error) {
+                throw error;
+            }
+            throw new IOException("Error durante el arranque", causa);
+        }
+    }
+
+    /**
+     * Registra un recurso que se cierra al apagar, después de detener el motor
+     * Se cierran en orden inverso: lo que depende de otro se registra después
+     *
+     * @param nombre Nombre para los mensajes de error
+     * @param recurso Recurso a cerrar (null se ignora)
+     */
+    public synchronized void registrar(String nombre, AutoCloseable recurso) {
+        if (recurso != null) {
+            recursos.add(new Recurso(nombre, recurso));
+        }
+    }
+
+    /**
+     * Instala el gancho de apagado de la JVM (Ctrl+C, SIGTERM)
+     */
+    public void instalarGancho() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::apagar, "dogster-apagado"));
+    }
+
+    // ========== MIDDLEWARE ==========
+
+    @Override
+    public IControladorHttp envolver(String patron, IControladorHttp siguiente) {
+        boolean stream = patron.startsWith("/stream/");
+        return intercambio -> {
+            if (drenando) {
+                intercambio.getResponseHeaders().set("Connection", "close");
+                if (stream) {
+                    // Un stream nuevo no acabaría antes del plazo: el reproductor reintenta contra la nueva instancia
+                    intercambio.getResponseHeaders().set("Retry-After", REINTENTO);
+                    Respuestas.texto(intercambio, 503, "Servidor reiniciándose, vuelve a intentarlo en unos segundos");
+                    return;
+                }
+            }
+            enCurso.incrementAndGet();
+            if (stream) {
+                streams.incrementAndGet();
+            }
+            try {
+                siguiente.controlar(intercambio);
+            } finally {
+                if (stream) {
+                    streams.decrementAndGet();
+                }
+                enCurso.decrementAndGet();
+            }
+        };
+    }
+
+    // ========== APAGADO ==========
+
+    /**
+     * Drena, detiene el motor y cierra los recursos (solo la primera vez)
+     */
+    public void apagar() {
+        if (!apagando.compareAndSet(false, true)) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        drenando = true;
+        System.out.println("Apagando Dogster: " + enCurso.get() + " peticiones en curso (" + streams.get()
+                + " streams), plazo de " + plazoSegundos + " s");
+
+        // El motor cierra el puerto y espera a las respuestas en curso hasta el plazo
+        if (servidor.estaIniciado()) {
+            servidor.detener(plazoSegundos);
+        }
+
+        // El motor NIO puede devolver las respuestas antes de que el controlador termine del todo
+        long limite = inicio + TimeUnit.SECONDS.toNanos(plazoSegundos);
+        while (enCurso.get() > 0 && System.nanoTime() < limite) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (enCurso.get() > 0) {
+            System.out.println("Plazo agotado: se cortan " + enCurso.get() + " peticiones (" + streams.get()
+                    + " streams)");
+        }
+
+        cerrarRecursos();
+        System.out.println("Dogster apagado en " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + " ms");
+    }
+
+    private void cerrarRecursos() {
+        List<Recurso> pendientes;
+        synchronized (this) {
+            pendientes = new ArrayList<>(recursos);
+            recursos.clear();
+        }
+        for (int i = pendientes.size() - 1; i >= 0; i--) {
+            Recurso recurso = pendientes.get(i);
+            try {
+                recurso.recurso().close();
+            } catch (Exception e) {
+                // Un recurso que falla no impide cerrar los demás
+                System.out.println("Error al cerrar " + recurso.nombre() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return true desde que empezó el apagado
+     */
+    public boolean drenando() {
+        return drenando;
+    }
+
+    /**
+     * @return Peticiones que están atendiendo los controladores
+     */
+    public int enCurso() {
+        return enCurso.get();
+    }
+
+    /**
+     * @return Streams de vídeo en curso
+     */
+    public int streams() {
+        return streams.get();
+    }
+}
@@ -0,0 +1,50 @@
+package kabadev.servidor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Contenido que RespuestaRangos puede servir por rangos
+ *
+ * Normalmente es un archivo tal cual, pero también puede ser una vista virtual
+ * (por ejemplo un MP4 con el moov recolocado) compuesta de trozos de archivo y
+ * de bytes en memoria
+ */
+public interface ContenidoRangos {
+
+    /**
+     * @return Tamaño total del contenido en bytes
+     */
+    long tamano();
+
+    /**
+     * Envía los bytes [posicion, posicion + longitud) al cuerpo de la respuesta
+     *
+     * @param posicion Primer byte a enviar
+     * @param longitud Número de bytes a enviar
+     * @param salida Cuerpo de la respuesta (no se cierra)
+     * @throws IOException Si falla la lectura o la escritura
+     */
+    void transferir(long posicion, long longitud, OutputStream salida) throws IOException;
+
+    /**
+     * Contenido formado por el archivo completo
+     *
+     * @param canal Canal del archivo abierto en lectura
+     * @param tamano Tamaño del archivo
+     */
+    static ContenidoRangos deArchivo(FileChannel canal, long tamano) {
+        return new ContenidoRangos() {
+            @Override
+            public long tamano() {
+                return tamano;
+            }
+
+            @Override
+            public void transferir(long posicion, long longitud, OutputStream salida) throws IOException {
+                TransferenciaArchivo.transferir(canal, posicion, longitud, salida);
+            }
+        };
+    }
+}
@@ -0,0 +1,231 @@
+package kabadev.servidor;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Control de admisión por clases de petición
+ *
+ * Antes todas las peticiones competían por los mismos hilos: con el pool fijo
+ * llenos de streams, /video e index.html esperaban detrás y acababan caducando.
+ * Ahora cada ruta pertenece a una clase con su propio presupuesto:
+ * - INTERACTIVA: página, estáticos, /video, carteles, progreso, keyframes y
+ *   la lista HLS. Respuestas pequeñas que el usuario espera ver enseguida
+ * - MASIVA: /stream/{id} y los segmentos HLS. Ocupan la conexión minutos
+ *
+ * Cada clase admite N peticiones a la vez; las que no caben esperan en una cola
+ * acotada como mucho el tiempo de espera máximo. Si la cola está llena o la
+ * espera se agota se responde 503 con Retry-After en lugar de acumularlas: el
+ * reproductor reintenta y la interfaz sigue respondiendo aunque el cupo de
+ * streams esté agotado. /metrics no pasa por el control (hay que poder ver
+ * la sobrecarga)
+ *
+ * Con el pool FIJO la espera ocupa un hilo del pool, así que por defecto los
+ * streams dejan dogster.admision.reserva hilos libres para la clase
+ * interactiva y no esperan en cola
+ */
+public final class ControlAdmision implements Middleware {
+
+    /** Segundos que se sugieren al cliente antes de reintentar */
+    private static final String REINTENTO = "2";
+
+    private static final int INTERACTIVAS_POR_DEFECTO = 64;
+    private static final int COLA_INTERACTIVAS_POR_DEFECTO = 256;
+    private static final int ESPERA_INTERACTIVAS_POR_DEFECTO = 2000;
+    private static final int MASIVAS_POR_DEFECTO = 256;
+    private static final int COLA_MASIVAS_POR_DEFECTO = 32;
+    private static final int ESPERA_MASIVAS_POR_DEFECTO = 1000;
+    private static final int RESERVA_POR_DEFECTO = 2;
+
+    /** Clase de una ruta */
+    public enum Clase {
+        INTERACTIVA, MASIVA
+    }
+
+    /**
+     * Presupuesto de una clase: concurrencia, cola y espera máxima
+     */
+    public static final class Cupo {
+        private final Semaphore permisos;
+        private final int maximo;
+        private final int maximoCola;
+        private final long esperaNanos;
+        private final AtomicInteger esperando = new AtomicInteger();
+        private final LongAdder rechazadas = new LongAdder();
+
+        /**
+         * @param maximo Peticiones atendidas a la vez
+         * @param maximoCola Peticiones que pueden esperar turno (0 = rechazar en cuanto no haya hueco)
+         * @param esperaMs Espera máxima en la cola
+         */
+        public Cupo(int maximo, int maximoCola, long esperaMs) {
+            if (maximo < 1 || maximoCola < 0 || esperaMs < 0) {
+                throw new IllegalArgumentException("Cupo de admisión no válido: " + maximo + ", cola " + maximoCola
+                        + ", espera " + esperaMs);
+            }
+            this.permisos = new Semaphore(maximo, true);
+            this.maximo = maximo;
+            this.maximoCola = maximoCola;
+            this.esperaNanos = TimeUnit.MILLISECONDS.toNanos(esperaMs);
+        }
+
+        /**
+         * Obtiene un permiso: al momento, o esperando en la cola si hay sitio
+         *
+         * @return false si la cola está llena o se agotó la espera
+         */
+        boolean entrar() throws InterruptedException {
+            if (permisos.tryAcquire()) {
+                return true;
+            }
+            if (esperaNanos == 0 || esperando.incrementAndGet() > maximoCola) {
+                if (esperaNanos != 0) {
+                    esperando.decrementAndGet();
+                }
+                rechazadas.increment();
+                return false;
+            }
+            try {
+                if (permisos.tryAcquire(esperaNanos, TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+            } finally {
+                esperando.decrementAndGet();
+            }
+            rechazadas.increment();
+            return false;
+        }
+
+        void salir() {
+            permisos.release();
+        }
+
+        /**
+         * @return Peticiones de la clase que se están atendiendo
+         */
+        public int enCurso() {
+            return maximo - permisos.availablePermits();
+        }
+
+        /**
+         * @return Peticiones esperando turno
+         */
+        public int esperando() {
+            return esperando.get();
+        }
+
+        /**
+         * @return Peticiones rechazadas con 503 desde el arranque
+         */
+        public long rechazadas() {
+            return rechazadas.sum();
+        }
+    }
+
+    private final Cupo interactivas;
+    private final Cupo masivas;
+
+    /**
+     * @param interactivas Cupo de la clase INTERACTIVA
+     * @param masivas Cupo de la clase MASIVA
+     */
+    public ControlAdmision(Cupo interactivas, Cupo masivas) {
+        this.interactivas = interactivas;
+        this.masivas = masivas;
+    }
+
+    /**
+     * Crea el control con dogster.admision.interactivas, .interactivas.cola,
+     * .interactivas.espera (ms) y lo mismo para .masivas
+     *
+     * Con el pool FIJO los streams admiten por defecto hilos - dogster.admision.reserva
+     * y no esperan en cola: una espera ocuparía uno de los hilos reservados
+     *
+     * @param estrategia Estrategia de hilos del motor
+     * @return El control, o null con -Ddogster.admision.activa=false
+     */
+    public static ControlAdmision desdeConfiguracion(EstrategiaEjecutor estrategia) {
+        if (!Configuracion.booleano("admision.activa", true)) {
+            return null;
+        }
+        int masivas = MASIVAS_POR_DEFECTO;
+        int colaMasivas = COLA_MASIVAS_POR_DEFECTO;
+        if (estrategia == EstrategiaEjecutor.FIJO) {
+            int hilos = Configuracion.entero("hilos", EstrategiaEjecutor.HILOS_POR_DEFECTO);
+            masivas = Math.max(1, hilos - Configuracion.entero("admision.reserva", RESERVA_POR_DEFECTO));
+            colaMasivas = 0;
+        }
+        return new ControlAdmision(
+                new Cupo(Configuracion.entero("admision.interactivas", INTERACTIVAS_POR_DEFECTO),
+                        Configuracion.entero("admision.interactivas.cola", COLA_INTERACTIVAS_POR_DEFECTO),
+                        Configuracion.entero("admision.interactivas.espera", ESPERA_INTERACTIVAS_POR_DEFECTO)),
+                new Cupo(Configuracion.entero("admision.masivas", masivas),
+                        Configuracion.entero("admision.masivas.cola", colaMasivas),
+                        Configuracion.entero("admision.masivas.espera", ESPERA_MASIVAS_POR_DEFECTO)));
+    }
+
+    /**
+     * Clase de una ruta según su patrón
+     *
+     * @return La clase, o null si la ruta no pasa por el control (/metrics)
+     */
+    public static Clase clasificar(String patron) {
+        if (patron.equals("/metrics")) {
+            return null;
+        }
+        boolean stream = patron.startsWith("/stream/") && !patron.endsWith("/keyframes");
+        boolean segmento = patron.startsWith("/hls/") && !patron.endsWith(".m3u8");
+        return stream || segmento ? Clase.MASIVA : Clase.INTERACTIVA;
+    }
+
+    @Override
+    public IControladorHttp envolver(String patron, IControladorHttp siguiente) {
+        Clase clase = clasificar(patron);
+        if (clase == null) {
+            return siguiente;
+        }
+        Cupo cupo = clase == Clase.MASIVA ? masivas : interactivas;
+        return intercambio -> {
+            if (!entrar(cupo)) {
+                rechazar(intercambio, clase);
+                return;
+            }
+            try {
+                siguiente.controlar(intercambio);
+            } finally {
+                cupo.salir();
+            }
+        };
+    }
+
+    private static boolean entrar(Cupo cupo) throws IOException {
+        try {
+            return cupo.entrar();
+        } catch (InterruptedException e) {
+            // Apagado del motor mientras esperaba turno
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void rechazar(HttpExchange intercambio, Clase clase) throws IOException {
+        intercambio.getResponseHeaders().set("Retry-After", REINTENTO);
+        Respuestas.texto(intercambio, 503, clase == Clase.MASIVA
+                ? "Demasiados streams a la vez, vuelve a intentarlo en unos segundos"
+                : "Servidor saturado, vuelve a intentarlo en unos segundos");
+    }
+
+    /**
+     * @return Cupo de una clase (para las métricas)
+     */
+    public Cupo cupo(Clase clase) {
+        return clase == Clase.MASIVA ? masivas : interactivas;
+    }
+}
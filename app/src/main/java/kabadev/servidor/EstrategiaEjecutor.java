@@ -0,0 +1,106 @@
+package kabadev.servidor;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Estrategias de ejecución para atender las peticiones HTTP
+ *
+ * - VIRTUAL: un hilo virtual por petición; un stream bloqueado en la escritura
+ *   del socket no ocupa un hilo de plataforma, así que cientos de espectadores
+ *   simultáneos no cuestan cientos de hilos del sistema operativo
+ * - FIJO: pool acotado de hilos de plataforma; la petición número hilos+1 espera en cola
+ * - CACHE: pool sin límite que crea hilos bajo demanda y los libera a los 60 segundos
+ *
+ * Se elige al arrancar con -Ddogster.ejecutor=virtual|fijo|cache
+ * y el tamaño del pool FIJO con -Ddogster.hilos=N
+ */
+public enum EstrategiaEjecutor {
+
+    VIRTUAL,
+    FIJO,
+    CACHE;
+
+    /** Hilos del pool FIJO si no se configura otro valor */
+    public static final int HILOS_POR_DEFECTO = 10;
+
+    /** Espera máxima a las tareas del pool al detener (antes y después de interrumpirlas) */
+    private static final long SEGUNDOS_TERMINACION = 2;
+
+    /**
+     * Crea el ExecutorService de esta estrategia
+     *
+     * @param hilos Tamaño del pool (solo se usa en FIJO)
+     * @return Executor listo para asignarse al servidor
+     */
+    public ExecutorService crear(int hilos) {
+        switch (this) {
+            case VIRTUAL:
+                return Executors.newThreadPerTaskExecutor(
+                        Thread.ofVirtual().name("dogster-virtual-", 0).factory());
+            case FIJO:
+                if (hilos < 1) {
+                    throw new IllegalArgumentException("El pool fijo necesita al menos un hilo: " + hilos);
+                }
+                return new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(), fabricaPlataforma("dogster-fijo-"));
+            case CACHE:
+            default:
+                return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                        new SynchronousQueue<>(), fabricaPlataforma("dogster-cache-"));
+        }
+    }
+
+    /**
+     * Estrategia configurada en dogster.ejecutor (VIRTUAL si no se indica)
+     */
+    public static EstrategiaEjecutor desdeConfiguracion() {
+        return desdeTexto(Configuracion.texto("ejecutor", VIRTUAL.name()));
+    }
+
+    /**
+     * Convierte un texto de configuración en estrategia
+     *
+     * @throws IllegalArgumentException Si el nombre no corresponde a ninguna estrategia
+     */
+    public static EstrategiaEjecutor desdeTexto(String nombre) {
+        try {
+            return valueOf(nombre.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Estrategia de ejecutor desconocida: " + nombre
+                    + " (valores válidos: virtual, fijo, cache)", e);
+        }
+    }
+
+    /**
+     * Cierra el pool al detener el motor: espera a las tareas en curso unos
+     * segundos y después interrumpe las que queden (streams bloqueados en el
+     * socket que el motor ya cerró)
+     *
+     * @param pool Executor creado con {@link #crear}
+     */
+    public static void terminar(ExecutorService pool) {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(SEGUNDOS_TERMINACION, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+                pool.awaitTermination(SEGUNDOS_TERMINACION, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory fabricaPlataforma(String prefijo) {
+        return Thread.ofPlatform().name(prefijo, 0).factory();
+    }
+}
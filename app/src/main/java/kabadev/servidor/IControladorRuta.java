@@ -0,0 +1,23 @@
+package kabadev.servidor;
+
+import java.io.IOException;                      // IOException NATIVO de Java
+
+import com.sun.net.httpserver.HttpExchange;     // HttpExchange NATIVO de Java
+
+/**
+ * Controlador que necesita los parámetros de su ruta (/stream/{id})
+ *
+ * Recibe la RutaHttp que coincidió para leer los parámetros con
+ * ruta.parametro(intercambio, "id"); los controladores que no tienen
+ * parámetros implementan IControladorHttp
+ */
+@FunctionalInterface
+public interface IControladorRuta {
+
+    /**
+     * @param intercambio HttpExchange NATIVO de Java con la petición
+     * @param ruta Ruta que coincidió con el path de la petición
+     * @throws IOException Excepción NATIVA de Java para errores de entrada/salida
+     */
+    public void controlar(HttpExchange intercambio, RutaHttp ruta) throws IOException;
+}
@@ -0,0 +1,78 @@
+package kabadev.servidor;
+
+import java.net.InetSocketAddress;              // InetSocketAddress NATIVO de Java
+
+import kabadev.metricas.MetricasHttp;           // Contadores e histogramas de la capa HTTP
+
+/**
+ * Interfaz común de los motores HTTP de Dogster
+ *
+ * - ServidorHttp: envoltorio del HttpServer NATIVO (un hilo bloqueado por petición)
+ * - ServidorNio: motor propio basado en Selector (E/S no bloqueante y copia cero)
+ *
+ * Los controladores se registran igual en ambos: una sola TablaRutas con su
+ * cadena de middlewares atiende todas las peticiones de cualquiera de los dos motores
+ */
+public interface IServidorHttp {
+
+    /**
+     * Activa la instrumentación: cada ruta registrada después queda medida
+     * y el pool de hilos se publica al iniciar. Hay que llamarlo antes de crearRuta
+     *
+     * @param metricas Métricas donde se registran las peticiones
+     */
+    public void usarMetricas(MetricasHttp metricas);
+
+    /**
+     * Añade un middleware a las rutas que se registren después
+     * El primero añadido es el más externo de la cadena
+     *
+     * @param middleware Paso común (CORS, métodos, compresión...)
+     */
+    public void usar(Middleware middleware);
+
+    /**
+     * Registra un controlador para un patrón de ruta de la TablaRutas
+     * (/video, /stream/{id}, /static/*); gana el literal, luego el parámetro
+     * y por último el comodín
+     *
+     * @param patron Patrón de la ruta
+     * @param controlador Controlador que recibe la ruta con sus parámetros
+     */
+    public void crearRuta(String patron, IControladorRuta controlador);
+
+    /**
+     * Registra un controlador sin parámetros de ruta
+     *
+     * @param ruta Patrón de la ruta (coincidencia exacta salvo comodín final: /static/*)
+     * @param controlador Implementación de IControladorHttp
+     */
+    public default void crearContexto(String ruta, IControladorHttp controlador) {
+        if (controlador == null) {
+            throw new IllegalArgumentException("El controlador no puede ser null");
+        }
+        crearRuta(ruta, (intercambio, coincidencia) -> controlador.controlar(intercambio));
+    }
+
+    /**
+     * Empieza a aceptar conexiones
+     */
+    public void iniciar();
+
+    /**
+     * Detiene el servidor
+     *
+     * @param tiempoEspera Segundos a esperar antes del cierre forzado
+     */
+    public void detener(int tiempoEspera);
+
+    /**
+     * @return true si el servidor está aceptando conexiones
+     */
+    public boolean estaIniciado();
+
+    /**
+     * @return Dirección real en la que escucha (útil con el puerto 0)
+     */
+    public InetSocketAddress obtenerDireccion();
+}
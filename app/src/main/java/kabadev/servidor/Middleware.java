@@ -0,0 +1,19 @@
+package kabadev.servidor;
+
+/**
+ * Paso de la cadena que envuelve a cada controlador (CORS, métodos, métricas...)
+ *
+ * La cadena se compone una sola vez al registrar la ruta: atender una petición
+ * es solo llamar a los controladores ya envueltos, sin listas ni objetos nuevos.
+ * El primer middleware registrado con IServidorHttp.usar queda por fuera
+ */
+@FunctionalInterface
+public interface Middleware {
+
+    /**
+     * @param patron Patrón de la ruta que se está registrando (/stream/{id})
+     * @param siguiente Resto de la cadena, con el controlador al final
+     * @return Controlador que hace su parte y delega (o responde sin delegar)
+     */
+    public IControladorHttp envolver(String patron, IControladorHttp siguiente);
+}
@@ -0,0 +1,96 @@
+package kabadev.servidor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Middlewares comunes a todas las rutas de Dogster
+ *
+ * Antes cada controlador comprobaba el método y ponía sus propias cabeceras
+ * CORS (con valores distintos en /video y /stream); ahora se registran una vez
+ * con IServidorHttp.usar y se aplican igual a todas las rutas
+ */
+public final class Middlewares {
+
+    private static final String CABECERAS_EXPUESTAS =
+            "Content-Range, Accept-Ranges, Content-Length, ETag, X-Total-Count, X-Seek-Time, X-Seek-Offset";
+    private static final String CABECERAS_PERMITIDAS = "Range, If-Range, If-None-Match";
+    private static final String SEGUNDOS_PREFLIGHT = "86400";
+
+    private Middlewares() {
+    }
+
+    /**
+     * CORS abierto: cualquier origen puede leer el catálogo y los streams
+     * Las peticiones OPTIONS (preflight) se responden aquí con 204 sin llegar
+     * al controlador
+     *
+     * @param metodos Métodos que se anuncian en el preflight ("GET, OPTIONS")
+     */
+    public static Middleware cors(String metodos) {
+        return (patron, siguiente) -> intercambio -> {
+            intercambio.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            if ("OPTIONS".equals(intercambio.getRequestMethod())) {
+                intercambio.getResponseHeaders().set("Access-Control-Allow-Methods", metodos);
+                intercambio.getResponseHeaders().set("Access-Control-Allow-Headers", CABECERAS_PERMITIDAS);
+                intercambio.getResponseHeaders().set("Access-Control-Max-Age", SEGUNDOS_PREFLIGHT);
+                Respuestas.sinCuerpo(intercambio, 204);
+                return;
+            }
+            intercambio.getResponseHeaders().set("Access-Control-Expose-Headers", CABECERAS_EXPUESTAS);
+            siguiente.controlar(intercambio);
+        };
+    }
+
+    /**
+     * Rechaza con 405 (y la cabecera Allow) los métodos no permitidos
+     * GET implica HEAD: los reproductores y comprobadores de enlaces sondean con HEAD
+     *
+     * @param permitidos Métodos aceptados ("GET")
+     */
+    public static Middleware metodos(String... permitidos) {
+        return metodos(Map.of(), permitidos);
+    }
+
+    /**
+     * Como metodos(permitidos), pero las rutas de la tabla aceptan sus propios
+     * métodos (p. ej. /progress/{id} también PUT y POST). Se elige al registrar
+     * la ruta, no en cada petición
+     *
+     * @param porRuta Patrón de la ruta → métodos aceptados en ella
+     * @param permitidos Métodos aceptados en el resto de rutas
+     */
+    public static Middleware metodos(Map<String, String[]> porRuta, String... permitidos) {
+        Map<String, String[]> tabla = Map.copyOf(porRuta);
+        return (patron, siguiente) -> {
+            return soloMetodos(conHead(tabla.getOrDefault(patron, permitidos)), siguiente);
+        };
+    }
+
+    /**
+     * Copia de los métodos con HEAD añadido si está GET y falta HEAD
+     */
+    private static String[] conHead(String[] metodos) {
+        List<String> lista = new ArrayList<>(List.of(metodos));
+        if (lista.contains("GET") && !lista.contains("HEAD")) {
+            lista.add(lista.indexOf("GET") + 1, "HEAD");
+        }
+        return lista.toArray(new String[0]);
+    }
+
+    private static IControladorHttp soloMetodos(String[] copia, IControladorHttp siguiente) {
+        String allow = String.join(", ", copia);
+        return intercambio -> {
+            String metodo = intercambio.getRequestMethod();
+            for (String permitido : copia) {
+                if (permitido.equals(metodo)) {
+                    siguiente.controlar(intercambio);
+                    return;
+                }
+            }
+            intercambio.getResponseHeaders().set("Allow", allow);
+            Respuestas.sinCuerpo(intercambio, 405);
+        };
+    }
+}
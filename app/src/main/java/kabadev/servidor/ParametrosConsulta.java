@@ -0,0 +1,41 @@
+package kabadev.servidor;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lectura de los parámetros de la query string (?page=1&size=20)
+ */
+public final class ParametrosConsulta {
+
+    private ParametrosConsulta() {
+    }
+
+    /**
+     * Separa y decodifica los parámetros de una query sin decodificar
+     * Si un parámetro se repite se conserva el primer valor
+     *
+     * @param queryCruda Resultado de URI.getRawQuery() (puede ser null)
+     * @return Mapa nombre → valor (vacío si no hay query)
+     */
+    public static Map<String, String> analizar(String queryCruda) {
+        Map<String, String> parametros = new HashMap<>();
+        if (queryCruda == null || queryCruda.isEmpty()) {
+            return parametros;
+        }
+
+        for (String par : queryCruda.split("&")) {
+            if (par.isEmpty()) {
+                continue;
+            }
+            int igual = par.indexOf('=');
+            String nombre = igual < 0 ? par : par.substring(0, igual);
+            String valor = igual < 0 ? "" : par.substring(igual + 1);
+            parametros.putIfAbsent(URLDecoder.decode(nombre, StandardCharsets.UTF_8),
+                    URLDecoder.decode(valor, StandardCharsets.UTF_8));
+        }
+        return parametros;
+    }
+}
@@ -0,0 +1,28 @@
+package kabadev.servidor;
+
+/**
+ * Rango de bytes de una petición HTTP con cabecera Range
+ * Las posiciones son absolutas e inclusivas, igual que en Content-Range
+ *
+ * @param inicio Primer byte del rango
+ * @param fin Último byte del rango (inclusivo)
+ */
+public record RangoBytes(long inicio, long fin) {
+
+    /**
+     * @return Número de bytes que cubre el rango
+     */
+    public long longitud() {
+        return fin - inicio + 1;
+    }
+
+    /**
+     * Valor de la cabecera Content-Range para este rango
+     *
+     * @param tamanoTotal Tamaño completo del recurso
+     * @return Texto con el formato "bytes inicio-fin/total"
+     */
+    public String contentRange(long tamanoTotal) {
+        return "bytes " + inicio + "-" + fin + "/" + tamanoTotal;
+    }
+}
@@ -0,0 +1,184 @@
+package kabadev.servidor;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Utilidades para interpretar las cabeceras Range e If-Range (RFC 9110)
+ *
+ * Reglas aplicadas:
+ * - Una cabecera ausente, con otra unidad o mal formada se ignora (respuesta 200 completa)
+ * - Si ningún rango es satisfacible se devuelve una lista vacía (respuesta 416)
+ * - Los rangos solapados o contiguos se fusionan y se ordenan
+ * - Demasiados rangos tras fusionar se ignoran para evitar abusos
+ */
+public final class RangosHttp {
+
+    /** Máximo de rangos que aceptamos en una misma petición multipart */
+    public static final int MAXIMO_RANGOS = 16;
+
+    /** Formato de fecha HTTP (Last-Modified, If-Range, Date) */
+    public static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private RangosHttp() {
+    }
+
+    /**
+     * Interpreta la cabecera Range contra un recurso de tamaño conocido
+     *
+     * @param cabecera Valor de la cabecera Range (puede ser null)
+     * @param tamano Tamaño total del recurso en bytes
+     * @return null si hay que servir el recurso completo, lista vacía si ningún
+     *         rango es satisfacible, o los rangos ordenados y fusionados
+     */
+    public static List<RangoBytes> analizar(String cabecera, long tamano) {
+        if (cabecera == null) {
+            return null;
+        }
+
+        String valor = cabecera.trim();
+        if (!valor.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+
+        List<RangoBytes> rangos = new ArrayList<>();
+        int especificaciones = 0;
+        for (String parte : valor.substring(6).split(",")) {
+            String especificacion = parte.trim();
+            if (especificacion.isEmpty()) {
+                continue;
+            }
+
+            especificaciones++;
+            int guion = especificacion.indexOf('-');
+            if (guion < 0) {
+                return null;
+            }
+
+            String textoInicio = especificacion.substring(0, guion).trim();
+            String textoFin = especificacion.substring(guion + 1).trim();
+
+            try {
+                if (textoInicio.isEmpty()) {
+                    // ========== SUFIJO: "-500" = los últimos 500 bytes ==========
+                    long sufijo = Long.parseLong(textoFin);
+                    if (sufijo < 0) {
+                        return null;
+                    }
+                    if (sufijo > 0 && tamano > 0) {
+                        rangos.add(new RangoBytes(Math.max(0, tamano - sufijo), tamano - 1));
+                    }
+                    continue;
+                }
+
+                long inicio = Long.parseLong(textoInicio);
+                long fin = textoFin.isEmpty() ? Long.MAX_VALUE : Long.parseLong(textoFin);
+                if (inicio < 0 || fin < inicio) {
+                    return null;
+                }
+                if (inicio < tamano) {
+                    rangos.add(new RangoBytes(inicio, Math.min(fin, tamano - 1)));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        if (especificaciones == 0) {
+            return null;
+        }
+
+        List<RangoBytes> fusionados = fusionar(rangos);
+        return fusionados.size() > MAXIMO_RANGOS ? null : fusionados;
+    }
+
+    /**
+     * Decide si la condición If-Range permite aplicar el Range
+     * Solo se aceptan validadores fuertes: ETag exacto o fecha idéntica
+     *
+     * @param ifRange Valor de la cabecera If-Range (puede ser null)
+     * @param etag ETag actual del recurso
+     * @param ultimaModificacion Fecha de modificación en milisegundos
+     * @return true si no hay condición o si el validador coincide
+     */
+    public static boolean ifRangeCoincide(String ifRange, String etag, long ultimaModificacion) {
+        if (ifRange == null) {
+            return true;
+        }
+
+        String valor = ifRange.trim();
+        if (valor.startsWith("\"") || valor.startsWith("W/")) {
+            return valor.equals(etag);
+        }
+
+        try {
+            long fecha = ZonedDateTime.parse(valor, FORMATO_FECHA).toInstant().toEpochMilli();
+            return fecha == (ultimaModificacion / 1000) * 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Comprueba If-None-Match contra un ETag (comparación débil, admite lista y *)
+     *
+     * @param ifNoneMatch Valor de la cabecera If-None-Match (puede ser null)
+     * @param etag ETag actual del recurso
+     * @return true si el cliente ya tiene esta versión y basta con un 304
+     */
+    public static boolean coincideEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String buscado = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String etiqueta : ifNoneMatch.split(",")) {
+            String valor = etiqueta.trim();
+            if (valor.equals("*") || (valor.startsWith("W/") ? valor.substring(2) : valor).equals(buscado)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Formatea una fecha en milisegundos como fecha HTTP
+     */
+    public static String formatearFecha(long milisegundos) {
+        return FORMATO_FECHA.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(milisegundos), ZoneOffset.UTC));
+    }
+
+    /**
+     * ETag fuerte derivado del tamaño y la fecha de modificación del archivo
+     */
+    public static String calcularEtag(long tamano, long ultimaModificacion) {
+        return "\"" + Long.toHexString(tamano) + "-" + Long.toHexString(ultimaModificacion) + "\"";
+    }
+
+    private static List<RangoBytes> fusionar(List<RangoBytes> rangos) {
+        if (rangos.size() < 2) {
+            return rangos;
+        }
+
+        rangos.sort(Comparator.comparingLong(RangoBytes::inicio));
+        List<RangoBytes> resultado = new ArrayList<>();
+        RangoBytes actual = rangos.get(0);
+
+        for (int i = 1; i < rangos.size(); i++) {
+            RangoBytes siguiente = rangos.get(i);
+            if (siguiente.inicio() <= actual.fin() + 1) {
+                actual = new RangoBytes(actual.inicio(), Math.max(actual.fin(), siguiente.fin()));
+            } else {
+                resultado.add(actual);
+                actual = siguiente;
+            }
+        }
+        resultado.add(actual);
+        return resultado;
+    }
+}
@@ -0,0 +1,170 @@
+package kabadev.servidor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Respuesta HTTP para recursos que admiten peticiones parciales
+ *
+ * Según las cabeceras Range e If-Range de la petición responde con:
+ * - 200 OK con el recurso completo
+ * - 206 Partial Content con un único rango (Content-Range)
+ * - 206 Partial Content multipart/byteranges con varios rangos
+ * - 416 Range Not Satisfiable si ningún rango cae dentro del recurso
+ */
+public final class RespuestaRangos {
+
+    private RespuestaRangos() {
+    }
+
+    /**
+     * Envía el contenido del canal respetando los rangos solicitados
+     *
+     * @param intercambio Petición y respuesta HTTP
+     * @param canal Canal del archivo abierto en lectura
+     * @param tamano Tamaño total del recurso
+     * @param tipoMime Content-Type del recurso
+     * @param etag ETag fuerte del recurso
+     * @param ultimaModificacion Fecha de modificación en milisegundos
+     * @throws IOException Si falla la lectura del archivo o el envío
+     */
+    public static void enviar(HttpExchange intercambio, FileChannel canal, long tamano, String tipoMime,
+            String etag, long ultimaModificacion) throws IOException {
+        enviar(intercambio, ContenidoRangos.deArchivo(canal, tamano), tipoMime, etag, ultimaModificacion);
+    }
+
+    /**
+     * Envía un contenido (archivo o vista virtual) respetando los rangos solicitados
+     *
+     * @param intercambio Petición y respuesta HTTP
+     * @param contenido Bytes a servir
+     * @param tipoMime Content-Type del recurso
+     * @param etag ETag fuerte del contenido
+     * @param ultimaModificacion Fecha de modificación en milisegundos
+     * @throws IOException Si falla la lectura del contenido o el envío
+     */
+    public static void enviar(HttpExchange intercambio, ContenidoRangos contenido, String tipoMime,
+            String etag, long ultimaModificacion) throws IOException {
+
+        long tamano = contenido.tamano();
+        Headers peticion = intercambio.getRequestHeaders();
+        Headers respuesta = intercambio.getResponseHeaders();
+
+        // ========== VALIDACIÓN If-Range: si el recurso cambió se ignora Range ==========
+        List<RangoBytes> rangos = null;
+        if (RangosHttp.ifRangeCoincide(peticion.getFirst("If-Range"), etag, ultimaModificacion)) {
+            rangos = RangosHttp.analizar(peticion.getFirst("Range"), tamano);
+        }
+
+        cabecerasComunes(respuesta, etag, ultimaModificacion);
+
+        // ========== 200: RECURSO COMPLETO ==========
+        if (rangos == null) {
+            respuesta.set("Content-Type", tipoMime);
+            if (Respuestas.soloCabeceras(intercambio, 200, tamano)) {
+                return;
+            }
+            intercambio.sendResponseHeaders(200, tamano == 0 ? -1 : tamano);
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                contenido.transferir(0, tamano, salida);
+            }
+            return;
+        }
+
+        // ========== 416: NINGÚN RANGO SATISFACIBLE ==========
+        if (rangos.isEmpty()) {
+            respuesta.set("Content-Range", "bytes */" + tamano);
+            intercambio.sendResponseHeaders(416, -1);
+            intercambio.close();
+            return;
+        }
+
+        // ========== 206: UN ÚNICO RANGO ==========
+        if (rangos.size() == 1) {
+            enviarUnRango(intercambio, contenido, tipoMime, rangos.get(0));
+            return;
+        }
+
+        // ========== 206: VARIOS RANGOS (multipart/byteranges) ==========
+        enviarMultiparte(intercambio, contenido, tamano, tipoMime, rangos);
+    }
+
+    /**
+     * Envía un rango elegido por el servidor (p. ej. desde un fotograma clave)
+     * sin mirar las cabeceras Range / If-Range de la petición
+     *
+     * @param intercambio Petición y respuesta HTTP
+     * @param contenido Bytes a servir
+     * @param tipoMime Content-Type del recurso
+     * @param etag ETag fuerte del contenido
+     * @param ultimaModificacion Fecha de modificación en milisegundos
+     * @param rango Rango a enviar (dentro del contenido)
+     * @throws IOException Si falla la lectura del contenido o el envío
+     */
+    public static void enviarRango(HttpExchange intercambio, ContenidoRangos contenido, String tipoMime,
+            String etag, long ultimaModificacion, RangoBytes rango) throws IOException {
+        cabecerasComunes(intercambio.getResponseHeaders(), etag, ultimaModificacion);
+        enviarUnRango(intercambio, contenido, tipoMime, rango);
+    }
+
+    private static void cabecerasComunes(Headers respuesta, String etag, long ultimaModificacion) {
+        respuesta.set("Accept-Ranges", "bytes");
+        respuesta.set("ETag", etag);
+        respuesta.set("Last-Modified", RangosHttp.formatearFecha(ultimaModificacion));
+    }
+
+    private static void enviarUnRango(HttpExchange intercambio, ContenidoRangos contenido, String tipoMime,
+            RangoBytes rango) throws IOException {
+        intercambio.getResponseHeaders().set("Content-Type", tipoMime);
+        intercambio.getResponseHeaders().set("Content-Range", rango.contentRange(contenido.tamano()));
+        if (Respuestas.soloCabeceras(intercambio, 206, rango.longitud())) {
+            return;
+        }
+        intercambio.sendResponseHeaders(206, rango.longitud());
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            contenido.transferir(rango.inicio(), rango.longitud(), salida);
+        }
+    }
+
+    private static void enviarMultiparte(HttpExchange intercambio, ContenidoRangos contenido, long tamano,
+            String tipoMime, List<RangoBytes> rangos) throws IOException {
+
+        String frontera = "DOGSTER" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+        // Las cabeceras de cada parte se preparan antes para calcular Content-Length exacto
+        byte[][] cabecerasPartes = new byte[rangos.size()][];
+        long longitudTotal = 0;
+        for (int i = 0; i < rangos.size(); i++) {
+            RangoBytes rango = rangos.get(i);
+            String cabecera = "\r\n--" + frontera + "\r\n"
+                    + "Content-Type: " + tipoMime + "\r\n"
+                    + "Content-Range: " + rango.contentRange(tamano) + "\r\n\r\n";
+            cabecerasPartes[i] = cabecera.getBytes(StandardCharsets.US_ASCII);
+            longitudTotal += cabecerasPartes[i].length + rango.longitud();
+        }
+        byte[] cierre = ("\r\n--" + frontera + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        longitudTotal += cierre.length;
+
+        intercambio.getResponseHeaders().set("Content-Type", "multipart/byteranges; boundary=" + frontera);
+        if (Respuestas.soloCabeceras(intercambio, 206, longitudTotal)) {
+            return;
+        }
+        intercambio.sendResponseHeaders(206, longitudTotal);
+
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            for (int i = 0; i < rangos.size(); i++) {
+                RangoBytes rango = rangos.get(i);
+                salida.write(cabecerasPartes[i]);
+                contenido.transferir(rango.inicio(), rango.longitud(), salida);
+            }
+            salida.write(cierre);
+        }
+    }
+}
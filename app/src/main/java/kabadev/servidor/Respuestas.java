@@ -0,0 +1,90 @@
+package kabadev.servidor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Respuestas completas de uso habitual en los controladores
+ *
+ * Sustituye al bloque repetido de mensaje.getBytes() + sendResponseHeaders +
+ * try-with-resources; los textos van siempre en UTF-8 y con su Content-Type
+ */
+public final class Respuestas {
+
+    private static final String TEXTO = "text/plain; charset=utf-8";
+    private static final String JSON = "application/json; charset=UTF-8";
+
+    private Respuestas() {
+    }
+
+    /**
+     * Responde con un mensaje de texto (errores, avisos)
+     *
+     * @param codigo Código HTTP
+     * @param mensaje Texto del cuerpo
+     */
+    public static void texto(HttpExchange intercambio, int codigo, String mensaje) throws IOException {
+        enviar(intercambio, codigo, TEXTO, mensaje.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Responde con un JSON ya serializado
+     */
+    public static void json(HttpExchange intercambio, int codigo, byte[] json) throws IOException {
+        enviar(intercambio, codigo, JSON, json);
+    }
+
+    /**
+     * Responde con un cuerpo de bytes y su tipo
+     *
+     * @param tipo Content-Type del cuerpo
+     * @param cuerpo Bytes a enviar (vacío = sin cuerpo)
+     */
+    public static void enviar(HttpExchange intercambio, int codigo, String tipo, byte[] cuerpo) throws IOException {
+        intercambio.getResponseHeaders().set("Content-Type", tipo);
+        if (soloCabeceras(intercambio, codigo, cuerpo.length)) {
+            return;
+        }
+        if (cuerpo.length == 0) {
+            sinCuerpo(intercambio, codigo);
+            return;
+        }
+        intercambio.sendResponseHeaders(codigo, cuerpo.length);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            salida.write(cuerpo);
+        }
+    }
+
+    /**
+     * Si la petición es HEAD responde solo con las cabeceras y el Content-Length
+     * que tendría el cuerpo
+     *
+     * El HttpServer nativo no acepta una longitud en sendResponseHeaders para HEAD
+     * (avisa y cierra el cuerpo), así que se envía -1 y la cabecera se pone a mano;
+     * el motor NIO respeta esa cabecera igual
+     *
+     * @param longitud Bytes que tendría el cuerpo, o -1 si no se conocen (chunked)
+     * @return true si era HEAD y la respuesta ya está enviada
+     */
+    public static boolean soloCabeceras(HttpExchange intercambio, int codigo, long longitud) throws IOException {
+        if (!"HEAD".equals(intercambio.getRequestMethod())) {
+            return false;
+        }
+        if (longitud >= 0) {
+            intercambio.getResponseHeaders().set("Content-Length", Long.toString(longitud));
+        }
+        sinCuerpo(intercambio, codigo);
+        return true;
+    }
+
+    /**
+     * Responde solo con el código y las cabeceras ya puestas (304, 204, 405...)
+     */
+    public static void sinCuerpo(HttpExchange intercambio, int codigo) throws IOException {
+        intercambio.sendResponseHeaders(codigo, -1);
+        intercambio.close();
+    }
+}
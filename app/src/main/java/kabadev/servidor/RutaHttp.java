@@ -0,0 +1,113 @@
+package kabadev.servidor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Ruta compilada de la TablaRutas: patrón, segmentos y cadena de middlewares
+ *
+ * Patrones admitidos (segmentos separados por "/"):
+ * - Literales: /video, /metrics
+ * - Parámetros: /stream/{id}, /stream/{id}/keyframes
+ * - Comodín final: /static/* (cualquier resto, también vacío)
+ *
+ * Los parámetros no se copian al atender la petición: el controlador recibe
+ * la ruta y pide el valor con parametro(), que lo recorta del path solo entonces
+ */
+public final class RutaHttp {
+
+    private final String patron;
+    private final String[] segmentos;
+    private final boolean comodin;
+    private IControladorHttp cadena;
+
+    RutaHttp(String patron) {
+        this.patron = patron;
+        List<String> partes = new ArrayList<>();
+        for (String parte : patron.split("/")) {
+            if (!parte.isEmpty()) {
+                partes.add(parte);
+            }
+        }
+        this.comodin = !partes.isEmpty() && partes.get(partes.size() - 1).equals("*");
+        if (comodin) {
+            partes.remove(partes.size() - 1);
+        }
+        for (String parte : partes) {
+            if (parte.contains("*")) {
+                throw new IllegalArgumentException("El comodín solo puede ir al final: " + patron);
+            }
+            if (esParametro(parte) && parte.length() == 2) {
+                throw new IllegalArgumentException("Parámetro sin nombre en " + patron);
+            }
+        }
+        this.segmentos = partes.toArray(new String[0]);
+    }
+
+    /**
+     * @return Patrón tal como se registró (etiqueta de métricas y registros)
+     */
+    public String patron() {
+        return patron;
+    }
+
+    /**
+     * Valor de un parámetro {nombre} en el path de la petición
+     *
+     * @param intercambio Petición atendida por esta ruta
+     * @param nombre Nombre sin llaves ("id")
+     * @return Segmento del path (ya decodificado), o null si el patrón no tiene ese parámetro
+     */
+    public String parametro(HttpExchange intercambio, String nombre) {
+        String camino = intercambio.getRequestURI().getPath();
+        int indice = 0;
+        int desde = 0;
+        while (indice < segmentos.length && desde < camino.length()) {
+            if (camino.charAt(desde) == '/') {
+                desde++;
+                continue;
+            }
+            int fin = finSegmento(camino, desde);
+            String segmento = segmentos[indice];
+            if (esParametro(segmento) && segmento.regionMatches(1, nombre, 0, nombre.length())
+                    && segmento.length() == nombre.length() + 2) {
+                return camino.substring(desde, fin);
+            }
+            indice++;
+            desde = fin;
+        }
+        return null;
+    }
+
+    String[] segmentos() {
+        return segmentos;
+    }
+
+    boolean comodin() {
+        return comodin;
+    }
+
+    IControladorHttp cadena() {
+        return cadena;
+    }
+
+    void cadena(IControladorHttp cadena) {
+        this.cadena = cadena;
+    }
+
+    static boolean esParametro(String segmento) {
+        return segmento.length() >= 2 && segmento.charAt(0) == '{' && segmento.charAt(segmento.length() - 1) == '}';
+    }
+
+    static int finSegmento(String camino, int desde) {
+        int fin = camino.indexOf('/', desde);
+        return fin < 0 ? camino.length() : fin;
+    }
+
+    @Override
+    public String toString() {
+        return patron;
+    }
+}
@@ -3,14 +3,12 @@ package kabadev.servidor;
 // Importaciones de las clases NATIVAS de Java (no personalizadas)
 import java.io.IOException;                      // Excepción NATIVA de Java para entrada/salida
 import java.net.InetSocketAddress;               // Dirección socket NATIVA de Java
-import java.util.HashMap;                        // HashMap NATIVO de Java
-import java.util.Map;                           // Map NATIVO de Java
-import java.util.concurrent.ExecutorService;          // Executors NATIVO de Java
-import java.util.concurrent.Executors;    // ExecutorService NATIVO de Java
+import java.util.concurrent.ExecutorService;          // ExecutorService NATIVO de Java
 
-import com.sun.net.httpserver.HttpExchange;       // HttpServer NATIVO de Java
-import com.sun.net.httpserver.HttpHandler;      // HttpHandler NATIVO de Java
-import com.sun.net.httpserver.HttpServer;     // HttpExchange NATIVO de Java
+import com.sun.net.httpserver.HttpServer;     // HttpServer NATIVO de Java
+
+import kabadev.configuracion.Configuracion;     // Configuración de arranque (-Ddogster.*)
+import kabadev.metricas.MetricasHttp;           // Contadores e histogramas de la capa HTTP
 
 /**
  * Servidor HTTP Personalizado Envoltorio (wrapper) del HttpServer nativo de
@@ -19,32 +17,42 @@ import com.sun.net.httpserver.HttpServer;     // HttpExchange NATIVO de Java
  * NOTA: Usa clases NATIVAS de Java (IOException, InetSocketAddress) en lugar de
  * crear clases personalizadas innecesarias
  */
-public class ServidorHttp {
+public class ServidorHttp implements IServidorHttp {
 
     // ========== ATRIBUTOS USANDO CLASES NATIVAS ==========
     private final HttpServer servidorNativo;                              // HttpServer NATIVO de Java
-    private final Map<String, IControladorHttp> controladores;            // Map NATIVO con nuestros controladores
+    private final TablaRutas rutas;                                       // Rutas y middlewares de Dogster
     private final ExecutorService poolHilos;                              // ExecutorService NATIVO de Java
     private boolean iniciado;                                       // boolean NATIVO de Java
     private final InetSocketAddress direccion;                            // InetSocketAddress NATIVO de Java
+    private final EstrategiaEjecutor estrategia;                          // Estrategia elegida al arrancar
+    private MetricasHttp metricas;                                        // Instrumentación (null = sin medir)
 
     /**
      * Constructor privado que usa InetSocketAddress NATIVO
      *
      * @param direccion InetSocketAddress nativo de Java (no clase
      * personalizada)
+     * @param backlog Número máximo de conexiones pendientes
+     * @param estrategia Estrategia de hilos para atender las peticiones
+     * @param hilos Tamaño del pool (solo para la estrategia FIJO)
      * @throws IOException Excepción NATIVA de Java (no personalizada)
      */
-    private ServidorHttp(InetSocketAddress direccion) throws IOException {
+    private ServidorHttp(InetSocketAddress direccion, int backlog, EstrategiaEjecutor estrategia, int hilos)
+            throws IOException {
         // ========== USANDO CLASES NATIVAS DE JAVA ==========
         this.direccion = direccion;                                 // InetSocketAddress NATIVO
-        this.servidorNativo = HttpServer.create(direccion, 0);      // HttpServer NATIVO
-        this.controladores = new HashMap<>();                       // HashMap NATIVO
-        this.poolHilos = Executors.newCachedThreadPool();          // Executors NATIVO
+        this.servidorNativo = HttpServer.create(direccion, backlog); // HttpServer NATIVO
+        this.rutas = new TablaRutas();
+        this.estrategia = estrategia;
+        this.poolHilos = estrategia.crear(hilos);                   // ExecutorService según estrategia
         this.iniciado = false;                                      // boolean NATIVO
 
         // Configura el pool de hilos NATIVO
         this.servidorNativo.setExecutor(this.poolHilos);
+
+        // Un único contexto NATIVO: el enrutado lo hace la TablaRutas, igual que en ServidorNio
+        this.servidorNativo.createContext("/", this.rutas::atender);
     }
 
     /**
@@ -56,79 +64,93 @@ public class ServidorHttp {
      * @throws IOException Excepción NATIVA de Java
      */
     public static ServidorHttp crear(InetSocketAddress direccion, int backlog) throws IOException {
+        return crear(direccion, backlog, EstrategiaEjecutor.desdeConfiguracion(),
+                Configuracion.entero("hilos", EstrategiaEjecutor.HILOS_POR_DEFECTO));
+    }
+
+    /**
+     * Método factory con estrategia de hilos explícita
+     *
+     * @param direccion InetSocketAddress NATIVO de Java (IP + Puerto, 0 = efímero)
+     * @param backlog Número máximo de conexiones pendientes
+     * @param estrategia Estrategia de ejecución (VIRTUAL, FIJO o CACHE)
+     * @param hilos Tamaño del pool para la estrategia FIJO
+     * @return Nueva instancia de ServidorHttp
+     * @throws IOException Excepción NATIVA de Java
+     */
+    public static ServidorHttp crear(InetSocketAddress direccion, int backlog, EstrategiaEjecutor estrategia,
+            int hilos) throws IOException {
         // ========== VALIDACIONES USANDO MÉTODOS NATIVOS ==========
         if (direccion == null) {
             throw new IllegalArgumentException("La dirección no puede ser null");
         }
 
-        if (direccion.getPort() < 1 || direccion.getPort() > 65535) {
+        // Puerto 0 = efímero: el sistema elige uno libre y obtenerDireccion lo devuelve
+        if (direccion.getPort() < 0 || direccion.getPort() > 65535) {
             throw new IllegalArgumentException("Puerto inválido: " + direccion.getPort());
         }
 
-        return new ServidorHttp(direccion);
+        if (estrategia == null) {
+            throw new IllegalArgumentException("La estrategia de ejecutor no puede ser null");
+        }
+
+        return new ServidorHttp(direccion, backlog, estrategia, hilos);
+    }
+
+    @Override
+    public void usarMetricas(MetricasHttp metricas) {
+        if (this.iniciado) {
+            throw new IllegalStateException("Las métricas se activan antes de iniciar");
+        }
+        this.metricas = metricas;
+        this.rutas.usar(metricas::instrumentar);
+    }
+
+    @Override
+    public void usar(Middleware middleware) {
+        if (this.iniciado) {
+            throw new IllegalStateException("No se pueden agregar middlewares después de iniciar");
+        }
+        this.rutas.usar(middleware);
     }
 
     /**
-     * Registra un controlador para una ruta específica
+     * Registra un controlador para un patrón de ruta
      *
-     * @param ruta URL/ruta que el controlador manejará
-     * @param controlador Implementación de IControladorHttp
+     * @param patron Patrón de la ruta (/video, /stream/{id}, /static/*)
+     * @param controlador Implementación de IControladorRuta
      * @throws IllegalArgumentException Si los parámetros son inválidos (NATIVO)
      * @throws IllegalStateException Si el servidor ya está iniciado (NATIVO)
      */
-    // ========== MÉTODO crearContexto CORREGIDO ==========
-    public void crearContexto(String ruta, IControladorHttp controlador) {
-        // ========== VALIDACIONES CON EXCEPCIONES NATIVAS ==========
-        if (ruta == null || ruta.trim().isEmpty()) {
-            throw new IllegalArgumentException("La ruta no puede ser null o vacía");
-        }
-
-        if (controlador == null) {
-            throw new IllegalArgumentException("El controlador no puede ser null");
-        }
-
+    @Override
+    public void crearRuta(String patron, IControladorRuta controlador) {
         if (this.iniciado) {
-            throw new IllegalStateException("No se pueden agregar contextos después de iniciar");
+            throw new IllegalStateException("No se pueden agregar rutas después de iniciar");
         }
 
-        // ========== PROCESAMIENTO CON MÉTODOS NATIVOS ==========
-        String rutaNormalizada = ruta.startsWith("/") ? ruta : "/" + ruta;
-        this.controladores.put(rutaNormalizada, controlador);
-
-        // ========== ADAPTADOR USANDO HttpHandler NATIVO ==========
-        HttpHandler adaptador = (HttpExchange exchange) -> {
-            try {
-                controlador.controlar(exchange);
-            } catch (IOException e) {
-                throw e; // Re-lanza IOException directamente
-            } catch (RuntimeException e) {
-                throw new IOException("Error en tiempo de ejecución: " + e.getMessage(), e);
-            } catch (Exception e) {
-                throw new IOException("Error inesperado: " + e.getMessage(), e);
-            }
-        };
-
-        // ========== REGISTRA EN EL SERVIDOR NATIVO ==========
-        this.servidorNativo.createContext(rutaNormalizada, adaptador);
-
-        System.out.println("Contexto registrado: " + rutaNormalizada
-                + " -> " + controlador.getClass().getSimpleName());
-    } 
+        RutaHttp ruta = this.rutas.registrar(patron, controlador);
+        System.out.println("Ruta registrada: " + ruta.patron());
+    }
 
     /**
      * Inicia el servidor HTTP
      *
      * @throws IllegalStateException Si el servidor ya está iniciado (NATIVO)
      */
+    @Override
     public void iniciar() {
         if (this.iniciado) {
             throw new IllegalStateException("El servidor ya está iniciado");
         }
 
-        if (this.controladores.isEmpty()) {
+        if (this.rutas.vacia()) {
             System.out.println("Advertencia: Servidor iniciado sin controladores");
         }
 
+        if (this.metricas != null) {
+            this.metricas.registrarEjecutor(this.poolHilos);
+        }
+
         // ========== INICIO CON MÉTODOS NATIVOS ==========
         this.servidorNativo.start();
         this.iniciado = true;
@@ -136,13 +158,11 @@ public class ServidorHttp {
         // ========== INFORMACIÓN USANDO MÉTODOS NATIVOS ==========
         System.out.println("Servidor HTTP personalizado iniciado");
         System.out.println("Dirección: http://" + direccion.getHostString()
-                + ":" + direccion.getPort() + "/");
-        System.out.println("Pool de hilos: CachedThreadPool");
-        System.out.println("Contextos registrados: " + this.controladores.size());
+                + ":" + obtenerDireccion().getPort() + "/");
+        System.out.println("Pool de hilos: " + this.estrategia);
+        System.out.println("Rutas registradas: " + this.rutas.patrones().size());
 
-        this.controladores.forEach((ruta, controlador)
-                -> System.out.println("   ├── " + ruta + " (" + controlador.getClass().getSimpleName() + ")")
-        );
+        this.rutas.patrones().forEach(patron -> System.out.println("   ├── " + patron));
     }
 
     /**
@@ -150,6 +170,7 @@ public class ServidorHttp {
      *
      * @param tiempoEspera Segundos a esperar antes del cierre forzado
      */
+    @Override
     public void detener(int tiempoEspera) {
         if (!this.iniciado) {
             System.out.println("El servidor ya está detenido");
@@ -159,8 +180,9 @@ public class ServidorHttp {
         System.out.println("Deteniendo servidor HTTP...");
 
         // ========== CIERRE CON MÉTODOS NATIVOS ==========
+        // stop cierra el puerto, espera a los controladores en curso hasta el plazo y cierra las conexiones
         this.servidorNativo.stop(tiempoEspera);          // HttpServer NATIVO
-        this.poolHilos.shutdown();                       // ExecutorService NATIVO
+        EstrategiaEjecutor.terminar(this.poolHilos);     // ExecutorService NATIVO
 
         this.iniciado = false;
         System.out.println("Servidor HTTP detenido exitosamente");
@@ -169,10 +191,12 @@ public class ServidorHttp {
     /**
      * Métodos de información usando tipos NATIVOS
      */
+    @Override
     public boolean estaIniciado() {
         return this.iniciado;
     }
 
+    @Override
     public InetSocketAddress obtenerDireccion() {
         return this.servidorNativo.getAddress();
     }
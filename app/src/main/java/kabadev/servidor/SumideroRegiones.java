@@ -0,0 +1,37 @@
+package kabadev.servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Cuerpo de respuesta capaz de enviar regiones de archivo y buffers sin copiarlos
+ *
+ * Lo implementa el OutputStream del motor NIO: la región se entrega al hilo
+ * del selector, que la escribe con transferTo directamente sobre el
+ * SocketChannel (sendfile). TransferenciaArchivo lo detecta y lo usa en
+ * lugar de envolver el OutputStream en un canal
+ */
+public interface SumideroRegiones {
+
+    /**
+     * Envía una región del archivo y espera a que salga por el socket
+     * El canal debe seguir abierto hasta que el método retorne
+     *
+     * @param canal Canal del archivo abierto en lectura
+     * @param posicion Primer byte a enviar
+     * @param longitud Número de bytes a enviar
+     * @throws IOException Si la conexión se cierra o el archivo se acorta
+     */
+    public void enviarRegion(FileChannel canal, long posicion, long longitud) throws IOException;
+
+    /**
+     * Envía los bytes restantes de un buffer (p. ej. directo y compartido) sin
+     * copiarlo y espera a que salga por el socket; al retornar el buffer puede
+     * reutilizarse. No modifica la posición del buffer recibido
+     *
+     * @param datos Bytes a enviar, de position a limit
+     * @throws IOException Si la conexión se cierra
+     */
+    public void enviarBuffer(ByteBuffer datos) throws IOException;
+}
@@ -0,0 +1,189 @@
+package kabadev.servidor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Tabla de rutas compartida por los dos motores HTTP
+ *
+ * Las rutas se guardan en un árbol de segmentos (trie) que se recorre sobre el
+ * path de la petición sin partirlo ni crear cadenas: en cada nivel gana el
+ * literal, después el parámetro {nombre} y por último el comodín *. Si una rama
+ * no llega al final se prueba la siguiente, así /stream/{id}/keyframes y
+ * /static/* conviven con /stream/{id} y /
+ *
+ * Cada ruta guarda su cadena de middlewares ya compuesta (se arma al
+ * registrarla), y atender() traduce las excepciones no controladas a un 500
+ */
+public final class TablaRutas {
+
+    /** Nodo del árbol: un segmento literal o de parámetro */
+    private static final class Nodo {
+        final String segmento;
+        Nodo[] literales = new Nodo[0];
+        Nodo parametro;
+        RutaHttp ruta;
+        RutaHttp comodin;
+
+        Nodo(String segmento) {
+            this.segmento = segmento;
+        }
+    }
+
+    private final Nodo raiz = new Nodo("");
+    private final List<Middleware> middlewares = new ArrayList<>();
+    private final Map<String, RutaHttp> rutas = new LinkedHashMap<>();
+
+    // ========== REGISTRO ==========
+
+    /**
+     * Añade un middleware a las rutas que se registren a partir de ahora
+     */
+    public synchronized void usar(Middleware middleware) {
+        if (middleware == null) {
+            throw new IllegalArgumentException("El middleware no puede ser null");
+        }
+        middlewares.add(middleware);
+    }
+
+    /**
+     * Registra (o sustituye) una ruta con los middlewares añadidos hasta ahora
+     *
+     * @param patron Patrón de la ruta (/video, /stream/{id}, /static/*)
+     * @param controlador Controlador que recibe la ruta que coincidió
+     * @return Ruta compilada
+     * @throws IllegalArgumentException Si el patrón o el controlador no son válidos
+     */
+    public synchronized RutaHttp registrar(String patron, IControladorRuta controlador) {
+        if (patron == null || patron.trim().isEmpty()) {
+            throw new IllegalArgumentException("La ruta no puede ser null o vacía");
+        }
+        if (controlador == null) {
+            throw new IllegalArgumentException("El controlador no puede ser null");
+        }
+        String normalizado = patron.startsWith("/") ? patron : "/" + patron;
+        RutaHttp ruta = new RutaHttp(normalizado);
+
+        // De dentro hacia fuera: el primer middleware registrado es el más externo
+        IControladorHttp cadena = intercambio -> controlador.controlar(intercambio, ruta);
+        for (int i = middlewares.size() - 1; i >= 0; i--) {
+            cadena = middlewares.get(i).envolver(normalizado, cadena);
+        }
+        ruta.cadena(cadena);
+
+        Nodo nodo = raiz;
+        for (String segmento : ruta.segmentos()) {
+            nodo = hijo(nodo, RutaHttp.esParametro(segmento) ? null : segmento);
+        }
+        if (ruta.comodin()) {
+            nodo.comodin = ruta;
+        } else {
+            nodo.ruta = ruta;
+        }
+        rutas.put(normalizado, ruta);
+        return ruta;
+    }
+
+    private static Nodo hijo(Nodo nodo, String literal) {
+        if (literal == null) {
+            // Todos los parámetros de un mismo nivel comparten nodo: el nombre lo guarda la RutaHttp
+            if (nodo.parametro == null) {
+                nodo.parametro = new Nodo("{}");
+            }
+            return nodo.parametro;
+        }
+        for (Nodo existente : nodo.literales) {
+            if (existente.segmento.equals(literal)) {
+                return existente;
+            }
+        }
+        Nodo nuevo = new Nodo(literal);
+        nodo.literales = Arrays.copyOf(nodo.literales, nodo.literales.length + 1);
+        nodo.literales[nodo.literales.length - 1] = nuevo;
+        return nuevo;
+    }
+
+    /**
+     * @return Patrones registrados en orden de registro
+     */
+    public synchronized List<String> patrones() {
+        return List.copyOf(rutas.keySet());
+    }
+
+    public synchronized boolean vacia() {
+        return rutas.isEmpty();
+    }
+
+    // ========== BÚSQUEDA ==========
+
+    /**
+     * @param camino Path de la petición (/stream/12)
+     * @return Ruta que coincide, o null si ninguna
+     */
+    public RutaHttp buscar(String camino) {
+        return buscar(raiz, camino == null ? "/" : camino, 0);
+    }
+
+    private static RutaHttp buscar(Nodo nodo, String camino, int desde) {
+        // Las barras repetidas o finales no cuentan como segmento
+        while (desde < camino.length() && camino.charAt(desde) == '/') {
+            desde++;
+        }
+        if (desde >= camino.length()) {
+            return nodo.ruta != null ? nodo.ruta : nodo.comodin;
+        }
+
+        int fin = RutaHttp.finSegmento(camino, desde);
+        int longitud = fin - desde;
+        for (Nodo literal : nodo.literales) {
+            if (literal.segmento.length() == longitud && camino.regionMatches(desde, literal.segmento, 0, longitud)) {
+                RutaHttp encontrada = buscar(literal, camino, fin);
+                if (encontrada != null) {
+                    return encontrada;
+                }
+            }
+        }
+        if (nodo.parametro != null) {
+            RutaHttp encontrada = buscar(nodo.parametro, camino, fin);
+            if (encontrada != null) {
+                return encontrada;
+            }
+        }
+        return nodo.comodin;
+    }
+
+    // ========== DESPACHO ==========
+
+    /**
+     * Atiende una petición: busca la ruta y ejecuta su cadena
+     * Sin ruta responde 404; una excepción no controlada antes de enviar las
+     * cabeceras se convierte en un 500 en lugar de cortar la conexión
+     *
+     * @param intercambio Petición de cualquiera de los dos motores
+     * @throws IOException Si falla la escritura (normalmente el cliente cerró)
+     */
+    public void atender(HttpExchange intercambio) throws IOException {
+        RutaHttp ruta = buscar(intercambio.getRequestURI().getPath());
+        if (ruta == null) {
+            Respuestas.texto(intercambio, 404, "No encontrado: " + intercambio.getRequestURI().getPath());
+            return;
+        }
+        try {
+            ruta.cadena().controlar(intercambio);
+        } catch (RuntimeException e) {
+            // Fallo no previsto del controlador: con la traza completa para poder diagnosticarlo
+            System.err.println("Error atendiendo " + intercambio.getRequestURI() + ": " + e);
+            e.printStackTrace();
+            if (intercambio.getResponseCode() != -1) {
+                throw new IOException("Error en tiempo de ejecución: " + e.getMessage(), e);
+            }
+            Respuestas.texto(intercambio, 500, "Error interno del servidor");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package kabadev.servidor;
+
+import java.util.Locale;
+
+/**
+ * Determina el tipo MIME (Multipurpose Internet Mail Extensions) de un archivo
+ * basándose en su extensión
+ *
+ * El tipo MIME es fundamental para que el navegador web sepa cómo procesar
+ * cada tipo de archivo. Sin el tipo MIME correcto, el navegador podría:
+ * - No ejecutar archivos JavaScript
+ * - No aplicar estilos CSS
+ * - No mostrar imágenes correctamente
+ * - Descargar archivos en lugar de mostrarlos
+ *
+ * Antes cada controlador tenía su propia copia de esta tabla
+ */
+public final class TiposMime {
+
+    /** Tipo genérico para archivos binarios no reconocidos */
+    public static final String POR_DEFECTO = "application/octet-stream";
+
+    private TiposMime() {
+    }
+
+    /**
+     * @param nombreArchivo Nombre del archivo con su extensión (ej: "style.css", "script.js")
+     * @return Tipo MIME apropiado, o "application/octet-stream" si no se reconoce
+     */
+    public static String obtener(String nombreArchivo) {
+        String archivo = nombreArchivo.toLowerCase(Locale.ROOT);
+
+        // ========== TIPOS MIME PARA DOCUMENTOS WEB ==========
+        if (archivo.endsWith(".html")) return "text/html; charset=UTF-8";
+        if (archivo.endsWith(".css"))  return "text/css";
+        if (archivo.endsWith(".js"))   return "application/javascript";
+        if (archivo.endsWith(".json")) return "application/json; charset=UTF-8";
+
+        // ========== TIPOS MIME PARA IMÁGENES ==========
+        if (archivo.endsWith(".png"))  return "image/png";
+        if (archivo.endsWith(".jpg") || archivo.endsWith(".jpeg")) return "image/jpeg";
+        if (archivo.endsWith(".gif"))  return "image/gif";
+        if (archivo.endsWith(".ico"))  return "image/x-icon";
+        if (archivo.endsWith(".svg"))  return "image/svg+xml";
+
+        // ========== TIPOS MIME PARA MULTIMEDIA ==========
+        if (archivo.endsWith(".mp4"))  return "video/mp4";
+        if (archivo.endsWith(".mp3"))  return "audio/mpeg";
+
+        return POR_DEFECTO;
+    }
+
+    /**
+     * Indica si merece la pena comprimir un contenido de este tipo
+     * Los formatos de imagen y video ya van comprimidos
+     */
+    public static boolean esComprimible(String tipoMime) {
+        String tipo = tipoMime.toLowerCase(Locale.ROOT);
+        return tipo.startsWith("text/")
+                || tipo.startsWith("application/javascript")
+                || tipo.startsWith("application/json")
+                || tipo.startsWith("image/svg+xml");
+    }
+}
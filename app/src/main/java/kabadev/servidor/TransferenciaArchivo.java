@@ -0,0 +1,60 @@
+package kabadev.servidor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Transferencia de regiones de archivo hacia el cuerpo de una respuesta
+ *
+ * Usa FileChannel.transferTo en lugar de un bucle con byte[] en el heap:
+ * cuando el destino es un canal de socket el sistema operativo puede usar
+ * sendfile (copia cero); con el OutputStream de HttpExchange el JDK usa un
+ * búfer directo temporal en lugar de copiar por arrays de Java. Si el cuerpo
+ * es un SumideroRegiones (motor NIO) la región se entrega al socket sin copia
+ */
+public final class TransferenciaArchivo {
+
+    /** Tamaño máximo de cada llamada a transferTo (algunos SO limitan a 2 GB) */
+    private static final long BLOQUE_MAXIMO = 8L * 1024 * 1024;
+
+    private TransferenciaArchivo() {
+    }
+
+    /**
+     * Envía una región del archivo al flujo de salida
+     *
+     * @param canal Canal del archivo abierto en lectura
+     * @param posicion Primer byte a enviar
+     * @param longitud Número de bytes a enviar
+     * @param salida Cuerpo de la respuesta (no se cierra)
+     * @throws IOException Si el archivo se acorta o falla la escritura
+     */
+    public static void transferir(FileChannel canal, long posicion, long longitud, OutputStream salida)
+            throws IOException {
+
+        // El motor NIO escribe la región directamente sobre el socket (sendfile real)
+        if (salida instanceof SumideroRegiones sumidero) {
+            sumidero.enviarRegion(canal, posicion, longitud);
+            return;
+        }
+
+        WritableByteChannel destino = Channels.newChannel(salida);
+        long enviados = 0;
+
+        while (enviados < longitud) {
+            long bloque = Math.min(longitud - enviados, BLOQUE_MAXIMO);
+            long transferidos = canal.transferTo(posicion + enviados, bloque, destino);
+
+            if (transferidos <= 0) {
+                // transferTo devuelve 0 cuando la posición supera el final del archivo
+                throw new EOFException("El archivo terminó antes de lo esperado en la posición "
+                        + (posicion + enviados));
+            }
+            enviados += transferidos;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package kabadev.servidor.nio;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.net.StandardSocketOptions;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bucle de eventos de un Selector
+ *
+ * Cada bucle corre en su propio hilo de plataforma y gestiona un subconjunto
+ * de conexiones. Las tareas que llegan desde otros hilos (registrar un socket
+ * aceptado, vaciar la cola de una conexión) se encolan y se ejecutan dentro
+ * del bucle, así el estado de cada SelectionKey solo lo toca su selector
+ */
+final class BucleSelector implements Runnable {
+
+    /** Tiempo máximo de una conexión keep-alive sin peticiones */
+    private static final long INACTIVIDAD_MAXIMA = TimeUnit.SECONDS.toNanos(30);
+
+    private final ServidorNio servidor;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+    private volatile boolean activo = true;
+    private long ultimaRevision = System.nanoTime();
+
+    BucleSelector(ServidorNio servidor) throws IOException {
+        this.servidor = servidor;
+        this.selector = Selector.open();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * Ejecuta una tarea dentro del hilo del selector
+     */
+    void ejecutar(Runnable tarea) {
+        tareas.add(tarea);
+        selector.wakeup();
+    }
+
+    /**
+     * Registra un socket recién aceptado en este bucle
+     */
+    void registrar(SocketChannel socket) {
+        ejecutar(() -> {
+            try {
+                socket.configureBlocking(false);
+                socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                ConexionNio conexion = new ConexionNio(servidor, this, socket);
+                conexion.asignarClave(socket.register(selector, SelectionKey.OP_READ, conexion));
+            } catch (IOException e) {
+                cerrarSilenciosamente(socket);
+                servidor.conexionCerrada();
+            }
+        });
+    }
+
+    /**
+     * Apagado ordenado: cierra las conexiones en reposo y marca las ocupadas
+     * para que cierren al terminar la respuesta en curso
+     */
+    void drenar() {
+        ejecutar(() -> {
+            long ahora = System.nanoTime();
+            for (SelectionKey clave : selector.keys()) {
+                if (clave.attachment() instanceof ConexionNio conexion) {
+                    conexion.cerrarTrasRespuesta();
+                    // Inactividad máxima negativa: cierra toda conexión que no esté respondiendo
+                    conexion.comprobarInactividad(ahora, -1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Pide al bucle que termine; las conexiones abiertas se cierran al salir
+     */
+    void detener() {
+        activo = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (activo) {
+            try {
+                selector.select(1000);
+            } catch (IOException e) {
+                System.out.println("Error en el selector NIO: " + e.getMessage());
+                break;
+            }
+
+            Runnable tarea;
+            while ((tarea = tareas.poll()) != null) {
+                tarea.run();
+            }
+
+            Iterator<SelectionKey> claves = selector.selectedKeys().iterator();
+            while (claves.hasNext()) {
+                SelectionKey clave = claves.next();
+                claves.remove();
+                atender(clave);
+            }
+
+            revisarInactivas();
+        }
+
+        // ========== CIERRE: se liberan todos los sockets de este bucle ==========
+        for (SelectionKey clave : selector.keys()) {
+            if (clave.attachment() instanceof ConexionNio conexion) {
+                conexion.cerrar();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Nada más que liberar
+        }
+    }
+
+    private void atender(SelectionKey clave) {
+        Object adjunto = clave.attachment();
+
+        if (adjunto instanceof ConexionNio conexion) {
+            try {
+                if (clave.isValid() && clave.isWritable()) {
+                    conexion.alEscribir();
+                }
+                if (clave.isValid() && clave.isReadable()) {
+                    conexion.alLeer();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                conexion.cerrar();
+            }
+        } else if (adjunto instanceof Runnable aceptador && clave.isValid() && clave.isAcceptable()) {
+            aceptador.run();
+        }
+    }
+
+    private void revisarInactivas() {
+        long ahora = System.nanoTime();
+        if (ahora - ultimaRevision < TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        ultimaRevision = ahora;
+        for (SelectionKey clave : selector.keys()) {
+            if (clave.attachment() instanceof ConexionNio conexion) {
+                conexion.comprobarInactividad(ahora, INACTIVIDAD_MAXIMA);
+            }
+        }
+    }
+
+    private static void cerrarSilenciosamente(SocketChannel socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // El socket no llegó a usarse
+        }
+    }
+}
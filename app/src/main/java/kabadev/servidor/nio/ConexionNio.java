@@ -0,0 +1,456 @@
+package kabadev.servidor.nio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conexión HTTP/1.1 gestionada por un BucleSelector
+ *
+ * Reparto del trabajo:
+ * - El hilo del selector lee y analiza peticiones, y vacía la cola de salida
+ *   con escrituras no bloqueantes (búferes con write, regiones con transferTo)
+ * - El hilo trabajador ejecuta el controlador y encola lo que escribe
+ *
+ * Contrapresión: si la cola supera LIMITE_COLA el trabajador espera a que el
+ * socket drene, y una región de archivo bloquea al trabajador hasta salir
+ * entera. Se usa ReentrantLock (no synchronized) para que la espera no fije
+ * el hilo portador cuando el trabajador es un hilo virtual
+ *
+ * Solo hay una petición en curso por conexión: mientras se atiende se deja de
+ * leer del socket y las peticiones encadenadas esperan en el búfer de lectura
+ */
+final class ConexionNio {
+
+    /** Bytes máximos encolados antes de frenar al trabajador */
+    private static final long LIMITE_COLA = 256 * 1024;
+
+    /** Tamaño inicial del búfer de lectura */
+    private static final int TAMANO_LECTURA = 8 * 1024;
+
+    /** Marca que indica el final de la respuesta actual en la cola */
+    private static final Object FIN_RESPUESTA = new Object();
+
+    private final ServidorNio servidor;
+    private final BucleSelector bucle;
+    private final SocketChannel canal;
+    private final InetSocketAddress direccionRemota;
+    private final InetSocketAddress direccionLocal;
+    private SelectionKey clave;
+
+    // ========== ESTADO DEL HILO DEL SELECTOR ==========
+    private ByteBuffer lectura = ByteBuffer.allocate(TAMANO_LECTURA);
+    private boolean ocupada;
+    private long ultimaActividad = System.nanoTime();
+
+    // ========== ESTADO COMPARTIDO CON EL TRABAJADOR ==========
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final Condition cambio = cerrojo.newCondition();
+    private final ArrayDeque<Object> cola = new ArrayDeque<>();
+    private final AtomicBoolean escrituraSolicitada = new AtomicBoolean();
+    private long bytesEnCola;
+    private volatile boolean cerrarTrasRespuesta;
+    private volatile boolean cerrada;
+
+    /**
+     * Región de archivo pendiente de enviar con transferTo
+     */
+    private static final class RegionPendiente {
+        private final FileChannel archivo;
+        private long posicion;
+        private long restante;
+        private boolean completada;
+
+        RegionPendiente(FileChannel archivo, long posicion, long longitud) {
+            this.archivo = archivo;
+            this.posicion = posicion;
+            this.restante = longitud;
+        }
+    }
+
+    /**
+     * Buffer ajeno (no se copia) del que el trabajador espera la confirmación de envío
+     */
+    private static final class BufferPendiente {
+        private final ByteBuffer datos;
+        private boolean completado;
+
+        BufferPendiente(ByteBuffer datos) {
+            this.datos = datos;
+        }
+    }
+
+    ConexionNio(ServidorNio servidor, BucleSelector bucle, SocketChannel canal) throws IOException {
+        this.servidor = servidor;
+        this.bucle = bucle;
+        this.canal = canal;
+        this.direccionRemota = (InetSocketAddress) canal.getRemoteAddress();
+        this.direccionLocal = (InetSocketAddress) canal.getLocalAddress();
+    }
+
+    void asignarClave(SelectionKey clave) {
+        this.clave = clave;
+    }
+
+    InetSocketAddress direccionRemota() {
+        return direccionRemota;
+    }
+
+    InetSocketAddress direccionLocal() {
+        return direccionLocal;
+    }
+
+    boolean estaCerrada() {
+        return cerrada;
+    }
+
+    void cerrarTrasRespuesta() {
+        this.cerrarTrasRespuesta = true;
+    }
+
+    boolean seCerraraTrasRespuesta() {
+        return cerrarTrasRespuesta;
+    }
+
+    // =====================================================================================
+    // ========== LADO DEL SELECTOR ==========
+    // =====================================================================================
+
+    /**
+     * Lee del socket y despacha la siguiente petición si está completa
+     */
+    void alLeer() throws IOException {
+        int leidos = canal.read(lectura);
+        if (leidos < 0) {
+            cerrar();
+            return;
+        }
+        ultimaActividad = System.nanoTime();
+        procesarPeticiones();
+    }
+
+    /**
+     * Analiza el búfer de lectura y despacha una petición si no hay otra en curso
+     */
+    private void procesarPeticiones() {
+        if (ocupada || cerrada) {
+            return;
+        }
+
+        lectura.flip();
+        PeticionNio peticion;
+        try {
+            peticion = PeticionNio.analizar(lectura);
+        } catch (PeticionNio.PeticionInvalidaException e) {
+            lectura.clear();
+            responderError(e.codigo(), e.getMessage());
+            return;
+        }
+        lectura.compact();
+
+        if (peticion == null) {
+            // Petición incompleta: si el búfer está lleno se agranda hasta el máximo permitido
+            if (!lectura.hasRemaining()) {
+                int maximo = PeticionNio.MAXIMO_CABECERAS + PeticionNio.MAXIMO_CUERPO + 4;
+                if (lectura.capacity() >= maximo) {
+                    responderError(413, "Petición demasiado grande");
+                    return;
+                }
+                ByteBuffer mayor = ByteBuffer.allocate(Math.min(lectura.capacity() * 2, maximo));
+                lectura.flip();
+                mayor.put(lectura);
+                lectura = mayor;
+            }
+            clave.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+
+        // Se deja de leer mientras se atiende: el resto queda en el búfer o en el socket
+        ocupada = true;
+        if (!peticion.mantenerConexion()) {
+            cerrarTrasRespuesta = true;
+        }
+        clave.interestOps(0);
+        servidor.despachar(this, peticion);
+    }
+
+    /**
+     * Responde un error de protocolo desde el propio selector y cierra la conexión
+     */
+    private void responderError(int codigo, String mensaje) {
+        ocupada = true;
+        cerrarTrasRespuesta = true;
+        byte[] cuerpo = mensaje.getBytes(StandardCharsets.UTF_8);
+        String cabecera = "HTTP/1.1 " + codigo + " " + IntercambioNio.textoEstado(codigo) + "\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n"
+                + "Content-Length: " + cuerpo.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+
+        cerrojo.lock();
+        try {
+            cola.add(ByteBuffer.wrap(cabecera.getBytes(StandardCharsets.ISO_8859_1)));
+            cola.add(ByteBuffer.wrap(cuerpo));
+            cola.add(FIN_RESPUESTA);
+        } finally {
+            cerrojo.unlock();
+        }
+        alEscribirSeguro();
+    }
+
+    /**
+     * Vacía la cola de salida todo lo que el socket admita sin bloquear
+     */
+    void alEscribir() throws IOException {
+        escrituraSolicitada.set(false);
+        if (cerrada) {
+            return;
+        }
+
+        boolean finRespuesta = false;
+        boolean pendiente;
+
+        cerrojo.lock();
+        try {
+            while (!cola.isEmpty()) {
+                Object elemento = cola.peek();
+
+                if (elemento instanceof ByteBuffer buffer) {
+                    int escritos = canal.write(buffer);
+                    bytesEnCola -= escritos;
+                    if (buffer.hasRemaining()) {
+                        break;
+                    }
+                    cola.poll();
+
+                } else if (elemento instanceof RegionPendiente region) {
+                    long escritos = region.archivo.transferTo(region.posicion, region.restante, canal);
+                    if (escritos == 0 && region.posicion >= region.archivo.size()) {
+                        throw new IOException("El archivo terminó antes de lo esperado");
+                    }
+                    region.posicion += escritos;
+                    region.restante -= escritos;
+                    if (region.restante > 0) {
+                        break;
+                    }
+                    region.completada = true;
+                    cola.poll();
+
+                } else if (elemento instanceof BufferPendiente pendienteBuffer) {
+                    int escritos = canal.write(pendienteBuffer.datos);
+                    bytesEnCola -= escritos;
+                    if (pendienteBuffer.datos.hasRemaining()) {
+                        break;
+                    }
+                    pendienteBuffer.completado = true;
+                    cola.poll();
+
+                } else {
+                    cola.poll();
+                    finRespuesta = true;
+                    break;
+                }
+            }
+            pendiente = !cola.isEmpty();
+            cambio.signalAll();
+        } finally {
+            cerrojo.unlock();
+        }
+
+        ultimaActividad = System.nanoTime();
+
+        if (finRespuesta) {
+            finalizarRespuesta();
+        } else if (pendiente) {
+            clave.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            clave.interestOps(ocupada ? 0 : SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Variante de alEscribir para el selector que cierra la conexión si falla
+     */
+    void alEscribirSeguro() {
+        try {
+            alEscribir();
+        } catch (IOException e) {
+            cerrar();
+        }
+    }
+
+    /**
+     * Tras enviar la respuesta completa: cierra o pasa a la siguiente petición
+     */
+    private void finalizarRespuesta() {
+        if (cerrarTrasRespuesta) {
+            cerrar();
+            return;
+        }
+        ocupada = false;
+        clave.interestOps(SelectionKey.OP_READ);
+        procesarPeticiones();
+    }
+
+    /**
+     * Cierra si la conexión lleva demasiado tiempo sin actividad entre peticiones
+     */
+    void comprobarInactividad(long ahora, long maximoNanos) {
+        if (!ocupada && ahora - ultimaActividad > maximoNanos) {
+            cerrar();
+        }
+    }
+
+    /**
+     * Cierra el socket y despierta a cualquier trabajador que esté esperando
+     */
+    void cerrar() {
+        if (cerrada) {
+            return;
+        }
+        cerrada = true;
+        if (clave != null) {
+            clave.cancel();
+        }
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // El socket ya estaba roto: no hay nada más que hacer
+        }
+
+        cerrojo.lock();
+        try {
+            cola.clear();
+            bytesEnCola = 0;
+            cambio.signalAll();
+        } finally {
+            cerrojo.unlock();
+        }
+        servidor.conexionCerrada();
+    }
+
+    // =====================================================================================
+    // ========== LADO DEL TRABAJADOR ==========
+    // =====================================================================================
+
+    /**
+     * Encola bytes de la respuesta, esperando si la cola está llena
+     */
+    void encolar(ByteBuffer buffer) throws IOException {
+        cerrojo.lock();
+        try {
+            while (bytesEnCola > LIMITE_COLA && !cerrada) {
+                esperarCambio();
+            }
+            comprobarAbierta();
+            bytesEnCola += buffer.remaining();
+            cola.add(buffer);
+        } finally {
+            cerrojo.unlock();
+        }
+        solicitarEscritura();
+    }
+
+    /**
+     * Encola una región de archivo y espera a que se haya enviado entera
+     */
+    void enviarRegion(FileChannel archivo, long posicion, long longitud) throws IOException {
+        if (longitud <= 0) {
+            return;
+        }
+
+        RegionPendiente region = new RegionPendiente(archivo, posicion, longitud);
+        cerrojo.lock();
+        try {
+            comprobarAbierta();
+            cola.add(region);
+            solicitarEscritura();
+            while (!region.completada && !cerrada) {
+                esperarCambio();
+            }
+            if (!region.completada) {
+                throw new IOException("Conexión cerrada por el cliente");
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Encola un buffer sin copiarlo y espera a que se haya enviado entero
+     * (quien lo presta puede reutilizarlo en cuanto el método retorna)
+     */
+    void enviarBuffer(ByteBuffer datos) throws IOException {
+        if (!datos.hasRemaining()) {
+            return;
+        }
+
+        BufferPendiente pendiente = new BufferPendiente(datos);
+        cerrojo.lock();
+        try {
+            comprobarAbierta();
+            bytesEnCola += datos.remaining();
+            cola.add(pendiente);
+            solicitarEscritura();
+            while (!pendiente.completado && !cerrada) {
+                esperarCambio();
+            }
+            if (!pendiente.completado) {
+                throw new IOException("Conexión cerrada por el cliente");
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Marca el final de la respuesta actual
+     */
+    void terminarRespuesta() throws IOException {
+        cerrojo.lock();
+        try {
+            comprobarAbierta();
+            cola.add(FIN_RESPUESTA);
+        } finally {
+            cerrojo.unlock();
+        }
+        solicitarEscritura();
+    }
+
+    /**
+     * Aborta la respuesta en curso cerrando la conexión desde el selector
+     */
+    void abortar() {
+        cerrarTrasRespuesta = true;
+        bucle.ejecutar(this::cerrar);
+    }
+
+    private void solicitarEscritura() {
+        if (escrituraSolicitada.compareAndSet(false, true)) {
+            bucle.ejecutar(this::alEscribirSeguro);
+        }
+    }
+
+    private void comprobarAbierta() throws IOException {
+        if (cerrada) {
+            throw new IOException("Conexión cerrada por el cliente");
+        }
+    }
+
+    private void esperarCambio() throws InterruptedIOException {
+        try {
+            cambio.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrumpido esperando al socket");
+        }
+    }
+}
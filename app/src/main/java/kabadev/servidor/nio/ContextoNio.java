@@ -0,0 +1,77 @@
+package kabadev.servidor.nio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Contexto registrado en ServidorNio (ruta + controlador)
+ *
+ * Existe para que HttpExchange.getHttpContext() devuelva algo útil a los
+ * controladores; el motor NIO no usa filtros ni autenticadores
+ */
+final class ContextoNio extends HttpContext {
+
+    private final String ruta;
+    private HttpHandler manejador;
+    private final Map<String, Object> atributos = new HashMap<>();
+    private final List<Filter> filtros = new ArrayList<>();
+    private Authenticator autenticador;
+
+    ContextoNio(String ruta, HttpHandler manejador) {
+        this.ruta = ruta;
+        this.manejador = manejador;
+    }
+
+    @Override
+    public HttpHandler getHandler() {
+        return manejador;
+    }
+
+    @Override
+    public void setHandler(HttpHandler manejador) {
+        this.manejador = manejador;
+    }
+
+    @Override
+    public String getPath() {
+        return ruta;
+    }
+
+    /**
+     * ServidorNio no es un HttpServer NATIVO, así que no hay servidor que devolver
+     */
+    @Override
+    public HttpServer getServer() {
+        return null;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return atributos;
+    }
+
+    @Override
+    public List<Filter> getFilters() {
+        return filtros;
+    }
+
+    @Override
+    public Authenticator setAuthenticator(Authenticator autenticador) {
+        Authenticator anterior = this.autenticador;
+        this.autenticador = autenticador;
+        return anterior;
+    }
+
+    @Override
+    public Authenticator getAuthenticator() {
+        return autenticador;
+    }
+}
@@ -0,0 +1,266 @@
+package kabadev.servidor.nio;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import kabadev.servidor.RangosHttp;
+
+/**
+ * HttpExchange del motor NIO
+ *
+ * Permite que los controladores existentes (escritos contra HttpExchange)
+ * funcionen sin cambios sobre ServidorNio. Sigue las mismas reglas que el
+ * HttpServer NATIVO en sendResponseHeaders: longitud > 0 fija Content-Length,
+ * 0 usa chunked y -1 indica que no hay cuerpo
+ */
+final class IntercambioNio extends HttpExchange {
+
+    private final ConexionNio conexion;
+    private final PeticionNio peticion;
+    private final HttpContext contexto;
+    private final Headers cabecerasRespuesta = new Headers();
+    private final Map<String, Object> atributos = new HashMap<>();
+
+    private InputStream entrada;
+    private OutputStream salidaPublica;
+    private SalidaNio salida;
+    private int codigoRespuesta = -1;
+
+    IntercambioNio(ConexionNio conexion, PeticionNio peticion, HttpContext contexto) {
+        this.conexion = conexion;
+        this.peticion = peticion;
+        this.contexto = contexto;
+        this.entrada = new ByteArrayInputStream(peticion.cuerpo());
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return peticion.cabeceras();
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return cabecerasRespuesta;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return peticion.uri();
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return peticion.metodo();
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return contexto;
+    }
+
+    @Override
+    public void close() {
+        try {
+            entrada.close();
+            if (salida == null) {
+                // El controlador cerró sin responder: no hay forma válida de seguir
+                conexion.abortar();
+                return;
+            }
+            getResponseBody().close();
+        } catch (IOException e) {
+            conexion.abortar();
+        }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return entrada;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        if (salidaPublica != null) {
+            return salidaPublica;
+        }
+        if (salida == null) {
+            // Igual que el servidor NATIVO: el cuerpo solo existe tras enviar las cabeceras
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("sendResponseHeaders() no se ha llamado todavía");
+                }
+            };
+        }
+        return salida;
+    }
+
+    @Override
+    public void sendResponseHeaders(int codigo, long longitud) throws IOException {
+        if (salida != null) {
+            throw new IOException("Las cabeceras ya se enviaron");
+        }
+        codigoRespuesta = codigo;
+
+        boolean sinCuerpo = codigo < 200 || codigo == 204 || codigo == 304
+                || "HEAD".equals(peticion.metodo());
+
+        if ("close".equalsIgnoreCase(cabecerasRespuesta.getFirst("Connection"))) {
+            conexion.cerrarTrasRespuesta();
+        }
+
+        StringBuilder cabecera = new StringBuilder(256);
+        cabecera.append("HTTP/1.1 ").append(codigo).append(' ').append(textoEstado(codigo)).append("\r\n");
+
+        if (!cabecerasRespuesta.containsKey("Date")) {
+            cabecerasRespuesta.set("Date", RangosHttp.formatearFecha(System.currentTimeMillis()));
+        }
+        // En HEAD con -1 se respeta el Content-Length que dejó Respuestas.soloCabeceras
+        String longitudDeclarada = cabecerasRespuesta.getFirst("Content-Length");
+        cabecerasRespuesta.remove("Content-Length");
+        cabecerasRespuesta.remove("Transfer-Encoding");
+
+        long longitudCuerpo;
+        if (codigo < 200 || codigo == 204 || codigo == 304) {
+            longitudCuerpo = 0;
+        } else if (longitud < 0 && sinCuerpo && longitudDeclarada != null) {
+            longitudCuerpo = 0;
+            cabecerasRespuesta.set("Content-Length", longitudDeclarada);
+        } else if (longitud == 0) {
+            longitudCuerpo = -1;
+            if (!sinCuerpo) {
+                cabecerasRespuesta.set("Transfer-Encoding", "chunked");
+            }
+        } else {
+            longitudCuerpo = Math.max(longitud, 0);
+            cabecerasRespuesta.set("Content-Length", Long.toString(longitudCuerpo));
+        }
+
+        cabecerasRespuesta.set("Connection", conexion.seCerraraTrasRespuesta() ? "close" : "keep-alive");
+
+        for (Map.Entry<String, List<String>> entrada : cabecerasRespuesta.entrySet()) {
+            for (String valor : entrada.getValue()) {
+                cabecera.append(entrada.getKey()).append(": ").append(valor).append("\r\n");
+            }
+        }
+        cabecera.append("\r\n");
+
+        salida = new SalidaNio(conexion, longitudCuerpo, sinCuerpo);
+        conexion.encolar(ByteBuffer.wrap(cabecera.toString().getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return conexion.direccionRemota();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return codigoRespuesta;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return conexion.direccionLocal();
+    }
+
+    @Override
+    public String getProtocol() {
+        return peticion.protocolo();
+    }
+
+    @Override
+    public Object getAttribute(String nombre) {
+        return atributos.get(nombre);
+    }
+
+    @Override
+    public void setAttribute(String nombre, Object valor) {
+        if (valor == null) {
+            atributos.remove(nombre);
+        } else {
+            atributos.put(nombre, valor);
+        }
+    }
+
+    @Override
+    public void setStreams(InputStream entrada, OutputStream salida) {
+        if (entrada != null) {
+            this.entrada = entrada;
+        }
+        if (salida != null) {
+            this.salidaPublica = salida;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    /**
+     * Cierra la respuesta cuando el controlador termina
+     * Si no llegó a responder se envía un error; si falló a mitad se aborta
+     *
+     * @param error Excepción lanzada por el controlador, o null
+     */
+    void finalizar(Throwable error) {
+        try {
+            if (salida == null) {
+                sendResponseHeaders(500, -1);
+                salida.close();
+            } else if (!salida.estaCerrada()) {
+                if (error != null) {
+                    conexion.abortar();
+                } else {
+                    salida.close();
+                }
+            }
+        } catch (IOException e) {
+            conexion.abortar();
+        }
+    }
+
+    /**
+     * Frase de estado para los códigos que usa Dogster
+     */
+    static String textoEstado(int codigo) {
+        switch (codigo) {
+            case 100: return "Continue";
+            case 200: return "OK";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 301: return "Moved Permanently";
+            case 302: return "Found";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 411: return "Length Required";
+            case 413: return "Content Too Large";
+            case 416: return "Range Not Satisfiable";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            case 505: return "HTTP Version Not Supported";
+            default: return "Estado " + codigo;
+        }
+    }
+}
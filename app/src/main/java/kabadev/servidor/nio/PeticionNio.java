@@ -0,0 +1,190 @@
+package kabadev.servidor.nio;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.Headers;
+
+/**
+ * Petición HTTP/1.1 ya analizada por el motor NIO
+ *
+ * El análisis trabaja sobre el búfer de lectura de la conexión: si la
+ * petición todavía no ha llegado completa no consume nada y devuelve null,
+ * de modo que las peticiones encadenadas (pipelining) se van sacando una a una
+ */
+final class PeticionNio {
+
+    /** Tamaño máximo de la línea de petición más las cabeceras */
+    static final int MAXIMO_CABECERAS = 32 * 1024;
+
+    /** Tamaño máximo del cuerpo de una petición (JSON pequeños de la API) */
+    static final int MAXIMO_CUERPO = 1024 * 1024;
+
+    private final String metodo;
+    private final URI uri;
+    private final String protocolo;
+    private final Headers cabeceras;
+    private final byte[] cuerpo;
+
+    private PeticionNio(String metodo, URI uri, String protocolo, Headers cabeceras, byte[] cuerpo) {
+        this.metodo = metodo;
+        this.uri = uri;
+        this.protocolo = protocolo;
+        this.cabeceras = cabeceras;
+        this.cuerpo = cuerpo;
+    }
+
+    /**
+     * Error de protocolo que se responde con el código indicado y cierre de conexión
+     */
+    static final class PeticionInvalidaException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int codigo;
+
+        PeticionInvalidaException(int codigo, String mensaje) {
+            super(mensaje);
+            this.codigo = codigo;
+        }
+
+        int codigo() {
+            return codigo;
+        }
+    }
+
+    /**
+     * Intenta extraer una petición completa del búfer (en modo lectura)
+     *
+     * @param buffer Búfer de lectura con array accesible
+     * @return La petición, o null si faltan bytes (el búfer no se modifica)
+     * @throws PeticionInvalidaException Si la petición es inválida o demasiado grande
+     */
+    static PeticionNio analizar(ByteBuffer buffer) throws PeticionInvalidaException {
+        byte[] datos = buffer.array();
+        int limite = buffer.limit();
+        int inicio = buffer.position();
+
+        // Se toleran líneas vacías entre peticiones encadenadas (RFC 9112 2.2)
+        while (inicio + 1 < limite && datos[inicio] == '\r' && datos[inicio + 1] == '\n') {
+            inicio += 2;
+        }
+
+        int finCabeceras = -1;
+        for (int i = inicio; i + 3 < limite; i++) {
+            if (datos[i] == '\r' && datos[i + 1] == '\n' && datos[i + 2] == '\r' && datos[i + 3] == '\n') {
+                finCabeceras = i;
+                break;
+            }
+        }
+
+        if (finCabeceras < 0) {
+            if (limite - inicio > MAXIMO_CABECERAS) {
+                throw new PeticionInvalidaException(431, "Cabeceras demasiado grandes");
+            }
+            return null;
+        }
+
+        if (finCabeceras - inicio > MAXIMO_CABECERAS) {
+            throw new PeticionInvalidaException(431, "Cabeceras demasiado grandes");
+        }
+
+        String texto = new String(datos, inicio, finCabeceras - inicio, StandardCharsets.ISO_8859_1);
+        String[] lineas = texto.split("\r\n");
+
+        // ========== LÍNEA DE PETICIÓN: MÉTODO OBJETIVO VERSIÓN ==========
+        String[] partes = lineas[0].split(" ");
+        if (partes.length != 3 || partes[0].isEmpty() || partes[1].isEmpty()) {
+            throw new PeticionInvalidaException(400, "Línea de petición inválida");
+        }
+        if (!partes[2].startsWith("HTTP/1.")) {
+            throw new PeticionInvalidaException(505, "Versión HTTP no soportada: " + partes[2]);
+        }
+
+        URI uri;
+        try {
+            uri = new URI(partes[1]);
+        } catch (URISyntaxException e) {
+            throw new PeticionInvalidaException(400, "URI inválida");
+        }
+
+        // ========== CABECERAS ==========
+        Headers cabeceras = new Headers();
+        for (int i = 1; i < lineas.length; i++) {
+            String linea = lineas[i];
+            int dosPuntos = linea.indexOf(':');
+            if (dosPuntos <= 0 || linea.charAt(0) == ' ' || linea.charAt(0) == '\t') {
+                throw new PeticionInvalidaException(400, "Cabecera inválida");
+            }
+            cabeceras.add(linea.substring(0, dosPuntos).trim(), linea.substring(dosPuntos + 1).trim());
+        }
+
+        if (cabeceras.containsKey("Transfer-Encoding")) {
+            throw new PeticionInvalidaException(501, "Cuerpos con Transfer-Encoding no soportados");
+        }
+
+        // ========== CUERPO (solo con Content-Length) ==========
+        int longitudCuerpo = 0;
+        String contentLength = cabeceras.getFirst("Content-Length");
+        if (contentLength != null) {
+            try {
+                long valor = Long.parseLong(contentLength.trim());
+                if (valor < 0) {
+                    throw new PeticionInvalidaException(400, "Content-Length inválido");
+                }
+                if (valor > MAXIMO_CUERPO) {
+                    throw new PeticionInvalidaException(413, "Cuerpo demasiado grande");
+                }
+                longitudCuerpo = (int) valor;
+            } catch (NumberFormatException e) {
+                throw new PeticionInvalidaException(400, "Content-Length inválido");
+            }
+        }
+
+        int inicioCuerpo = finCabeceras + 4;
+        if (limite - inicioCuerpo < longitudCuerpo) {
+            return null;
+        }
+
+        byte[] cuerpo = new byte[longitudCuerpo];
+        System.arraycopy(datos, inicioCuerpo, cuerpo, 0, longitudCuerpo);
+        buffer.position(inicioCuerpo + longitudCuerpo);
+
+        return new PeticionNio(partes[0], uri, partes[2], cabeceras, cuerpo);
+    }
+
+    /**
+     * Indica si la conexión debe seguir abierta tras responder
+     * HTTP/1.1 mantiene la conexión salvo "Connection: close";
+     * HTTP/1.0 solo la mantiene con "Connection: keep-alive"
+     */
+    boolean mantenerConexion() {
+        String conexion = cabeceras.getFirst("Connection");
+        if ("HTTP/1.0".equals(protocolo)) {
+            return "keep-alive".equalsIgnoreCase(conexion);
+        }
+        return !"close".equalsIgnoreCase(conexion);
+    }
+
+    String metodo() {
+        return metodo;
+    }
+
+    URI uri() {
+        return uri;
+    }
+
+    String protocolo() {
+        return protocolo;
+    }
+
+    Headers cabeceras() {
+        return cabeceras;
+    }
+
+    byte[] cuerpo() {
+        return cuerpo;
+    }
+}
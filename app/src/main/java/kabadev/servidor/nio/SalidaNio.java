@@ -0,0 +1,176 @@
+package kabadev.servidor.nio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import kabadev.servidor.SumideroRegiones;
+
+/**
+ * Cuerpo de respuesta del motor NIO
+ *
+ * Acumula lo escrito en bloques y los entrega a la cola de la conexión.
+ * Admite longitud fija (Content-Length) o codificación chunked, y como
+ * SumideroRegiones deja que las regiones de archivo salgan por sendfile y
+ * los buffers directos compartidos sin copiarlos
+ */
+final class SalidaNio extends OutputStream implements SumideroRegiones {
+
+    private static final int TAMANO_BLOQUE = 16 * 1024;
+    private static final byte[] FIN_CHUNKED = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ConexionNio conexion;
+    private final boolean chunked;
+    private final boolean descartar;
+    private final long longitudDeclarada;
+
+    private byte[] bloque = new byte[TAMANO_BLOQUE];
+    private int usados;
+    private long escritos;
+    private boolean cerrada;
+
+    /**
+     * @param conexion Conexión a la que se entrega la salida
+     * @param longitud Longitud fija del cuerpo, o -1 para chunked
+     * @param descartar true si no se debe enviar cuerpo (HEAD, 204, 304)
+     */
+    SalidaNio(ConexionNio conexion, long longitud, boolean descartar) {
+        this.conexion = conexion;
+        this.descartar = descartar;
+        this.chunked = !descartar && longitud < 0;
+        this.longitudDeclarada = descartar ? 0 : longitud;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        comprobarEscritura(1);
+        if (descartar) {
+            return;
+        }
+        if (usados == bloque.length) {
+            vaciarBloque();
+        }
+        bloque[usados++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] datos, int desplazamiento, int longitud) throws IOException {
+        comprobarEscritura(longitud);
+        if (descartar) {
+            return;
+        }
+        while (longitud > 0) {
+            if (usados == bloque.length) {
+                vaciarBloque();
+            }
+            int copia = Math.min(longitud, bloque.length - usados);
+            System.arraycopy(datos, desplazamiento, bloque, usados, copia);
+            usados += copia;
+            desplazamiento += copia;
+            longitud -= copia;
+        }
+    }
+
+    @Override
+    public void enviarRegion(FileChannel canal, long posicion, long longitud) throws IOException {
+        comprobarEscritura(longitud);
+        if (descartar || longitud == 0) {
+            return;
+        }
+        vaciarBloque();
+        if (chunked) {
+            conexion.encolar(ByteBuffer.wrap(cabeceraChunk(longitud)));
+            conexion.enviarRegion(canal, posicion, longitud);
+            conexion.encolar(ByteBuffer.wrap(new byte[] { '\r', '\n' }));
+        } else {
+            conexion.enviarRegion(canal, posicion, longitud);
+        }
+    }
+
+    @Override
+    public void enviarBuffer(ByteBuffer datos) throws IOException {
+        long longitud = datos.remaining();
+        comprobarEscritura(longitud);
+        if (descartar || longitud == 0) {
+            return;
+        }
+        vaciarBloque();
+        if (chunked) {
+            conexion.encolar(ByteBuffer.wrap(cabeceraChunk(longitud)));
+            conexion.enviarBuffer(datos.duplicate());
+            conexion.encolar(ByteBuffer.wrap(new byte[] { '\r', '\n' }));
+        } else {
+            conexion.enviarBuffer(datos.duplicate());
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!cerrada && !descartar) {
+            vaciarBloque();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (cerrada) {
+            return;
+        }
+        cerrada = true;
+
+        if (!descartar) {
+            vaciarBloque();
+            if (chunked) {
+                conexion.encolar(ByteBuffer.wrap(FIN_CHUNKED));
+            } else if (escritos < longitudDeclarada) {
+                // Respuesta truncada: el cliente no puede reutilizar la conexión
+                conexion.abortar();
+                throw new IOException("Respuesta incompleta: " + escritos + " de " + longitudDeclarada + " bytes");
+            }
+        }
+        conexion.terminarRespuesta();
+    }
+
+    boolean estaCerrada() {
+        return cerrada;
+    }
+
+    private void comprobarEscritura(long longitud) throws IOException {
+        if (cerrada) {
+            throw new IOException("El cuerpo de la respuesta ya está cerrado");
+        }
+        if (!chunked && !descartar && escritos + longitud > longitudDeclarada) {
+            throw new IOException("Se intentan escribir más bytes de los declarados: " + longitudDeclarada);
+        }
+        escritos += longitud;
+    }
+
+    /**
+     * Entrega el bloque acumulado a la conexión y empieza uno nuevo
+     * El bloque no se reutiliza porque el selector puede estar escribiéndolo
+     */
+    private void vaciarBloque() throws IOException {
+        if (usados == 0) {
+            return;
+        }
+        if (chunked) {
+            byte[] cabecera = cabeceraChunk(usados);
+            byte[] trozo = new byte[cabecera.length + usados + 2];
+            System.arraycopy(cabecera, 0, trozo, 0, cabecera.length);
+            System.arraycopy(bloque, 0, trozo, cabecera.length, usados);
+            trozo[trozo.length - 2] = '\r';
+            trozo[trozo.length - 1] = '\n';
+            conexion.encolar(ByteBuffer.wrap(trozo));
+        } else {
+            conexion.encolar(ByteBuffer.wrap(bloque, 0, usados));
+            bloque = new byte[TAMANO_BLOQUE];
+        }
+        usados = 0;
+    }
+
+    private static byte[] cabeceraChunk(long longitud) {
+        return (Long.toHexString(longitud) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
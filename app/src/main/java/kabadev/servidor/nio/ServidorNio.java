@@ -0,0 +1,293 @@
+package kabadev.servidor.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kabadev.configuracion.Configuracion;
+import kabadev.metricas.MetricasHttp;
+import kabadev.servidor.EstrategiaEjecutor;
+import kabadev.servidor.IControladorRuta;
+import kabadev.servidor.IServidorHttp;
+import kabadev.servidor.Middleware;
+import kabadev.servidor.RutaHttp;
+import kabadev.servidor.TablaRutas;
+
+/**
+ * Motor HTTP/1.1 no bloqueante basado en Selector
+ *
+ * Alternativa a ServidorHttp pensada para muchos streams de video simultáneos:
+ * - Unos pocos hilos de selector hacen toda la E/S de red sin bloquear
+ * - Keep-alive y peticiones encadenadas (pipelining) en la misma conexión
+ * - Las regiones de archivo salen con FileChannel.transferTo sobre el
+ *   SocketChannel (sendfile), sin pasar por el heap
+ * - Contrapresión por socket: un cliente lento frena solo su propia respuesta
+ *
+ * Los controladores se ejecutan en el ExecutorService de la estrategia
+ * configurada; con hilos virtuales un stream esperando al socket no ocupa
+ * un hilo del sistema operativo
+ */
+public class ServidorNio implements IServidorHttp {
+
+    private final InetSocketAddress direccion;
+    private final int backlog;
+    private final EstrategiaEjecutor estrategia;
+    private final int hilos;
+    private final int numeroSelectores;
+    private final TablaRutas rutas = new TablaRutas();
+    private final ContextoNio contexto = new ContextoNio("/", rutas::atender);
+    private final AtomicInteger conexionesActivas = new AtomicInteger();
+
+    private ServerSocketChannel canalServidor;
+    private BucleSelector[] bucles;
+    private ExecutorService poolHilos;
+    private int siguienteBucle;
+    private volatile boolean iniciado;
+    private MetricasHttp metricas;
+
+    private ServidorNio(InetSocketAddress direccion, int backlog, EstrategiaEjecutor estrategia, int hilos,
+            int numeroSelectores) {
+        this.direccion = direccion;
+        this.backlog = backlog;
+        this.estrategia = estrategia;
+        this.hilos = hilos;
+        this.numeroSelectores = numeroSelectores;
+    }
+
+    /**
+     * Crea el motor con la estrategia de hilos y el número de selectores configurados
+     * (-Ddogster.ejecutor, -Ddogster.hilos, -Ddogster.nio.selectores)
+     *
+     * @param direccion Dirección y puerto de escucha
+     * @param backlog Número máximo de conexiones pendientes
+     * @return Nueva instancia sin iniciar
+     */
+    public static ServidorNio crear(InetSocketAddress direccion, int backlog) {
+        int selectoresPorDefecto = Math.min(4, Runtime.getRuntime().availableProcessors());
+        return crear(direccion, backlog, EstrategiaEjecutor.desdeConfiguracion(),
+                Configuracion.entero("hilos", EstrategiaEjecutor.HILOS_POR_DEFECTO),
+                Configuracion.entero("nio.selectores", selectoresPorDefecto));
+    }
+
+    /**
+     * Crea el motor con parámetros explícitos
+     *
+     * @param direccion Dirección y puerto de escucha (puerto 0 = efímero)
+     * @param backlog Número máximo de conexiones pendientes
+     * @param estrategia Estrategia de hilos para los controladores
+     * @param hilos Tamaño del pool para la estrategia FIJO
+     * @param selectores Número de hilos de selector
+     * @return Nueva instancia sin iniciar
+     */
+    public static ServidorNio crear(InetSocketAddress direccion, int backlog, EstrategiaEjecutor estrategia,
+            int hilos, int selectores) {
+        if (direccion == null) {
+            throw new IllegalArgumentException("La dirección no puede ser null");
+        }
+        if (direccion.getPort() < 0 || direccion.getPort() > 65535) {
+            throw new IllegalArgumentException("Puerto inválido: " + direccion.getPort());
+        }
+        if (estrategia == null) {
+            throw new IllegalArgumentException("La estrategia de ejecutor no puede ser null");
+        }
+        if (selectores < 1) {
+            throw new IllegalArgumentException("Se necesita al menos un selector: " + selectores);
+        }
+        return new ServidorNio(direccion, backlog, estrategia, hilos, selectores);
+    }
+
+    @Override
+    public synchronized void usarMetricas(MetricasHttp metricas) {
+        if (iniciado) {
+            throw new IllegalStateException("Las métricas se activan antes de iniciar");
+        }
+        this.metricas = metricas;
+        rutas.usar(metricas::instrumentar);
+    }
+
+    @Override
+    public synchronized void usar(Middleware middleware) {
+        if (iniciado) {
+            throw new IllegalStateException("No se pueden agregar middlewares después de iniciar");
+        }
+        rutas.usar(middleware);
+    }
+
+    @Override
+    public synchronized void crearRuta(String patron, IControladorRuta controlador) {
+        if (iniciado) {
+            throw new IllegalStateException("No se pueden agregar rutas después de iniciar");
+        }
+        RutaHttp ruta = rutas.registrar(patron, controlador);
+        System.out.println("Ruta NIO registrada: " + ruta.patron());
+    }
+
+    @Override
+    public synchronized void iniciar() {
+        if (iniciado) {
+            throw new IllegalStateException("El servidor ya está iniciado");
+        }
+        if (rutas.vacia()) {
+            System.out.println("Advertencia: Servidor NIO iniciado sin controladores");
+        }
+
+        try {
+            poolHilos = estrategia.crear(hilos);
+            if (metricas != null) {
+                metricas.registrarEjecutor(poolHilos);
+                metricas.registrarIndicador("dogster_conexiones_abiertas", "Conexiones abiertas en el motor NIO",
+                        "gauge", conexionesActivas::get);
+            }
+            canalServidor = ServerSocketChannel.open();
+            canalServidor.bind(direccion, backlog);
+            canalServidor.configureBlocking(false);
+
+            bucles = new BucleSelector[numeroSelectores];
+            for (int i = 0; i < numeroSelectores; i++) {
+                bucles[i] = new BucleSelector(this);
+                Thread.ofPlatform().name("dogster-nio-" + i).start(bucles[i]);
+            }
+
+            // El primer bucle también acepta conexiones y las reparte en turno rotatorio
+            BucleSelector aceptador = bucles[0];
+            Runnable aceptar = this::aceptarConexiones;
+            aceptador.ejecutar(() -> {
+                try {
+                    canalServidor.register(aceptador.selector(), SelectionKey.OP_ACCEPT, aceptar);
+                } catch (IOException e) {
+                    System.out.println("No se pudo registrar el socket de escucha: " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo iniciar el servidor NIO: " + e.getMessage(), e);
+        }
+
+        iniciado = true;
+
+        InetSocketAddress real = obtenerDireccion();
+        System.out.println("Servidor HTTP NIO iniciado");
+        System.out.println("Dirección: http://" + real.getHostString() + ":" + real.getPort() + "/");
+        System.out.println("Selectores: " + numeroSelectores + " | Pool de hilos: " + estrategia);
+        System.out.println("Rutas registradas: " + rutas.patrones().size());
+        rutas.patrones().forEach(patron -> System.out.println("   ├── " + patron));
+    }
+
+    @Override
+    public synchronized void detener(int tiempoEspera) {
+        if (!iniciado) {
+            System.out.println("El servidor NIO ya está detenido");
+            return;
+        }
+        System.out.println("Deteniendo servidor HTTP NIO...");
+
+        try {
+            canalServidor.close();
+        } catch (IOException e) {
+            // El socket de escucha ya estaba cerrado
+        }
+
+        // Las conexiones en reposo se cierran ya; las ocupadas cierran al terminar su respuesta
+        for (BucleSelector bucle : bucles) {
+            bucle.drenar();
+        }
+
+        // Se da tiempo a que terminen las respuestas en curso antes de cerrar los sockets
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(tiempoEspera, 0));
+        while (conexionesActivas.get() > 0 && System.nanoTime() < limite) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        for (BucleSelector bucle : bucles) {
+            bucle.detener();
+        }
+        EstrategiaEjecutor.terminar(poolHilos);
+
+        iniciado = false;
+        System.out.println("Servidor HTTP NIO detenido exitosamente");
+    }
+
+    @Override
+    public boolean estaIniciado() {
+        return iniciado;
+    }
+
+    @Override
+    public InetSocketAddress obtenerDireccion() {
+        try {
+            if (canalServidor != null && canalServidor.isOpen()) {
+                return (InetSocketAddress) canalServidor.getLocalAddress();
+            }
+        } catch (IOException e) {
+            // Se devuelve la dirección configurada
+        }
+        return direccion;
+    }
+
+    /**
+     * @return Conexiones abiertas en este momento
+     */
+    public int conexionesActivas() {
+        return conexionesActivas.get();
+    }
+
+    // ========== LLAMADAS DESDE LOS BUCLES Y LAS CONEXIONES ==========
+
+    private void aceptarConexiones() {
+        try {
+            SocketChannel socket;
+            while ((socket = canalServidor.accept()) != null) {
+                conexionesActivas.incrementAndGet();
+                BucleSelector destino = bucles[siguienteBucle];
+                siguienteBucle = (siguienteBucle + 1) % bucles.length;
+                destino.registrar(socket);
+            }
+        } catch (IOException e) {
+            if (canalServidor.isOpen()) {
+                System.out.println("Error aceptando conexión: " + e.getMessage());
+            }
+        }
+    }
+
+    void conexionCerrada() {
+        conexionesActivas.decrementAndGet();
+    }
+
+    /**
+     * Entrega una petición completa al pool de hilos de los controladores
+     */
+    void despachar(ConexionNio conexion, PeticionNio peticion) {
+        try {
+            poolHilos.execute(() -> atender(conexion, peticion));
+        } catch (RejectedExecutionException e) {
+            conexion.abortar();
+        }
+    }
+
+    private void atender(ConexionNio conexion, PeticionNio peticion) {
+        IntercambioNio intercambio = new IntercambioNio(conexion, peticion, contexto);
+        Throwable error = null;
+
+        try {
+            rutas.atender(intercambio);
+        } catch (IOException e) {
+            // Lo habitual: el cliente cerró la conexión a mitad de respuesta
+            error = e;
+        } catch (RuntimeException | Error e) {
+            error = e;
+            System.out.println("Error atendiendo " + peticion.uri() + ": " + e);
+        }
+
+        intercambio.finalizar(error);
+    }
+}
@@ -0,0 +1,83 @@
+package kabadev.trafico;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cubo de tokens (bytes por segundo) sin cerrojos
+ *
+ * Se implementa como GCRA: en lugar de contar tokens se guarda el "instante
+ * teórico" en que el cubo quedaría al día. Reservar n bytes lo adelanta
+ * n / tasa segundos con un único compareAndSet, así que muchos hilos pueden
+ * compartir el cubo global sin bloquearse entre sí.
+ *
+ * La tolerancia es la ráfaga: mientras el instante teórico no supere el
+ * actual en más de la tolerancia, los bytes salen sin esperar. Un cubo nuevo
+ * (o que lleva un rato sin usarse) deja pasar la ráfaga completa de golpe.
+ *
+ * La reserva nunca falla: devuelve cuánto hay que esperar antes de enviar.
+ * Así las peticiones que compiten por el mismo cubo se turnan en el orden en
+ * que reservaron
+ */
+public final class CuboTokens {
+
+    private static final long NANOS_POR_SEGUNDO = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong instanteTeorico;
+    private final long toleranciaNanos;
+    private volatile long tasa;
+
+    /**
+     * @param tasa Bytes por segundo (0 = sin límite)
+     * @param toleranciaNanos Ráfaga permitida expresada en tiempo a la tasa del cubo
+     * @param ahora Instante actual (System.nanoTime)
+     */
+    public CuboTokens(long tasa, long toleranciaNanos, long ahora) {
+        this.tasa = tasa;
+        this.toleranciaNanos = toleranciaNanos;
+        this.instanteTeorico = new AtomicLong(ahora);
+    }
+
+    /**
+     * Reserva bytes del cubo
+     *
+     * @param bytes Bytes que se van a enviar
+     * @param ahora Instante actual (System.nanoTime)
+     * @return Nanosegundos que hay que esperar antes de enviarlos (0 = ya)
+     */
+    public long reservar(long bytes, long ahora) {
+        long tasaActual = tasa;
+        if (tasaActual <= 0) {
+            return 0;
+        }
+        long coste = bytes * NANOS_POR_SEGUNDO / tasaActual;
+        while (true) {
+            long previo = instanteTeorico.get();
+            // Tras un periodo sin uso el cubo no acumula más de la tolerancia
+            long base = Math.max(previo, ahora);
+            long nuevo = base + coste;
+            if (instanteTeorico.compareAndSet(previo, nuevo)) {
+                return Math.max(0, nuevo - toleranciaNanos - ahora);
+            }
+        }
+    }
+
+    /**
+     * Cambia la tasa (p. ej. el reparto justo cuando entra o sale un stream)
+     * Afecta a las reservas siguientes, no a las ya hechas
+     */
+    public void ajustarTasa(long tasa) {
+        this.tasa = tasa;
+    }
+
+    public long tasa() {
+        return tasa;
+    }
+
+    /**
+     * @return true si el cubo vuelve a tener la ráfaga completa disponible
+     */
+    public boolean inactivo(long ahora) {
+        return instanteTeorico.get() <= ahora;
+    }
+}
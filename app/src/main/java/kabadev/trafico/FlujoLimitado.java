@@ -0,0 +1,98 @@
+package kabadev.trafico;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import kabadev.servidor.ContenidoRangos;
+
+/**
+ * Un stream en curso sometido a los límites del PlanificadorTrafico
+ *
+ * Se obtiene con PlanificadorTrafico.abrir y se cierra al terminar la
+ * respuesta (try-with-resources) para que el reparto justo y el cubo de la
+ * IP dejen de contarlo
+ */
+public final class FlujoLimitado implements AutoCloseable {
+
+    private final PlanificadorTrafico planificador;
+    private final CuboTokens propio;
+    private final InetAddress cliente;
+    private final PlanificadorTrafico.CuentaIp cuenta;
+    private boolean cerrado;
+
+    FlujoLimitado(PlanificadorTrafico planificador, CuboTokens propio, InetAddress cliente,
+            PlanificadorTrafico.CuentaIp cuenta) {
+        this.planificador = planificador;
+        this.propio = propio;
+        this.cliente = cliente;
+        this.cuenta = cuenta;
+    }
+
+    /**
+     * Envuelve un contenido para que sus transferencias respeten los límites
+     *
+     * Cada bloque sigue saliendo por el camino normal del contenido
+     * (transferTo / sendfile): el limitador solo decide cuándo
+     */
+    public ContenidoRangos limitar(ContenidoRangos contenido) {
+        return new ContenidoRangos() {
+            @Override
+            public long tamano() {
+                return contenido.tamano();
+            }
+
+            @Override
+            public void transferir(long posicion, long longitud, OutputStream salida) throws IOException {
+                long bloque = planificador.bloque();
+                long enviados = 0;
+                while (enviados < longitud) {
+                    long trozo = Math.min(bloque, longitud - enviados);
+                    esperar(trozo);
+                    contenido.transferir(posicion + enviados, trozo, salida);
+                    enviados += trozo;
+                }
+            }
+        };
+    }
+
+    /**
+     * Reserva bytes en los cubos del stream, de la IP y global y duerme lo
+     * que pida el más restrictivo
+     *
+     * @throws InterruptedIOException Si el hilo se interrumpe mientras espera
+     */
+    public void esperar(long bytes) throws InterruptedIOException {
+        long ahora = System.nanoTime();
+
+        // La parte justa cambia cuando entran o salen streams
+        propio.ajustarTasa(planificador.cuotaStream());
+        long espera = propio.reservar(bytes, ahora);
+        if (cuenta != null) {
+            espera = Math.max(espera, cuenta.cubo.reservar(bytes, ahora));
+        }
+        CuboTokens global = planificador.global();
+        if (global != null) {
+            espera = Math.max(espera, global.reservar(bytes, ahora));
+        }
+
+        if (espera > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(espera);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrumpido esperando ancho de banda");
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!cerrado) {
+            cerrado = true;
+            planificador.cerrar(cliente, cuenta);
+        }
+    }
+}
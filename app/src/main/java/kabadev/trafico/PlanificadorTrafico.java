@@ -0,0 +1,152 @@
+package kabadev.trafico;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kabadev.configuracion.Configuracion;
+
+/**
+ * Reparto del ancho de banda de salida entre los streams activos
+ *
+ * Tres niveles de cubos de tokens, todos opcionales (0 = sin límite):
+ * - Global (dogster.trafico.global): todo lo que sale por /stream
+ * - Por IP (dogster.trafico.ip): un cliente no acapara la red aunque abra
+ *   varias conexiones
+ * - Por stream (dogster.trafico.stream): además, cuando hay límite global
+ *   cada stream recibe como mucho su parte justa (global / streams activos)
+ *
+ * Las tasas son bytes por segundo. Los cubos de IP y de stream empiezan
+ * llenos con dogster.trafico.rafaga segundos de tráfico (4 por defecto), de
+ * modo que el arranque de la reproducción y los saltos no esperan al limitador.
+ *
+ * El envío se trocea en bloques de dogster.trafico.bloque bytes (64 KB por
+ * defecto); cada bloque reserva en los tres cubos y espera lo que diga el
+ * más restrictivo. Los cubos no usan cerrojos y el mapa de IPs es un
+ * ConcurrentHashMap, así que el limitador no serializa los streams
+ */
+public final class PlanificadorTrafico {
+
+    private static final int RAFAGA_POR_DEFECTO = 4;
+    private static final int BLOQUE_POR_DEFECTO = 64 * 1024;
+
+    /** Streams abiertos desde una IP y el cubo que comparten */
+    static final class CuentaIp {
+        final CuboTokens cubo;
+        int flujos;
+
+        CuentaIp(CuboTokens cubo) {
+            this.cubo = cubo;
+        }
+    }
+
+    private final long tasaGlobal;
+    private final long tasaIp;
+    private final long tasaStream;
+    private final long toleranciaNanos;
+    private final int bloque;
+    private final CuboTokens global;
+    private final ConcurrentHashMap<InetAddress, CuentaIp> ips = new ConcurrentHashMap<>();
+    private final AtomicInteger activos = new AtomicInteger();
+
+    /**
+     * @param tasaGlobal Bytes por segundo para todos los streams (0 = sin límite)
+     * @param tasaIp Bytes por segundo por dirección IP (0 = sin límite)
+     * @param tasaStream Bytes por segundo por stream (0 = sin límite)
+     * @param rafagaSegundos Segundos de tráfico que se permiten de golpe
+     * @param bloque Bytes que se envían entre dos reservas
+     */
+    public PlanificadorTrafico(long tasaGlobal, long tasaIp, long tasaStream, int rafagaSegundos, int bloque) {
+        if (tasaGlobal < 0 || tasaIp < 0 || tasaStream < 0 || rafagaSegundos < 0 || bloque <= 0) {
+            throw new IllegalArgumentException("Límites de tráfico no válidos");
+        }
+        this.tasaGlobal = tasaGlobal;
+        this.tasaIp = tasaIp;
+        this.tasaStream = tasaStream;
+        this.toleranciaNanos = TimeUnit.SECONDS.toNanos(rafagaSegundos);
+        this.bloque = bloque;
+        this.global = tasaGlobal > 0 ? new CuboTokens(tasaGlobal, toleranciaNanos, System.nanoTime()) : null;
+    }
+
+    /**
+     * Crea el planificador con dogster.trafico.global, .ip, .stream, .rafaga y .bloque
+     */
+    public static PlanificadorTrafico desdeConfiguracion() {
+        return new PlanificadorTrafico(Configuracion.largo("trafico.global", 0),
+                Configuracion.largo("trafico.ip", 0),
+                Configuracion.largo("trafico.stream", 0),
+                Configuracion.entero("trafico.rafaga", RAFAGA_POR_DEFECTO),
+                Configuracion.entero("trafico.bloque", BLOQUE_POR_DEFECTO));
+    }
+
+    /**
+     * @return true si hay algún límite configurado
+     */
+    public boolean activo() {
+        return tasaGlobal > 0 || tasaIp > 0 || tasaStream > 0;
+    }
+
+    /**
+     * Registra un stream nuevo; hay que cerrarlo al terminar la respuesta
+     *
+     * @param cliente Dirección del cliente (null si no se conoce)
+     */
+    public FlujoLimitado abrir(InetAddress cliente) {
+        long ahora = System.nanoTime();
+        activos.incrementAndGet();
+
+        CuentaIp cuenta = null;
+        if (tasaIp > 0 && cliente != null) {
+            cuenta = ips.compute(cliente, (ip, actual) -> {
+                CuentaIp resultado = actual != null ? actual
+                        : new CuentaIp(new CuboTokens(tasaIp, toleranciaNanos, ahora));
+                resultado.flujos++;
+                return resultado;
+            });
+        }
+        return new FlujoLimitado(this, new CuboTokens(cuotaStream(), toleranciaNanos, ahora), cliente, cuenta);
+    }
+
+    /**
+     * @return Streams abiertos ahora mismo
+     */
+    public int activos() {
+        return activos.get();
+    }
+
+    /**
+     * @return Direcciones IP con algún stream abierto (con límite por IP)
+     */
+    public int clientes() {
+        return ips.size();
+    }
+
+    int bloque() {
+        return bloque;
+    }
+
+    CuboTokens global() {
+        return global;
+    }
+
+    /**
+     * Tasa de cada stream: su límite propio y, con límite global, la parte justa
+     */
+    long cuotaStream() {
+        long cuota = tasaStream;
+        if (tasaGlobal > 0) {
+            long justa = tasaGlobal / Math.max(1, activos.get());
+            cuota = cuota > 0 ? Math.min(cuota, justa) : justa;
+        }
+        return cuota;
+    }
+
+    void cerrar(InetAddress cliente, CuentaIp cuenta) {
+        activos.decrementAndGet();
+        if (cuenta != null) {
+            // La última conexión de la IP retira su cubo: el mapa no crece con clientes antiguos
+            ips.computeIfPresent(cliente, (ip, actual) -> --actual.flujos == 0 ? null : actual);
+        }
+    }
+}
@@ -108,115 +108,234 @@ document.addEventListener('DOMContentLoaded', () => {
   document.body.appendChild(container);
 });
 
+// ========== PROGRESO DE REPRODUCCIÓN ==========
+// Id aleatorio de este navegador: el servidor guarda con él la posición de cada película
+const CLIENTE = (() => {
+    let id = localStorage.getItem('dogsterCliente');
+    if (!id) {
+        id = crypto.randomUUID ? crypto.randomUUID() : Date.now().toString(36) + Math.random().toString(36).slice(2);
+        localStorage.setItem('dogsterCliente', id);
+    }
+    return id;
+})();
+
+// Cada cuánto se informa de la posición mientras se reproduce (el servidor agrupa las escrituras)
+const INTERVALO_PROGRESO_MS = 10000;
+
+/**
+ * Guarda la posición actual del vídeo en /progress/{id}
+ * keepalive permite que la petición termine aunque se cierre la pestaña
+ *
+ * @param {number} id - Id de la película
+ * @param {HTMLVideoElement} video - Reproductor
+ */
+function guardarProgreso(id, video) {
+    if (!video.currentTime) {
+        return;
+    }
+    const duracion = Number.isFinite(video.duration) ? video.duration : 0;
+    fetch(`/progress/${id}?cliente=${CLIENTE}&t=${video.currentTime.toFixed(3)}&d=${duracion.toFixed(3)}`,
+        { method: 'PUT', keepalive: true })
+        .catch(() => {});
+}
+
+/**
+ * Pide la posición guardada y, si la hay, continúa desde ahí
+ *
+ * @param {number} id - Id de la película
+ * @param {HTMLVideoElement} video - Reproductor
+ */
+function reanudarProgreso(id, video) {
+    fetch(`/progress/${id}?cliente=${CLIENTE}`)
+        .then(response => response.ok ? response.json() : null)
+        .then(progreso => {
+            if (progreso && progreso.position > 0 && video.currentTime < 1) {
+                video.currentTime = progreso.position;
+            }
+        })
+        .catch(() => {});
+}
+
 // ========== CARGA Y PROCESAMIENTO DE DATOS DE PELÍCULAS ==========
+// Películas que se piden en cada página (el catálogo completo puede tener decenas de miles)
+const TAMANO_PAGINA = 24;
+
+// Estado de la paginación: siguiente página a pedir y películas ya mostradas
+let paginaSiguiente = 0;
+let peliculasMostradas = 0;
+
 /**
- * Petición HTTP al backend para obtener el listado de películas
- * Se ejecuta inmediatamente al cargar el script
- * 
+ * Pide una página del catálogo al endpoint /video y la añade al contenedor
+ *
  * Flujo de procesamiento:
- * 1. Realiza fetch al endpoint /video del servidor
+ * 1. Realiza fetch a /video?page=N&size=TAMANO_PAGINA
  * 2. Verifica que la respuesta sea exitosa
- * 3. Convierte la respuesta a JSON
+ * 3. Lee el total de películas de la cabecera X-Total-Count
  * 4. Genera el HTML para mostrar cada película
- * 5. Configura la interactividad de cada elemento
+ * 5. Muestra u oculta el botón "Cargar más" según queden películas
  * 6. Maneja errores de red y de reproducción
  */
-fetch(`/video`)
-    .then(response => {
-        // ========== VALIDACIÓN DE LA RESPUESTA HTTP ==========
-        // Verifica que el servidor haya respondido correctamente
-        if (!response.ok) {
-            // Si hay error HTTP, lanza excepción con código específico
-            throw new Error('No se pudo obtener el listado de películas. Código: ' + response.status);
+function cargarPagina() {
+    const botonMas = document.getElementById('cargarMas');
+    if (botonMas) {
+        botonMas.disabled = true;
+    }
+
+    fetch(`/video?page=${paginaSiguiente}&size=${TAMANO_PAGINA}`)
+        .then(response => {
+            // ========== VALIDACIÓN DE LA RESPUESTA HTTP ==========
+            // Verifica que el servidor haya respondido correctamente
+            if (!response.ok) {
+                // Si hay error HTTP, lanza excepción con código específico
+                throw new Error('No se pudo obtener el listado de películas. Código: ' + response.status);
+            }
+
+            // El total viaja en cabecera para que el cuerpo siga siendo un array simple
+            const total = parseInt(response.headers.get('X-Total-Count'), 10);
+
+            // Convierte la respuesta a formato JSON
+            return response.json().then(data => ({ data, total }));
+        })
+        .then(({ data, total }) => {
+            // ========== PROCESAMIENTO DE LOS DATOS RECIBIDOS ==========
+
+            // Obtiene el contenedor donde se mostrarán las películas
+            // La primera vez se cambia su ID para efectos CSS específicos
+            const container = document.getElementById('videoclub') || document.getElementById('movies');
+            container.id = 'videoclub';
+
+            // ========== VALIDACIÓN DE DATOS ==========
+            // Verifica que los datos recibidos sean válidos
+            if (!Array.isArray(data) || (data.length === 0 && peliculasMostradas === 0)) {
+                // Si no hay películas, muestra mensaje informativo
+                container.innerHTML = '<p style="color:red;">No hay películas disponibles.</p>';
+                return;
+            }
+
+            // ========== GENERACIÓN DINÁMICA DE CONTENIDO ==========
+            // Procesa cada película de la página recibida
+            data.forEach(movie => container.appendChild(crearTarjeta(movie)));
+
+            paginaSiguiente++;
+            peliculasMostradas += data.length;
+
+            // ========== BOTÓN "CARGAR MÁS" ==========
+            // Sin cabecera X-Total-Count se asume que no hay más si la página vino incompleta
+            const quedanMas = Number.isNaN(total) ? data.length === TAMANO_PAGINA : peliculasMostradas < total;
+            actualizarBotonMas(container, quedanMas);
+        })
+        // ========== MANEJO DE ERRORES GLOBALES ==========
+        .catch(error => {
+            // Si hay cualquier error en la petición o procesamiento
+            const container = document.getElementById('videoclub') || document.getElementById('movies');
+
+            // Muestra mensaje de error específico al usuario
+            container.insertAdjacentHTML('beforeend',
+                `<p style="color:red;">Error al cargar el listado de películas: ${error.message}</p>`);
+            actualizarBotonMas(container, true);
+        });
+}
+
+/**
+ * Crea el bloque HTML de una película con su póster y su reproductor
+ *
+ * @param {Object} movie - Película recibida de /video
+ * @returns {HTMLDivElement} - Div listo para añadir al contenedor
+ */
+function crearTarjeta(movie) {
+    // Crea un div contenedor para cada película
+    const div = document.createElement('div');
+
+    // ========== GENERACIÓN DEL HTML DE LA PELÍCULA ==========
+    // Crea la estructura HTML completa para mostrar la película
+    div.innerHTML = `
+                <h2>${movie.title} (${movie.year})</h2>
+                <img src="/poster/${movie.id}" alt="${movie.title}" width="320" style="cursor:pointer;" loading="lazy"/>
+                <p>Año: ${movie.year}</p>
+                <p>Duración: ${movie.duration} minutos</p>
+                <video width="320" controls style="display:none;" playsinline webkit-playsinline preload="none">
+                    <source src="/stream/${movie.id}" type="video/mp4">
+                    Tu navegador no soporta este formato de video.
+                </video>
+            `;
+
+    // ========== CONFIGURACIÓN DE INTERACTIVIDAD ==========
+
+    // Obtiene referencias a los elementos imagen y video
+    const imagen = div.querySelector('img');
+    const video = div.querySelector('video');
+
+    // ========== EVENTO: CLICK EN IMAGEN (REPRODUCIR VIDEO) ==========
+    // Cuando el usuario hace click en el póster de la película
+    imagen.addEventListener('click', function () {
+        // Oculta la imagen del póster
+        imagen.style.display = 'none';
+
+        // Muestra el reproductor de video
+        video.style.display = 'block';
+
+        // Continúa donde se dejó (si hay posición guardada) e inicia la reproducción
+        if (!video.dataset.reanudado) {
+            video.dataset.reanudado = '1';
+            reanudarProgreso(movie.id, video);
         }
-        
-        // Convierte la respuesta a formato JSON
-        return response.json();
-    })
-    .then(data => {
-        // ========== PROCESAMIENTO DE LOS DATOS RECIBIDOS ==========
-        
-        // Obtiene el contenedor donde se mostrarán las películas
-        const container = document.getElementById('movies');
-        
-        // Cambia el ID del contenedor para efectos CSS específicos
-        container.id = 'videoclub';
-        
-        // ========== VALIDACIÓN DE DATOS ==========
-        // Verifica que los datos recibidos sean válidos
-        if (!Array.isArray(data) || data.length === 0) {
-            // Si no hay películas, muestra mensaje informativo
-            container.innerHTML = '<p style="color:red;">No hay películas disponibles.</p>';
-            return;
+        video.play();
+    });
+
+    // ========== EVENTO: AVANCE DE LA REPRODUCCIÓN (GUARDAR POSICIÓN) ==========
+    // timeupdate llega varias veces por segundo: solo se informa cada INTERVALO_PROGRESO_MS
+    let ultimoGuardado = 0;
+    video.addEventListener('timeupdate', function () {
+        const ahora = Date.now();
+        if (ahora - ultimoGuardado >= INTERVALO_PROGRESO_MS) {
+            ultimoGuardado = ahora;
+            guardarProgreso(movie.id, video);
         }
-        
-        // ========== GENERACIÓN DINÁMICA DE CONTENIDO ==========
-        // Procesa cada película en el array recibido
-        data.forEach(movie => {
-            // Crea un div contenedor para cada película
-            const div = document.createElement('div');
-            
-            // ========== GENERACIÓN DEL HTML DE LA PELÍCULA ==========
-            // Crea la estructura HTML completa para mostrar la película
-            div.innerHTML = `
-                        <h2>${movie.title} (${movie.year})</h2>
-                        <img src="${movie.poster}" alt="${movie.title}" width="320" style="cursor:pointer;"/>
-                        <p>Año: ${movie.year}</p>
-                        <p>Duración: ${movie.duration} minutos</p>
-                        <video width="320" controls style="display:none;" playsinline webkit-playsinline>
-                            <source src="/stream?path=${encodeURIComponent(movie.videoUrl)}" type="video/mp4">
-                            Tu navegador no soporta este formato de video.
-                        </video>
-                    `;
-            
-            // Añade el div de la película al contenedor principal
-            container.appendChild(div);
-            
-            // ========== CONFIGURACIÓN DE INTERACTIVIDAD ==========
-            
-            // Obtiene referencias a los elementos imagen y video
-            const imagen = div.querySelector('img');
-            const video = div.querySelector('video');
-            
-            // ========== EVENTO: CLICK EN IMAGEN (REPRODUCIR VIDEO) ==========
-            // Cuando el usuario hace click en el póster de la película
-            imagen.addEventListener('click', function () {
-                // Oculta la imagen del póster
-                imagen.style.display = 'none';
-                
-                // Muestra el reproductor de video
-                video.style.display = 'block';
-                
-                // Inicia la reproducción automáticamente
-                video.play();
-            });
-            
-            // ========== EVENTO: MOUSE SALE DEL VIDEO (PAUSAR) ==========
-            // Cuando el cursor sale del área del video
-            video.addEventListener('mouseleave', function () {
-                // Pausa la reproducción del video
-                video.pause();
-                
-                // Oculta el reproductor de video
-                video.style.display = 'none';
-                
-                // Vuelve a mostrar la imagen del póster
-                imagen.style.display = 'block';
-            });
-            
-            // ========== EVENTO: ERROR EN LA REPRODUCCIÓN ==========
-            // Si hay algún problema cargando o reproduciendo el video
-            video.addEventListener('error', function () {
-                // Añade mensaje de error visible para el usuario
-                div.innerHTML += '<p style="color:red;">Error al cargar el video.</p>';
-            });
-        });
-    })
-    // ========== MANEJO DE ERRORES GLOBALES ==========
-    .catch(error => {
-        // Si hay cualquier error en la petición o procesamiento
-        const container = document.getElementById('movies');
-        
-        // Muestra mensaje de error específico al usuario
-        container.innerHTML = `<p style="color:red;">Error al cargar el listado de películas: ${error.message}</p>`;
-    });
\ No newline at end of file
+    });
+    video.addEventListener('pause', () => guardarProgreso(movie.id, video));
+    video.addEventListener('ended', () => guardarProgreso(movie.id, video));
+
+    // ========== EVENTO: MOUSE SALE DEL VIDEO (PAUSAR) ==========
+    // Cuando el cursor sale del área del video
+    video.addEventListener('mouseleave', function () {
+        // Pausa la reproducción del video
+        video.pause();
+
+        // Oculta el reproductor de video
+        video.style.display = 'none';
+
+        // Vuelve a mostrar la imagen del póster
+        imagen.style.display = 'block';
+    });
+
+    // ========== EVENTO: ERROR EN LA REPRODUCCIÓN ==========
+    // Si hay algún problema cargando o reproduciendo el video
+    video.addEventListener('error', function () {
+        // Añade mensaje de error visible para el usuario
+        div.innerHTML += '<p style="color:red;">Error al cargar el video.</p>';
+    });
+
+    return div;
+}
+
+/**
+ * Crea, muestra u oculta el botón que pide la siguiente página
+ *
+ * @param {HTMLElement} container - Contenedor de las películas
+ * @param {boolean} visible - true si quedan películas por cargar
+ */
+function actualizarBotonMas(container, visible) {
+    let botonMas = document.getElementById('cargarMas');
+    if (!botonMas) {
+        botonMas = document.createElement('button');
+        botonMas.id = 'cargarMas';
+        botonMas.textContent = 'Cargar más';
+        botonMas.addEventListener('click', cargarPagina);
+        container.insertAdjacentElement('afterend', botonMas);
+    }
+    botonMas.disabled = false;
+    botonMas.style.display = visible ? 'block' : 'none';
+}
+
+// Primera página nada más cargar el script
+cargarPagina();
@@ -0,0 +1,133 @@
+package kabadev.accesos;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+import kabadev.servidor.IControladorHttp;
+import kabadev.servidor.Respuestas;
+
+/**
+ * Pruebas del anillo sin cerrojos, de la rotación y del formato de las líneas
+ */
+public class RegistroAccesosTest {
+
+    /** El "relleno" de las pruebas guarda un número en el campo codigo */
+    private static final AnilloAccesos.Relleno<Void> NUMERO = (entrada, nada, valor) -> entrada.codigo = (int) valor;
+
+    @TempDir
+    Path carpeta;
+
+    @Test
+    public void elAnilloLlenoRechazaYAlConsumirVuelveAAdmitir() {
+        AnilloAccesos anillo = new AnilloAccesos(3);
+        assertEquals(4, anillo.capacidad());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(anillo.publicar(NUMERO, null, i));
+        }
+        assertFalse(anillo.publicar(NUMERO, null, 99));
+        assertEquals(4, anillo.pendientes());
+
+        List<Integer> leidas = new ArrayList<>();
+        assertEquals(2, anillo.consumir(entrada -> leidas.add(entrada.codigo), 2));
+        assertTrue(anillo.publicar(NUMERO, null, 4));
+        assertEquals(3, anillo.consumir(entrada -> leidas.add(entrada.codigo), 100));
+        assertEquals(List.of(0, 1, 2, 3, 4), leidas);
+        assertEquals(0, anillo.pendientes());
+    }
+
+    @Test
+    public void variosProductoresNoPierdenNiRepitenEntradas() throws InterruptedException {
+        AnilloAccesos anillo = new AnilloAccesos(64);
+        int productores = 4;
+        int porProductor = 20_000;
+        Set<Integer> vistas = new HashSet<>();
+        AtomicInteger terminados = new AtomicInteger();
+
+        List<Thread> hilos = new ArrayList<>();
+        for (int p = 0; p < productores; p++) {
+            int base = p * porProductor;
+            Thread hilo = new Thread(() -> {
+                for (int i = 0; i < porProductor; i++) {
+                    while (!anillo.publicar(NUMERO, null, base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                terminados.incrementAndGet();
+            });
+            hilos.add(hilo);
+            hilo.start();
+        }
+        while (terminados.get() < productores || anillo.pendientes() > 0) {
+            anillo.consumir(entrada -> assertTrue(vistas.add(entrada.codigo)), 16);
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        assertEquals(productores * porProductor, vistas.size());
+    }
+
+    @Test
+    public void elArchivoRotaYConservaLasCopias() throws IOException {
+        Path activo = carpeta.resolve("accesos.log");
+        try (ArchivoRotativo archivo = new ArchivoRotativo(activo, 10, 2)) {
+            for (String linea : new String[] {"uno\n", "dos\n", "tres\n", "cuatro\n", "cinco\n"}) {
+                archivo.escribir(ByteBuffer.wrap(linea.getBytes(StandardCharsets.US_ASCII)));
+            }
+        }
+        assertEquals("cinco\n", Files.readString(activo));
+        assertEquals("cuatro\n", Files.readString(carpeta.resolve("accesos.log.1")));
+        assertEquals("tres\n", Files.readString(carpeta.resolve("accesos.log.2")));
+        assertFalse(Files.exists(carpeta.resolve("accesos.log.3")));
+    }
+
+    @Test
+    public void cadaPeticionEsUnaLineaJson() throws IOException {
+        Path activo = carpeta.resolve("accesos.log");
+        RegistroAccesos registro = new RegistroAccesos(activo, 16, 1024 * 1024, 1, RegistroAccesos.Politica.BLOQUEAR);
+        IControladorHttp controlador = registro.envolver("/stream/{id}",
+                intercambio -> Respuestas.texto(intercambio, 206, "trozo"));
+
+        HttpServer servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        servidor.createContext("/", controlador::controlar);
+        servidor.start();
+        try {
+            URI uri = URI.create("http://127.0.0.1:" + servidor.getAddress().getPort() + "/stream/7?t=1.5&q=%22x%22");
+            HttpURLConnection conexion = (HttpURLConnection) uri.toURL().openConnection();
+            conexion.setRequestProperty("Range", "bytes=0-");
+            assertEquals(206, conexion.getResponseCode());
+            conexion.getInputStream().readAllBytes();
+        } finally {
+            servidor.stop(0);
+            registro.close();
+        }
+
+        List<String> lineas = Files.readAllLines(activo);
+        assertEquals(1, lineas.size());
+        String linea = lineas.get(0);
+        assertTrue(linea.matches("\\{\"ts\":\"\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}Z\",.*"), linea);
+        assertTrue(linea.contains("\"client\":\"127.0.0.1\",\"method\":\"GET\",\"path\":\"/stream/7?t=1.5&q=%22x%22\","
+                + "\"status\":206,\"bytes\":5,\"range\":\"bytes=0-\",\"ms\":"), linea);
+        assertEquals(1, registro.escritas());
+        assertEquals(0, registro.descartadas());
+    }
+}
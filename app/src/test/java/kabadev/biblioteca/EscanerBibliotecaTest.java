@@ -0,0 +1,78 @@
+package kabadev.biblioteca;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Pruebas del escaneo incremental y del índice guardado en disco
+ */
+public class EscanerBibliotecaTest {
+
+    @TempDir
+    Path carpeta;
+
+    @Test
+    public void escaneoIncrementalSoloListaCarpetasCambiadas() throws IOException {
+        Path asterix = Files.createDirectories(carpeta.resolve("Asterix y Obelix"));
+        Path otras = Files.createDirectories(carpeta.resolve("Otras"));
+        Files.write(asterix.resolve("Asterix El Galo.mp4"), new byte[300_000]);
+        Files.write(otras.resolve("Titanic.MP4"), new byte[10]);
+        Files.writeString(otras.resolve("notas.txt"), "no es un vídeo");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        EscanerBiblioteca.Resultado completo = EscanerBiblioteca.escanear(List.of(carpeta), IndiceBiblioteca.VACIO,
+                pool);
+        assertEquals(2, completo.indice().tamano());
+        assertEquals(3, completo.carpetasListadas());
+        assertEquals(2, completo.huellasCalculadas());
+
+        // Un vídeo nuevo en "Otras": solo esa carpeta se vuelve a listar
+        Files.write(otras.resolve("Avatar.mp4"), new byte[20]);
+        Files.setLastModifiedTime(otras, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+        EscanerBiblioteca.Resultado incremental = EscanerBiblioteca.escanear(List.of(carpeta), completo.indice(),
+                pool);
+        assertEquals(3, incremental.indice().tamano());
+        assertEquals(1, incremental.carpetasListadas());
+        assertEquals(2, incremental.carpetasReutilizadas());
+        assertEquals(1, incremental.huellasCalculadas());
+        pool.shutdown();
+
+        // La ruta de Windows del catálogo se localiza por carpeta y nombre
+        ArchivoMedio galo = incremental.indice().resolver("D:\\Videos\\Asterix y Obelix\\Asterix El Galo.mp4");
+        assertNotNull(galo);
+        assertEquals(300_000, galo.tamano());
+        assertNotNull(incremental.indice().resolver("titanic.mp4"));
+        assertNull(incremental.indice().resolver("D:\\Videos\\Gladiator.mp4"));
+
+        // El índice guardado se lee igual
+        Path archivoIndice = carpeta.resolve("indice.idx");
+        incremental.indice().escribir(archivoIndice);
+        IndiceBiblioteca leido = IndiceBiblioteca.leer(archivoIndice);
+        assertEquals(3, leido.tamano());
+        assertEquals(galo, leido.buscarRuta(galo.ruta()));
+    }
+
+    @Test
+    public void laHuellaCambiaConElContenido() throws IOException {
+        Path video = carpeta.resolve("a.mp4");
+        byte[] contenido = new byte[500_000];
+        Files.write(video, contenido);
+        long original = EscanerBiblioteca.calcularHuella(video, contenido.length);
+
+        contenido[contenido.length - 1] = 1;
+        Files.write(video, contenido);
+        assertNotEquals(original, EscanerBiblioteca.calcularHuella(video, contenido.length));
+    }
+}
@@ -0,0 +1,55 @@
+package kabadev.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Pruebas del conteo de usos y la expulsión de la caché de canales
+ */
+public class CacheCanalesTest {
+
+    @TempDir
+    Path carpeta;
+
+    @Test
+    public void unCanalEnUsoNoSeCierraAlExpulsarlo() throws IOException {
+        Path a = Files.writeString(carpeta.resolve("a.mp4"), "aaaa");
+        Path b = Files.writeString(carpeta.resolve("b.mp4"), "bb");
+        Path c = Files.writeString(carpeta.resolve("c.mp4"), "c");
+
+        try (CacheCanales cache = new CacheCanales(1, 60)) {
+            CanalAbierto primero = cache.adquirir(a);
+            try (CanalAbierto segundo = cache.adquirir(a)) {
+                assertSame(primero, segundo);
+                assertEquals(4, segundo.tamano());
+            }
+
+            // "a" sigue en uso: abrir "b" supera el máximo pero no puede cerrarlo
+            try (CanalAbierto otro = cache.adquirir(b)) {
+                assertEquals(2, cache.abiertos());
+            }
+            assertTrue(primero.canal().isOpen());
+
+            // Al liberar "a" ya puede expulsarse: abrir "c" cierra los inactivos más antiguos
+            primero.close();
+            cache.adquirir(b).close();
+            cache.adquirir(c).close();
+            assertEquals(1, cache.abiertos());
+            assertFalse(primero.canal().isOpen());
+
+            assertThrows(NoSuchFileException.class, () -> cache.adquirir(carpeta.resolve("no-existe.mp4")));
+            assertThrows(NoSuchFileException.class, () -> cache.adquirir(carpeta));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package kabadev.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import kabadev.servidor.ContenidoRangos;
+import kabadev.servidor.SumideroRegiones;
+
+/**
+ * Pruebas de la caché de trozos: contenido correcto, aciertos y memoria acotada
+ */
+public class CacheTrozosTest {
+
+    private static final int TROZO = 4096;
+
+    @TempDir
+    Path carpeta;
+
+    @Test
+    public void losRangosSalenIgualQueDelArchivoYSeReutilizanLosTrozos() throws IOException {
+        byte[] datos = new byte[TROZO * 10 + 123];
+        new Random(7).nextBytes(datos);
+        Path video = Files.write(carpeta.resolve("a.mp4"), datos);
+
+        try (CacheCanales canales = new CacheCanales(4, 60);
+                CacheTrozos trozos = new CacheTrozos(canales, TROZO, TROZO * 4L, 2, 1);
+                CanalAbierto canal = canales.adquirir(video)) {
+
+            ContenidoRangos contenido = trozos.contenido(canal);
+            assertArrayEquals(datos, leer(contenido, 0, datos.length));
+
+            // Un rango que cruza trozos, dentro de los que acaban de quedar en memoria
+            long inicio = TROZO * 8L + 100;
+            assertArrayEquals(Arrays.copyOfRange(datos, (int) inicio, (int) inicio + TROZO),
+                    leer(trozos.contenido(canal), inicio, TROZO));
+            assertTrue(trozos.aciertos() >= 2);
+
+            // Nunca se pasa de la memoria configurada aunque el archivo sea mayor
+            assertTrue(trozos.trozos() <= 4);
+            assertTrue(trozos.memoria() <= TROZO * 4L + TROZO);
+
+            // Último trozo incompleto
+            assertArrayEquals(Arrays.copyOfRange(datos, datos.length - 50, datos.length),
+                    leer(trozos.contenido(canal), datos.length - 50, 50));
+        }
+    }
+
+    @Test
+    public void unTrozoVistoDosVecesSobreviveAUnaLecturaSecuencialLarga() throws IOException {
+        byte[] popular = new byte[TROZO];
+        Arrays.fill(popular, (byte) 'p');
+        Path a = Files.write(carpeta.resolve("popular.mp4"), popular);
+        Path b = Files.write(carpeta.resolve("larga.mp4"), new byte[TROZO * 20]);
+
+        try (CacheCanales canales = new CacheCanales(4, 60);
+                CacheTrozos trozos = new CacheTrozos(canales, TROZO, TROZO * 10L, 0, 1);
+                CanalAbierto primero = canales.adquirir(a);
+                CanalAbierto segundo = canales.adquirir(b)) {
+
+            leer(trozos.contenido(primero), 0, TROZO);
+            leer(trozos.contenido(primero), 0, TROZO);
+            leer(trozos.contenido(segundo), 0, TROZO * 20);
+
+            long aciertos = trozos.aciertos();
+            assertArrayEquals(popular, leer(trozos.contenido(primero), 0, TROZO));
+            assertEquals(aciertos + 1, trozos.aciertos());
+        }
+    }
+
+    @Test
+    public void conTodosLosTrozosEnUsoSeEnviaDelArchivoSinReservarMasMemoria() throws IOException {
+        byte[] datos = new byte[TROZO * 4];
+        new Random(11).nextBytes(datos);
+        Path video = Files.write(carpeta.resolve("lentos.mp4"), datos);
+
+        try (CacheCanales canales = new CacheCanales(4, 60);
+                CacheTrozos trozos = new CacheTrozos(canales, TROZO, TROZO * 2L, 0, 1);
+                CanalAbierto canal = canales.adquirir(video)) {
+
+            // Cuatro espectadores lentos: cada envío sigue a medias (su trozo en uso) mientras empieza el siguiente
+            ByteArrayOutputStream[] salidas = new ByteArrayOutputStream[4];
+            long[] pico = new long[1];
+            enviarAnidados(trozos, trozos.contenido(canal), salidas, 0, pico);
+
+            assertEquals(TROZO * 2L, pico[0]);
+            assertEquals(2, trozos.sinMemoria());
+            for (int i = 0; i < salidas.length; i++) {
+                assertArrayEquals(Arrays.copyOfRange(datos, i * TROZO, (i + 1) * TROZO), salidas[i].toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void conElMotorNioElArchivoSaleSinPasarPorLaCache() throws IOException {
+        Path video = Files.write(carpeta.resolve("nio.mp4"), new byte[TROZO * 3]);
+
+        try (CacheCanales canales = new CacheCanales(4, 60);
+                CacheTrozos trozos = new CacheTrozos(canales, TROZO, TROZO * 4L, 2, 1);
+                CanalAbierto canal = canales.adquirir(video)) {
+
+            SumideroPrueba sumidero = new SumideroPrueba();
+            trozos.contenido(canal).transferir(100, TROZO * 2L, sumidero);
+
+            assertEquals(TROZO * 2L, sumidero.enviados);
+            assertEquals(0, trozos.fallos());
+            assertEquals(0, trozos.memoria());
+        }
+    }
+
+    /**
+     * Envía el trozo i y, desde su primera escritura, el trozo i + 1
+     */
+    private static void enviarAnidados(CacheTrozos trozos, ContenidoRangos contenido, ByteArrayOutputStream[] salidas,
+            int i, long[] pico) throws IOException {
+        if (i == salidas.length) {
+            pico[0] = Math.max(pico[0], trozos.memoria());
+            return;
+        }
+        salidas[i] = new ByteArrayOutputStream() {
+            private boolean primera = true;
+
+            @Override
+            public synchronized void write(byte[] b, int desde, int longitud) {
+                if (primera) {
+                    primera = false;
+                    try {
+                        enviarAnidados(trozos, contenido, salidas, i + 1, pico);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                super.write(b, desde, longitud);
+            }
+        };
+        contenido.transferir((long) i * TROZO, TROZO, salidas[i]);
+    }
+
+    /** Cuerpo que solo admite regiones de archivo, como el del motor NIO */
+    private static final class SumideroPrueba extends OutputStream implements SumideroRegiones {
+        long enviados;
+
+        @Override
+        public void enviarRegion(FileChannel canal, long posicion, long longitud) {
+            enviados += longitud;
+        }
+
+        @Override
+        public void enviarBuffer(ByteBuffer datos) {
+            throw new AssertionError("La caché no debe intervenir con el motor NIO");
+        }
+
+        @Override
+        public void write(int b) {
+            throw new AssertionError("La caché no debe intervenir con el motor NIO");
+        }
+    }
+
+    private static byte[] leer(ContenidoRangos contenido, long posicion, int longitud) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        contenido.transferir(posicion, longitud, salida);
+        return salida.toByteArray();
+    }
+}
@@ -0,0 +1,210 @@
+package kabadev.carga;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import kabadev.metricas.Histograma;
+
+/**
+ * Un espectador simulado: reproduce vídeos pidiéndolos por rangos como un
+ * reproductor de navegador
+ *
+ * - Empieza con un rango desde el byte 0 y arranca la reproducción al recibirlo
+ * - Pide los rangos siguientes mientras tenga menos de bufferSegundos por
+ *   delante; con el búfer lleno espera consumiéndolo a tasaBytes por segundo
+ * - Antes de cada rango salta con probabilidad probabilidadSalto a otra posición
+ * - Si la reproducción alcanza el final de lo descargado cuenta un atasco y
+ *   el tiempo que estuvo parado
+ * - Al terminar un vídeo elige otro, hasta que se acaba la prueba
+ */
+final class Espectador implements Runnable {
+
+    /**
+     * Parámetros comunes a todos los espectadores
+     *
+     * @param rango Bytes de cada petición Range
+     * @param tasaBytes Bytes por segundo que consume la reproducción
+     * @param bufferSegundos Segundos de vídeo que el reproductor intenta tener descargados
+     * @param probabilidadSalto Probabilidad (0-1) de saltar en lugar de pedir el rango siguiente
+     * @param finNanos Instante (System.nanoTime) en que termina la prueba
+     */
+    record Parametros(long rango, long tasaBytes, int bufferSegundos, double probabilidadSalto, long finNanos) {
+    }
+
+    private static final long SEGUNDO = TimeUnit.SECONDS.toNanos(1);
+
+    private final HttpClient cliente;
+    private final URI base;
+    private final List<Integer> videos;
+    private final Parametros parametros;
+    private final ResultadosCarga resultados;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    // Estado de la reproducción en curso
+    private long tamano;
+    private long descargado;
+    private long posicionInicio;
+    private long inicioNanos;
+    private boolean atascado;
+
+    Espectador(HttpClient cliente, URI base, List<Integer> videos, Parametros parametros, ResultadosCarga resultados) {
+        this.cliente = cliente;
+        this.base = base;
+        this.videos = videos;
+        this.parametros = parametros;
+        this.resultados = resultados;
+    }
+
+    @Override
+    public void run() {
+        ThreadLocalRandom azar = ThreadLocalRandom.current();
+        while (System.nanoTime() < parametros.finNanos()) {
+            int id = videos.get(azar.nextInt(videos.size()));
+            try {
+                reproducir(id, azar);
+            } catch (IOException e) {
+                resultados.errores.increment();
+                dormir(TimeUnit.MILLISECONDS.toNanos(100));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (atascado) {
+            resultados.espectadoresAtascados.increment();
+        }
+    }
+
+    private void reproducir(int id, ThreadLocalRandom azar) throws IOException, InterruptedException {
+        URI uri = base.resolve("/stream/" + id);
+        resultados.reproducciones.increment();
+
+        tamano = -1;
+        descargado = pedir(uri, 0, resultados.primerByteInicio);
+        posicionInicio = 0;
+        inicioNanos = System.nanoTime();
+
+        while (descargado < tamano && System.nanoTime() < parametros.finNanos()) {
+            // Con el búfer lleno el reproductor espera a consumirlo antes de pedir más
+            long porDelante = (descargado - reproducido(System.nanoTime())) * SEGUNDO / parametros.tasaBytes();
+            long espera = porDelante - parametros.bufferSegundos() * SEGUNDO;
+            if (espera > 0) {
+                dormir(Math.min(espera, parametros.finNanos() - System.nanoTime()));
+                continue;
+            }
+
+            if (azar.nextDouble() < parametros.probabilidadSalto()) {
+                // El usuario arrastra la barra: se descarta el búfer y se empieza en otro rango
+                long destino = azar.nextLong(tamano) / parametros.rango() * parametros.rango();
+                resultados.saltos.increment();
+                descargado = destino + pedir(uri, destino, resultados.primerByteSalto);
+                posicionInicio = destino;
+                inicioNanos = System.nanoTime();
+                continue;
+            }
+
+            long anterior = descargado;
+            descargado += pedir(uri, descargado, resultados.primerByteRango);
+            comprobarAtasco(anterior);
+        }
+
+        // Todo descargado: se sigue viendo lo que queda en el búfer antes de elegir otro vídeo
+        long restante = (tamano - reproducido(System.nanoTime())) * SEGUNDO / parametros.tasaBytes();
+        dormir(Math.min(restante, parametros.finNanos() - System.nanoTime()));
+    }
+
+    /**
+     * Bytes que se habrían reproducido hasta ahora si nunca faltaran datos
+     */
+    private long reproducido(long ahora) {
+        return posicionInicio + (ahora - inicioNanos) * parametros.tasaBytes() / SEGUNDO;
+    }
+
+    /**
+     * Si la reproducción llegó al final de lo que había antes de esta petición
+     * estuvo parada: se cuenta el atasco y se reanuda desde ahí
+     */
+    private void comprobarAtasco(long disponibleAntes) {
+        long ahora = System.nanoTime();
+        long exceso = reproducido(ahora) - disponibleAntes;
+        if (exceso > 0) {
+            resultados.atascos.increment();
+            resultados.nanosAtascado.add(exceso * SEGUNDO / parametros.tasaBytes());
+            atascado = true;
+            posicionInicio = disponibleAntes;
+            inicioNanos = ahora;
+        }
+    }
+
+    /**
+     * Pide un rango, lo lee entero y registra el tiempo hasta el primer byte
+     *
+     * @return Bytes recibidos
+     */
+    private long pedir(URI uri, long desde, Histograma primerByte) throws IOException, InterruptedException {
+        long hasta = desde + parametros.rango() - 1;
+        HttpRequest peticion = HttpRequest.newBuilder(uri)
+                .header("Range", "bytes=" + desde + "-" + hasta)
+                .timeout(Duration.ofSeconds(30))
+                .build();
+
+        long inicio = System.nanoTime();
+        HttpResponse<InputStream> respuesta = cliente.send(peticion, HttpResponse.BodyHandlers.ofInputStream());
+        resultados.peticiones.increment();
+
+        long recibidos = 0;
+        try (InputStream cuerpo = respuesta.body()) {
+            if (respuesta.statusCode() != 206 && respuesta.statusCode() != 200) {
+                cuerpo.transferTo(OutputStream.nullOutputStream());
+                throw new IOException("Respuesta " + respuesta.statusCode() + " para " + uri);
+            }
+            leerTamano(respuesta);
+
+            int leidos;
+            while ((leidos = cuerpo.read(buffer)) != -1) {
+                if (recibidos == 0 && leidos > 0) {
+                    primerByte.registrar(System.nanoTime() - inicio);
+                }
+                recibidos += leidos;
+            }
+        }
+        resultados.bytes.add(recibidos);
+        return recibidos;
+    }
+
+    /**
+     * Tamaño total del vídeo: "bytes 0-1048575/73400320" o, si el servidor
+     * respondió 200, la longitud del cuerpo
+     */
+    private void leerTamano(HttpResponse<InputStream> respuesta) {
+        if (tamano >= 0) {
+            return;
+        }
+        String rango = respuesta.headers().firstValue("Content-Range").orElse(null);
+        if (rango != null && rango.lastIndexOf('/') >= 0) {
+            tamano = Long.parseLong(rango.substring(rango.lastIndexOf('/') + 1).trim());
+        } else {
+            tamano = respuesta.headers().firstValueAsLong("Content-Length").orElse(0);
+        }
+    }
+
+    private static void dormir(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
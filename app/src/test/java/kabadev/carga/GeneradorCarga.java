@@ -0,0 +1,213 @@
+package kabadev.carga;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import kabadev.App;
+import kabadev.configuracion.Configuracion;
+import kabadev.servidor.IServidorHttp;
+
+/**
+ * Prueba de carga de extremo a extremo con espectadores simulados
+ *
+ * Arranca App en este mismo proceso en un puerto libre (o usa un servidor ya
+ * en marcha con -Ddogster.carga.url) y lanza un hilo virtual por espectador
+ * con java.net.http.HttpClient. Al final muestra caudal, tiempo hasta el
+ * primer byte (p50/p99), atascos de reproducción y el uso máximo del servidor
+ * leído de /metrics
+ *
+ *   mvn -Pcarga test-compile exec:exec
+ *   mvn -Pcarga test-compile exec:exec -Dcarga.argumentos="-Ddogster.carga.espectadores=200 -Ddogster.motor=nio"
+ *
+ * Parámetros (-Ddogster.carga.*):
+ * - espectadores (50), duracion en segundos (30), rampa en segundos (5)
+ * - rango: bytes por petición (1 MB); tasa: bytes/s de la reproducción (625000 = 5 Mbit/s)
+ * - buffer: segundos por delante que mantiene el reproductor (20)
+ * - saltos: porcentaje de rangos en los que se salta a otra posición (5)
+ * - videos (4) y tamano en MB (64) de los vídeos temporales, o video=/ruta.mp4 para copiar uno real
+ * - url: servidor externo; sin ella el resto de -Ddogster.* configura el servidor local
+ * - p99: milisegundos máximos de primer byte al empezar y atascos: máximo de atascos;
+ *   si se superan (o hay errores) el proceso termina con código 1
+ */
+public final class GeneradorCarga {
+
+    private GeneradorCarga() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int espectadores = Configuracion.entero("carga.espectadores", 50);
+        int duracion = Configuracion.entero("carga.duracion", 30);
+        int rampa = Configuracion.entero("carga.rampa", 5);
+        long rango = Configuracion.largo("carga.rango", 1024 * 1024);
+        long tasa = Configuracion.largo("carga.tasa", 625_000);
+        int buffer = Configuracion.entero("carga.buffer", 20);
+        int saltos = Configuracion.entero("carga.saltos", 5);
+        long p99Maximo = Configuracion.largo("carga.p99", -1);
+        long atascosMaximo = Configuracion.largo("carga.atascos", -1);
+
+        // ========== SERVIDOR ==========
+        Path carpeta = null;
+        IServidorHttp servidor = null;
+        URI base;
+        String url = Configuracion.texto("carga.url", null);
+        if (url != null) {
+            base = URI.create(url);
+        } else {
+            carpeta = Files.createTempDirectory("dogster-carga");
+            Path catalogo = prepararVideos(carpeta, Configuracion.entero("carga.videos", 4),
+                    Configuracion.largo("carga.tamano", 64) * 1024 * 1024, Configuracion.ruta("carga.video"));
+            System.setProperty("dogster.catalogo", catalogo.toString());
+            if (Configuracion.texto("puerto", null) == null) {
+                System.setProperty("dogster.puerto", "0");
+            }
+            servidor = App.iniciar();
+            base = URI.create("http://127.0.0.1:" + servidor.obtenerDireccion().getPort());
+        }
+
+        HttpClient cliente = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        List<Integer> videos = leerVideos(cliente, base);
+        if (videos.isEmpty()) {
+            throw new IllegalStateException("El catálogo de " + base + " no tiene películas");
+        }
+
+        // ========== ESPECTADORES ==========
+        System.out.printf("%nPrueba de carga contra %s: %d espectadores, %d s, %d vídeos%n", base, espectadores,
+                duracion, videos.size());
+        ResultadosCarga resultados = new ResultadosCarga();
+        MuestreoServidor muestreo = new MuestreoServidor(cliente, base);
+        Thread.ofVirtual().name("muestreo-servidor").start(muestreo);
+
+        long inicio = System.nanoTime();
+        Espectador.Parametros parametros = new Espectador.Parametros(rango, tasa, buffer, saltos / 100.0,
+                inicio + TimeUnit.SECONDS.toNanos(duracion));
+
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < espectadores; i++) {
+                // Las llegadas se reparten durante la rampa para no empezar todos en el mismo milisegundo
+                long retraso = TimeUnit.SECONDS.toNanos(rampa) * i / Math.max(1, espectadores);
+                Espectador espectador = new Espectador(cliente, base, videos, parametros, resultados);
+                hilos.submit(() -> {
+                    TimeUnit.NANOSECONDS.sleep(retraso);
+                    espectador.run();
+                    return null;
+                });
+            }
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        muestreo.detener();
+
+        // ========== INFORME ==========
+        System.out.println();
+        System.out.print(resultados.informe(segundos));
+        System.out.print(muestreo.informe());
+
+        boolean correcto = resultados.errores.sum() == 0;
+        if (p99Maximo >= 0 && ResultadosCarga.milisegundos(resultados.primerByteInicio.percentil(99)) > p99Maximo) {
+            System.out.println("FALLO: p99 del primer byte por encima de " + p99Maximo + " ms");
+            correcto = false;
+        }
+        if (atascosMaximo >= 0 && resultados.atascos.sum() > atascosMaximo) {
+            System.out.println("FALLO: más de " + atascosMaximo + " atascos");
+            correcto = false;
+        }
+
+        if (servidor != null) {
+            servidor.detener(0);
+        }
+        if (carpeta != null) {
+            borrar(carpeta);
+        }
+        System.exit(correcto ? 0 : 1);
+    }
+
+    /**
+     * Escribe los vídeos de prueba y un catálogo que apunta a ellos
+     *
+     * @param original Vídeo real a copiar, o null para generar datos aleatorios
+     * @return Ruta del catálogo
+     */
+    private static Path prepararVideos(Path carpeta, int cantidad, long tamano, Path original) throws IOException {
+        List<Map<String, Object>> peliculas = new ArrayList<>();
+        byte[] bloque = new byte[1024 * 1024];
+        Random azar = new Random(1);
+
+        for (int id = 1; id <= cantidad; id++) {
+            Path video = carpeta.resolve("video-" + id + ".mp4");
+            if (original != null) {
+                Files.copy(original, video, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (FileChannel escritura = FileChannel.open(video, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+                    for (long escritos = 0; escritos < tamano; escritos += bloque.length) {
+                        azar.nextBytes(bloque);
+                        escritura.write(ByteBuffer.wrap(bloque, 0, (int) Math.min(bloque.length, tamano - escritos)));
+                    }
+                }
+            }
+
+            Map<String, Object> pelicula = new LinkedHashMap<>();
+            pelicula.put("id", id);
+            pelicula.put("title", "Carga " + id);
+            pelicula.put("year", 2024);
+            pelicula.put("duration", 90);
+            pelicula.put("poster", "");
+            pelicula.put("videoUrl", video.toString());
+            peliculas.add(pelicula);
+        }
+
+        Path catalogo = carpeta.resolve("catalogo.json");
+        new ObjectMapper().writeValue(catalogo.toFile(), peliculas);
+        return catalogo;
+    }
+
+    private static List<Integer> leerVideos(HttpClient cliente, URI base) throws IOException, InterruptedException {
+        HttpResponse<InputStream> respuesta = cliente.send(HttpRequest.newBuilder(base.resolve("/video")).build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        List<Integer> ids = new ArrayList<>();
+        try (InputStream cuerpo = respuesta.body()) {
+            if (respuesta.statusCode() != 200) {
+                throw new IOException("GET /video respondió " + respuesta.statusCode());
+            }
+            for (JsonNode pelicula : new ObjectMapper().readTree(cuerpo)) {
+                ids.add(pelicula.get("id").asInt());
+            }
+        }
+        return ids;
+    }
+
+    private static void borrar(Path carpeta) throws IOException {
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            for (Path archivo : archivos.toList()) {
+                Files.deleteIfExists(archivo);
+            }
+        }
+        Files.deleteIfExists(carpeta);
+    }
+}
@@ -0,0 +1,103 @@
+package kabadev.carga;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lee /metrics del servidor una vez por segundo y guarda el máximo de cada
+ * indicador de uso (hilos, heap, memoria directa, ocupación del ejecutor)
+ *
+ * Con el servidor en el mismo proceso el heap y los hilos incluyen también
+ * los del cliente de la prueba
+ */
+final class MuestreoServidor implements Runnable {
+
+    /** Indicador de /metrics y texto con el que aparece en el informe */
+    private static final Map<String, String> INDICADORES = new LinkedHashMap<>();
+
+    static {
+        INDICADORES.put("dogster_jvm_hilos", "hilos");
+        INDICADORES.put("dogster_jvm_heap_usado_bytes", "heap MB");
+        INDICADORES.put("dogster_jvm_directa_bytes", "directa MB");
+        INDICADORES.put("dogster_ejecutor_hilos_ocupados", "ejecutor ocupados");
+        INDICADORES.put("dogster_ejecutor_cola", "cola");
+        INDICADORES.put("dogster_streams_activos", "streams");
+        INDICADORES.put("dogster_conexiones_abiertas", "conexiones");
+    }
+
+    private final HttpClient cliente;
+    private final URI metricas;
+    private final Map<String, Long> maximos = new ConcurrentHashMap<>();
+    private volatile boolean activo = true;
+
+    MuestreoServidor(HttpClient cliente, URI base) {
+        this.cliente = cliente;
+        this.metricas = base.resolve("/metrics");
+    }
+
+    void detener() {
+        activo = false;
+    }
+
+    @Override
+    public void run() {
+        HttpRequest peticion = HttpRequest.newBuilder(metricas).timeout(Duration.ofSeconds(5)).build();
+        while (activo) {
+            try {
+                HttpResponse<String> respuesta = cliente.send(peticion, HttpResponse.BodyHandlers.ofString());
+                if (respuesta.statusCode() == 200) {
+                    registrar(respuesta.body());
+                }
+                Thread.sleep(1000);
+            } catch (IOException e) {
+                // Un muestreo perdido no invalida la prueba
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void registrar(String texto) {
+        for (String linea : texto.split("\n")) {
+            int espacio = linea.indexOf(' ');
+            if (linea.startsWith("#") || espacio < 0 || !INDICADORES.containsKey(linea.substring(0, espacio))) {
+                continue;
+            }
+            try {
+                long valor = Long.parseLong(linea.substring(espacio + 1).trim());
+                maximos.merge(linea.substring(0, espacio), valor, Math::max);
+            } catch (NumberFormatException e) {
+                // Valor no entero: no es uno de los indicadores que se muestrean
+            }
+        }
+    }
+
+    /**
+     * @return Línea del informe con los máximos vistos
+     */
+    String informe() {
+        if (maximos.isEmpty()) {
+            return "Servidor: /metrics no disponible\n";
+        }
+        StringBuilder texto = new StringBuilder("Servidor (máximos):");
+        INDICADORES.forEach((nombre, etiqueta) -> {
+            Long valor = maximos.get(nombre);
+            if (valor != null) {
+                texto.append(' ').append(etiqueta).append(' ').append(nombre.endsWith("_bytes")
+                        ? String.format(Locale.ROOT, "%.1f", valor / (1024.0 * 1024.0))
+                        : String.valueOf(valor)).append(',');
+            }
+        });
+        texto.setLength(texto.length() - 1);
+        return texto.append('\n').toString();
+    }
+}
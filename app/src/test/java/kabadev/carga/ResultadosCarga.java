@@ -0,0 +1,66 @@
+package kabadev.carga;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import kabadev.metricas.Histograma;
+
+/**
+ * Resultados acumulados por todos los espectadores de una prueba de carga
+ *
+ * Los espectadores escriben a la vez desde sus hilos virtuales: contadores
+ * LongAdder e histogramas sin cerrojos, igual que MetricasHttp en el servidor
+ */
+final class ResultadosCarga {
+
+    final Histograma primerByteInicio = new Histograma();
+    final Histograma primerByteSalto = new Histograma();
+    final Histograma primerByteRango = new Histograma();
+
+    final LongAdder bytes = new LongAdder();
+    final LongAdder peticiones = new LongAdder();
+    final LongAdder errores = new LongAdder();
+    final LongAdder reproducciones = new LongAdder();
+    final LongAdder saltos = new LongAdder();
+    final LongAdder atascos = new LongAdder();
+    final LongAdder nanosAtascado = new LongAdder();
+    final LongAdder espectadoresAtascados = new LongAdder();
+
+    /**
+     * @param segundos Duración real de la prueba
+     * @return Informe de texto con el formato de la consola
+     */
+    String informe(double segundos) {
+        StringBuilder texto = new StringBuilder(1024);
+        double megas = bytes.sum() / (1024.0 * 1024.0);
+        linea(texto, "Transferido: %.1f MB (%.1f MB/s, %.1f Mbit/s)", megas, megas / segundos,
+                bytes.sum() * 8 / segundos / 1_000_000);
+        linea(texto, "Peticiones: %d (%.1f/s), errores: %d", peticiones.sum(), peticiones.sum() / segundos,
+                errores.sum());
+        linea(texto, "Reproducciones: %d, saltos: %d", reproducciones.sum(), saltos.sum());
+        percentiles(texto, "Primer byte al empezar", primerByteInicio);
+        percentiles(texto, "Primer byte tras saltar", primerByteSalto);
+        percentiles(texto, "Primer byte por rango", primerByteRango);
+        linea(texto, "Atascos: %d (%.1f s parado en total, %d espectadores afectados)", atascos.sum(),
+                nanosAtascado.sum() / 1e9, espectadoresAtascados.sum());
+        return texto.toString();
+    }
+
+    private static void percentiles(StringBuilder texto, String nombre, Histograma histograma) {
+        if (histograma.cantidad() == 0) {
+            linea(texto, "%s: sin muestras", nombre);
+            return;
+        }
+        linea(texto, "%s: p50 %.1f ms, p99 %.1f ms (%d muestras)", nombre, milisegundos(histograma.percentil(50)),
+                milisegundos(histograma.percentil(99)), histograma.cantidad());
+    }
+
+    static double milisegundos(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static void linea(StringBuilder texto, String formato, Object... valores) {
+        texto.append(String.format(Locale.ROOT, formato, valores)).append('\n');
+    }
+}
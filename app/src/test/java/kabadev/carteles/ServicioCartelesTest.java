@@ -0,0 +1,98 @@
+package kabadev.carteles;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import kabadev.catalogo.Pelicula;
+
+/**
+ * Pruebas de la reducción de carteles y de sus dos niveles de caché
+ */
+public class ServicioCartelesTest {
+
+    @TempDir
+    Path carpeta;
+
+    private static byte[] png(int ancho, int alto) throws IOException {
+        BufferedImage imagen = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < alto; y++) {
+            for (int x = 0; x < ancho; x++) {
+                imagen.setRGB(x, y, (x * 255 / ancho) << 16 | (y * 255 / alto) << 8 | (x < 10 ? 0 : 0xFF000000));
+            }
+        }
+        ByteArrayOutputStream destino = new ByteArrayOutputStream();
+        ImageIO.write(imagen, "png", destino);
+        return destino.toByteArray();
+    }
+
+    private static BufferedImage leer(byte[] jpeg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    @Test
+    public void reduceAlAnchoManteniendoProporcionYNoAmplia() throws IOException {
+        BufferedImage grande = leer(ServicioCarteles.reducir(png(1280, 1920), 320));
+        assertEquals(320, grande.getWidth());
+        assertEquals(480, grande.getHeight());
+
+        BufferedImage pequena = leer(ServicioCarteles.reducir(png(200, 300), 320));
+        assertEquals(200, pequena.getWidth());
+        assertEquals(300, pequena.getHeight());
+
+        assertThrows(IOException.class, () -> ServicioCarteles.reducir(new byte[] {1, 2, 3}, 320));
+    }
+
+    @Test
+    public void seGeneraUnaVezDesdeElOrigenYSeReutiliza() throws IOException {
+        Path origen = Files.createDirectory(carpeta.resolve("origen"));
+        Path cache = carpeta.resolve("cache");
+        Files.write(origen.resolve("asterix-el-galo-dvd-.jpg"), png(640, 960));
+        Pelicula pelicula = new Pelicula(1, "Astérix el Galo", 1967, 68,
+                "https://dvdstorespain.es/291980/asterix-el-galo-dvd-.jpg", "D:\\Videos\\Asterix El Galo.mp4");
+
+        ServicioCarteles carteles = new ServicioCarteles(cache, origen, false, 320, 1024 * 1024, 5);
+        ServicioCarteles.Cartel primero = carteles.obtener(pelicula);
+        assertEquals(320, leer(primero.imagen()).getWidth());
+        assertEquals(carteles.etag(pelicula), primero.etag());
+        assertArrayEquals(primero.imagen(), carteles.obtener(pelicula).imagen());
+        assertEquals(1, carteles.generados());
+        assertEquals(1, carteles.aciertosMemoria());
+
+        // Otro proceso (o un reinicio) sin la carpeta de origen lo encuentra en disco
+        ServicioCarteles reiniciado = new ServicioCarteles(cache, null, false, 320, 1024 * 1024, 5);
+        assertArrayEquals(primero.imagen(), reiniciado.obtener(pelicula).imagen());
+        assertEquals(1, reiniciado.aciertosDisco());
+        assertEquals(0, reiniciado.generados());
+
+        // Si el catálogo cambia el poster, cambia la clave
+        Pelicula otroPoster = new Pelicula(1, "Astérix el Galo", 1967, 68, "https://example.com/1.jpg", "");
+        assertNotEquals(carteles.etag(pelicula), carteles.etag(otroPoster));
+    }
+
+    @Test
+    public void sinRedNiOrigenFallaYNoReintentaEnseguida() throws IOException {
+        Pelicula pelicula = new Pelicula(7, "Sin cartel", 2000, 90, "https://example.com/7.jpg", "");
+        ServicioCarteles carteles = new ServicioCarteles(carpeta, null, false, 320, 1024 * 1024, 5);
+
+        assertThrows(NoSuchFileException.class, () -> carteles.obtener(pelicula));
+        IOException repetido = assertThrows(IOException.class, () -> carteles.obtener(pelicula));
+        assertTrue(repetido.getMessage().contains("falló hace poco"));
+        assertEquals(1, carteles.fallos());
+    }
+}
@@ -0,0 +1,77 @@
+package kabadev.catalogo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas de los índices y la paginación del catálogo
+ */
+public class CatalogoTest {
+
+    private static final String JSON = """
+            [
+              {"id": 1, "title": "Astérix el Galo", "year": 1967, "duration": 68, "poster": "a", "videoUrl": "a.mp4"},
+              {"id": 2, "title": "Astérix y Cleopatra", "year": 1968, "duration": 72, "poster": "b", "videoUrl": "b.mp4"},
+              {"id": 3, "title": "Las 12 pruebas de Astérix", "year": 1976, "duration": 82, "poster": "c", "videoUrl": "c.mp4"},
+              {"id": 4, "title": "Astérix en Bretaña", "year": 1986, "duration": 79, "poster": "d", "videoUrl": "d.mp4"}
+            ]
+            """;
+
+    private static Catalogo catalogo(String json) throws IOException {
+        return Catalogo.desdeJson(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void indicesPorIdAnioYPrefijo() throws IOException {
+        Catalogo catalogo = catalogo(JSON);
+
+        assertEquals("Astérix en Bretaña", catalogo.buscarPorId(4).titulo());
+        assertArrayEquals(new int[] {1}, catalogo.buscar(new ConsultaCatalogo(0, 0, 1968, null)));
+        assertArrayEquals(new int[] {1}, catalogo.buscar(new ConsultaCatalogo(0, 0, null, "CLEO")));
+        assertArrayEquals(new int[] {0, 1, 2, 3}, catalogo.buscar(new ConsultaCatalogo(0, 0, null, "astér")));
+        assertArrayEquals(new int[] {2}, catalogo.buscar(new ConsultaCatalogo(0, 0, null, "astérix prue")));
+        assertArrayEquals(new int[0], catalogo.buscar(new ConsultaCatalogo(0, 0, 1968, "bret")));
+    }
+
+    @Test
+    public void paginaYTotalSeCachean() throws IOException {
+        Catalogo catalogo = catalogo(JSON);
+
+        Catalogo.RespuestaCatalogo segunda = catalogo.responder(new ConsultaCatalogo(1, 3, null, null));
+        assertEquals(4, segunda.total());
+        assertEquals(1, Catalogo.JSON.readTree(segunda.json()).size());
+        assertEquals(4, Catalogo.JSON.readTree(segunda.json()).get(0).get("id").asInt());
+
+        // Misma forma de consulta: mismos bytes ya serializados
+        assertSame(segunda, catalogo.responder(new ConsultaCatalogo(1, 3, null, " ")));
+    }
+
+    @Test
+    public void idDuplicadoConservaLaPrimera() throws IOException {
+        Catalogo catalogo = catalogo("[{\"id\": 1, \"title\": \"A\"}, {\"id\": 1, \"title\": \"B\"}]");
+
+        assertEquals("A", catalogo.buscarPorId(1).titulo());
+        assertEquals(2, catalogo.peliculas().size());
+    }
+
+    @Test
+    public void buscaSinTildesYSugiereMientrasSeEscribe() throws IOException {
+        Catalogo catalogo = catalogo(JSON);
+
+        assertArrayEquals(new int[] {3}, catalogo.buscar(new ConsultaCatalogo(0, 0, null, "ASTERIX BRETANA")));
+        Catalogo.RespuestaCatalogo busqueda = catalogo.responderBusqueda("asterx cleopatar", 1);
+        assertEquals(1, Catalogo.JSON.readTree(busqueda.json()).size());
+        assertEquals(2, Catalogo.JSON.readTree(busqueda.json()).get(0).get("id").asInt());
+
+        Catalogo.RespuestaCatalogo sugerencias = catalogo.responderSugerencias("pruebas de ast", 5);
+        assertEquals(3, Catalogo.JSON.readTree(sugerencias.json()).get(0).get("id").asInt());
+        assertEquals("Las 12 pruebas de Astérix", Catalogo.JSON.readTree(sugerencias.json()).get(0).get("title").asText());
+    }
+}
@@ -0,0 +1,91 @@
+package kabadev.catalogo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas de la normalización, la tolerancia a erratas y el orden de los resultados
+ */
+public class IndiceTrigramasTest {
+
+    private static final List<String> TITULOS = List.of(
+            "Astérix el Galo 1967",
+            "Astérix y Cleopatra 1968",
+            "Las 12 pruebas de Astérix 1976",
+            "Astérix y la sorpresa del César 1985",
+            "Astérix en Bretaña 1986");
+
+    private static IndiceTrigramas indice(List<String> titulos) {
+        List<String> textos = new ArrayList<>();
+        for (String titulo : titulos) {
+            textos.add(ConsultaCatalogo.normalizar(titulo));
+        }
+        return new IndiceTrigramas(textos);
+    }
+
+    private static int[] buscar(IndiceTrigramas indice, String texto, boolean prefijo, int maximo) {
+        return indice.buscar(ConsultaCatalogo.normalizar(texto), prefijo, maximo).posiciones();
+    }
+
+    @Test
+    public void normalizaTildesYMayusculas() {
+        assertEquals("asterix y la sorpresa del cesar", ConsultaCatalogo.normalizar("  ASTÉRIX y la sorpresa del César "));
+        assertEquals("bretana", ConsultaCatalogo.normalizar("Bretaña"));
+    }
+
+    @Test
+    public void encuentraSinTildesYConErratas() {
+        IndiceTrigramas indice = indice(TITULOS);
+
+        assertArrayEquals(new int[] {3}, buscar(indice, "sorpresa cesar", false, 1));
+        assertArrayEquals(new int[] {1}, buscar(indice, "ASTERIX CLEOPATAR", false, 1));
+        assertArrayEquals(new int[] {4}, buscar(indice, "bretana", false, 5));
+        assertArrayEquals(new int[] {2}, buscar(indice, "1976", false, 1));
+        assertArrayEquals(new int[0], buscar(indice, "zzzz", false, 5));
+    }
+
+    @Test
+    public void ordenaPorParecidoYRecortaAlMaximo() {
+        IndiceTrigramas indice = indice(TITULOS);
+
+        // Todas contienen "asterix": gana el título más corto y después el orden del archivo
+        IndiceTrigramas.Aciertos aciertos = indice.buscar("asterix", false, 2);
+        assertEquals(5, aciertos.total());
+        assertArrayEquals(new int[] {0, 4}, aciertos.posiciones());
+    }
+
+    @Test
+    public void autocompletaLaUltimaPalabraComoPrefijo() {
+        IndiceTrigramas indice = indice(TITULOS);
+
+        assertArrayEquals(new int[] {1}, buscar(indice, "asterix y cleo", true, 1));
+        assertArrayEquals(new int[] {4}, buscar(indice, "bret", true, 5));
+        // Una sola letra no forma ningún trigrama
+        assertArrayEquals(new int[0], buscar(indice, "b", true, 5));
+    }
+
+    @Test
+    public void guardaCadaTrigramaUnaVezPorPelicula() {
+        assertEquals(3, IndiceTrigramas.trigramas("aaaa aaaa", false).length);
+        assertEquals(2, IndiceTrigramas.trigramas("ab", false).length);
+        assertEquals(1, IndiceTrigramas.trigramas("ab", true).length);
+    }
+
+    @Test
+    public void reutilizarLosContadoresNoArrastraLaConsultaAnterior() {
+        IndiceTrigramas indice = indice(TITULOS);
+
+        IndiceTrigramas.Aciertos primera = indice.buscar("asterix", false, 5);
+        // Muchos trigramas en común con Cleopatra: si quedaran contadores sucios subiría en la siguiente
+        indice.buscar("asterix y cleopatra", false, 5);
+        IndiceTrigramas.Aciertos otraVez = indice.buscar("asterix", false, 5);
+        assertArrayEquals(primera.posiciones(), otraVez.posiciones());
+        assertEquals(primera.total(), otraVez.total());
+        assertArrayEquals(new int[] {4}, buscar(indice, "bretana", false, 5));
+    }
+}
@@ -0,0 +1,43 @@
+package kabadev.catalogo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Pruebas de la recarga del catálogo desde un archivo externo
+ */
+public class ServicioCatalogoTest {
+
+    @TempDir
+    Path carpeta;
+
+    @Test
+    public void recargaPublicaUnCatalogoNuevoYConservaElAnteriorSiFalla() throws IOException {
+        Path archivo = carpeta.resolve("catalogo.json");
+        Files.writeString(archivo, "[{\"id\": 1, \"title\": \"Uno\", \"year\": 2000}]");
+
+        try (ServicioCatalogo servicio = ServicioCatalogo.cargarDesdeArchivo(archivo)) {
+            Catalogo inicial = servicio.actual();
+            assertEquals(1, inicial.peliculas().size());
+
+            Files.writeString(archivo, "[{\"id\": 1, \"title\": \"Uno\"}, {\"id\": 2, \"title\": \"Dos\"}]");
+            assertTrue(servicio.recargar());
+            assertEquals("Dos", servicio.actual().buscarPorId(2).titulo());
+
+            // Archivo a medio escribir: la instantánea publicada no cambia
+            Catalogo valido = servicio.actual();
+            Files.writeString(archivo, "[{\"id\": 3, \"title\":");
+            assertFalse(servicio.recargar());
+            assertSame(valido, servicio.actual());
+        }
+    }
+}
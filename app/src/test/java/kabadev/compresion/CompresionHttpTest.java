@@ -0,0 +1,88 @@
+package kabadev.compresion;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.Headers;
+
+/**
+ * Pruebas de la negociación y de la salida comprimida al vuelo
+ */
+public class CompresionHttpTest {
+
+    private static byte[] catalogoRepetitivo() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            json.append("{\"id\":").append(i).append(",\"videoUrl\":\"D:\\\\Videos\\\\Peliculas\\\\").append(i)
+                    .append(".mp4\",\"poster\":\"https://example.com/posters/grandes/").append(i).append(".jpg\"},");
+        }
+        return json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void preferenciaConCalidadesYComodin() {
+        assertEquals((1000 << 16) | 500, CompresionHttp.preferencia("gzip, deflate;q=0.5"));
+        assertEquals(0, CompresionHttp.preferencia("br, identity"));
+        assertEquals((300 << 16) | 300, CompresionHttp.preferencia("*;q=0.3"));
+        assertEquals(1000, CompresionHttp.preferencia("gzip;q=0, deflate"));
+    }
+
+    @Test
+    public void soloSeComprimeTextoDeCienBytesOMasSinCodificar() {
+        CompresionHttp compresion = new CompresionHttp(true, 100, 6, 2);
+        Headers json = new Headers();
+        json.set("Content-Type", "application/json; charset=UTF-8");
+        assertTrue(compresion.comprimible(200, 5000, json));
+        assertTrue(compresion.comprimible(200, 0, json));
+        assertFalse(compresion.comprimible(200, 50, json));
+        assertFalse(compresion.comprimible(206, 5000, json));
+        assertFalse(compresion.comprimible(200, -1, json));
+
+        json.set("Content-Encoding", "gzip");
+        assertFalse(compresion.comprimible(200, 5000, json));
+
+        assertFalse(CompresionHttp.tipoComprimible("video/mp4"));
+        assertFalse(CompresionHttp.tipoComprimible("image/png"));
+        assertTrue(CompresionHttp.tipoComprimible("image/svg+xml"));
+        assertTrue(CompresionHttp.tipoComprimible("text/plain; version=0.0.4; charset=utf-8"));
+    }
+
+    @Test
+    public void gzipYDeflateSeDescomprimenIgualYReutilizanElCompresor() throws IOException {
+        CompresionHttp compresion = new CompresionHttp(true, 0, 6, 2);
+        byte[] original = catalogoRepetitivo();
+
+        for (boolean gzip : new boolean[] {true, false, true}) {
+            ByteArrayOutputStream red = new ByteArrayOutputStream();
+            try (SalidaComprimida salida = new SalidaComprimida(red, compresion.pool(), gzip, compresion)) {
+                // En trozos desiguales, como escriben los controladores
+                salida.write(original, 0, 1000);
+                salida.flush();
+                salida.write(original, 1000, original.length - 1000);
+            }
+            byte[] comprimido = red.toByteArray();
+            assertTrue(comprimido.length < original.length / 5);
+
+            try (InputStream entrada = gzip ? new GZIPInputStream(new ByteArrayInputStream(comprimido))
+                    : new InflaterInputStream(new ByteArrayInputStream(comprimido))) {
+                assertArrayEquals(original, entrada.readAllBytes());
+            }
+        }
+
+        assertEquals(2, compresion.pool().libres());
+        assertEquals(3, compresion.respuestas());
+        assertEquals(3L * original.length, compresion.bytesOriginales());
+    }
+}
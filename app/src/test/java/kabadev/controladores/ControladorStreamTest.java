@@ -0,0 +1,83 @@
+package kabadev.controladores;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+import kabadev.servidor.ContenidoRangos;
+import kabadev.servidor.RangosHttp;
+
+/**
+ * Pruebas de la búsqueda por tiempo (?t=) frente a Range / If-Range
+ */
+public class ControladorStreamTest {
+
+    private static final long TAMANO = 1000;
+    private static final long FOTOGRAMA = 400;
+    private static final long MODIFICACION = 1_700_000_000_000L;
+
+    @TempDir
+    Path carpeta;
+
+    @Test
+    public void elRangoDeLaPeticionGanaAlFotogramaClave() throws IOException {
+        Path video = Files.write(carpeta.resolve("a.mp4"), new byte[(int) TAMANO]);
+        String etag = RangosHttp.calcularEtag(TAMANO, MODIFICACION);
+
+        HttpServer servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        servidor.createContext("/", intercambio -> {
+            try (FileChannel canal = FileChannel.open(video)) {
+                ControladorStream.enviarVideo(intercambio, ContenidoRangos.deArchivo(canal, TAMANO), etag,
+                        MODIFICACION, FOTOGRAMA, 2000);
+            }
+        });
+        servidor.start();
+        String url = "http://127.0.0.1:" + servidor.getAddress().getPort() + "/stream/1?t=2";
+        try {
+            // Solo ?t=: desde el fotograma clave hasta el final
+            HttpURLConnection sinRango = abrir(url, null, null);
+            assertEquals(206, sinRango.getResponseCode());
+            assertEquals("bytes 400-999/1000", sinRango.getHeaderField("Content-Range"));
+            assertEquals("400", sinRango.getHeaderField("X-Seek-Offset"));
+            assertEquals(600, sinRango.getInputStream().readAllBytes().length);
+
+            // ?t= y Range: se sirve el rango pedido
+            HttpURLConnection conRango = abrir(url, "bytes=0-99", null);
+            assertEquals(206, conRango.getResponseCode());
+            assertEquals("bytes 0-99/1000", conRango.getHeaderField("Content-Range"));
+            assertNull(conRango.getHeaderField("X-Seek-Offset"));
+            assertEquals(100, conRango.getInputStream().readAllBytes().length);
+
+            // ?t= y un If-Range que ya no coincide: el archivo completo
+            HttpURLConnection cambiado = abrir(url, "bytes=0-99", "\"otro\"");
+            assertEquals(200, cambiado.getResponseCode());
+            assertNull(cambiado.getHeaderField("X-Seek-Offset"));
+            assertEquals(TAMANO, cambiado.getInputStream().readAllBytes().length);
+        } finally {
+            servidor.stop(0);
+        }
+    }
+
+    private static HttpURLConnection abrir(String url, String rango, String ifRange) throws IOException {
+        HttpURLConnection conexion = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        if (rango != null) {
+            conexion.setRequestProperty("Range", rango);
+        }
+        if (ifRange != null) {
+            conexion.setRequestProperty("If-Range", ifRange);
+        }
+        return conexion;
+    }
+}
@@ -0,0 +1,42 @@
+package kabadev.metricas;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas del histograma: cubetas contiguas, percentiles y cuentas acumuladas
+ */
+public class HistogramaTest {
+
+    @Test
+    public void cadaCubetaEmpiezaDondeTerminaLaAnterior() {
+        for (int i = 0; i < 400; i++) {
+            long inferior = Histograma.limiteInferior(i);
+            assertEquals(i, Histograma.indice(inferior));
+            assertEquals(i + 1, Histograma.indice(Histograma.limiteInferior(i + 1)));
+            assertEquals(i, Histograma.indice(Histograma.limiteInferior(i + 1) - 1));
+        }
+        assertTrue(Histograma.indice(Long.MAX_VALUE) < (64 - 3 + 1) * 8);
+    }
+
+    @Test
+    public void losPercentilesQuedanDentroDelErrorDeLaCubeta() {
+        Histograma histograma = new Histograma();
+        for (long valor = 1; valor <= 1000; valor++) {
+            histograma.registrar(valor * 1000);
+        }
+        assertEquals(1000, histograma.cantidad());
+        assertEquals(500_500_000L, histograma.sumaNanos());
+
+        long mediana = histograma.percentil(50);
+        assertTrue(mediana >= 500_000 && mediana <= 500_000 * 1.125, "p50 = " + mediana);
+        long p99 = histograma.percentil(99);
+        assertTrue(p99 >= 990_000 && p99 <= 990_000 * 1.125, "p99 = " + p99);
+
+        // 1000 cae en la cubeta [960, 1023]: por debajo de 960 no hay nada
+        assertEquals(0, histograma.hasta(959));
+        assertEquals(1000, histograma.hasta(2_000_000));
+    }
+}
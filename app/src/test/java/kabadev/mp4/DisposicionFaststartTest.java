@@ -0,0 +1,133 @@
+package kabadev.mp4;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import kabadev.servidor.ContenidoRangos;
+
+/**
+ * Pruebas del análisis de cajas y de la vista faststart sobre un MP4 sintético
+ */
+public class DisposicionFaststartTest {
+
+    @TempDir
+    Path carpeta;
+
+    /** Caja con cabecera de 8 bytes */
+    static byte[] caja(String tipo, byte[]... contenido) {
+        int tamano = 8 + Arrays.stream(contenido).mapToInt(parte -> parte.length).sum();
+        ByteBuffer buffer = ByteBuffer.allocate(tamano).putInt(tamano).put(tipo.getBytes(StandardCharsets.US_ASCII));
+        for (byte[] parte : contenido) {
+            buffer.put(parte);
+        }
+        return buffer.array();
+    }
+
+    /** stco con versión 0 y los offsets indicados */
+    static byte[] stco(int... offsets) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + offsets.length * 4).putInt(0).putInt(offsets.length);
+        for (int offset : offsets) {
+            buffer.putInt(offset);
+        }
+        return caja("stco", buffer.array());
+    }
+
+    static byte[] unir(byte[]... partes) {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        for (byte[] parte : partes) {
+            salida.writeBytes(parte);
+        }
+        return salida.toByteArray();
+    }
+
+    @Test
+    public void elMoovPasaDelanteYLosOffsetsSiguenApuntandoALasMuestras() throws IOException {
+        byte[] ftyp = caja("ftyp", "isom".getBytes(StandardCharsets.US_ASCII), new byte[4]);
+        byte[] muestras = "MUESTRA-A|MUESTRA-B|MUESTRA-C".getBytes(StandardCharsets.US_ASCII);
+        byte[] mdat = caja("mdat", muestras);
+
+        int inicioMuestras = ftyp.length + 8;
+        byte[] moov = caja("moov", caja("trak", caja("mdia", caja("minf", caja("stbl",
+                stco(inicioMuestras, inicioMuestras + 10, inicioMuestras + 20))))));
+
+        Path video = carpeta.resolve("moov-al-final.mp4");
+        Files.write(video, unir(ftyp, mdat, moov));
+
+        try (FileChannel canal = FileChannel.open(video, StandardOpenOption.READ)) {
+            EstructuraMp4 estructura = AnalizadorMp4.analizar(canal, canal.size());
+            assertEquals(List.of("ftyp", "mdat", "moov"),
+                    estructura.cajas().stream().map(CajaMp4::tipo).toList());
+            assertTrue(estructura.moovTrasMdat());
+
+            DisposicionFaststart faststart = DisposicionFaststart.crear(canal, estructura, 1024 * 1024);
+            assertNotNull(faststart);
+            assertEquals(canal.size(), faststart.tamano());
+
+            ContenidoRangos contenido = faststart.contenido(canal);
+            ByteArrayOutputStream completo = new ByteArrayOutputStream();
+            contenido.transferir(0, contenido.tamano(), completo);
+            byte[] virtual = completo.toByteArray();
+
+            // Nuevo orden: ftyp, moov, mdat
+            ByteBuffer datos = ByteBuffer.wrap(virtual);
+            List<CajaMp4> cajas = AnalizadorMp4.hijas(datos, 0, virtual.length);
+            assertEquals(List.of("ftyp", "moov", "mdat"), cajas.stream().map(CajaMp4::tipo).toList());
+
+            // Cada offset del stco reescrito apunta a la misma muestra que antes
+            int stco = indiceDe(virtual, "stco") - 4;
+            for (int i = 0; i < 3; i++) {
+                int offset = datos.getInt(stco + 16 + i * 4);
+                assertEquals("MUESTRA-" + (char) ('A' + i),
+                        new String(virtual, offset, 9, StandardCharsets.US_ASCII));
+            }
+
+            // Un rango que cruza moov y mdat coincide con el mismo tramo de la vista completa
+            ByteArrayOutputStream parcial = new ByteArrayOutputStream();
+            contenido.transferir(ftyp.length + moov.length - 5, 20, parcial);
+            assertArrayEquals(Arrays.copyOfRange(virtual, ftyp.length + moov.length - 5,
+                    ftyp.length + moov.length + 15), parcial.toByteArray());
+        }
+    }
+
+    @Test
+    public void unArchivoYaOptimizadoNoNecesitaVista() throws IOException {
+        byte[] ftyp = caja("ftyp", new byte[8]);
+        byte[] moov = caja("moov", caja("trak"));
+        Path video = carpeta.resolve("faststart.mp4");
+        Files.write(video, unir(ftyp, moov, caja("mdat", new byte[100])));
+
+        try (FileChannel canal = FileChannel.open(video, StandardOpenOption.READ)) {
+            EstructuraMp4 estructura = AnalizadorMp4.analizar(canal, canal.size());
+            assertFalse(estructura.moovTrasMdat());
+            assertNull(DisposicionFaststart.crear(canal, estructura, 1024 * 1024));
+        }
+    }
+
+    private static int indiceDe(byte[] datos, String tipo) {
+        byte[] buscado = tipo.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i + buscado.length <= datos.length; i++) {
+            if (Arrays.equals(datos, i, i + buscado.length, buscado, 0, buscado.length)) {
+                return i;
+            }
+        }
+        throw new AssertionError("No se encontró " + tipo);
+    }
+}
@@ -0,0 +1,152 @@
+package kabadev.mp4;
+
+import static kabadev.mp4.DisposicionFaststartTest.caja;
+import static kabadev.mp4.DisposicionFaststartTest.stco;
+import static kabadev.mp4.FotogramasClaveTest.hdlr;
+import static kabadev.mp4.FotogramasClaveTest.tabla;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import kabadev.servidor.ContenidoRangos;
+
+/**
+ * Pruebas del empaquetado HLS con un moov sintético de vídeo y audio
+ */
+public class EmpaquetadoHlsTest {
+
+    @TempDir
+    Path carpeta;
+
+    /**
+     * Vídeo (pista 1): 10 muestras de 0,4 s (escala 100), claves en 1, 5 y 9,
+     * chunks de 6 y 4 muestras de 100 bytes en 1000 y 5000
+     * Audio (pista 2): 20 muestras de 0,2 s sin stss, 10 bytes cada una en 9000
+     */
+    private static byte[] moov() {
+        byte[] video = caja("trak", tabla("tkhd", 0, 0, 1, 0, 0),
+                caja("mdia", tabla("mdhd", 0, 0, 100, 400, 0), hdlr("vide"), caja("minf", caja("stbl",
+                        tabla("stsd", 0),
+                        tabla("stts", 1, 10, 40),
+                        tabla("stss", 3, 1, 5, 9),
+                        tabla("stsc", 2, 1, 6, 1, 2, 4, 1),
+                        tabla("stsz", 100, 10),
+                        stco(1000, 5000)))));
+        byte[] audio = caja("trak", tabla("tkhd", 0, 0, 2, 0, 0),
+                caja("mdia", tabla("mdhd", 0, 0, 100, 400, 0), hdlr("soun"), caja("minf", caja("stbl",
+                        tabla("stsd", 0),
+                        tabla("stts", 1, 20, 20),
+                        tabla("stsc", 1, 1, 20, 1),
+                        tabla("stsz", 10, 20),
+                        stco(9000)))));
+        return caja("moov", tabla("mvhd", 0, 0, 100, 400), video, audio);
+    }
+
+    private static byte[] leer(ContenidoRangos contenido, long posicion, long longitud) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        contenido.transferir(posicion, longitud, salida);
+        return salida.toByteArray();
+    }
+
+    private static CajaMp4 hija(ByteBuffer datos, CajaMp4 padre, String tipo) {
+        return AnalizadorMp4.hijas(datos, (int) padre.inicioDatos(), (int) padre.fin()).stream()
+                .filter(caja -> caja.tipo().equals(tipo)).findFirst().orElse(null);
+    }
+
+    @Test
+    public void cortaEnFotogramasClaveYGeneraLaLista() {
+        EmpaquetadoHls hls = EmpaquetadoHls.crear(moov(), 1);
+        assertNotNull(hls);
+        assertEquals(3, hls.segmentos());
+
+        String lista = hls.listaReproduccion();
+        assertTrue(lista.startsWith("#EXTM3U\n"));
+        assertTrue(lista.contains("#EXT-X-TARGETDURATION:2\n"));
+        assertTrue(lista.contains("#EXT-X-MAP:URI=\"init.mp4\"\n"));
+        assertTrue(lista.contains("#EXTINF:1.600,\nseg-0.m4s\n#EXTINF:1.600,\nseg-1.m4s\n#EXTINF:0.800,\nseg-2.m4s\n"));
+        assertTrue(lista.endsWith("#EXT-X-ENDLIST\n"));
+    }
+
+    @Test
+    public void laInicializacionLlevaLasPistasSinMuestrasYMvex() {
+        ByteBuffer datos = ByteBuffer.wrap(EmpaquetadoHls.crear(moov(), 1).inicializacion());
+        List<CajaMp4> raiz = AnalizadorMp4.hijas(datos, 0, datos.limit());
+        assertEquals(List.of("ftyp", "moov"), raiz.stream().map(CajaMp4::tipo).toList());
+
+        CajaMp4 moov = raiz.get(1);
+        List<CajaMp4> hijas = AnalizadorMp4.hijas(datos, (int) moov.inicioDatos(), (int) moov.fin());
+        assertEquals(List.of("mvhd", "trak", "trak", "mvex"), hijas.stream().map(CajaMp4::tipo).toList());
+        assertEquals(2, AnalizadorMp4.hijas(datos, (int) hijas.get(3).inicioDatos(), (int) hijas.get(3).fin()).size());
+
+        CajaMp4 stbl = hija(datos, hija(datos, hija(datos, hijas.get(1), "mdia"), "minf"), "stbl");
+        CajaMp4 stsz = hija(datos, stbl, "stsz");
+        assertNotNull(hija(datos, stbl, "stsd"));
+        assertNull(hija(datos, stbl, "stss"));
+        assertEquals(0, datos.getInt((int) stsz.inicioDatos() + 8));
+    }
+
+    @Test
+    public void elSegmentoApuntaALasMuestrasDelArchivo() throws IOException {
+        byte[] bytes = new byte[10_000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 251);
+        }
+        Path archivo = Files.write(carpeta.resolve("pelicula.mp4"), bytes);
+        EmpaquetadoHls hls = EmpaquetadoHls.crear(moov(), 1);
+
+        try (FileChannel canal = FileChannel.open(archivo)) {
+            ContenidoRangos segmento = hls.segmento(1, ContenidoRangos.deArchivo(canal, bytes.length));
+            byte[] contenido = leer(segmento, 0, segmento.tamano());
+            assertEquals(segmento.tamano(), contenido.length);
+
+            ByteBuffer datos = ByteBuffer.wrap(contenido);
+            List<CajaMp4> raiz = AnalizadorMp4.hijas(datos, 0, contenido.length);
+            assertEquals(List.of("moof", "mdat"), raiz.stream().map(CajaMp4::tipo).toList());
+            CajaMp4 moof = raiz.get(0);
+            assertEquals(2, datos.getInt((int) hija(datos, moof, "mfhd").inicioDatos() + 4));
+
+            // Vídeo: muestras 5 a 8 (1400-1600 y 5000-5200); audio: muestras 9 a 16 (9080-9160)
+            CajaMp4 traf = hija(datos, moof, "traf");
+            assertEquals(160, datos.getLong((int) hija(datos, traf, "tfdt").inicioDatos() + 4));
+            int trun = (int) hija(datos, traf, "trun").inicioDatos();
+            assertEquals(4, datos.getInt(trun + 4));
+            assertEquals(0x02000000, datos.getInt(trun + 12 + 8));
+            assertEquals(0x01010000, datos.getInt(trun + 12 + 12 + 8));
+
+            int desplazamiento = datos.getInt(trun + 8);
+            byte[] esperado = new byte[480];
+            System.arraycopy(bytes, 1400, esperado, 0, 200);
+            System.arraycopy(bytes, 5000, esperado, 200, 200);
+            System.arraycopy(bytes, 9080, esperado, 400, 80);
+            assertArrayEquals(esperado, Arrays.copyOfRange(contenido, desplazamiento, desplazamiento + 480));
+            assertEquals(raiz.get(1).inicioDatos(), desplazamiento);
+
+            // Un rango que cruza el moof y las muestras
+            assertArrayEquals(Arrays.copyOfRange(contenido, 20, desplazamiento + 250),
+                    leer(segmento, 20, desplazamiento + 230));
+        }
+
+        assertThrows(IndexOutOfBoundsException.class, () -> hls.segmento(3, null));
+    }
+
+    @Test
+    public void sinPistasUtilizablesNoHayEmpaquetado() {
+        assertNull(EmpaquetadoHls.crear(caja("moov", tabla("mvhd", 0)), 6));
+        assertNull(EmpaquetadoHls.crear(caja("free"), 6));
+    }
+}
@@ -0,0 +1,81 @@
+package kabadev.mp4;
+
+import static kabadev.mp4.DisposicionFaststartTest.caja;
+import static kabadev.mp4.DisposicionFaststartTest.stco;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas del cálculo de fotogramas clave con tablas de muestras sintéticas
+ */
+public class FotogramasClaveTest {
+
+    /** Caja "completa" (versión/flags a cero) con enteros de 32 bits */
+    static byte[] tabla(String tipo, int... valores) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + valores.length * 4).putInt(0);
+        for (int valor : valores) {
+            buffer.putInt(valor);
+        }
+        return caja(tipo, buffer.array());
+    }
+
+    static byte[] hdlr(String tipo) {
+        return caja("hdlr", ByteBuffer.allocate(24).putInt(0).putInt(0)
+                .put(tipo.getBytes(StandardCharsets.US_ASCII)).array());
+    }
+
+    /**
+     * Pista de vídeo de 10 muestras a 25 fps (escala 1000, 40 ms cada una),
+     * fotograma clave en las muestras 1, 5 y 9, dos chunks de 6 y 4 muestras
+     * de 100 bytes en los offsets 1000 y 5000
+     */
+    private static byte[] pista(String manejador) {
+        byte[] mdhd = tabla("mdhd", 0, 0, 1000, 400, 0);
+        byte[] stbl = caja("stbl",
+                tabla("stts", 1, 10, 40),
+                tabla("stss", 3, 1, 5, 9),
+                tabla("stsc", 2, 1, 6, 1, 2, 4, 1),
+                tabla("stsz", 100, 10),
+                stco(1000, 5000));
+        return caja("trak", caja("mdia", mdhd, hdlr(manejador), caja("minf", stbl)));
+    }
+
+    @Test
+    public void calculaTiemposYOffsetsDeLosFotogramasClave() {
+        FotogramasClave claves = FotogramasClave.desdeMoov(caja("moov", pista("soun"), pista("vide")));
+        assertNotNull(claves);
+        assertEquals(3, claves.cantidad());
+        assertEquals(400, claves.duracionMs());
+
+        // Muestra 5: 160 ms, cuarta del primer chunk. Muestra 9: 320 ms, tercera del segundo chunk
+        assertEquals(List.of(0L, 160L, 320L), List.of(claves.tiempoMs(0), claves.tiempoMs(1), claves.tiempoMs(2)));
+        assertEquals(List.of(1000L, 1400L, 5200L), List.of(claves.offset(0), claves.offset(1), claves.offset(2)));
+
+        assertEquals(0, claves.anteriorA(0));
+        assertEquals(0, claves.anteriorA(159));
+        assertEquals(1, claves.anteriorA(160));
+        assertEquals(2, claves.anteriorA(10_000));
+    }
+
+    @Test
+    public void elFormatoBinarioConservaLosPares() {
+        FotogramasClave claves = FotogramasClave.desdeMoov(caja("moov", pista("vide")));
+        List<long[]> pares = FotogramasClave.decodificar(claves.codificar());
+        assertEquals(3, pares.size());
+        assertArrayEquals(new long[] {160, 1400}, pares.get(1));
+        assertArrayEquals(new long[] {320, 5200}, pares.get(2));
+    }
+
+    @Test
+    public void sinPistaDeVideoNoHayIndice() {
+        assertNull(FotogramasClave.desdeMoov(caja("moov", pista("soun"))));
+    }
+}
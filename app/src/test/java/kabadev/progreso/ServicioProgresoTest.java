@@ -0,0 +1,158 @@
+package kabadev.progreso;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import kabadev.progreso.ServicioProgreso.Progreso;
+
+/**
+ * Pruebas de la escritura diferida, la reproducción y la compactación del registro de progreso
+ */
+public class ServicioProgresoTest {
+
+    /** Sin volcados automáticos durante la prueba */
+    private static final long UNA_HORA = 3_600_000;
+
+    @TempDir
+    Path carpeta;
+
+    @Test
+    public void lasActualizacionesSeAgrupanYSobrevivenAlReinicio() throws IOException {
+        Path archivo = carpeta.resolve("progreso.log");
+        ServicioProgreso progreso = new ServicioProgreso(archivo, UNA_HORA, 100);
+        for (int segundo = 1; segundo <= 50; segundo++) {
+            progreso.guardar("navegador-1", 7, segundo * 1000L, 5_400_000);
+        }
+        progreso.guardar("navegador-1", 8, 60_000, 0);
+        progreso.guardar("navegador-2", 7, 30_000, 5_400_000);
+        assertEquals(3, progreso.pendientes());
+        assertEquals(50_000, progreso.consultar("navegador-1", 7).posicionMs());
+
+        // Las 52 actualizaciones son 3 registros en un solo volcado
+        progreso.volcar();
+        assertEquals(0, progreso.pendientes());
+        assertEquals(1, progreso.volcados());
+        long tamano = Files.size(archivo);
+        progreso.volcar();
+        assertEquals(tamano, Files.size(archivo));
+        progreso.close();
+
+        ServicioProgreso reiniciado = new ServicioProgreso(archivo, UNA_HORA, 100);
+        assertEquals(3, reiniciado.entradas());
+        assertEquals(50_000, reiniciado.consultar("navegador-1", 7).posicionMs());
+        assertEquals(5_400_000, reiniciado.consultar("navegador-1", 7).duracionMs());
+        assertEquals(List.of(7, 8), reiniciado.listar("navegador-1").stream().map(Progreso::pelicula).sorted().toList());
+        assertNull(reiniciado.consultar("navegador-3", 7));
+        reiniciado.close();
+    }
+
+    @Test
+    public void alTerminarLaPeliculaSeOlvidaLaPosicion() throws IOException {
+        Path archivo = carpeta.resolve("progreso.log");
+        ServicioProgreso progreso = new ServicioProgreso(archivo, UNA_HORA, 100);
+        progreso.guardar("navegador-1", 7, 60_000, 100_000);
+        progreso.volcar();
+        progreso.guardar("navegador-1", 7, 96_000, 100_000);
+        assertNull(progreso.consultar("navegador-1", 7));
+        assertEquals(0, progreso.entradas());
+        progreso.close();
+
+        ServicioProgreso reiniciado = new ServicioProgreso(archivo, UNA_HORA, 100);
+        assertNull(reiniciado.consultar("navegador-1", 7));
+        assertEquals(0, reiniciado.entradas());
+        reiniciado.close();
+    }
+
+    @Test
+    public void unRegistroAMediasSeDescartaYSeSigueEscribiendoDetras() throws IOException {
+        Path archivo = carpeta.resolve("progreso.log");
+        ServicioProgreso progreso = new ServicioProgreso(archivo, UNA_HORA, 100);
+        progreso.guardar("navegador-1", 7, 10_000, 0);
+        progreso.close();
+        long valido = Files.size(archivo);
+
+        // Corte de luz a mitad de un volcado
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.APPEND)) {
+            canal.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 0, 11, 'n', 'a'}));
+        }
+
+        ServicioProgreso reiniciado = new ServicioProgreso(archivo, UNA_HORA, 100);
+        assertEquals(valido, Files.size(archivo));
+        reiniciado.guardar("navegador-1", 8, 20_000, 0);
+        reiniciado.close();
+
+        ServicioProgreso otraVez = new ServicioProgreso(archivo, UNA_HORA, 100);
+        assertEquals(10_000, otraVez.consultar("navegador-1", 7).posicionMs());
+        assertEquals(20_000, otraVez.consultar("navegador-1", 8).posicionMs());
+        otraVez.close();
+    }
+
+    @Test
+    public void laCompactacionDejaUnRegistroPorEntrada() throws IOException {
+        Path archivo = carpeta.resolve("progreso.log");
+        ServicioProgreso progreso = new ServicioProgreso(archivo, UNA_HORA, 100);
+        for (int i = 0; i < 200; i++) {
+            progreso.guardar("navegador-1", i % 4, i * 1000L, 0);
+            progreso.volcar();
+        }
+        long antes = Files.size(archivo);
+        progreso.compactar();
+        assertTrue(Files.size(archivo) < antes / 10);
+
+        // Tras compactar se sigue añadiendo al archivo nuevo
+        progreso.guardar("navegador-1", 0, 999_000, 0);
+        progreso.close();
+
+        ServicioProgreso reiniciado = new ServicioProgreso(archivo, UNA_HORA, 100);
+        assertEquals(4, reiniciado.entradas());
+        assertEquals(999_000, reiniciado.consultar("navegador-1", 0).posicionMs());
+        assertEquals(199_000, reiniciado.consultar("navegador-1", 3).posicionMs());
+        reiniciado.close();
+    }
+
+    @Test
+    public void noAdmiteParesNuevosPorEncimaDelMaximo() throws IOException {
+        ServicioProgreso progreso = new ServicioProgreso(carpeta.resolve("progreso.log"), UNA_HORA, 2);
+        assertTrue(progreso.guardar("navegador-1", 1, 1000, 0));
+        assertTrue(progreso.guardar("navegador-1", 2, 1000, 0));
+        assertFalse(progreso.guardar("navegador-2", 1, 1000, 0));
+        // Actualizar uno que ya existe sí se admite
+        assertTrue(progreso.guardar("navegador-1", 2, 5000, 0));
+        assertEquals(2, progreso.entradas());
+        progreso.close();
+    }
+
+    @Test
+    public void losClientesRechazadosYLosVaciosNoOcupanMemoria() throws IOException {
+        ServicioProgreso progreso = new ServicioProgreso(carpeta.resolve("progreso.log"), UNA_HORA, 2);
+        assertTrue(progreso.guardar("navegador-1", 1, 1000, 0));
+        assertTrue(progreso.guardar("navegador-2", 1, 1000, 0));
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(progreso.guardar("inventado-" + i, 1, 1000, 0));
+        }
+        assertEquals(2, progreso.clientes());
+
+        // Al terminar su única película el cliente desaparece y deja sitio a otro
+        progreso.olvidar("navegador-1", 1);
+        assertEquals(1, progreso.clientes());
+        assertTrue(progreso.guardar("navegador-3", 1, 95_000, 100_000));
+        assertEquals(1, progreso.clientes());
+        assertTrue(progreso.guardar("navegador-3", 1, 1000, 100_000));
+        assertEquals(2, progreso.clientes());
+        assertEquals(2, progreso.entradas());
+        progreso.close();
+    }
+}
@@ -0,0 +1,97 @@
+package kabadev.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import kabadev.metricas.MetricasHttp;
+
+/**
+ * Pruebas del orden de apagado y de la espera de las tareas de arranque
+ */
+public class CicloVidaTest {
+
+    /** Motor que solo recuerda cuándo y con qué plazo se detuvo */
+    private static final class ServidorFalso implements IServidorHttp {
+        private final List<String> eventos;
+        private boolean iniciado = true;
+
+        ServidorFalso(List<String> eventos) {
+            this.eventos = eventos;
+        }
+
+        @Override
+        public void usarMetricas(MetricasHttp metricas) {
+        }
+
+        @Override
+        public void usar(Middleware middleware) {
+        }
+
+        @Override
+        public void crearRuta(String patron, IControladorRuta controlador) {
+        }
+
+        @Override
+        public void iniciar() {
+        }
+
+        @Override
+        public void detener(int tiempoEspera) {
+            eventos.add("servidor " + tiempoEspera);
+            iniciado = false;
+        }
+
+        @Override
+        public boolean estaIniciado() {
+            return iniciado;
+        }
+
+        @Override
+        public InetSocketAddress obtenerDireccion() {
+            return new InetSocketAddress(0);
+        }
+    }
+
+    @Test
+    public void detieneElMotorYCierraLosRecursosEnOrdenInversoUnaSolaVez() {
+        List<String> eventos = new ArrayList<>();
+        CicloVida ciclo = new CicloVida(new ServidorFalso(eventos), 3);
+        ciclo.registrar("canales", () -> eventos.add("canales"));
+        ciclo.registrar("nulo", null);
+        ciclo.registrar("roto", () -> {
+            throw new IOException("disco lleno");
+        });
+        ciclo.registrar("trozos", () -> eventos.add("trozos"));
+
+        assertFalse(ciclo.drenando());
+        ciclo.apagar();
+        ciclo.apagar();
+
+        assertTrue(ciclo.drenando());
+        assertEquals(List.of("servidor 3", "trozos", "canales"), eventos);
+        assertEquals(0, ciclo.enCurso());
+    }
+
+    @Test
+    public void esperarDevuelveElResultadoOElErrorOriginal() throws IOException {
+        Object catalogo = new Object();
+        assertSame(catalogo, CicloVida.esperar(CompletableFuture.completedFuture(catalogo)));
+
+        IOException error = new IOException("asterix.json no encontrado");
+        assertSame(error, assertThrows(IOException.class,
+                () -> CicloVida.esperar(CompletableFuture.failedFuture(error))));
+        assertThrows(IllegalArgumentException.class,
+                () -> CicloVida.esperar(CompletableFuture.failedFuture(new IllegalArgumentException("puerto"))));
+    }
+}
@@ -0,0 +1,129 @@
+package kabadev.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import kabadev.servidor.ControlAdmision.Clase;
+import kabadev.servidor.ControlAdmision.Cupo;
+
+/**
+ * Pruebas de la clasificación, de los cupos y del 503 con los streams saturados
+ */
+public class ControlAdmisionTest {
+
+    @Test
+    public void clasificaLosStreamsComoMasivosYElRestoComoInteractivo() {
+        assertEquals(Clase.MASIVA, ControlAdmision.clasificar("/stream/{id}"));
+        assertEquals(Clase.MASIVA, ControlAdmision.clasificar("/hls/{id}/{segmento}"));
+        assertEquals(Clase.INTERACTIVA, ControlAdmision.clasificar("/stream/{id}/keyframes"));
+        assertEquals(Clase.INTERACTIVA, ControlAdmision.clasificar("/hls/{id}/index.m3u8"));
+        assertEquals(Clase.INTERACTIVA, ControlAdmision.clasificar("/"));
+        assertEquals(Clase.INTERACTIVA, ControlAdmision.clasificar("/static/*"));
+        assertEquals(Clase.INTERACTIVA, ControlAdmision.clasificar("/video"));
+        assertNull(ControlAdmision.clasificar("/metrics"));
+    }
+
+    @Test
+    public void rechazaCuandoLaColaEstaLlenaOSeAgotaLaEspera() throws Exception {
+        Cupo sinCola = new Cupo(1, 0, 1000);
+        assertTrue(sinCola.entrar());
+        assertFalse(sinCola.entrar());
+        assertEquals(1, sinCola.rechazadas());
+        sinCola.salir();
+        assertTrue(sinCola.entrar());
+
+        Cupo conCola = new Cupo(1, 1, 50);
+        assertTrue(conCola.entrar());
+        long inicio = System.nanoTime();
+        assertFalse(conCola.entrar());
+        assertTrue(System.nanoTime() - inicio >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(0, conCola.esperando());
+        assertEquals(1, conCola.enCurso());
+    }
+
+    @Test
+    public void elQueEsperaEntraCuandoSeLiberaUnPermiso() throws Exception {
+        Cupo cupo = new Cupo(1, 4, 5000);
+        assertTrue(cupo.entrar());
+        ExecutorService hilos = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> espera = hilos.submit(cupo::entrar);
+            while (cupo.esperando() == 0) {
+                Thread.sleep(1);
+            }
+            cupo.salir();
+            assertTrue(espera.get(5, TimeUnit.SECONDS));
+            assertEquals(1, cupo.enCurso());
+        } finally {
+            hilos.shutdownNow();
+        }
+    }
+
+    @Test
+    public void conLosStreamsSaturadosLaInterfazSigueRespondiendo() throws Exception {
+        ControlAdmision admision = new ControlAdmision(new Cupo(4, 4, 1000), new Cupo(1, 0, 0));
+        CountDownLatch dentro = new CountDownLatch(1);
+        CountDownLatch soltar = new CountDownLatch(1);
+        IControladorHttp stream = admision.envolver("/stream/{id}", intercambio -> {
+            dentro.countDown();
+            try {
+                soltar.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Respuestas.texto(intercambio, 200, "vídeo");
+        });
+        IControladorHttp video = admision.envolver("/video", intercambio -> Respuestas.texto(intercambio, 200, "[]"));
+
+        HttpServer servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        servidor.createContext("/stream/", stream::controlar);
+        servidor.createContext("/video", video::controlar);
+        ExecutorService hilos = Executors.newFixedThreadPool(4);
+        servidor.setExecutor(hilos);
+        servidor.start();
+        String base = "http://127.0.0.1:" + servidor.getAddress().getPort();
+        try {
+            Future<Integer> primero = hilos.submit(() -> codigo(base + "/stream/1", null));
+            assertTrue(dentro.await(5, TimeUnit.SECONDS));
+
+            String[] reintento = new String[1];
+            assertEquals(503, codigo(base + "/stream/2", reintento));
+            assertEquals("2", reintento[0]);
+            assertEquals(200, codigo(base + "/video", null));
+
+            soltar.countDown();
+            assertEquals(200, primero.get(5, TimeUnit.SECONDS).intValue());
+            assertEquals(1, admision.cupo(Clase.MASIVA).rechazadas());
+            assertEquals(0, admision.cupo(Clase.INTERACTIVA).rechazadas());
+        } finally {
+            soltar.countDown();
+            servidor.stop(0);
+            hilos.shutdownNow();
+        }
+    }
+
+    private static int codigo(String url, String[] reintento) throws Exception {
+        HttpURLConnection conexion = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        int codigo = conexion.getResponseCode();
+        if (reintento != null) {
+            reintento[0] = conexion.getHeaderField("Retry-After");
+        }
+        (codigo >= 400 ? conexion.getErrorStream() : conexion.getInputStream()).readAllBytes();
+        return codigo;
+    }
+}
@@ -0,0 +1,55 @@
+package kabadev.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas del análisis de cabeceras Range e If-Range
+ */
+public class RangosHttpTest {
+
+    @Test
+    public void sinCabeceraSeSirveCompleto() {
+        assertNull(RangosHttp.analizar(null, 1000));
+        assertNull(RangosHttp.analizar("items=0-10", 1000));
+        assertNull(RangosHttp.analizar("bytes=abc", 1000));
+    }
+
+    @Test
+    public void rangoSimpleAbiertoYSufijo() {
+        assertEquals(List.of(new RangoBytes(0, 499)), RangosHttp.analizar("bytes=0-499", 1000));
+        assertEquals(List.of(new RangoBytes(900, 999)), RangosHttp.analizar("bytes=900-", 1000));
+        assertEquals(List.of(new RangoBytes(800, 999)), RangosHttp.analizar("bytes=-200", 1000));
+        assertEquals(List.of(new RangoBytes(500, 999)), RangosHttp.analizar("bytes=500-5000", 1000));
+    }
+
+    @Test
+    public void rangosSolapadosSeFusionan() {
+        List<RangoBytes> rangos = RangosHttp.analizar("bytes=500-600, 0-99, 100-199, 550-700", 1000);
+        assertEquals(List.of(new RangoBytes(0, 199), new RangoBytes(500, 700)), rangos);
+    }
+
+    @Test
+    public void rangoFueraDelRecursoNoEsSatisfacible() {
+        assertTrue(RangosHttp.analizar("bytes=1000-1100", 1000).isEmpty());
+        assertTrue(RangosHttp.analizar("bytes=5000-", 1000).isEmpty());
+    }
+
+    @Test
+    public void ifRangeSoloConValidadorExacto() {
+        String etag = RangosHttp.calcularEtag(1000, 1_700_000_000_123L);
+        assertTrue(RangosHttp.ifRangeCoincide(null, etag, 0));
+        assertTrue(RangosHttp.ifRangeCoincide(etag, etag, 0));
+        assertFalse(RangosHttp.ifRangeCoincide("\"otro\"", etag, 0));
+
+        String fecha = RangosHttp.formatearFecha(1_700_000_000_123L);
+        assertTrue(RangosHttp.ifRangeCoincide(fecha, etag, 1_700_000_000_123L));
+        assertFalse(RangosHttp.ifRangeCoincide(fecha, etag, 1_700_000_999_000L));
+    }
+}
@@ -0,0 +1,236 @@
+package kabadev.servidor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import kabadev.servidor.nio.ServidorNio;
+
+/**
+ * Pruebas del enrutado por segmentos y de la cadena de middlewares
+ */
+public class TablaRutasTest {
+
+    /** Peticiones que hace comprobarHead */
+    private static final int PETICIONES_HEAD = 4;
+
+    private static final IControladorRuta NADA = (intercambio, ruta) -> {
+    };
+
+    private static TablaRutas tablaDogster() {
+        TablaRutas tabla = new TablaRutas();
+        tabla.registrar("/*", NADA);
+        tabla.registrar("/static/*", NADA);
+        tabla.registrar("/video", NADA);
+        tabla.registrar("/stream/{id}", NADA);
+        tabla.registrar("/stream/{id}/keyframes", NADA);
+        tabla.registrar("/stream/destacados", NADA);
+        return tabla;
+    }
+
+    @Test
+    public void elLiteralGanaAlParametroYEsteAlComodin() {
+        TablaRutas tabla = tablaDogster();
+        assertEquals("/stream/destacados", tabla.buscar("/stream/destacados").patron());
+        assertEquals("/stream/{id}", tabla.buscar("/stream/12").patron());
+        assertEquals("/stream/{id}/keyframes", tabla.buscar("/stream/12/keyframes").patron());
+        assertEquals("/video", tabla.buscar("/video").patron());
+        assertEquals("/static/*", tabla.buscar("/static/css/style.css").patron());
+        assertEquals("/*", tabla.buscar("/style.css").patron());
+        assertEquals("/*", tabla.buscar("/").patron());
+    }
+
+    @Test
+    public void siUnaRamaNoTerminaSePruebaLaSiguiente() {
+        TablaRutas tabla = tablaDogster();
+        // /stream/12/otra no existe: cae en el comodín raíz en lugar de quedarse sin ruta
+        assertEquals("/*", tabla.buscar("/stream/12/otra").patron());
+        assertEquals("/*", tabla.buscar("/videos").patron());
+        assertEquals("/static/*", tabla.buscar("/static").patron());
+    }
+
+    @Test
+    public void barrasFinalesYRepetidasNoCuentan() {
+        TablaRutas tabla = tablaDogster();
+        assertEquals("/video", tabla.buscar("/video/").patron());
+        assertEquals("/stream/{id}", tabla.buscar("//stream//7/").patron());
+    }
+
+    @Test
+    public void sinComodinNoHayRuta() {
+        TablaRutas tabla = new TablaRutas();
+        tabla.registrar("video", NADA);
+        assertEquals("/video", tabla.buscar("/video").patron());
+        assertNull(tabla.buscar("/"));
+        assertNull(tabla.buscar("/video/1"));
+    }
+
+    @Test
+    public void patronesNoValidos() {
+        TablaRutas tabla = new TablaRutas();
+        assertThrows(IllegalArgumentException.class, () -> tabla.registrar("", NADA));
+        assertThrows(IllegalArgumentException.class, () -> tabla.registrar("/*/video", NADA));
+        assertThrows(IllegalArgumentException.class, () -> tabla.registrar("/stream/{}", NADA));
+        assertThrows(IllegalArgumentException.class, () -> tabla.registrar("/video", null));
+    }
+
+    @Test
+    public void elPrimerMiddlewareEsElMasExterno() throws IOException {
+        List<String> traza = new ArrayList<>();
+        TablaRutas tabla = new TablaRutas();
+        tabla.usar((patron, siguiente) -> intercambio -> {
+            traza.add("a:" + patron);
+            siguiente.controlar(intercambio);
+        });
+        tabla.usar((patron, siguiente) -> intercambio -> {
+            traza.add("b");
+            siguiente.controlar(intercambio);
+        });
+        tabla.registrar("/stream/{id}", (intercambio, ruta) -> traza.add("controlador"));
+
+        tabla.buscar("/stream/1").cadena().controlar(null);
+        assertEquals(List.of("a:/stream/{id}", "b", "controlador"), traza);
+    }
+
+    @Test
+    public void getImplicaHeadYAllowLoAnuncia() throws IOException {
+        TablaRutas tabla = new TablaRutas();
+        tabla.usar(Middlewares.metodos(Map.of("/progress/{id}", new String[] {"GET", "PUT"}), "GET"));
+        tabla.registrar("/video", (intercambio, ruta) -> Respuestas.sinCuerpo(intercambio, 204));
+        tabla.registrar("/progress/{id}", (intercambio, ruta) -> Respuestas.sinCuerpo(intercambio, 204));
+
+        HttpServer servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        servidor.createContext("/", tabla::atender);
+        servidor.start();
+        String base = "http://127.0.0.1:" + servidor.getAddress().getPort();
+        try {
+            assertEquals(204, codigo(base + "/video", "HEAD"));
+            assertEquals(204, codigo(base + "/progress/1", "HEAD"));
+            assertEquals(405, codigo(base + "/video", "DELETE"));
+
+            HttpURLConnection conexion = (HttpURLConnection) URI.create(base + "/progress/1").toURL().openConnection();
+            conexion.setRequestMethod("DELETE");
+            assertEquals(405, conexion.getResponseCode());
+            assertEquals("GET, HEAD, PUT", conexion.getHeaderField("Allow"));
+        } finally {
+            servidor.stop(0);
+        }
+    }
+
+    @Test
+    public void headConCuerpoEnviaSoloLaLongitud() throws Exception {
+        Path archivo = Files.createTempFile("dogster-head", ".bin");
+        List<Throwable> errores = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger terminadas = new AtomicInteger();
+        try {
+            Files.write(archivo, new byte[1000]);
+            TablaRutas tabla = new TablaRutas();
+            tabla.usar(Middlewares.metodos(Map.of(), "GET"));
+            tabla.usar((patron, siguiente) -> intercambio -> {
+                try {
+                    siguiente.controlar(intercambio);
+                } catch (IOException | RuntimeException e) {
+                    errores.add(e);
+                    throw e;
+                } finally {
+                    terminadas.incrementAndGet();
+                }
+            });
+            tabla.registrar("/video", (intercambio, ruta) -> Respuestas.json(intercambio, 200, "[1,2,3]".getBytes()));
+            tabla.registrar("/stream/{id}", (intercambio, ruta) -> {
+                try (FileChannel canal = FileChannel.open(archivo)) {
+                    RespuestaRangos.enviar(intercambio, canal, canal.size(), "video/mp4", "\"e\"", 0);
+                }
+            });
+
+            // Motor nativo
+            HttpServer servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            servidor.createContext("/", tabla::atender);
+            servidor.start();
+            try {
+                comprobarHead("http://127.0.0.1:" + servidor.getAddress().getPort());
+                esperarTerminadas(terminadas, PETICIONES_HEAD);
+            } finally {
+                servidor.stop(0);
+            }
+
+            // Motor NIO, con la misma tabla
+            ServidorNio nio = ServidorNio.crear(new InetSocketAddress("127.0.0.1", 0), 0, EstrategiaEjecutor.FIJO, 4, 1);
+            nio.crearRuta("/video", (intercambio, ruta) -> tabla.atender(intercambio));
+            nio.crearRuta("/stream/{id}", (intercambio, ruta) -> tabla.atender(intercambio));
+            nio.iniciar();
+            try {
+                comprobarHead("http://127.0.0.1:" + nio.obtenerDireccion().getPort());
+                // El cliente puede tener los bytes antes de que el controlador termine: no cortar a medias
+                esperarTerminadas(terminadas, 2 * PETICIONES_HEAD);
+            } finally {
+                nio.detener(0);
+            }
+            assertEquals(List.of(), errores);
+        } finally {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    private static void esperarTerminadas(AtomicInteger terminadas, int esperadas) throws InterruptedException {
+        long limite = System.nanoTime() + 5_000_000_000L;
+        while (terminadas.get() < esperadas && System.nanoTime() < limite) {
+            Thread.sleep(1);
+        }
+        assertEquals(esperadas, terminadas.get());
+    }
+
+    private static void comprobarHead(String base) throws IOException {
+        HttpURLConnection json = abrir(base + "/video", "HEAD", null);
+        assertEquals(200, json.getResponseCode());
+        assertEquals("7", json.getHeaderField("Content-Length"));
+        assertEquals(0, json.getInputStream().readAllBytes().length);
+
+        HttpURLConnection completo = abrir(base + "/stream/1", "HEAD", null);
+        assertEquals(200, completo.getResponseCode());
+        assertEquals("1000", completo.getHeaderField("Content-Length"));
+        assertEquals("bytes", completo.getHeaderField("Accept-Ranges"));
+
+        HttpURLConnection rango = abrir(base + "/stream/1", "HEAD", "bytes=0-9");
+        assertEquals(206, rango.getResponseCode());
+        assertEquals("10", rango.getHeaderField("Content-Length"));
+        assertEquals("bytes 0-9/1000", rango.getHeaderField("Content-Range"));
+
+        // La conexión sigue sirviendo un GET normal después de los HEAD
+        HttpURLConnection get = abrir(base + "/stream/1", "GET", "bytes=0-9");
+        assertEquals(206, get.getResponseCode());
+        assertEquals(10, get.getInputStream().readAllBytes().length);
+    }
+
+    private static HttpURLConnection abrir(String url, String metodo, String rango) throws IOException {
+        HttpURLConnection conexion = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        conexion.setRequestMethod(metodo);
+        if (rango != null) {
+            conexion.setRequestProperty("Range", rango);
+        }
+        return conexion;
+    }
+
+    private static int codigo(String url, String metodo) throws IOException {
+        HttpURLConnection conexion = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        conexion.setRequestMethod(metodo);
+        return conexion.getResponseCode();
+    }
+}
@@ -0,0 +1,75 @@
+package kabadev.trafico;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas de los cubos de tokens y del reparto justo
+ */
+public class PlanificadorTraficoTest {
+
+    private static final long SEGUNDO = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void elCuboDejaPasarLaRafagaYDespuesEspaciaLosEnvios() {
+        // 1000 B/s con 2 s de ráfaga: los primeros 2000 bytes salen sin esperar
+        CuboTokens cubo = new CuboTokens(1000, 2 * SEGUNDO, 0);
+        assertEquals(0, cubo.reservar(1000, 0));
+        assertEquals(0, cubo.reservar(1000, 0));
+        assertEquals(SEGUNDO / 2, cubo.reservar(500, 0));
+        assertEquals(SEGUNDO, cubo.reservar(500, 0));
+
+        // Tras esperar lo indicado la siguiente reserva vuelve a tener el mismo turno relativo
+        assertEquals(SEGUNDO / 2, cubo.reservar(500, SEGUNDO));
+        assertFalse(cubo.inactivo(SEGUNDO));
+
+        // Un cubo sin uso no acumula más ráfaga que la tolerancia
+        assertTrue(cubo.inactivo(100 * SEGUNDO));
+        assertEquals(0, cubo.reservar(2000, 100 * SEGUNDO));
+        assertEquals(SEGUNDO, cubo.reservar(1000, 100 * SEGUNDO));
+    }
+
+    @Test
+    public void sinTasaNoSeEspera() {
+        assertEquals(0, new CuboTokens(0, 0, 0).reservar(Long.MAX_VALUE / SEGUNDO, 0));
+    }
+
+    @Test
+    public void elLimiteGlobalSeRepartePorIgualEntreLosStreams() throws Exception {
+        PlanificadorTrafico trafico = new PlanificadorTrafico(9000, 0, 4000, 4, 1024);
+        assertTrue(trafico.activo());
+
+        try (FlujoLimitado primero = trafico.abrir(InetAddress.getLoopbackAddress())) {
+            // Un único stream: su propio límite es más restrictivo que el global
+            assertEquals(4000, trafico.cuotaStream());
+            try (FlujoLimitado segundo = trafico.abrir(InetAddress.getLoopbackAddress());
+                    FlujoLimitado tercero = trafico.abrir(InetAddress.getLoopbackAddress())) {
+                assertEquals(3, trafico.activos());
+                assertEquals(3000, trafico.cuotaStream());
+            }
+            assertEquals(1, trafico.activos());
+        }
+        assertEquals(0, trafico.activos());
+    }
+
+    @Test
+    public void elCuboDeLaIpSeRetiraConSuUltimoStream() throws Exception {
+        PlanificadorTrafico trafico = new PlanificadorTrafico(0, 1000, 0, 1, 1024);
+        InetAddress cliente = InetAddress.getByName("192.0.2.7");
+
+        FlujoLimitado uno = trafico.abrir(cliente);
+        FlujoLimitado dos = trafico.abrir(cliente);
+        assertEquals(1, trafico.clientes());
+        uno.close();
+        uno.close();
+        assertEquals(1, trafico.clientes());
+        dos.close();
+        assertEquals(0, trafico.clientes());
+    }
+}